@@ -24,30 +24,65 @@
 
 package com.symphony;
 
+import com.symphony.admin.AdminServer;
+import com.symphony.admin.Diagnostics;
+import com.symphony.admin.DiagnosticsSource;
 import com.symphony.api.pod.model.Stream;
 import com.symphony.api.pod.model.User;
 import com.symphony.clients.ISymphonyClient;
+import com.symphony.clients.MessageOutbox;
+import com.symphony.clients.OrderedMessageSender;
 import com.symphony.clients.SymphonyClient;
+import com.symphony.commands.ParsedCommand;
+import com.symphony.commands.TokenizedMessage;
+import com.symphony.configurations.ConfigurationListener;
 import com.symphony.configurations.ConfigurationProvider;
 import com.symphony.configurations.IConfigurationProvider;
-import com.symphony.contexts.RedditContext;
+import com.symphony.contexts.ResponseSink;
 import com.symphony.contexts.ServiceContext;
-import com.symphony.contexts.WebBrowserContext;
+import com.symphony.contexts.ServiceContextRegistry;
+import com.symphony.contexts.SharedResponse;
+import com.symphony.datafeed.CatchUpProcessor;
+import com.symphony.datafeed.MessageHandler;
 import com.symphony.formatters.MessageML;
+import com.symphony.formatters.MessageMLPacker;
+import com.symphony.lifecycle.PendingWork;
+import com.symphony.lifecycle.PendingWork.PendingRequest;
 import com.symphony.models.ISymphonyMessage;
-
+import com.symphony.models.Message;
+import com.symphony.resilience.UpstreamGuards;
+import com.symphony.search.ContentIndexes;
+import com.symphony.tracing.Span;
+import com.symphony.tracing.Trace;
+import com.symphony.tracing.Tracer;
+import com.symphony.utils.LogFields;
+import com.symphony.utils.MonitoredThreadPoolExecutor;
+import com.symphony.utils.NamedThreadFactory;
+import com.symphony.watch.WatchScheduler;
+
+import org.apache.logging.log4j.LogManager;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by ryan.dsouza on 7/27/16.
@@ -55,10 +90,13 @@ import java.util.concurrent.Executors;
  * The main class of the bot --> Run from here
  */
 
-public class SymBrowserBot {
+public class SymBrowserBot implements DiagnosticsSource {
 
   private static final Logger LOG = LoggerFactory.getLogger(SymBrowserBot.class);
 
+  //How long queued trace spans get to be written out on shutdown
+  private static final long TRACE_FLUSH_TIMEOUT = 2000;
+
   //Triggers the bot to respond
   private static final List<String> botTriggerWords = new ArrayList<String>() {{
     add("reddit");
@@ -68,36 +106,114 @@ public class SymBrowserBot {
     add("sym_browser");
   }};
 
+  //The bot's own names, which contain the 'browser' alias but don't route to that context
+  private static final List<String> botNames =
+      Arrays.asList("symbrowser", "sym browser", "sym_browser");
+
   //Configuration information
   private final IConfigurationProvider configurationProvider;
   private final ISymphonyClient symphonyClient;
   private final long myUserId;
 
-  //All possible services
-  private final Map<String, ServiceContext> services;
+  //All possible services, found on the classpath
+  private final ServiceContextRegistry services;
 
   //For multiple rooms + concurrent response handling
   private final ConcurrentMap<String, ServiceContext> contextToChat;
-  private final ExecutorService sendMessageExecutor;
-  private final ExecutorService informationExecutor;
+  private final MonitoredThreadPoolExecutor sendMessageExecutor;
+  private final MonitoredThreadPoolExecutor informationExecutor;
+
+  //Requests being answered, for diagnostics
+  private final Set<GetResponse> inFlightResponses;
+
+  //Sends each room's messages in order, packed to fit Symphony's size limit
+  private final OrderedMessageSender messageSender;
+  private final MessageMLPacker messagePacker;
+  //Messages the agent hasn't taken yet, journaled so they are sent after a restart
+  private final MessageOutbox outbox;
+
+  //Identical concurrent requests to a context share one streamed response
+  private final ConcurrentMap<String, SharedResponse> sharedResponses;
+
+  //Drains large datafeed batches in parallel across streams
+  private final CatchUpProcessor catchUpProcessor;
+  private volatile int catchUpThreshold;
+
+  //Traces a sample of the inbound messages, from the datafeed read to the reply being sent
+  private final Tracer tracer;
+
+  //Polls the sources rooms watch, once per source, and sends each room what is new
+  private final WatchScheduler watchScheduler;
+
+  private volatile AdminServer adminServer;
 
+  //Cleared when shutting down - requests that come in afterwards are saved instead of answered
+  private volatile boolean running;
+  private final AtomicBoolean shutDown;
+  private final PendingWork pendingWork;
+
+  //Runs the response on the calling thread, to keep a stream's responses in order
+  private final Executor inlineExecutor = new Executor() {
+    @Override
+    public void execute(Runnable runnable) {
+      runnable.run();
+    }
+  };
 
   public SymBrowserBot(IConfigurationProvider configurationProvider) {
     this.configurationProvider = configurationProvider;
     this.symphonyClient = new SymphonyClient(this.configurationProvider);
     this.myUserId = configurationProvider.getBotUserId();
 
-    this.sendMessageExecutor = Executors.newFixedThreadPool(2); //Sends messages
-    this.informationExecutor = Executors.newFixedThreadPool(10); //Gets information from Services
+    //Sends messages
+    this.sendMessageExecutor = newFixedThreadPool("send-message",
+        configurationProvider.getSendMessageThreads());
+    //Gets information from Services
+    this.informationExecutor = newFixedThreadPool("information",
+        configurationProvider.getInformationThreads());
+    this.inFlightResponses =
+        Collections.newSetFromMap(new ConcurrentHashMap<GetResponse, Boolean>());
     this.contextToChat = new ConcurrentHashMap<String, ServiceContext>();
+    this.sharedResponses = new ConcurrentHashMap<String, SharedResponse>();
+    this.messagePacker = new MessageMLPacker(configurationProvider.getMaxMessageLength());
+    this.outbox = MessageOutbox.open(configurationProvider.getOutboxFile());
+    this.messageSender = new OrderedMessageSender(this.symphonyClient, this.sendMessageExecutor,
+        this.messagePacker, this.outbox, configurationProvider);
+    this.catchUpProcessor = new CatchUpProcessor(configurationProvider.getCatchUpParallelism(),
+        configurationProvider.getCatchUpCollapseDuplicates());
+    this.catchUpThreshold = configurationProvider.getCatchUpThreshold();
+    this.tracer = new Tracer(configurationProvider);
+    configurationProvider.addListener(this.tracer);
+    this.running = true;
+    this.shutDown = new AtomicBoolean(false);
+    this.pendingWork = new PendingWork();
+
+    this.watchScheduler = new WatchScheduler(configurationProvider, this.messageSender);
+    configurationProvider.addListener(this.watchScheduler);
+
+    //Contexts are created and authenticated when the bot starts or on first use, not here
+    this.services = new ServiceContextRegistry(configurationProvider);
+    this.services.setBotNames(botNames);
+    this.services.setWatchScheduler(this.watchScheduler);
+
+    //Thread counts, message size and catch-up settings follow configuration reloads
+    configurationProvider.addListener(new ConfigurationListener() {
+      @Override
+      public void configurationChanged(IConfigurationProvider configurationProvider) {
+        sendMessageExecutor.setPoolSize(configurationProvider.getSendMessageThreads());
+        informationExecutor.setPoolSize(configurationProvider.getInformationThreads());
+        messagePacker.setMaxMessageLength(configurationProvider.getMaxMessageLength());
+        catchUpProcessor.setParallelism(configurationProvider.getCatchUpParallelism());
+        catchUpProcessor.setCollapseDuplicates(
+            configurationProvider.getCatchUpCollapseDuplicates());
+        catchUpThreshold = configurationProvider.getCatchUpThreshold();
+      }
+    });
+  }
 
-    WebBrowserContext webBrowserContext = new WebBrowserContext(configurationProvider);
-    ServiceContext redditContext = new RedditContext(configurationProvider);
-    redditContext.authenticate();
-
-    this.services = new HashMap<String, ServiceContext>();
-    this.services.put(webBrowserContext.getContextName(), webBrowserContext);
-    this.services.put(redditContext.getContextName(), redditContext);
+  private static MonitoredThreadPoolExecutor newFixedThreadPool(String role, int numThreads) {
+    return new MonitoredThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(role, false));
   }
 
   /**
@@ -116,61 +232,377 @@ public class SymBrowserBot {
 
   public static void main(String[] ryan) {
 
-    IConfigurationProvider configurationProvider = new ConfigurationProvider();
-    SymBrowserBot browserBot = new SymBrowserBot(configurationProvider);
+    final ConfigurationProvider configurationProvider = new ConfigurationProvider();
+    configurationProvider.startWatching();
+    final SymBrowserBot browserBot = new SymBrowserBot(configurationProvider);
+
+    //log4j2's own shutdown hook is disabled so the shutdown is logged until the end
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        browserBot.shutdown();
+        configurationProvider.stopWatching();
+        LogManager.shutdown();
+      }
+    }, "symbrowser-shutdown"));
+
     browserBot.start();
   }
 
   /**
    * Starts the bot
+   * Only Symphony authentication is waited for - contexts authenticate in the background
+   * (or on first use, if that hasn't finished) and the startup notification is sent
+   * while the datafeed is already being read
    */
   public void start() {
+    startAdminServer();
+    this.services.warmUp(this.informationExecutor);
+
     symphonyClient.authenticate();
+    resumePendingWork();
+    sendStartupNotification();
+
+    //Listens for messages until the bot shuts down
+    while (this.running) {
+      List<Message> messages;
+      try {
+        messages = symphonyClient.getMessages();
+      } catch (RuntimeException exception) {
+        if (!this.running) {
+          //The client was closed under the read
+          break;
+        }
+        throw exception;
+      }
+      final long readAtNanos = System.nanoTime();
+      MessageHandler catchUpHandler = new MessageHandler() {
+        @Override
+        public void handle(Message message) {
+          handleDatafeedMessage(message, readAtNanos, inlineExecutor);
+        }
+      };
+
+      //A backlog, e.g. after a restart - answer each stream in order, streams in parallel
+      if (messages.size() >= this.catchUpThreshold) {
+        try {
+          this.catchUpProcessor.process(messages, catchUpHandler);
+          continue;
+        } catch (RejectedExecutionException exception) {
+          //Shutting down - handled below, which saves them to be answered after the restart
+        }
+      }
 
-    User userRyan = symphonyClient.getUserForEmailAddress("ryan.dsouza@symphony.com");
-    Stream ourChat = symphonyClient.getStreamWithUsers(userRyan);
-    symphonyClient.sendMessage(ourChat.getId(), "Up and running");
+      for (Message message : messages) {
+        //Behind the stream's backlog if it is still being caught up on, to keep its order
+        if (!this.catchUpProcessor.offer(message, catchUpHandler)) {
+          handleDatafeedMessage(message, readAtNanos, this.informationExecutor);
+        }
+      }
+    }
+    LOG.info("Stopped reading the datafeed");
+  }
 
-    //Infinite loop to always listen for responses
-    while (true) {
-      List<ISymphonyMessage> messages = symphonyClient.getSymphonyMessages();
-      for (ISymphonyMessage message : messages) {
-        if (message.getSymphonyUser().getUserId() != myUserId) {
-          handleIncomingMessage(message);
+  /**
+   * Stops the bot, letting work that is under way finish within the shutdown grace period:
+   * the datafeed stops being read, requests being answered - including those of a backlog
+   * being caught up on - get to finish and then every stream's queued messages get to be
+   * sent, in order
+   * Requests that weren't answered and messages that weren't sent are saved to the pending
+   * work file, to be finished on the next start - requests still being answered when the
+   * grace period ends are answered again from the start
+   * Safe to call more than once, only the first call does anything
+   */
+  public void shutdown() {
+    if (!this.shutDown.compareAndSet(false, true)) {
+      return;
+    }
+    long gracePeriod = this.configurationProvider.getShutdownGracePeriod();
+    long deadline = System.currentTimeMillis() + gracePeriod;
+    LOG.info("Shutting down, waiting up to {} ms for work under way", gracePeriod);
+
+    this.running = false;
+    if (this.adminServer != null) {
+      this.adminServer.stop();
+    }
+    this.watchScheduler.close();
+
+    //Requests first, since their responses are queued to be sent
+    //A backlog's requests are answered on the catch-up threads, so those are waited for too
+    this.catchUpProcessor.shutdown();
+    awaitTermination(this.informationExecutor, deadline);
+    try {
+      this.catchUpProcessor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()),
+          TimeUnit.MILLISECONDS);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+
+    for (Runnable notStarted : this.informationExecutor.shutdownNow()) {
+      if (notStarted instanceof GetResponse) {
+        ((GetResponse) notStarted).saveAsPending();
+      }
+    }
+    List<Message> notHandled = this.catchUpProcessor.shutdownNow();
+    //Only the requests still running once the grace period is over, finished ones are gone
+    for (GetResponse interrupted : this.inFlightResponses) {
+      interrupted.saveAsPending();
+    }
+    //Not running any more, so handling them saves them to be answered after the restart
+    for (Message message : notHandled) {
+      handleDatafeedMessage(message, System.nanoTime(), this.inlineExecutor);
+    }
+
+    awaitTermination(this.sendMessageExecutor, deadline);
+    this.sendMessageExecutor.shutdownNow();
+    for (Map.Entry<String, List<MessageML>> unsent : this.messageSender.drainUnsent().entrySet()) {
+      this.pendingWork.addMessages(unsent.getKey(), unsent.getValue());
+    }
+
+    savePendingWork();
+    this.outbox.close();
+
+    this.services.close();
+    this.symphonyClient.close();
+    ContentIndexes.close();
+    this.tracer.close(TRACE_FLUSH_TIMEOUT);
+    LOG.info("Shut down");
+  }
+
+  /**
+   * Stops the pool taking new tasks and waits until its tasks are done or the deadline passes
+   * @param pool
+   * @param deadline
+   */
+  private static void awaitTermination(ExecutorService pool, long deadline) {
+    pool.shutdown();
+    try {
+      pool.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()),
+          TimeUnit.MILLISECONDS);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Saves the requests and messages that didn't finish, if there are any and a file is configured
+   */
+  private void savePendingWork() {
+    if (this.pendingWork.isEmpty()) {
+      return;
+    }
+
+    File file = this.configurationProvider.getPendingWorkFile();
+    if (file == null) {
+      LOG.warn("Dropping {} unanswered requests and {} unsent messages",
+          this.pendingWork.getRequests().size(), this.pendingWork.getNumMessages());
+      return;
+    }
+
+    this.pendingWork.save(file);
+    LOG.info("Saved {} unanswered requests and {} unsent messages to {}",
+        this.pendingWork.getRequests().size(), this.pendingWork.getNumMessages(), file);
+  }
+
+  /**
+   * Sends the messages and answers the requests saved when the bot last shut down
+   * Each stream's saved messages are sent before anything else is sent to it
+   */
+  private void resumePendingWork() {
+    //Sent first, they were packed before anything saved in the pending work was queued
+    this.messageSender.resumeOutbox();
+
+    File file = this.configurationProvider.getPendingWorkFile();
+    if (file == null) {
+      return;
+    }
+
+    PendingWork previousWork = PendingWork.takeFrom(file);
+    if (previousWork.isEmpty()) {
+      return;
+    }
+    LOG.info("Resuming {} requests and {} messages from before the restart",
+        previousWork.getRequests().size(), previousWork.getNumMessages());
+
+    for (Map.Entry<String, List<MessageML>> unsent : previousWork.getMessages().entrySet()) {
+      this.messageSender.send(unsent.getKey(), unsent.getValue());
+    }
+
+    for (PendingRequest request : previousWork.getRequests()) {
+      ServiceContext serviceContext = this.services.getContext(request.getContextName());
+      if (serviceContext == null) {
+        LOG.warn("Dropping a request to the {} context, which no longer exists",
+            request.getContextName());
+        continue;
+      }
+      this.contextToChat.putIfAbsent(request.getStreamId(), serviceContext);
+      this.informationExecutor.execute(new GetResponse(request.getStreamId(),
+          serviceContext.parse(request.getMessageText()), serviceContext));
+    }
+  }
+
+  /**
+   * Serves the bot's, Symphony's and the contexts' diagnostics, if an admin port is configured
+   * The bot runs without it if it can't be started
+   */
+  private void startAdminServer() {
+    int port = this.configurationProvider.getAdminPort();
+    if (port < 0) {
+      return;
+    }
+
+    try {
+      AdminServer adminServer = new AdminServer(this.configurationProvider.getAdminHost(), port);
+      adminServer.addSource("bot", this);
+      adminServer.addSource("symphony", this.symphonyClient);
+      adminServer.addSource("contexts", this.services);
+      adminServer.addSource("upstreams", new DiagnosticsSource() {
+        @Override
+        public JSONObject getDiagnostics() {
+          return UpstreamGuards.getDiagnostics();
+        }
+      });
+      adminServer.start();
+      this.adminServer = adminServer;
+    } catch (IOException exception) {
+      LOG.error("Could not start the admin endpoint on port {}", port, exception);
+    }
+  }
+
+  /**
+   * The response pools, the rooms using a context, and the requests being answered
+   * by context, each with how long it has been running
+   * @return
+   */
+  @Override
+  public JSONObject getDiagnostics() {
+    JSONObject inFlight = new JSONObject();
+    long now = System.currentTimeMillis();
+    for (GetResponse response : this.inFlightResponses) {
+      String contextName = response.serviceContext.getContextName();
+      JSONArray requests = inFlight.optJSONArray(contextName);
+      if (requests == null) {
+        requests = new JSONArray();
+        inFlight.put(contextName, requests);
+      }
+      requests.put(new JSONObject()
+          .put("streamId", response.threadId)
+          .put("command", LogFields.command(response.command.getText()))
+          .put("ageMillis", now - response.startedAtMillis));
+    }
+
+    return new JSONObject()
+        .put("informationExecutor", Diagnostics.pool(this.informationExecutor))
+        .put("sendMessageExecutor", Diagnostics.pool(this.sendMessageExecutor))
+        .put("catchUp", this.catchUpProcessor.getDiagnostics())
+        .put("outbox", this.outbox.size())
+        .put("roomsWithContext", this.contextToChat.size())
+        .put("sharedResponses", this.sharedResponses.size())
+        .put("inFlightRequests", inFlight);
+  }
+
+  /**
+   * Tells the configured user that the bot is up, without holding up the datafeed
+   */
+  private void sendStartupNotification() {
+    final String emailAddress = this.configurationProvider.getStartupNotificationEmail();
+    if (emailAddress == null || emailAddress.isEmpty()) {
+      return;
+    }
+
+    this.informationExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        User user = symphonyClient.getUserForEmailAddress(emailAddress);
+        Stream chat = user == null ? null : symphonyClient.getStreamWithUsers(user);
+        if (chat == null) {
+          LOG.warn("Could not open a chat with {} to say the bot is up", emailAddress);
+          return;
         }
+
+        MessageML upAndRunning = new MessageML();
+        upAndRunning.addParagraph("Up and running");
+        messageSender.send(chat.getId(), upAndRunning);
       }
+    });
+  }
+
+  /**
+   * Looks up the sender and handles the message unless we sent it
+   * If the message is sampled, its trace's root span covers this, from when it was read
+   * @param message
+   * @param readAtNanos System.nanoTime() when the message was read from the datafeed
+   * @param responseExecutor
+   */
+  private void handleDatafeedMessage(Message message, long readAtNanos,
+      Executor responseExecutor) {
+    Trace trace = this.tracer.startTrace();
+    Span rootSpan = trace.startRootSpan("message", readAtNanos)
+        .setAttribute("messageId", message.getId())
+        .setAttribute("streamId", message.getStreamId());
+    if (trace.isSampled()) {
+      recordDatafeedSpans(trace, message, readAtNanos);
+    }
+
+    Trace previousTrace = Trace.current();
+    Trace.setCurrent(trace);
+    MDC.put(LogFields.STREAM_ID, message.getStreamId());
+    try {
+      Span userLookupSpan = trace.startSpan("user.lookup");
+      ISymphonyMessage symphonyMessage = symphonyClient.getSymphonyMessage(message);
+      userLookupSpan.end();
+
+      if (symphonyMessage != null && symphonyMessage.getSymphonyUser().getUserId() != myUserId) {
+        handleIncomingMessage(symphonyMessage, responseExecutor);
+      }
+    } finally {
+      MDC.remove(LogFields.STREAM_ID);
+      Trace.setCurrent(previousTrace);
+      rootSpan.end();
     }
   }
 
+  /**
+   * Records how long the message took to reach the bot according to its Symphony timestamp,
+   * and how long it then waited to be handled, e.g. behind a backlog
+   * @param trace
+   * @param message
+   * @param readAtNanos
+   */
+  private static void recordDatafeedSpans(Trace trace, Message message, long readAtNanos) {
+    try {
+      long sentAtNanos = trace.toNanoTime(Long.parseLong(message.getTimestamp()));
+      trace.recordSpan("datafeed.delivery", Math.min(sentAtNanos, readAtNanos), readAtNanos);
+    } catch (NumberFormatException exception) {
+      //No usable timestamp, so no delivery span
+    }
+    trace.recordSpan("datafeed.wait", readAtNanos, System.nanoTime());
+  }
+
   /**
    * Responsible for actually handling the incoming messages
    * @param message
+   * @param responseExecutor where the context's response is computed
    */
-  private void handleIncomingMessage(ISymphonyMessage message) {
+  private void handleIncomingMessage(ISymphonyMessage message, Executor responseExecutor) {
 
     //The service they are referring to
-    String messageText = message.getMessageText().toLowerCase();
+    //Split into words once - the context parses its command from them
+    TokenizedMessage tokenizedMessage = TokenizedMessage.of(message.getMessageText());
+    String messageText = tokenizedMessage.getLowerCaseText();
+    ServiceContext relevantService = this.services.route(messageText);
 
-    if (!containsTriggerWord(messageText)) {
+    if (relevantService == null && !containsTriggerWord(messageText)) {
       return;
     }
 
-    //Get the relevant context
-    ServiceContext relevantService = null;
-    for (ServiceContext service : this.services.values()) {
-      if (messageText.contains(service.getContextName().toLowerCase())) {
-        relevantService = service;
-      }
-    }
-
     ServiceContext lastUsedService = contextToChat.get(message.getStreamId());
 
     //If they're not referring to a known service and we don't have a previously saved service
     if (lastUsedService == null && relevantService == null) {
       //Get possible service options and send them that message
       List<MessageML> possibleServices = messageMLForPossibleServiceOptions();
-      Runnable possibleServicesR = new SendMessageML(possibleServices, message.getStreamId());
-      this.sendMessageExecutor.execute(possibleServicesR);
+      this.messageSender.send(message.getStreamId(), possibleServices);
     }
 
     //If we do have a service
@@ -182,19 +614,30 @@ public class SymBrowserBot {
         contextToChat.put(message.getStreamId(), lastUsedService);
       }
 
+      GetResponse getResponse = new GetResponse(message.getStreamId(),
+          lastUsedService.parse(tokenizedMessage), lastUsedService);
+
+      //Read while shutting down - answered after the restart instead
+      if (!this.running) {
+        getResponse.saveAsPending();
+        return;
+      }
+
       //Async process to tell the user we're getting the information
       sendTemporaryResponse(lastUsedService, message.getStreamId());
 
-      //Actually get the information in a threadpool and send it when available
-      Runnable getResponse = new GetResponse(message.getStreamId(),
-          message.getMessageText(), lastUsedService);
-      this.informationExecutor.execute(getResponse);
+      //Actually get the information and send each part as it is available
+      try {
+        responseExecutor.execute(getResponse);
+      } catch (RejectedExecutionException exception) {
+        getResponse.saveAsPending();
+      }
     }
   }
 
   /**
-   * Adds a new thread to the pool that sends a message saying that we are in the process
-   * of getting a reply from the relevant context
+   * Queues a message saying that we are in the process of getting a reply from the
+   * relevant context - it is always sent before the reply itself
    * @param serviceContext
    * @param threadId
    */
@@ -202,8 +645,48 @@ public class SymBrowserBot {
     MessageML tempResponse = new MessageML();
     tempResponse.addParagraph("Getting response from " + serviceContext.getContextName() +
         " context");
-    Runnable temporarySender = new SendMessageML(Collections.singletonList(tempResponse), threadId);
-    this.sendMessageExecutor.execute(temporarySender);
+    this.messageSender.send(threadId, tempResponse);
+  }
+
+  /**
+   * Streams the context's response to the message into the room, sharing it with any
+   * identical request that is already being answered
+   * @param serviceContext
+   * @param command
+   * @param threadId
+   */
+  private void respondFromContext(ServiceContext serviceContext, ParsedCommand command,
+      String threadId) {
+
+    ResponseSink sink = this.messageSender.sinkFor(threadId);
+
+    String coalescingKey = serviceContext.getCoalescingKey(command);
+    if (coalescingKey == null) {
+      serviceContext.respondToAction(command, threadId, sink);
+      return;
+    }
+
+    String requestKey = serviceContext.getContextName() + ":" + coalescingKey;
+    SharedResponse sharedResponse = new SharedResponse(threadId);
+    SharedResponse inFlight = this.sharedResponses.putIfAbsent(requestKey, sharedResponse);
+    if (inFlight != null) {
+      inFlight.subscribe(sink);
+      //So this room can browse on from the response, once it is complete
+      if (!inFlight.follow(threadId)) {
+        serviceContext.copyStreamState(inFlight.getStreamId(), threadId);
+      }
+      return;
+    }
+
+    sharedResponse.subscribe(sink);
+    try {
+      serviceContext.respondToAction(command, threadId, sharedResponse);
+    } finally {
+      this.sharedResponses.remove(requestKey, sharedResponse);
+      for (String followerStreamId : sharedResponse.finish()) {
+        serviceContext.copyStreamState(threadId, followerStreamId);
+      }
+    }
   }
 
   /**
@@ -214,7 +697,7 @@ public class SymBrowserBot {
     MessageML messageML = new MessageML();
     messageML.addParagraph("Possible services include: ");
 
-    for (String contextName : this.services.keySet()) {
+    for (String contextName : this.services.getContextNames()) {
       messageML.addLineBreak();
       messageML.addBoldText(contextName);
     }
@@ -225,53 +708,68 @@ public class SymBrowserBot {
 
   /**
    * Simple Runnable class to get the response from a context
-   * And add the response to the thread pool so it can be sent
+   * Each part of the response is queued to be sent as soon as the context pushes it
+   * The stream, context and command are logged with every line, and the latency once done
    */
   private class GetResponse implements Runnable {
 
     private final String threadId;
-    private final String messageText;
+    private final ParsedCommand command;
     private final ServiceContext serviceContext;
+    private final Trace trace;
+    private final long queuedAtNanos;
+
+    private volatile long startedAtMillis;
 
-    public GetResponse(String threadId, String messageText, ServiceContext serviceContext) {
+    public GetResponse(String threadId, ParsedCommand command, ServiceContext serviceContext) {
       this.threadId = threadId;
-      this.messageText = messageText;
+      this.command = command;
       this.serviceContext = serviceContext;
+      this.trace = Trace.current();
+      this.queuedAtNanos = System.nanoTime();
     }
 
-    @Override
-    public void run() {
-      //Actually get the response
-      List<MessageML> response = serviceContext.responsesToAction(messageText);
-      Runnable messageSender = new SendMessageML(response, threadId);
-
-      //Add it the messages to the message sender threadPool
-      SymBrowserBot.this.sendMessageExecutor.execute(messageSender);
-    }
-  }
-
-
-  /**
-   * Simple Runnable class to send a message
-   */
-  private class SendMessageML implements Runnable {
-
-    private final List<MessageML> messageMLs;
-    private final String threadId;
-
-    public SendMessageML(List<MessageML> messageMLs, String threadId) {
-      this.messageMLs = messageMLs;
-      this.threadId = threadId;
+    /**
+     * Saves the request to be answered on the next start
+     */
+    private void saveAsPending() {
+      pendingWork.addRequest(threadId, serviceContext.getContextName(), command.getText());
     }
 
     @Override
     public void run() {
-      //If we actually have messages
-      if (this.messageMLs != null && !this.messageMLs.isEmpty()) {
-        //Send each one
-        for (MessageML messageML : messageMLs) {
-          SymBrowserBot.this.symphonyClient.sendMessage(threadId, messageML);
-        }
+      long start = System.currentTimeMillis();
+      this.startedAtMillis = start;
+      inFlightResponses.add(this);
+      String commandField = LogFields.command(command.getText());
+      MDC.put(LogFields.STREAM_ID, threadId);
+      MDC.put(LogFields.CONTEXT, serviceContext.getContextName());
+      MDC.put(LogFields.COMMAND, commandField);
+
+      Trace previousTrace = Trace.current();
+      Trace.setCurrent(trace);
+      trace.recordSpan("information.queue", queuedAtNanos, System.nanoTime());
+      Span span = trace.startSpan("context.respond")
+          .setAttribute("context", serviceContext.getContextName())
+          .setAttribute("command", commandField);
+
+      try {
+        serviceContext.ensureAuthenticated();
+        respondFromContext(serviceContext, command, threadId);
+
+        MDC.put(LogFields.LATENCY, String.valueOf(System.currentTimeMillis() - start));
+        LOG.info("Responded");
+      } catch (RuntimeException exception) {
+        span.setAttribute("error", exception);
+        LOG.error("Error getting response from {}", serviceContext.getContextName(), exception);
+      } finally {
+        span.end();
+        inFlightResponses.remove(this);
+        Trace.setCurrent(previousTrace);
+        MDC.remove(LogFields.STREAM_ID);
+        MDC.remove(LogFields.CONTEXT);
+        MDC.remove(LogFields.COMMAND);
+        MDC.remove(LogFields.LATENCY);
       }
     }
   }
@@ -0,0 +1,158 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.admin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.symphony.utils.NamedThreadFactory;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small read-only HTTP endpoint reporting the bot's live state:
+ *  - GET /diagnostics - every source's diagnostics as one JSON object, by source name
+ *  - GET /threads - a thread dump of the bot's threads, add ?all=true for every thread
+ *
+ * Requests are served one at a time on a single thread, so the endpoint can't take
+ * more than that thread from the bot however often it is polled
+ */
+
+public class AdminServer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AdminServer.class);
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Map<String, DiagnosticsSource> sources;
+
+  /**
+   * @param host e.g. localhost, so the endpoint is only reachable from the machine
+   * @param port 0 for any free port
+   * @throws IOException
+   */
+  public AdminServer(String host, int port) throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+    this.executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("admin", true));
+    this.sources = new ConcurrentHashMap<String, DiagnosticsSource>();
+
+    this.server.createContext("/diagnostics", new DiagnosticsHandler());
+    this.server.createContext("/threads", new ThreadsHandler());
+    this.server.setExecutor(this.executor);
+  }
+
+  /**
+   * Reports the source's diagnostics under that name
+   * @param name
+   * @param source
+   */
+  public void addSource(String name, DiagnosticsSource source) {
+    this.sources.put(name, source);
+  }
+
+  public void start() {
+    this.server.start();
+    LOG.info("Admin endpoint listening on {}", getBaseUrl());
+  }
+
+  public void stop() {
+    this.server.stop(0);
+    this.executor.shutdownNow();
+  }
+
+  public String getBaseUrl() {
+    InetSocketAddress address = this.server.getAddress();
+    return "http://" + address.getHostString() + ":" + address.getPort();
+  }
+
+  private JSONObject getDiagnostics() {
+    JSONObject diagnostics = new JSONObject();
+    diagnostics.put("timeMillis", System.currentTimeMillis());
+
+    for (Map.Entry<String, DiagnosticsSource> source : this.sources.entrySet()) {
+      try {
+        diagnostics.put(source.getKey(), source.getValue().getDiagnostics());
+      } catch (RuntimeException exception) {
+        diagnostics.put(source.getKey(), new JSONObject().put("error", exception.toString()));
+      }
+    }
+    return diagnostics;
+  }
+
+  private static void respond(HttpExchange exchange, int status, String contentType,
+      String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream outputStream = exchange.getResponseBody();
+    outputStream.write(bytes);
+    outputStream.close();
+  }
+
+  /**
+   * @return false after answering with a 405 if it isn't a GET
+   */
+  private static boolean requireGet(HttpExchange exchange) throws IOException {
+    if ("GET".equals(exchange.getRequestMethod())) {
+      return true;
+    }
+    exchange.getResponseHeaders().set("Allow", "GET");
+    respond(exchange, 405, "text/plain; charset=utf-8", "Read-only endpoint\n");
+    return false;
+  }
+
+  private class DiagnosticsHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      if (requireGet(exchange)) {
+        respond(exchange, 200, "application/json", getDiagnostics().toString(2));
+      }
+    }
+  }
+
+  private class ThreadsHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      if (requireGet(exchange)) {
+        String query = exchange.getRequestURI().getRawQuery();
+        boolean allThreads = query != null && query.contains("all=true");
+        respond(exchange, 200, "text/plain; charset=utf-8", ThreadDumps.dump(allThreads));
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.admin;
+
+import com.symphony.utils.MonitoredThreadPoolExecutor;
+
+import org.json.JSONObject;
+
+/**
+ * Common shapes of diagnostics, so every cache and pool is reported the same way
+ */
+
+public final class Diagnostics {
+
+  private Diagnostics() {
+  }
+
+  public static JSONObject cache(int entries, long estimatedBytes) {
+    return new JSONObject()
+        .put("entries", entries)
+        .put("estimatedBytes", estimatedBytes);
+  }
+
+  public static JSONObject pool(MonitoredThreadPoolExecutor pool) {
+    return new JSONObject()
+        .put("threads", pool.getMaximumPoolSize())
+        .put("running", pool.getRunningTasks())
+        .put("queued", pool.getQueuedTasks())
+        .put("completed", pool.getCompletedTasks());
+  }
+
+  /**
+   * A point in time, with how long ago (negative if in the future) it is, 0 if there is none
+   * @param epochMillis
+   * @return
+   */
+  public static JSONObject time(long epochMillis) {
+    JSONObject time = new JSONObject().put("epochMillis", epochMillis);
+    if (epochMillis > 0) {
+      time.put("ageMillis", System.currentTimeMillis() - epochMillis);
+    }
+    return time;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.admin;
+
+import com.symphony.utils.NamedThreadFactory;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+
+/**
+ * Plain text thread dumps, like jstack's
+ */
+
+public final class ThreadDumps {
+
+  private static final String BOT_PACKAGE = "com.symphony.";
+
+  private ThreadDumps() {
+  }
+
+  /**
+   * @param allThreads false for only the bot's threads - those it named, and those running
+   *                   or waiting in its code - leaving out the JVM's and libraries' idle threads
+   * @return
+   */
+  public static String dump(boolean allThreads) {
+    StringBuilder dump = new StringBuilder();
+    ThreadInfo[] threads = ManagementFactory.getThreadMXBean().dumpAllThreads(false, false);
+
+    for (ThreadInfo thread : threads) {
+      if (allThreads || isBotThread(thread)) {
+        append(dump, thread);
+      }
+    }
+    return dump.toString();
+  }
+
+  private static boolean isBotThread(ThreadInfo thread) {
+    if (thread.getThreadName().startsWith(NamedThreadFactory.PREFIX)) {
+      return true;
+    }
+    for (StackTraceElement frame : thread.getStackTrace()) {
+      if (frame.getClassName().startsWith(BOT_PACKAGE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  //ThreadInfo.toString() cuts stacks off after 8 frames
+  private static void append(StringBuilder dump, ThreadInfo thread) {
+    dump.append('"').append(thread.getThreadName()).append("\" #").append(thread.getThreadId())
+        .append(' ').append(thread.getThreadState());
+
+    LockInfo lock = thread.getLockInfo();
+    if (lock != null) {
+      dump.append(" on ").append(lock);
+      if (thread.getLockOwnerName() != null) {
+        dump.append(" owned by \"").append(thread.getLockOwnerName()).append('"');
+      }
+    }
+    dump.append('\n');
+
+    for (StackTraceElement frame : thread.getStackTrace()) {
+      dump.append("\tat ").append(frame).append('\n');
+    }
+    dump.append('\n');
+  }
+}
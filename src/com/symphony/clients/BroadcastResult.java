@@ -0,0 +1,75 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.clients;
+
+import com.symphony.api.agent.model.V2Message;
+
+/**
+ * Whether a broadcast message was sent to one stream - the message it became if it was,
+ * what went wrong if it wasn't
+ */
+
+public class BroadcastResult {
+
+  private final String streamId;
+  private final V2Message message;
+  private final RuntimeException error;
+
+  private BroadcastResult(String streamId, V2Message message, RuntimeException error) {
+    this.streamId = streamId;
+    this.message = message;
+    this.error = error;
+  }
+
+  public static BroadcastResult sent(String streamId, V2Message message) {
+    return new BroadcastResult(streamId, message, null);
+  }
+
+  public static BroadcastResult failed(String streamId, RuntimeException error) {
+    return new BroadcastResult(streamId, null, error);
+  }
+
+  public String getStreamId() {
+    return streamId;
+  }
+
+  public boolean isSent() {
+    return error == null;
+  }
+
+  /**
+   * @return null if it wasn't sent
+   */
+  public V2Message getMessage() {
+    return message;
+  }
+
+  /**
+   * @return null if it was sent
+   */
+  public RuntimeException getError() {
+    return error;
+  }
+}
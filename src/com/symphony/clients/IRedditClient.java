@@ -0,0 +1,41 @@
+package com.symphony.clients;
+
+import com.symphony.admin.DiagnosticsSource;
+import com.symphony.models.RedditListing;
+import com.symphony.models.RedditSubmission;
+
+/**
+ * Defines the functionality of a Reddit client
+ */
+
+public interface IRedditClient extends DiagnosticsSource {
+
+  /**
+   * Gets an application-only access token
+   */
+  void authenticate();
+
+  /**
+   * Returns a page of the frontpage (null subreddit) or of a subreddit,
+   * or null if the subreddit doesn't exist
+   * @param subRedditName
+   * @param after the previous page's token, null for the first page
+   * @param limit
+   * @return
+   */
+  RedditListing getListing(String subRedditName, String after, int limit);
+
+  /**
+   * Returns the post with up to maxComments of its comments, depth first,
+   * or null if it doesn't exist
+   * @param submissionId
+   * @param maxComments
+   * @return
+   */
+  RedditSubmission getSubmissionWithComments(String submissionId, int maxComments);
+
+  /**
+   * Releases the HTTP client - the client can't be used afterwards
+   */
+  void close();
+}
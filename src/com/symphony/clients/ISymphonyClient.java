@@ -24,6 +24,7 @@
 
 package com.symphony.clients;
 
+import com.symphony.admin.DiagnosticsSource;
 import com.symphony.api.agent.model.V2Message;
 import com.symphony.api.pod.model.Stream;
 import com.symphony.api.pod.model.User;
@@ -32,13 +33,14 @@ import com.symphony.formatters.MessageML;
 import com.symphony.models.ISymphonyMessage;
 import com.symphony.models.Message;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
  * Defines the functionality of a Symphony client
  */
 
-public interface ISymphonyClient {
+public interface ISymphonyClient extends DiagnosticsSource {
 
   /**
    * For authentication
@@ -47,9 +49,18 @@ public interface ISymphonyClient {
 
   /**
    * For searching rooms
+   * Results are fetched a page at a time as the iterator is used, and pages are cached briefly
+   */
+  Iterator<V2RoomDetail> searchRooms(String query);
+
+  /**
+   * Every room matching the query, empty if none do
    */
   List<V2RoomDetail> getRoomsForSearchQuery(String query);
 
+  /**
+   * The first room matching the query, null if none do
+   */
   V2RoomDetail getRoomForSearchQuery(String query);
 
   /**
@@ -61,6 +72,23 @@ public interface ISymphonyClient {
 
   V2Message sendMessage(V2RoomDetail roomDetail, MessageML messageML);
 
+  /**
+   * Sends the same message to every stream, a few at a time, rendering it only once
+   * Blocks until every stream was tried
+   * @param streamIds
+   * @param messageML
+   * @return each stream's result, in the order given
+   */
+  List<BroadcastResult> broadcast(List<String> streamIds, MessageML messageML);
+
+  /**
+   * Sends the same message to every room found by any of the queries, see broadcast
+   * @param roomSearchQueries
+   * @param messageML
+   * @return each room's result
+   */
+  List<BroadcastResult> broadcastToRooms(List<String> roomSearchQueries, MessageML messageML);
+
   /**
    * For long polling for messages
    */
@@ -70,6 +98,11 @@ public interface ISymphonyClient {
 
   List<ISymphonyMessage> getSymphonyMessages();
 
+  /**
+   * Looks up the message's sender, returns null if the sender is unknown
+   */
+  ISymphonyMessage getSymphonyMessage(Message message);
+
   /**
    * For finding users
    */
@@ -83,4 +116,10 @@ public interface ISymphonyClient {
   Stream getStreamWithUsers(List<User> users);
 
   Stream getStreamWithUsers(User... users);
+
+  /**
+   * Saves the recently seen message IDs and releases the HTTP client
+   * The client can't be used afterwards
+   */
+  void close();
 }
\ No newline at end of file
@@ -24,6 +24,7 @@
 
 package com.symphony.clients;
 
+import com.symphony.admin.DiagnosticsSource;
 import com.symphony.models.WebsiteBrowserArticle;
 
 /**
@@ -32,7 +33,7 @@ import com.symphony.models.WebsiteBrowserArticle;
  * Defines the functionality of a website browser
  */
 
-public interface IWebsiteBrowserClient {
+public interface IWebsiteBrowserClient extends DiagnosticsSource {
 
   /**
    * Return the text from a website URL
@@ -41,4 +42,8 @@ public interface IWebsiteBrowserClient {
    */
   WebsiteBrowserArticle getTextFromWebsite(String websiteUrl);
 
+  /**
+   * Releases the HTTP client - the client can't be used afterwards
+   */
+  void close();
 }
\ No newline at end of file
@@ -0,0 +1,467 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.clients;
+
+import com.symphony.formatters.MessageML;
+import com.symphony.utils.NamedThreadFactory;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The messages handed to the agent that it hasn't taken yet
+ *
+ * Each message gets an idempotency key when it is added, and the journal file records
+ * it being added, then sent or dropped, one JSON object per line. Nothing is rewritten
+ * in place: when enough messages are done the journal is compacted into a new file
+ * holding only the ones still pending, which replaces it
+ *
+ * Lines are written by a single writer thread, in batches that are each synced to disk
+ * once (group commit), so no stream waits on another's disk I/O. Adding a message waits
+ * for its batch to be synced, recording it as sent or dropped doesn't - a record lost in
+ * a crash only means the message is sent once more, under the same key
+ *
+ * Opening the journal again after a restart returns the messages that were never sent,
+ * under their original keys, so each is sent at most once more
+ */
+
+public class MessageOutbox {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MessageOutbox.class);
+
+  private static final String ADDED = "added";
+  private static final String SENT = "sent";
+  private static final String DROPPED = "dropped";
+
+  //Finished messages the journal may hold before it is compacted
+  private static final int COMPACT_AFTER = 1000;
+
+  private final File file;
+  //Pending messages by key, in the order they were added
+  private final Map<String, Entry> pending;
+  //Keys that were sent or dropped, until the journal is compacted
+  private final Set<String> finishedKeys;
+
+  //Lines not written yet, and how many lines were queued and synced in all
+  private List<JSONObject> queuedLines;
+  private long queuedCount;
+  private long syncedCount;
+  private boolean closed;
+
+  //Only used by the writer thread once the outbox is open
+  private BufferedWriter journal;
+  private FileOutputStream journalStream;
+  private Thread writer;
+
+  private MessageOutbox(File file) {
+    this.file = file;
+    this.pending = new LinkedHashMap<String, Entry>();
+    this.finishedKeys = new HashSet<String>();
+    this.queuedLines = new ArrayList<JSONObject>();
+  }
+
+  /**
+   * Opens the journal, reading the messages it holds that were never sent
+   * @param file null to keep the outbox in memory only
+   * @return
+   */
+  public static MessageOutbox open(File file) {
+    MessageOutbox outbox = new MessageOutbox(file);
+    if (file == null) {
+      return outbox;
+    }
+
+    if (file.isFile()) {
+      outbox.replay();
+    }
+    //Starts from a compacted journal, so finished messages aren't read again on every start
+    outbox.compact(outbox.getPending());
+    if (!outbox.pending.isEmpty()) {
+      LOG.info("{} messages in {} were not sent before the restart", outbox.pending.size(), file);
+    }
+
+    outbox.writer = new NamedThreadFactory("outbox-writer", true).newThread(new Runnable() {
+      @Override
+      public void run() {
+        outbox.writeQueuedLines();
+      }
+    });
+    outbox.writer.start();
+    return outbox;
+  }
+
+  private void replay() {
+    try {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new FileInputStream(this.file), StandardCharsets.UTF_8));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (!line.isEmpty()) {
+            replay(new JSONObject(line));
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException | JSONException exception) {
+      //A line cut short by a crash - everything before it is still used
+      LOG.warn("Could not read all of {}", this.file, exception);
+    }
+  }
+
+  private void replay(JSONObject line) {
+    String key = line.getString("key");
+    if (ADDED.equals(line.getString("type"))) {
+      if (!this.finishedKeys.contains(key) && !this.pending.containsKey(key)) {
+        this.pending.put(key, new Entry(key, line.getString("streamId"),
+            line.getString("messageML")));
+      }
+    } else {
+      this.pending.remove(key);
+      this.finishedKeys.add(key);
+    }
+  }
+
+  /**
+   * Returns true if messages are journaled, and synced to disk before add returns
+   * @return
+   */
+  public boolean isDurable() {
+    return this.file != null;
+  }
+
+  /**
+   * Adds a message to send, returning once it is journaled and synced to disk
+   * @param streamId
+   * @param messageML
+   * @return the message, under a new idempotency key
+   */
+  public Entry add(String streamId, MessageML messageML) {
+    Entry entry = new Entry(UUID.randomUUID().toString(), streamId, messageML.toString());
+    entry.messageML = messageML;
+
+    long lineNumber;
+    synchronized (this) {
+      this.pending.put(entry.getKey(), entry);
+      lineNumber = queue(new JSONObject()
+          .put("type", ADDED)
+          .put("key", entry.getKey())
+          .put("streamId", streamId)
+          .put("messageML", entry.getMarkup()));
+    }
+    awaitSynced(lineNumber);
+    return entry;
+  }
+
+  /**
+   * Records that the agent took the message, so it is never sent again
+   * @param entry
+   */
+  public void markSent(Entry entry) {
+    finish(entry, SENT);
+  }
+
+  /**
+   * Records that the message won't be sent
+   * @param entry
+   */
+  public void markDropped(Entry entry) {
+    finish(entry, DROPPED);
+  }
+
+  private synchronized void finish(Entry entry, String type) {
+    if (this.pending.remove(entry.getKey()) == null || this.file == null) {
+      return;
+    }
+    this.finishedKeys.add(entry.getKey());
+    queue(new JSONObject()
+        .put("type", type)
+        .put("key", entry.getKey()));
+  }
+
+  /**
+   * Returns true if the message was already sent or dropped
+   * @param key
+   * @return
+   */
+  public synchronized boolean isFinished(String key) {
+    return !this.pending.containsKey(key);
+  }
+
+  /**
+   * Returns the messages not sent yet, in the order they were added
+   * @return
+   */
+  public synchronized List<Entry> getPending() {
+    return new ArrayList<Entry>(this.pending.values());
+  }
+
+  public synchronized int size() {
+    return this.pending.size();
+  }
+
+  /**
+   * Queues a line for the writer thread, called holding the lock
+   * @param line
+   * @return the line's number, to wait for it to be synced
+   */
+  private long queue(JSONObject line) {
+    if (this.file == null || this.closed) {
+      return 0;
+    }
+    this.queuedLines.add(line);
+    notifyAll();
+    return ++this.queuedCount;
+  }
+
+  /**
+   * Waits until the line and every line before it are synced, or the outbox is closed
+   * @param lineNumber
+   */
+  private synchronized void awaitSynced(long lineNumber) {
+    boolean interrupted = false;
+    while (this.syncedCount < lineNumber && !this.closed) {
+      try {
+        wait();
+      } catch (InterruptedException exception) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The writer thread: writes the queued lines in batches, each synced once, compacting the
+   * journal instead once enough messages are finished, until the outbox is closed
+   */
+  private void writeQueuedLines() {
+    while (true) {
+      List<JSONObject> batch;
+      List<Entry> compactedPending = null;
+      long batchEnd;
+      synchronized (this) {
+        while (this.queuedLines.isEmpty() && !this.closed) {
+          try {
+            wait();
+          } catch (InterruptedException exception) {
+            //Only stops once closed, so nothing queued is left unwritten
+          }
+        }
+        if (this.queuedLines.isEmpty()) {
+          closeJournal();
+          return;
+        }
+
+        batch = this.queuedLines;
+        this.queuedLines = new ArrayList<JSONObject>();
+        batchEnd = this.queuedCount;
+        //The pending messages already reflect every line of the batch
+        if (this.finishedKeys.size() >= COMPACT_AFTER) {
+          compactedPending = new ArrayList<Entry>(this.pending.values());
+          this.finishedKeys.clear();
+        }
+      }
+
+      if (compactedPending != null) {
+        compact(compactedPending);
+      } else {
+        write(batch);
+      }
+
+      synchronized (this) {
+        this.syncedCount = batchEnd;
+        notifyAll();
+      }
+    }
+  }
+
+  private void write(List<JSONObject> lines) {
+    if (this.journal == null) {
+      return;
+    }
+    try {
+      for (JSONObject line : lines) {
+        this.journal.write(line.toString());
+        this.journal.newLine();
+      }
+      this.journal.flush();
+      //Synced so a crash of the host, not just of the bot, keeps the lines
+      this.journalStream.getChannel().force(false);
+    } catch (IOException exception) {
+      LOG.error("Could not write to {}, messages may be lost on a restart", this.file, exception);
+    }
+  }
+
+  /**
+   * Writes the pending messages to a new journal which replaces the current one
+   * @param pendingEntries
+   */
+  private void compact(List<Entry> pendingEntries) {
+    closeJournal();
+
+    File temporaryFile = new File(this.file.getPath() + ".tmp");
+    try {
+      FileOutputStream stream = new FileOutputStream(temporaryFile);
+      BufferedWriter writer = new BufferedWriter(
+          new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+      try {
+        for (Entry entry : pendingEntries) {
+          writer.write(new JSONObject()
+              .put("type", ADDED)
+              .put("key", entry.getKey())
+              .put("streamId", entry.getStreamId())
+              .put("messageML", entry.getMarkup())
+              .toString());
+          writer.newLine();
+        }
+        writer.flush();
+        //Synced before it replaces the journal, so a crash leaves one or the other whole
+        stream.getChannel().force(false);
+      } finally {
+        writer.close();
+      }
+      if (!temporaryFile.renameTo(this.file)) {
+        this.file.delete();
+        if (!temporaryFile.renameTo(this.file)) {
+          LOG.warn("Could not replace {}", this.file);
+        }
+      }
+    } catch (IOException exception) {
+      LOG.error("Could not compact {}", this.file, exception);
+    }
+
+    try {
+      this.journalStream = new FileOutputStream(this.file, true);
+      this.journal = new BufferedWriter(
+          new OutputStreamWriter(this.journalStream, StandardCharsets.UTF_8));
+    } catch (IOException exception) {
+      LOG.error("Could not open {}, messages will only be kept in memory", this.file, exception);
+    }
+  }
+
+  private void closeJournal() {
+    if (this.journal == null) {
+      return;
+    }
+    try {
+      this.journal.close();
+    } catch (IOException exception) {
+      LOG.warn("Error closing {}", this.file, exception);
+    }
+    this.journal = null;
+    this.journalStream = null;
+  }
+
+  /**
+   * Writes the lines still queued and closes the journal
+   */
+  public void close() {
+    synchronized (this) {
+      this.closed = true;
+      notifyAll();
+    }
+    if (this.writer == null) {
+      return;
+    }
+    try {
+      this.writer.join();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * A message in the outbox, with the key it is journaled under
+   */
+  public static class Entry {
+
+    private final String key;
+    private final String streamId;
+    private final String markup;
+    //Kept while the bot runs, parsed from the markup once it was read from the journal
+    private MessageML messageML;
+    private int attempts;
+
+    private Entry(String key, String streamId, String markup) {
+      this.key = key;
+      this.streamId = streamId;
+      this.markup = markup;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public String getStreamId() {
+      return streamId;
+    }
+
+    public String getMarkup() {
+      return markup;
+    }
+
+    /**
+     * Returns the message, parsed again if it was read from the journal
+     * @return
+     * @throws IllegalArgumentException if it is no longer valid MessageML
+     */
+    public MessageML getMessageML() {
+      if (this.messageML == null) {
+        this.messageML = MessageML.fromString(this.markup);
+      }
+      return this.messageML;
+    }
+
+    /**
+     * Counts an attempt to send the message
+     * @return how many times it has been tried, including this one
+     */
+    public int recordAttempt() {
+      return ++this.attempts;
+    }
+  }
+}
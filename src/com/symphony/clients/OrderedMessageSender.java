@@ -0,0 +1,429 @@
+package com.symphony.clients;
+
+import com.symphony.api.agent.client.ApiException;
+import com.symphony.configurations.IConfigurationProvider;
+import com.symphony.contexts.ResponseSink;
+import com.symphony.contexts.ResponseSinks;
+import com.symphony.formatters.MessageML;
+import com.symphony.formatters.MessageMLPacker;
+import com.symphony.resilience.UpstreamUnavailableException;
+import com.symphony.tracing.Trace;
+import com.symphony.utils.LogFields;
+import com.symphony.utils.NamedThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends messages to Symphony in the order they were queued for each stream,
+ * while different streams are sent in parallel
+ *
+ * Messages queued while a send is in flight are packed together into the next send,
+ * so a response streamed in many small pieces still goes out as few messages as possible
+ *
+ * Each message keeps the trace it was queued under, which gets the batch's queueing,
+ * rendering and sending spans
+ *
+ * Packed messages go through the outbox before they are sent. A send the agent may not have
+ * taken is tried again with exponential backoff, or after as long as the agent asks when it
+ * throttles, and the stream's later messages wait behind it so they stay in order
+ */
+
+public class OrderedMessageSender implements ResponseSinks {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OrderedMessageSender.class);
+
+  //HTTP statuses the agent answers when the message may be taken later
+  private static final int UNAUTHORIZED = 401;
+  private static final int REQUEST_TIMEOUT = 408;
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int SERVICE_UNAVAILABLE = 503;
+
+  //Don't retry
+  static final long DROP = -1;
+
+  private final ISymphonyClient symphonyClient;
+  private final Executor executor;
+  private final MessageMLPacker messagePacker;
+  private final MessageOutbox outbox;
+  private final IConfigurationProvider configurationProvider;
+  private final ScheduledExecutorService retryScheduler;
+  private final ConcurrentMap<String, StreamQueue> streamQueues;
+
+  public OrderedMessageSender(ISymphonyClient symphonyClient, Executor executor,
+      MessageMLPacker messagePacker, MessageOutbox outbox,
+      IConfigurationProvider configurationProvider) {
+    this.symphonyClient = symphonyClient;
+    this.executor = executor;
+    this.messagePacker = messagePacker;
+    this.outbox = outbox;
+    this.configurationProvider = configurationProvider;
+    this.retryScheduler =
+        new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("send-retry", true));
+    this.streamQueues = new ConcurrentHashMap<String, StreamQueue>();
+  }
+
+  /**
+   * Sends the messages left in the outbox when the bot last stopped,
+   * before anything else queued for their streams
+   */
+  public void resumeOutbox() {
+    for (MessageOutbox.Entry entry : this.outbox.getPending()) {
+      getStreamQueue(entry.getStreamId()).unsent.add(entry);
+    }
+    for (StreamQueue streamQueue : this.streamQueues.values()) {
+      streamQueue.schedule();
+    }
+  }
+
+  /**
+   * Queues a message to be sent after everything already queued for that stream
+   * @param streamId
+   * @param messageML
+   */
+  public void send(String streamId, MessageML messageML) {
+    send(streamId, messageML, Trace.current());
+  }
+
+  public void send(String streamId, List<MessageML> messageMLs) {
+    StreamQueue streamQueue = getStreamQueue(streamId);
+    Trace trace = Trace.current();
+    for (MessageML messageML : messageMLs) {
+      streamQueue.messages.add(new QueuedMessage(messageML, trace));
+    }
+    streamQueue.schedule();
+  }
+
+  private void send(String streamId, MessageML messageML, Trace trace) {
+    StreamQueue streamQueue = getStreamQueue(streamId);
+    streamQueue.messages.add(new QueuedMessage(messageML, trace));
+    streamQueue.schedule();
+  }
+
+  /**
+   * Returns a sink that sends everything pushed into it to the stream
+   * under the current thread's trace, whichever thread pushes it
+   * @param streamId
+   * @return
+   */
+  @Override
+  public ResponseSink sinkFor(final String streamId) {
+    final Trace trace = Trace.current();
+    return new ResponseSink() {
+      @Override
+      public void push(MessageML messageML) {
+        send(streamId, messageML, trace);
+      }
+    };
+  }
+
+  /**
+   * Takes every message not sent yet, by stream, each stream's in the order they were queued
+   * Used once the executor has shut down, so they can be sent later
+   * Messages waiting in a durable outbox are left there, it sends them on the next start
+   * @return
+   */
+  public Map<String, List<MessageML>> drainUnsent() {
+    this.retryScheduler.shutdownNow();
+
+    Map<String, List<MessageML>> unsent = new LinkedHashMap<String, List<MessageML>>();
+    for (StreamQueue streamQueue : this.streamQueues.values()) {
+      List<MessageML> messageMLs = new ArrayList<MessageML>();
+      if (!this.outbox.isDurable()) {
+        for (MessageOutbox.Entry entry : streamQueue.unsent) {
+          messageMLs.add(entry.getMessageML());
+        }
+        streamQueue.unsent.clear();
+      }
+      QueuedMessage message;
+      while ((message = streamQueue.messages.poll()) != null) {
+        messageMLs.add(message.messageML);
+      }
+      if (!messageMLs.isEmpty()) {
+        unsent.put(streamQueue.streamId, messageMLs);
+      }
+    }
+    return unsent;
+  }
+
+  /**
+   * Returns how long to wait before trying a failed message again
+   * Only a message the agent rejected as such is dropped before the last attempt -
+   * timeouts and server errors are tried again, as the outbox keeps the message until it is sent
+   * @param exception why it failed
+   * @param attempts how many times it has been tried
+   * @return the delay in milliseconds, DROP if it shouldn't be tried again
+   */
+  long getRetryDelay(RuntimeException exception, int attempts) {
+    if (attempts >= this.configurationProvider.getSendMaxAttempts()) {
+      return DROP;
+    }
+
+    //Doubles from the initial delay, with jitter so throttled streams don't retry together
+    long maxDelay = this.configurationProvider.getSendRetryMaxDelay();
+    long backoff = Math.min(maxDelay,
+        this.configurationProvider.getSendRetryInitialDelay() << Math.min(attempts - 1, 30));
+    backoff = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+
+    for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+      if (cause instanceof UpstreamUnavailableException) {
+        //Refused by the guard before the agent was called
+        return Math.max(backoff, ((UpstreamUnavailableException) cause).getRetryAfterMillis());
+      }
+      if (cause instanceof SocketTimeoutException) {
+        //Most likely never taken - the rare one the agent posted anyway shows up twice,
+        //which beats never showing up at all
+        return backoff;
+      }
+      if (cause instanceof ApiException) {
+        int code = ((ApiException) cause).getCode();
+        if (code == TOO_MANY_REQUESTS || code == SERVICE_UNAVAILABLE) {
+          return Math.max(backoff, getRetryAfter((ApiException) cause));
+        }
+        if (code >= 400 && code < 500 && code != UNAUTHORIZED && code != REQUEST_TIMEOUT) {
+          //The agent rejected the message itself, it would be rejected again
+          return DROP;
+        }
+        return backoff;
+      }
+    }
+    return backoff;
+  }
+
+  /**
+   * Returns how long the agent asked to wait in its Retry-After header, 0 if it didn't
+   * @param exception
+   * @return milliseconds
+   */
+  private static long getRetryAfter(ApiException exception) {
+    Map<String, List<String>> headers = exception.getResponseHeaders();
+    if (headers == null) {
+      return 0;
+    }
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      if ("Retry-After".equalsIgnoreCase(header.getKey()) && header.getValue() != null
+          && !header.getValue().isEmpty()) {
+        try {
+          return TimeUnit.SECONDS.toMillis(Long.parseLong(header.getValue().get(0).trim()));
+        } catch (NumberFormatException notSeconds) {
+          //An HTTP date, the backoff is used instead
+          return 0;
+        }
+      }
+    }
+    return 0;
+  }
+
+  private StreamQueue getStreamQueue(String streamId) {
+    StreamQueue streamQueue = this.streamQueues.get(streamId);
+    if (streamQueue == null) {
+      streamQueue = new StreamQueue(streamId);
+      StreamQueue existing = this.streamQueues.putIfAbsent(streamId, streamQueue);
+      if (existing != null) {
+        streamQueue = existing;
+      }
+    }
+    return streamQueue;
+  }
+
+  /**
+   * The pending messages of one stream - at most one send per stream runs at a time
+   * While a failed message waits to be retried the stream stays scheduled, so nothing
+   * queued after it is sent first
+   */
+  private class StreamQueue implements Runnable {
+
+    private final String streamId;
+    private final Queue<QueuedMessage> messages;
+    //Packed messages in the outbox, sent by the send that is running
+    private final Deque<MessageOutbox.Entry> unsent;
+    private final AtomicBoolean scheduled;
+
+    private StreamQueue(String streamId) {
+      this.streamId = streamId;
+      this.messages = new ConcurrentLinkedQueue<QueuedMessage>();
+      this.unsent = new ConcurrentLinkedDeque<MessageOutbox.Entry>();
+      this.scheduled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Sends the stream's messages in the outbox, in order
+     * @return false if one failed and a retry was scheduled
+     */
+    private boolean sendUnsent() {
+      MessageOutbox.Entry entry;
+      while ((entry = this.unsent.peek()) != null) {
+        //Its key was already sent or dropped, so it is never posted twice
+        if (outbox.isFinished(entry.getKey())) {
+          this.unsent.poll();
+          continue;
+        }
+
+        MessageML messageML;
+        try {
+          messageML = entry.getMessageML();
+        } catch (IllegalArgumentException exception) {
+          LOG.warn("Dropping a message to {} from the outbox", this.streamId, exception);
+          outbox.markDropped(entry);
+          this.unsent.poll();
+          continue;
+        }
+
+        try {
+          symphonyClient.sendMessage(this.streamId, messageML);
+          outbox.markSent(entry);
+          this.unsent.poll();
+        } catch (RuntimeException exception) {
+          int attempts = entry.recordAttempt();
+          long delay = getRetryDelay(exception, attempts);
+          if (delay == DROP) {
+            LOG.error("Dropping a message to {} after {} attempts", this.streamId, attempts,
+                exception);
+            outbox.markDropped(entry);
+            this.unsent.poll();
+            continue;
+          }
+
+          LOG.warn("Sending to {} failed, trying again in {} ms: {}", this.streamId, delay,
+              exception.toString());
+          scheduleRetry(delay);
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void scheduleRetry(long delay) {
+      try {
+        retryScheduler.schedule(new Runnable() {
+          @Override
+          public void run() {
+            resume();
+          }
+        }, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException exception) {
+        //Shutting down - the message stays in the outbox
+        this.scheduled.set(false);
+      }
+    }
+
+    /**
+     * Runs the stream's send again once a retry is due, it is still scheduled
+     */
+    private void resume() {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException exception) {
+        this.scheduled.set(false);
+      }
+    }
+
+    private void schedule() {
+      if (this.scheduled.compareAndSet(false, true)) {
+        try {
+          executor.execute(this);
+        } catch (RejectedExecutionException exception) {
+          //Shutting down - the messages stay queued until they are drained
+          this.scheduled.set(false);
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      MDC.put(LogFields.STREAM_ID, this.streamId);
+      boolean retrying = false;
+      try {
+        if (!sendUnsent()) {
+          retrying = true;
+          return;
+        }
+
+        List<MessageML> batch = new ArrayList<MessageML>();
+        Map<Trace, Long> queuedAtByTrace = null;
+        QueuedMessage message;
+        while ((message = this.messages.poll()) != null) {
+          batch.add(message.messageML);
+
+          //The first message of each sampled trace tells how long it waited
+          if (message.trace.isSampled()) {
+            if (queuedAtByTrace == null) {
+              queuedAtByTrace = new LinkedHashMap<Trace, Long>();
+            }
+            if (!queuedAtByTrace.containsKey(message.trace)) {
+              queuedAtByTrace.put(message.trace, message.queuedAtNanos);
+            }
+          }
+        }
+
+        if (!batch.isEmpty()) {
+          long packStart = System.nanoTime();
+          List<MessageML> packed = messagePacker.pack(batch);
+          long sendStart = System.nanoTime();
+          for (MessageML packedMessageML : packed) {
+            this.unsent.add(outbox.add(this.streamId, packedMessageML));
+          }
+          retrying = !sendUnsent();
+          long sendEnd = System.nanoTime();
+
+          if (queuedAtByTrace != null) {
+            for (Map.Entry<Trace, Long> traced : queuedAtByTrace.entrySet()) {
+              Trace trace = traced.getKey();
+              trace.recordSpan("send.queue", traced.getValue(), packStart);
+              trace.recordSpan("message.render", packStart, sendStart);
+              trace.startSpan("message.send", sendStart).setAttribute("messages", packed.size())
+                  .end(sendEnd);
+            }
+          }
+        }
+      } catch (RuntimeException exception) {
+        LOG.error("Error sending messages to {}", this.streamId, exception);
+      } finally {
+        MDC.remove(LogFields.STREAM_ID);
+        if (!retrying) {
+          this.scheduled.set(false);
+          //Anything queued after the batch was taken but before the flag was cleared
+          if (!this.messages.isEmpty()) {
+            schedule();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A message waiting to be sent, with the trace it was queued under
+   */
+  private static class QueuedMessage {
+
+    private final MessageML messageML;
+    private final Trace trace;
+    private final long queuedAtNanos;
+
+    private QueuedMessage(MessageML messageML, Trace trace) {
+      this.messageML = messageML;
+      this.trace = trace;
+      this.queuedAtNanos = System.nanoTime();
+    }
+  }
+}
@@ -0,0 +1,291 @@
+package com.symphony.clients;
+
+import com.symphony.admin.Diagnostics;
+import com.symphony.configurations.IConfigurationProvider;
+import com.symphony.models.RedditComment;
+import com.symphony.models.RedditListing;
+import com.symphony.models.RedditSubmission;
+import com.symphony.resilience.Upstream;
+import com.symphony.resilience.UpstreamGuard;
+import com.symphony.resilience.UpstreamGuards;
+import com.symphony.search.ContentIndexes;
+import com.symphony.search.IContentIndex;
+import com.symphony.search.IndexedContent;
+
+import org.glassfish.jersey.client.ClientProperties;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+/**
+ * Simple class to make calls to Reddit's OAuth API
+ * Every call goes through the Reddit rate limiter and circuit breaker
+ * The access token is renewed shortly before it expires, and once if Reddit rejects it
+ */
+
+public class RedditRESTClient implements IRedditClient {
+
+  protected static final Logger LOG = LoggerFactory.getLogger(RedditRESTClient.class);
+
+  private static final String USER_AGENT = "RedditContextBot";
+  private static final String INSTALLED_CLIENT_GRANT =
+      "https://oauth.reddit.com/grants/installed_client";
+  //How long before the access token expires it is renewed
+  private static final long TOKEN_REFRESH_MARGIN = TimeUnit.MINUTES.toMillis(1);
+
+  private final IConfigurationProvider configurationProvider;
+  private final UpstreamGuard redditGuard;
+  private final Client httpClient;
+  private final IContentIndex contentIndex;
+  private final String apiBaseUrl;
+  private final String authBaseUrl;
+
+  private volatile String accessToken;
+  private volatile long accessTokenExpiresAtMillis;
+
+  public RedditRESTClient(IConfigurationProvider configurationProvider) {
+    this.configurationProvider = configurationProvider;
+    this.redditGuard = UpstreamGuards.forUpstream(Upstream.REDDIT, configurationProvider);
+    this.contentIndex = ContentIndexes.forConfiguration(configurationProvider);
+    this.apiBaseUrl = configurationProvider.getRedditApiBaseUrl();
+    this.authBaseUrl = configurationProvider.getRedditAuthBaseUrl();
+
+    int timeout = (int) configurationProvider.getUpstreamTimeout(Upstream.REDDIT.getKey());
+    this.httpClient = ClientBuilder.newClient();
+    this.httpClient.property(ClientProperties.CONNECT_TIMEOUT, timeout);
+    this.httpClient.property(ClientProperties.READ_TIMEOUT, timeout);
+  }
+
+  @Override
+  public void authenticate() {
+    String credentials = configurationProvider.getRedditClientId() + ":" +
+        configurationProvider.getRedditSecret();
+    final String authorization = "Basic " +
+        Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+
+    final MultivaluedMap<String, String> formData = new MultivaluedHashMap<String, String>();
+    formData.add("grant_type", INSTALLED_CLIENT_GRANT);
+    formData.add("device_id", UUID.randomUUID().toString());
+
+    String jsonResponse = this.redditGuard.call(new Callable<String>() {
+      @Override
+      public String call() {
+        return httpClient.target(authBaseUrl + "/api/v1/access_token")
+            .request(MediaType.APPLICATION_JSON)
+            .header("Authorization", authorization)
+            .header("User-Agent", USER_AGENT)
+            .post(Entity.entity(formData, MediaType.APPLICATION_FORM_URLENCODED_TYPE),
+                String.class);
+      }
+    });
+
+    JSONObject token = new JSONObject(jsonResponse);
+    long expiresIn = token.optLong("expires_in");
+    //Set first, so a thread that sees the new token doesn't renew it again
+    this.accessTokenExpiresAtMillis = expiresIn > 0
+        ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expiresIn) : 0;
+    this.accessToken = token.getString("access_token");
+  }
+
+  @Override
+  public JSONObject getDiagnostics() {
+    return new JSONObject()
+        .put("authenticated", this.accessToken != null)
+        .put("accessTokenExpiresAt", Diagnostics.time(this.accessTokenExpiresAtMillis));
+  }
+
+  @Override
+  public void close() {
+    this.httpClient.close();
+  }
+
+  @Override
+  public RedditListing getListing(String subRedditName, String after, int limit) {
+    String path = subRedditName == null ? "/hot" : "/r/" + subRedditName + "/hot";
+
+    WebTarget target = this.httpClient.target(this.apiBaseUrl + path)
+        .queryParam("limit", limit)
+        .queryParam("raw_json", 1);
+    if (after != null) {
+      target = target.queryParam("after", after);
+    }
+
+    String jsonResponse = get(target);
+    if (jsonResponse == null) {
+      return null;
+    }
+
+    RedditListing listing = new RedditListing(new JSONObject(jsonResponse));
+    for (RedditSubmission submission : listing.getSubmissions()) {
+      this.contentIndex.add(IndexedContent.fromSubmission(submission));
+    }
+    return listing;
+  }
+
+  @Override
+  public RedditSubmission getSubmissionWithComments(String submissionId, int maxComments) {
+    WebTarget target = this.httpClient.target(this.apiBaseUrl + "/comments/" + submissionId)
+        .queryParam("limit", maxComments)
+        .queryParam("raw_json", 1);
+
+    String jsonResponse = get(target);
+    if (jsonResponse == null) {
+      return null;
+    }
+
+    //The post's listing followed by the comment tree's listing
+    JSONArray listings = new JSONArray(jsonResponse);
+    RedditListing postListing = new RedditListing(listings.getJSONObject(0));
+    if (postListing.size() == 0) {
+      return null;
+    }
+
+    RedditSubmission submission = postListing.getSubmissions().get(0);
+    if (listings.length() > 1) {
+      addComments(listings.getJSONObject(1), 1, submission, maxComments);
+    }
+
+    //Replaces the post indexed from its listing, now with its comments
+    this.contentIndex.add(IndexedContent.fromSubmission(submission));
+    return submission;
+  }
+
+  /**
+   * Walks the comment tree depth first, skipping 'load more' stubs
+   * @param listing
+   * @param depth
+   * @param submission
+   * @param maxComments
+   */
+  private static void addComments(JSONObject listing, int depth, RedditSubmission submission,
+      int maxComments) {
+    JSONArray children = listing.getJSONObject("data").getJSONArray("children");
+
+    for (int i = 0; i < children.length(); i++) {
+      if (submission.getComments().size() >= maxComments) {
+        return;
+      }
+
+      JSONObject child = children.getJSONObject(i);
+      if (!child.optString("kind").equals("t1")) {
+        continue;
+      }
+
+      JSONObject data = child.getJSONObject("data");
+      submission.getComments().add(new RedditComment(data, depth));
+
+      //'replies' is an empty string when there are none
+      JSONObject replies = data.optJSONObject("replies");
+      if (replies != null) {
+        addComments(replies, depth + 1, submission, maxComments);
+      }
+    }
+  }
+
+  /**
+   * GETs the target with the access token, returning null for a missing (404)
+   * or private (403) subreddit or post
+   * The token is renewed first if it is about to expire, and again if Reddit rejects it (401),
+   * after which the GET is made once more
+   * @param target
+   * @return
+   */
+  private String get(WebTarget target) {
+    String token = this.accessToken;
+    long expiresAt = this.accessTokenExpiresAtMillis;
+    if (token != null && expiresAt > 0
+        && System.currentTimeMillis() >= expiresAt - TOKEN_REFRESH_MARGIN) {
+      token = renewToken(token);
+    }
+
+    Reply reply = get(target, token);
+    if (reply.status == 401) {
+      LOG.info("Reddit rejected the access token, authenticating again");
+      reply = get(target, renewToken(token));
+      if (reply.status == 401) {
+        throw new RuntimeException("Reddit rejected a new access token for " + target.getUri());
+      }
+    }
+
+    if (reply.status == 404 || reply.status == 403) {
+      LOG.debug("Not found on Reddit: {}", target.getUri());
+      return null;
+    }
+    return reply.body;
+  }
+
+  /**
+   * Authenticates again unless another thread already replaced the token
+   * @param staleToken the token that expired or was rejected
+   * @return the token to use
+   */
+  private synchronized String renewToken(String staleToken) {
+    if (this.accessToken == staleToken) {
+      authenticate();
+    }
+    return this.accessToken;
+  }
+
+  /**
+   * GETs the target with the token
+   * Hedged, since a GET can be made twice - a rejected token or missing content is a reply,
+   * any other status but 200 fails the call
+   * @param target
+   * @param token
+   * @return
+   */
+  private Reply get(final WebTarget target, final String token) {
+    return this.redditGuard.hedgedCall(new Callable<Reply>() {
+      @Override
+      public Reply call() {
+        Response response = target.request(MediaType.APPLICATION_JSON)
+            .header("Authorization", "bearer " + token)
+            .header("User-Agent", USER_AGENT)
+            .get();
+
+        try {
+          int status = response.getStatus();
+          if (status == 401 || status == 403 || status == 404) {
+            return new Reply(status, null);
+          }
+          if (status != 200) {
+            throw new RuntimeException("Reddit returned " + status + " for " + target.getUri());
+          }
+          return new Reply(status, response.readEntity(String.class));
+        } finally {
+          response.close();
+        }
+      }
+    });
+  }
+
+  /**
+   * The status of a GET, and its body if it was 200
+   */
+  private static class Reply {
+
+    private final int status;
+    private final String body;
+
+    private Reply(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+}
@@ -24,6 +24,7 @@
 
 package com.symphony.clients;
 
+import com.symphony.admin.Diagnostics;
 import com.symphony.api.agent.api.DatafeedApi;
 import com.symphony.api.agent.api.MessagesApi;
 import com.symphony.api.agent.client.ApiException;
@@ -42,20 +43,45 @@ import com.symphony.api.pod.model.Stream;
 import com.symphony.api.pod.model.User;
 import com.symphony.api.pod.model.UserIdList;
 import com.symphony.api.pod.model.V2RoomDetail;
+import com.symphony.configurations.ConfigurationListener;
 import com.symphony.configurations.IConfigurationProvider;
 import com.symphony.formatters.MessageML;
 import com.symphony.models.ISymphonyMessage;
 import com.symphony.models.ISymphonyUser;
 import com.symphony.models.Message;
 import com.symphony.models.SymphonyMessage;
-
+import com.symphony.resilience.Upstream;
+import com.symphony.resilience.UpstreamGuard;
+import com.symphony.resilience.UpstreamGuards;
+import com.symphony.resilience.UpstreamUnavailableException;
+import com.symphony.users.IUserDirectory;
+import com.symphony.users.OffHeapUserDirectory;
+import com.symphony.users.UserDirectory;
+import com.symphony.utils.ExpiringCache;
+import com.symphony.utils.MonitoredThreadPoolExecutor;
+import com.symphony.utils.NamedThreadFactory;
+import com.symphony.utils.SingleFlight;
+
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Interacts with the Symphony platform API
@@ -65,6 +91,9 @@ public class SymphonyClient implements ISymphonyClient {
 
   private static final Logger LOG = LoggerFactory.getLogger(SymphonyClient.class);
 
+  //Rooms asked for per room search call
+  private static final int ROOM_SEARCH_PAGE_SIZE = 100;
+
   private final AuthenticationApi sbeApi;
   private final AuthenticationApi keyManagerApi;
   private final DatafeedApi datafeedApi;
@@ -75,10 +104,27 @@ public class SymphonyClient implements ISymphonyClient {
   private final RoomMembershipApi roomMembershipApi;
   private final IConfigurationProvider configurationProvider;
   private final SymphonyRESTClient symphonyRESTClient;
+  private final UpstreamGuard agentGuard;
+  private final UpstreamGuard podGuard;
+  private final IUserDirectory userDirectory;
+
+  //Sends a broadcast's messages, maxConcurrentSends streams at a time
+  private final MonitoredThreadPoolExecutor broadcastExecutor;
+
+  //IM streams by their participants' sorted IDs - creating one that exists returns it again
+  private final ExpiringCache<String, Stream> imStreamCache;
+  private final SingleFlight<String, Stream> imStreamCreations;
+  //Pages of room search results, by query and offset
+  private final ExpiringCache<String, RoomSearchPages> roomSearchCache;
 
   private Token sessionToken;
   private Token keyManagerToken;
-  private Datafeed datafeed;
+  private volatile Datafeed datafeed;
+
+  //For diagnostics
+  private final long sessionLifetime;
+  private volatile long authenticatedAtMillis;
+  private volatile long lastDatafeedReadMillis;
 
   public SymphonyClient(IConfigurationProvider configurationProvider) {
 
@@ -108,13 +154,52 @@ public class SymphonyClient implements ISymphonyClient {
 
     this.symphonyRESTClient = new SymphonyRESTClient(configurationProvider, null, null);
     this.configurationProvider = configurationProvider;
+    this.sessionLifetime = configurationProvider.getSymphonySessionLifetime();
+    this.agentGuard = UpstreamGuards.forUpstream(Upstream.SYMPHONY_AGENT, configurationProvider);
+    this.podGuard = UpstreamGuards.forUpstream(Upstream.SYMPHONY_POD, configurationProvider);
+
+    int maxConcurrentSends = configurationProvider.getMaxConcurrentSends();
+    this.broadcastExecutor = new MonitoredThreadPoolExecutor(maxConcurrentSends,
+        maxConcurrentSends, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+        new NamedThreadFactory("broadcast", true));
+    this.imStreamCache = new ExpiringCache<String, Stream>(
+        configurationProvider.getImStreamCacheTime(), configurationProvider.getImStreamCacheSize());
+    this.imStreamCreations = new SingleFlight<String, Stream>();
+    this.roomSearchCache = new ExpiringCache<String, RoomSearchPages>(
+        configurationProvider.getRoomSearchCacheTime(),
+        configurationProvider.getRoomSearchCacheSize());
+    configurationProvider.addListener(new ConfigurationListener() {
+      @Override
+      public void configurationChanged(IConfigurationProvider configurationProvider) {
+        broadcastExecutor.setPoolSize(configurationProvider.getMaxConcurrentSends());
+        imStreamCache.setTimeToLiveMillis(configurationProvider.getImStreamCacheTime());
+        imStreamCache.setMaxSize(configurationProvider.getImStreamCacheSize());
+        roomSearchCache.setTimeToLiveMillis(configurationProvider.getRoomSearchCacheTime());
+        roomSearchCache.setMaxSize(configurationProvider.getRoomSearchCacheSize());
+        userDirectory.setLimits(configurationProvider.getUserDirectoryMaxUsers(),
+            configurationProvider.getUserDirectoryTimeToLive());
+      }
+    });
+
+    int expectedUsers = configurationProvider.getUserDirectoryExpectedUsers();
+    int maxUsers = configurationProvider.getUserDirectoryMaxUsers();
+    long userTimeToLive = configurationProvider.getUserDirectoryTimeToLive();
+    if (configurationProvider.getUserDirectoryOffHeap()) {
+      this.userDirectory = new OffHeapUserDirectory(expectedUsers, maxUsers, userTimeToLive,
+          configurationProvider.getUserDirectoryOffHeapSize());
+    } else {
+      this.userDirectory = new UserDirectory(expectedUsers, maxUsers, userTimeToLive);
+    }
 
+    //No certificate when talking to a local simulator over plain HTTP
     File certificate = configurationProvider.getCertificateFile();
-    System.setProperty("javax.net.ssl.keyStore", certificate.getAbsolutePath());
-    System.setProperty("javax.net.ssl.keyStorePassword",
-        configurationProvider.getSymphonyKeystorePassword());
-    System.setProperty("javax.net.ssl.keyStoreType",
-        configurationProvider.getSymphonyKeystoreType());
+    if (certificate != null) {
+      System.setProperty("javax.net.ssl.keyStore", certificate.getAbsolutePath());
+      System.setProperty("javax.net.ssl.keyStorePassword",
+          configurationProvider.getSymphonyKeystorePassword());
+      System.setProperty("javax.net.ssl.keyStoreType",
+          configurationProvider.getSymphonyKeystoreType());
+    }
   }
 
   /**
@@ -122,22 +207,39 @@ public class SymphonyClient implements ISymphonyClient {
    */
   public void authenticate() {
 
+    //The session and key manager tokens are independent, so both are requested at once
+    CompletableFuture<Token> keyManagerRequest = CompletableFuture.supplyAsync(
+        new Supplier<Token>() {
+          @Override
+          public Token get() {
+            try {
+              return keyManagerApi.v1AuthenticatePost();
+            } catch (com.symphony.api.auth.client.ApiException e) {
+              throw new RuntimeException("failed to authenticate with the key manager", e);
+            }
+          }
+        });
+
+    Token sessionToken;
+    Token keyManagerToken;
     try {
-      Token sessionToken = sbeApi.v1AuthenticatePost();
-      if (sessionToken.getToken() != null && sessionToken.getToken().length() != 0) {
-        this.sessionToken = sessionToken;
-        this.symphonyRESTClient.setSessionToken(this.sessionToken);
-
-        Token keyManagerToken = keyManagerApi.v1AuthenticatePost();
-        if (keyManagerToken.getToken() != null && keyManagerToken.getToken().length() != 0) {
-          this.keyManagerToken = keyManagerToken;
-          this.symphonyRESTClient.setKeyManagerToken(keyManagerToken);
-          LOG.debug("successfully authenticated symphony client");
-          return;
-        }
-      }
+      sessionToken = sbeApi.v1AuthenticatePost();
+      keyManagerToken = keyManagerRequest.join();
     } catch (com.symphony.api.auth.client.ApiException e) {
       throw new RuntimeException("failed to authenticate symphony client", e);
+    } catch (CompletionException e) {
+      throw new RuntimeException("failed to authenticate symphony client", e.getCause());
+    }
+
+    if (sessionToken.getToken() != null && sessionToken.getToken().length() != 0
+        && keyManagerToken.getToken() != null && keyManagerToken.getToken().length() != 0) {
+      this.sessionToken = sessionToken;
+      this.symphonyRESTClient.setSessionToken(this.sessionToken);
+      this.keyManagerToken = keyManagerToken;
+      this.symphonyRESTClient.setKeyManagerToken(keyManagerToken);
+      this.authenticatedAtMillis = System.currentTimeMillis();
+      LOG.debug("successfully authenticated symphony client");
+      return;
     }
     throw new RuntimeException("failed to authenticate symphony client");
   }
@@ -152,7 +254,7 @@ public class SymphonyClient implements ISymphonyClient {
       User user = usersApi.v1UserGet(emailAddress, this.sessionToken.getToken(), true);
       return user;
     } catch (com.symphony.api.pod.client.ApiException e) {
-      LOG.error("Could not find user: " + emailAddress, e);
+      LOG.error("Could not find user: {}", emailAddress, e);
       return null;
     }
   }
@@ -164,19 +266,66 @@ public class SymphonyClient implements ISymphonyClient {
   public List<Message> getMessages() {
     try {
       if (datafeed == null) {
-        datafeed = datafeedApi.v1DatafeedCreatePost(this.sessionToken.getToken(),
-            this.keyManagerToken.getToken());
+        datafeed = this.agentGuard.call(new Callable<Datafeed>() {
+          @Override
+          public Datafeed call() throws ApiException {
+            return datafeedApi.v1DatafeedCreatePost(sessionToken.getToken(),
+                keyManagerToken.getToken());
+          }
+        });
         LOG.debug("Created datafeed");
       }
 
       List<Message> messages = symphonyRESTClient
           .getMessagesForDataFeed(datafeed.getId());
+      this.lastDatafeedReadMillis = System.currentTimeMillis();
       return messages;
-    } catch (ApiException exception) {
+    } catch (UpstreamUnavailableException exception) {
+      LOG.warn("Not creating datafeed: {}", exception.getMessage());
+      waitBeforeRetrying(exception.getRetryAfterMillis());
+    } catch (RuntimeException exception) {
       LOG.error("Error getting message list", exception);
+      waitBeforeRetrying(0);
     }
 
-    return null;
+    return Collections.emptyList();
+  }
+
+  /**
+   * The datafeed, when it was last read, when the tokens were issued and (as Symphony doesn't
+   * return it) when they expire if the pod uses the configured session lifetime
+   * @return
+   */
+  @Override
+  public JSONObject getDiagnostics() {
+    Datafeed datafeed = this.datafeed;
+    long authenticatedAtMillis = this.authenticatedAtMillis;
+
+    return new JSONObject()
+        .put("datafeedId", datafeed == null ? JSONObject.NULL : datafeed.getId())
+        .put("lastDatafeedRead", Diagnostics.time(this.lastDatafeedReadMillis))
+        .put("authenticatedAt", Diagnostics.time(authenticatedAtMillis))
+        .put("sessionExpiresAt", Diagnostics.time(authenticatedAtMillis == 0 ? 0
+            : authenticatedAtMillis + this.sessionLifetime))
+        .put("userDirectory", Diagnostics.cache(this.userDirectory.size(),
+            this.userDirectory.getEstimatedBytes()))
+        .put("imStreamCache", Diagnostics.cache(this.imStreamCache.size(),
+            this.imStreamCache.getEstimatedBytes()))
+        .put("roomSearchCache", Diagnostics.cache(this.roomSearchCache.size(),
+            this.roomSearchCache.getEstimatedBytes()))
+        .put("broadcastExecutor", Diagnostics.pool(this.broadcastExecutor));
+  }
+
+  /**
+   * Keeps the datafeed loop from spinning while the agent is failing
+   * @param retryAfterMillis
+   */
+  private static void waitBeforeRetrying(long retryAfterMillis) {
+    try {
+      Thread.sleep(Math.max(1000, retryAfterMillis));
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   /**
@@ -211,24 +360,28 @@ public class SymphonyClient implements ISymphonyClient {
   }
 
   /**
-   * Helper method that gets thhe SymphonyUser from the message's senderID
+   * Helper method that gets the SymphonyUser from the message's senderID
+   * Senders are looked up in the user directory first, and added to it when found remotely
    * @param message
    * @return
    */
-  private ISymphonyMessage getSymphonyMessage(Message message) {
-    Long senderID = message.getFromUserId();
-
-    if (senderID != null) {
-      ISymphonyUser symphonyUser = symphonyRESTClient.getUserForId(senderID);
+  public ISymphonyMessage getSymphonyMessage(Message message) {
+    long senderID = message.getFromUserId();
 
+    ISymphonyUser symphonyUser = this.userDirectory.get(senderID);
+    if (symphonyUser == null) {
+      symphonyUser = symphonyRESTClient.getUserForId(senderID);
       if (symphonyUser != null) {
-        ISymphonyMessage symphonyMessage = new SymphonyMessage(symphonyUser, message);
-        return symphonyMessage;
+        this.userDirectory.put(symphonyUser);
       }
-    } else {
-      LOG.error("Null sender ID for message " + message);
     }
 
+    if (symphonyUser != null) {
+      ISymphonyMessage symphonyMessage = new SymphonyMessage(symphonyUser, message);
+      return symphonyMessage;
+    }
+
+    LOG.error("Unknown sender for message {}", message);
     return null;
   }
 
@@ -258,55 +411,207 @@ public class SymphonyClient implements ISymphonyClient {
 
   /**
    * Creates or returns (if exists) a stream with these Users
+   * The same set of users, in any order, gets the cached stream until it expires
    * @param users
    * @return
    */
   public Stream getStreamWithUsers(List<User> users) {
-    try {
-      UserIdList userIdList = new UserIdList();
-      for (User user : users) {
-        if (user != null) {
-          userIdList.add(user.getId());
+    final UserIdList userIdList = new UserIdList();
+    for (User user : users) {
+      if (user != null) {
+        userIdList.add(user.getId());
+      }
+    }
+
+    List<Long> sortedIds = new ArrayList<Long>(userIdList);
+    Collections.sort(sortedIds);
+    final String key = sortedIds.toString();
+
+    Stream cachedStream = this.imStreamCache.get(key);
+    if (cachedStream != null) {
+      return cachedStream;
+    }
+
+    //Concurrent requests for the same users make one call
+    return this.imStreamCreations.execute(key, new Callable<Stream>() {
+      @Override
+      public Stream call() {
+        try {
+          Stream stream = streamsApi.v1ImCreatePost(userIdList, sessionToken.getToken());
+          if (stream != null) {
+            imStreamCache.put(key, stream);
+          }
+          return stream;
+        } catch (com.symphony.api.pod.client.ApiException exception) {
+          LOG.error("Could not create stream", exception);
+          return null;
         }
       }
-      Stream stream = this.streamsApi.v1ImCreatePost(userIdList, sessionToken.getToken());
-      return stream;
-    } catch (com.symphony.api.pod.client.ApiException exception) {
-      LOG.error("Could not create stream", exception);
-      return null;
+    });
+  }
+
+  @Override
+  public Iterator<V2RoomDetail> searchRooms(String query) {
+    return new RoomSearchIterator(query);
+  }
+
+  /**
+   * Finds every room given the query
+   * @param query
+   * @return the rooms, empty if none match
+   */
+  public List<V2RoomDetail> getRoomsForSearchQuery(String query) {
+    List<V2RoomDetail> rooms = new ArrayList<V2RoomDetail>();
+    Iterator<V2RoomDetail> results = searchRooms(query);
+    while (results.hasNext()) {
+      rooms.add(results.next());
     }
+    return rooms;
   }
 
   /**
-   * Finds rooms given the query
+   * Finds the first room given the query, only fetching the first page of results
+   * @param query
+   * @return the room, null if none match
+   */
+  public V2RoomDetail getRoomForSearchQuery(String query) {
+    Iterator<V2RoomDetail> results = searchRooms(query);
+    return results.hasNext() ? results.next() : null;
+  }
+
+  /**
+   * Returns the query's pages fetched recently, or a new sequence that is cached from now on
    * @param query
    * @return
    */
-  public List<V2RoomDetail> getRoomsForSearchQuery(String query) {
-    RoomSearchCriteria searchCriteria = new RoomSearchCriteria();
-    searchCriteria.setQuery(query);
+  private RoomSearchPages getRoomSearchPages(String query) {
+    RoomSearchPages pages = this.roomSearchCache.get(query);
+    if (pages == null) {
+      pages = new RoomSearchPages(query);
+      this.roomSearchCache.put(query, pages);
+    }
+    return pages;
+  }
 
-    try {
-      RoomSearchResults results =
-          streamsApi.v2RoomSearchPost(this.sessionToken.getToken(), searchCriteria, 0, 100);
+  /**
+   * The pages of a query's results fetched so far, cached as one entry so that they all
+   * expire together and a walk never mixes pages cached at different times
+   * Walks of the same query share it and fetch each page once, in order
+   * A page is fetched without holding the lock, so walks further along aren't held up by it
+   */
+  private class RoomSearchPages {
 
-      if (results.getCount() > 0) {
-        return results.getRooms();
+    private final String query;
+    private final List<RoomSearchResults> pages;
+    //Walks that reach a page at once wait for one fetch of it
+    private final SingleFlight<Integer, RoomSearchResults> fetches;
+
+    private RoomSearchPages(String query) {
+      this.query = query;
+      this.pages = new ArrayList<RoomSearchResults>();
+      this.fetches = new SingleFlight<Integer, RoomSearchResults>();
+    }
+
+    /**
+     * Returns a page, fetching it through the pod's guard if no walk has got that far yet
+     * @param index
+     * @param skip rooms before the page
+     * @return
+     * @throws UpstreamUnavailableException if the pod is unavailable
+     */
+    private RoomSearchResults getPage(final int index, final int skip) {
+      RoomSearchResults page = getFetchedPage(index);
+      if (page != null) {
+        return page;
       }
-    } catch (com.symphony.api.pod.client.ApiException e) {
-      throw new RuntimeException("failed while searching for room with query " + query, e);
+
+      return this.fetches.execute(index, new Callable<RoomSearchResults>() {
+        @Override
+        public RoomSearchResults call() {
+          //Fetched by a walk that finished just before this one started
+          RoomSearchResults fetched = getFetchedPage(index);
+          if (fetched != null) {
+            return fetched;
+          }
+
+          RoomSearchResults page = podGuard.call(new Callable<RoomSearchResults>() {
+            @Override
+            public RoomSearchResults call() throws com.symphony.api.pod.client.ApiException {
+              RoomSearchCriteria searchCriteria = new RoomSearchCriteria();
+              searchCriteria.setQuery(query);
+              return streamsApi.v2RoomSearchPost(sessionToken.getToken(), searchCriteria, skip,
+                  ROOM_SEARCH_PAGE_SIZE);
+            }
+          });
+          synchronized (RoomSearchPages.this) {
+            if (index == pages.size()) {
+              pages.add(page);
+            }
+          }
+          return page;
+        }
+      });
+    }
+
+    private synchronized RoomSearchResults getFetchedPage(int index) {
+      return index < this.pages.size() ? this.pages.get(index) : null;
     }
-    throw new RuntimeException("no rooms found for query " + query);
   }
 
   /**
-   * Finds the first room given the query
-   * @param query
-   * @return
+   * Walks the rooms matching a query, fetching the next page only when the current one is used up
+   * The walk keeps the page sequence it started with, even if the cache drops it meanwhile
+   * Throws a RuntimeException from hasNext or next if a page can't be fetched
    */
-  public V2RoomDetail getRoomForSearchQuery(String query) {
-    List<V2RoomDetail> rooms = this.getRoomsForSearchQuery(query);
-    return rooms.get(0);
+  private class RoomSearchIterator implements Iterator<V2RoomDetail> {
+
+    private final RoomSearchPages pages;
+    private Iterator<V2RoomDetail> page;
+    private int pageIndex;
+    private int skip;
+    private boolean lastPage;
+
+    private RoomSearchIterator(String query) {
+      this.pages = getRoomSearchPages(query);
+      this.page = Collections.<V2RoomDetail>emptyList().iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!this.page.hasNext() && !this.lastPage) {
+        RoomSearchResults results = this.pages.getPage(this.pageIndex++, this.skip);
+        List<V2RoomDetail> rooms = results.getRooms();
+        if (rooms == null) {
+          rooms = Collections.emptyList();
+        }
+
+        this.page = rooms.iterator();
+        this.skip += rooms.size();
+        Long count = results.getCount();
+        this.lastPage = rooms.size() < ROOM_SEARCH_PAGE_SIZE
+            || (count != null && this.skip >= count);
+      }
+      return this.page.hasNext();
+    }
+
+    @Override
+    public V2RoomDetail next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return this.page.next();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  @Override
+  public void close() {
+    this.broadcastExecutor.shutdownNow();
+    this.symphonyRESTClient.close();
   }
 
   /**
@@ -316,9 +621,11 @@ public class SymphonyClient implements ISymphonyClient {
    * @return
    */
   public V2Message sendMessage(String roomID, MessageML messageML) {
-    V2MessageSubmission messageSubmission = new V2MessageSubmission();
-    messageSubmission.setFormat(V2MessageSubmission.FormatEnum.MESSAGEML);
-    messageSubmission.setMessage(messageML.toString());
+    V2MessageSubmission messageSubmission =
+        newSubmission(V2MessageSubmission.FormatEnum.MESSAGEML, messageML.toString());
+    if (messageSubmission == null) {
+      return null;
+    }
 
     V2Message response = this.sendMessage(roomID, messageSubmission);
     return response;
@@ -331,9 +638,11 @@ public class SymphonyClient implements ISymphonyClient {
    * @return
    */
   public V2Message sendMessage(String roomID, String text) {
-    V2MessageSubmission messageSubmission = new V2MessageSubmission();
-    messageSubmission.setFormat(V2MessageSubmission.FormatEnum.TEXT);
-    messageSubmission.setMessage(text);
+    V2MessageSubmission messageSubmission =
+        newSubmission(V2MessageSubmission.FormatEnum.TEXT, text);
+    if (messageSubmission == null) {
+      return null;
+    }
 
     V2Message response = this.sendMessage(roomID, messageSubmission);
     return response;
@@ -350,32 +659,124 @@ public class SymphonyClient implements ISymphonyClient {
     return this.sendMessage(roomID, messageML);
   }
 
+  @Override
+  public List<BroadcastResult> broadcast(List<String> streamIds, MessageML messageML) {
+    final V2MessageSubmission messageSubmission =
+        newSubmission(V2MessageSubmission.FormatEnum.MESSAGEML, messageML.toString());
+    if (messageSubmission == null) {
+      throw new IllegalArgumentException("Nothing to broadcast");
+    }
+
+    //The submission is only read from here on, so every stream's send shares it
+    List<Future<V2Message>> sends = new ArrayList<Future<V2Message>>(streamIds.size());
+    for (final String streamId : streamIds) {
+      sends.add(this.broadcastExecutor.submit(new Callable<V2Message>() {
+        @Override
+        public V2Message call() {
+          return sendMessage(streamId, messageSubmission);
+        }
+      }));
+    }
+
+    List<BroadcastResult> results = new ArrayList<BroadcastResult>(streamIds.size());
+    int failures = 0;
+    for (int i = 0; i < streamIds.size(); i++) {
+      BroadcastResult result = getBroadcastResult(streamIds.get(i), sends.get(i));
+      if (!result.isSent()) {
+        failures++;
+      }
+      results.add(result);
+    }
+
+    if (failures > 0) {
+      LOG.warn("Broadcast failed for {} of {} streams", failures, streamIds.size());
+    }
+    return results;
+  }
+
+  private static BroadcastResult getBroadcastResult(String streamId, Future<V2Message> send) {
+    try {
+      return BroadcastResult.sent(streamId, send.get());
+    } catch (ExecutionException exception) {
+      Throwable cause = exception.getCause();
+      return BroadcastResult.failed(streamId, cause instanceof RuntimeException
+          ? (RuntimeException) cause : new RuntimeException(cause));
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      send.cancel(true);
+      return BroadcastResult.failed(streamId,
+          new RuntimeException("interrupted while broadcasting", exception));
+    }
+  }
+
+  @Override
+  public List<BroadcastResult> broadcastToRooms(List<String> roomSearchQueries,
+      MessageML messageML) {
+    //Rooms found by more than one query only get it once
+    Set<String> streamIds = new LinkedHashSet<String>();
+    for (String query : roomSearchQueries) {
+      try {
+        Iterator<V2RoomDetail> rooms = searchRooms(query);
+        while (rooms.hasNext()) {
+          streamIds.add(rooms.next().getRoomSystemInfo().getId());
+        }
+      } catch (RuntimeException exception) {
+        LOG.warn("Not broadcasting to rooms for '{}': {}", query, exception.getMessage());
+      }
+    }
+    return broadcast(new ArrayList<String>(streamIds), messageML);
+  }
+
   /**
-   * Private helper method to send a message to a room
-   * @param roomID
+   * Returns a submission of the message, or null if it is blank, which Symphony rejects
+   * @param format
    * @param message
    * @return
    */
-  private V2Message sendMessage(String roomID, V2MessageSubmission message) {
-
-    if (message.getMessage().replaceAll(" ", "").length() == 0) {
+  private static V2MessageSubmission newSubmission(V2MessageSubmission.FormatEnum format,
+      String message) {
+    if (message.replaceAll(" ", "").length() == 0) {
       return null;
     }
 
+    V2MessageSubmission messageSubmission = new V2MessageSubmission();
+    messageSubmission.setFormat(format);
+    messageSubmission.setMessage(message);
+    return messageSubmission;
+  }
+
+  /**
+   * Private helper method to send a message to a room
+   * The agent guard is the only limit on sends: it queues them for up to its maxQueueWait
+   * while its adaptive limit is reached, then refuses them so the sender backs off
+   * Sends aren't serialized - messagesApi is called from many threads at once, which assumes
+   * the generated ApiClient only shares its Jersey client (which is thread safe) and settings
+   * fixed at startup, and the per-call status and headers it keeps are never read
+   * @param roomID
+   * @param message
+   * @return
+   */
+  private V2Message sendMessage(final String roomID, final V2MessageSubmission message) {
+
+    V2Message result;
     try {
-      //Synchronized to only send one message at a time
-      synchronized (messagesApi) {
-        V2Message result = messagesApi.v2StreamSidMessageCreatePost(roomID,
-            sessionToken.getToken(), keyManagerToken.getToken(), message);
-
-        if (result != null && result.getId() != null) {
-          LOG.debug("successfully sent message: " + message);
-          return result;
+      result = this.agentGuard.call(new Callable<V2Message>() {
+        @Override
+        public V2Message call() throws ApiException {
+          return messagesApi.v2StreamSidMessageCreatePost(roomID,
+              sessionToken.getToken(), keyManagerToken.getToken(), message);
         }
-      }
-    } catch (com.symphony.api.agent.client.ApiException e) {
+      });
+    } catch (UpstreamUnavailableException e) {
+      throw e;
+    } catch (RuntimeException e) {
       throw new RuntimeException("failed while sending message: " + message, e);
     }
+
+    if (result != null && result.getId() != null) {
+      LOG.debug("successfully sent message: {}", message);
+      return result;
+    }
     throw new RuntimeException("failed while sending message: " + message);
   }
 }
\ No newline at end of file
@@ -26,9 +26,13 @@ package com.symphony.clients;
 
 import com.symphony.api.auth.model.Token;
 import com.symphony.configurations.IConfigurationProvider;
+import com.symphony.datafeed.MessageIdFilter;
 import com.symphony.models.ISymphonyUser;
 import com.symphony.models.Message;
 import com.symphony.models.SymphonyUser;
+import com.symphony.resilience.Upstream;
+import com.symphony.resilience.UpstreamGuard;
+import com.symphony.resilience.UpstreamGuards;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -38,7 +42,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
+import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
@@ -58,6 +64,15 @@ public class SymphonyRESTClient {
   private final IConfigurationProvider configurationProvider;
   private final long myUserId;
 
+  //Drops messages a retried read or re-created datafeed delivers again
+  private final MessageIdFilter messageIdFilter;
+
+  //Shared by every request, so connections are reused
+  private final Client httpClient;
+
+  //Looking a user up is a pod read, so a slow one is made again within the pod's limits
+  private final UpstreamGuard podGuard;
+
   private Token sessionToken;
   private Token keyManagerToken;
 
@@ -65,6 +80,12 @@ public class SymphonyRESTClient {
       Token keyManagerToken) {
     this.configurationProvider = configurationProvider;
     this.myUserId = configurationProvider.getBotUserId();
+    this.messageIdFilter = new MessageIdFilter(configurationProvider.getMessageDedupWindow(),
+        configurationProvider.getMessageDedupBuckets(),
+        configurationProvider.getMessageDedupMaxIds(),
+        configurationProvider.getMessageDedupFile());
+    this.httpClient = ClientBuilder.newClient();
+    this.podGuard = UpstreamGuards.forUpstream(Upstream.SYMPHONY_POD, configurationProvider);
 
     this.sessionToken = sessionToken;
     this.keyManagerToken = keyManagerToken;
@@ -74,21 +95,28 @@ public class SymphonyRESTClient {
    * Returns the user for that userId
    * @return
    */
-  public ISymphonyUser getUserForId(Long userId) {
+  public ISymphonyUser getUserForId(long userId) {
 
-    String fullURL = configurationProvider.getSymphonyUserInfoPath();
+    final String fullURL = configurationProvider.getSymphonyUserInfoPath();
 
-    MultivaluedMap formData = new MultivaluedHashMap();
+    final MultivaluedMap<String, String> formData = new MultivaluedHashMap<String, String>();
     formData.add("action", "usercurrent");
     formData.add("userid", String.valueOf(userId));
     formData.add("includeFollowing", String.valueOf(false));
 
-    String jsonResponse = ClientBuilder.newClient()
-        .target(fullURL)
-        .request(MediaType.APPLICATION_JSON)
-        .header("X-Symphony-CSRF-Token", sessionToken.getToken())
-        .cookie("skey", sessionToken.getToken())
-        .post(Entity.entity(formData, MediaType.APPLICATION_FORM_URLENCODED_TYPE), String.class);
+    final Token sessionToken = this.sessionToken;
+    String jsonResponse = this.podGuard.hedgedCall(new Callable<String>() {
+      @Override
+      public String call() {
+        return httpClient
+            .target(fullURL)
+            .request(MediaType.APPLICATION_JSON)
+            .header("X-Symphony-CSRF-Token", sessionToken.getToken())
+            .cookie("skey", sessionToken.getToken())
+            .post(Entity.entity(formData, MediaType.APPLICATION_FORM_URLENCODED_TYPE),
+                String.class);
+      }
+    });
 
     try {
       JSONObject response = new JSONObject(jsonResponse);
@@ -100,7 +128,7 @@ public class SymphonyRESTClient {
         return new SymphonyUser(userId, emailAddress, displayName);
       }
     } catch (JSONException e) {
-      LOG.error("Error parsing JSON when getting user " + jsonResponse, e);
+      LOG.error("Error parsing JSON when getting user {}", jsonResponse, e);
     }
 
     return null;
@@ -112,7 +140,7 @@ public class SymphonyRESTClient {
         configurationProvider.getSymphonyAgentPath() + "/v2/datafeed/" + datafeedId + "/read";
     List<Message> messages = new ArrayList<>();
 
-    String jsonResponse = ClientBuilder.newClient()
+    String jsonResponse = this.httpClient
         .target(url)
         .request(MediaType.APPLICATION_JSON)
         .header("sessionToken", sessionToken.getToken())
@@ -123,6 +151,7 @@ public class SymphonyRESTClient {
       return messages;
     }
 
+    int replays = 0;
     try {
       JSONArray array = new JSONArray(jsonResponse);
       for (int i = 0; i < array.length(); i++) {
@@ -130,6 +159,11 @@ public class SymphonyRESTClient {
         if (object.getString("v2messageType").equals("V2Message")) {
           long senderId = object.getLong("fromUserId");
           if (senderId != this.myUserId) {
+            //Checked before the MessageML is parsed or the sender looked up
+            if (!this.messageIdFilter.isNew(object.getString("id"))) {
+              replays++;
+              continue;
+            }
             Message message = new Message(object);
             messages.add(message);
           }
@@ -138,6 +172,10 @@ public class SymphonyRESTClient {
     } catch (JSONException exception) {
       LOG.error(exception.toString());
     }
+
+    if (replays > 0) {
+      LOG.info("Dropped {} messages already seen", replays);
+    }
     return messages;
   }
 
@@ -148,4 +186,12 @@ public class SymphonyRESTClient {
   public void setKeyManagerToken(Token keyManagerToken) {
     this.keyManagerToken = keyManagerToken;
   }
+
+  /**
+   * Saves the recently seen message IDs and releases the HTTP client
+   */
+  public void close() {
+    this.messageIdFilter.close();
+    this.httpClient.close();
+  }
 }
\ No newline at end of file
@@ -24,10 +24,20 @@
 
 package com.symphony.clients;
 
+import com.symphony.admin.Diagnostics;
+import com.symphony.configurations.ConfigurationListener;
 import com.symphony.configurations.ConfigurationProvider;
 import com.symphony.configurations.IConfigurationProvider;
 import com.symphony.models.WebsiteBrowserArticle;
-
+import com.symphony.resilience.Upstream;
+import com.symphony.resilience.UpstreamGuard;
+import com.symphony.resilience.UpstreamGuards;
+import com.symphony.search.ContentIndexes;
+import com.symphony.search.IContentIndex;
+import com.symphony.search.IndexedContent;
+import com.symphony.utils.ExpiringCache;
+
+import org.glassfish.jersey.client.ClientProperties;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -36,7 +46,9 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.util.List;
+import java.util.concurrent.Callable;
 
+import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.core.MediaType;
 
@@ -50,15 +62,57 @@ public class WebsiteBrowserClient implements IWebsiteBrowserClient {
 
   protected static final Logger LOG = LoggerFactory.getLogger(WebsiteBrowserClient.class);
 
-  private static final String BASE_URL = "http://api.diffbot.com/v3/";
-  private static final String ANALYZE_URL = BASE_URL + "analyze";
-
   private final IConfigurationProvider configurationProvider;
   private final String diffBotApiKey;
+  private final String analyzeUrl;
+  private final UpstreamGuard diffbotGuard;
+  private final Client httpClient;
+  private final IContentIndex contentIndex;
+
+  //Analyzed websites by URL - the cached article object doubles as its content version
+  private final ExpiringCache<String, WebsiteBrowserArticle> articleCache;
 
   public WebsiteBrowserClient(IConfigurationProvider configurationProvider) {
     this.configurationProvider = configurationProvider;
     this.diffBotApiKey = configurationProvider.getDiffbotApiKey();
+    this.analyzeUrl = configurationProvider.getDiffbotBaseUrl() + "/v3/analyze";
+    this.diffbotGuard = UpstreamGuards.forUpstream(Upstream.DIFFBOT, configurationProvider);
+    this.contentIndex = ContentIndexes.forConfiguration(configurationProvider);
+
+    //Bounded timeouts so a Diffbot outage trips the circuit breaker instead of hanging a thread
+    int timeout = (int) configurationProvider.getUpstreamTimeout(Upstream.DIFFBOT.getKey());
+    this.httpClient = ClientBuilder.newClient();
+    this.httpClient.property(ClientProperties.CONNECT_TIMEOUT, timeout);
+    this.httpClient.property(ClientProperties.READ_TIMEOUT, timeout);
+
+    this.articleCache = new ExpiringCache<String, WebsiteBrowserArticle>(
+        configurationProvider.getDiffbotCacheTime(), configurationProvider.getDiffbotCacheSize(),
+        new ExpiringCache.Weigher<WebsiteBrowserArticle>() {
+          @Override
+          public long estimateBytes(WebsiteBrowserArticle article) {
+            return article.estimateBytes();
+          }
+        });
+
+    configurationProvider.addListener(new ConfigurationListener() {
+      @Override
+      public void configurationChanged(IConfigurationProvider configurationProvider) {
+        articleCache.setTimeToLiveMillis(configurationProvider.getDiffbotCacheTime());
+        articleCache.setMaxSize(configurationProvider.getDiffbotCacheSize());
+      }
+    });
+  }
+
+  @Override
+  public JSONObject getDiagnostics() {
+    return new JSONObject()
+        .put("articleCache", Diagnostics.cache(this.articleCache.size(),
+            this.articleCache.getEstimatedBytes()));
+  }
+
+  @Override
+  public void close() {
+    this.httpClient.close();
   }
 
   /**
@@ -87,28 +141,42 @@ public class WebsiteBrowserClient implements IWebsiteBrowserClient {
 
   /**
    * Returns the contents of a website, or null if the website wasn't found
+   * Recently analyzed websites are returned from the cache - callers must not modify them
+   * Throws UpstreamUnavailableException without calling Diffbot if Diffbot is unavailable
    * @param websiteUrl
    * @return
    */
   public WebsiteBrowserArticle getTextFromWebsite(String websiteUrl) {
 
+    WebsiteBrowserArticle cachedArticle = this.articleCache.get(websiteUrl);
+    if (cachedArticle != null) {
+      return cachedArticle;
+    }
+
     String encodedUrl = "";
     try {
       encodedUrl = URLEncoder.encode(websiteUrl, "UTF-8");
     } catch (IOException exception) {
-      LOG.error("Error encoding: " + websiteUrl, exception);
+      LOG.error("Error encoding: {}", websiteUrl, exception);
       return null;
     }
 
-    String fullURL = ANALYZE_URL + "?token=" + this.diffBotApiKey + "&url=" + encodedUrl;
-    String jsonResponse = ClientBuilder.newClient()
-        .target(fullURL)
-        .request(MediaType.APPLICATION_JSON)
-        .get(String.class);
+    final String fullURL =
+        this.analyzeUrl + "?token=" + this.diffBotApiKey + "&url=" + encodedUrl;
+    String jsonResponse = this.diffbotGuard.hedgedCall(new Callable<String>() {
+      @Override
+      public String call() {
+        return httpClient.target(fullURL)
+            .request(MediaType.APPLICATION_JSON)
+            .get(String.class);
+      }
+    });
 
     try {
       JSONObject response = new JSONObject(jsonResponse);
       WebsiteBrowserArticle websiteResponse = new WebsiteBrowserArticle(response);
+      this.articleCache.put(websiteUrl, websiteResponse);
+      this.contentIndex.add(IndexedContent.fromArticle(websiteUrl, websiteResponse));
       return websiteResponse;
     } catch (JSONException exception) {
       LOG.info("Error getting website", exception);
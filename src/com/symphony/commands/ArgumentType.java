@@ -0,0 +1,73 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.commands;
+
+/**
+ * How the words after a command's verb are read into its argument
+ */
+
+public enum ArgumentType {
+
+  //The words are ignored, e.g. 'Reddit next'
+  NONE,
+
+  //Lower case words separated by single spaces, e.g. the words searched for
+  WORDS,
+
+  //A lower case name, with any spaces in it removed, e.g. a subreddit
+  NAME,
+
+  //A URL, with any spaces in it removed - the case is kept, since paths are case sensitive
+  URL;
+
+  /**
+   * Reads the argument from the message's words starting at start
+   * @param message
+   * @param start
+   * @return empty if there are no words
+   */
+  String read(TokenizedMessage message, int start) {
+    StringBuilder argument = new StringBuilder();
+    for (int i = start; i < message.size(); i++) {
+      switch (this) {
+        case WORDS:
+          if (argument.length() > 0) {
+            argument.append(' ');
+          }
+          argument.append(message.getLowerCaseWord(i));
+          break;
+        case NAME:
+          argument.append(message.getLowerCaseWord(i));
+          break;
+        case URL:
+          argument.append(message.getWord(i));
+          break;
+        default:
+          return "";
+      }
+    }
+    return argument.toString();
+  }
+}
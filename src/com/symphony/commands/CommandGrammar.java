@@ -0,0 +1,176 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.commands;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The verbs of a context's commands and the words (aliases) they are typed as
+ *
+ * The verb is the first alias found in the message, reading left to right, so words before it
+ * (the context's name, a mention) are skipped and the words after it are its argument
+ * Aliases are looked up by their first word, and longer aliases are tried first,
+ * e.g. 'next page' before 'next'
+ */
+
+public class CommandGrammar {
+
+  //Longest first
+  private static final Comparator<Alias> LONGEST_FIRST = new Comparator<Alias>() {
+    @Override
+    public int compare(Alias first, Alias second) {
+      return second.words.length - first.words.length;
+    }
+  };
+
+  private final Map<String, List<Alias>> aliasesByFirstWord;
+  private String indexVerb;
+  private String defaultVerb;
+
+  public CommandGrammar() {
+    this.aliasesByFirstWord = new HashMap<String, List<Alias>>();
+  }
+
+  /**
+   * Adds a verb typed as any of the aliases, each one or more lower case words
+   * @param verb
+   * @param argumentType how the words after it are read
+   * @param aliases
+   * @return this grammar
+   */
+  public CommandGrammar addVerb(String verb, ArgumentType argumentType, String... aliases) {
+    for (String alias : aliases) {
+      Alias parsedAlias = new Alias(verb, argumentType, alias.split(" "));
+      List<Alias> sameFirstWord = this.aliasesByFirstWord.get(parsedAlias.words[0]);
+      if (sameFirstWord == null) {
+        sameFirstWord = new ArrayList<Alias>();
+        this.aliasesByFirstWord.put(parsedAlias.words[0], sameFirstWord);
+      }
+      sameFirstWord.add(parsedAlias);
+      Collections.sort(sameFirstWord, LONGEST_FIRST);
+    }
+    return this;
+  }
+
+  /**
+   * Sets the verb of a number typed on its own, e.g. 'Reddit 3'
+   * @param verb
+   * @return this grammar
+   */
+  public CommandGrammar setIndexVerb(String verb) {
+    this.indexVerb = verb;
+    return this;
+  }
+
+  /**
+   * Sets the verb of messages without any of the verbs, e.g. just 'Reddit'
+   * @param verb
+   * @return this grammar
+   */
+  public CommandGrammar setDefaultVerb(String verb) {
+    this.defaultVerb = verb;
+    return this;
+  }
+
+  /**
+   * @param contextName
+   * @param message
+   * @return the command, with the default verb and no argument if no verb was found
+   */
+  public ParsedCommand parse(String contextName, TokenizedMessage message) {
+    for (int i = 0; i < message.size(); i++) {
+      String word = message.getLowerCaseWord(i);
+
+      List<Alias> aliases = this.aliasesByFirstWord.get(word);
+      if (aliases != null) {
+        for (Alias alias : aliases) {
+          if (alias.matches(message, i)) {
+            return new ParsedCommand(contextName, alias.verb, message.getText(),
+                alias.argumentType.read(message, i + alias.words.length),
+                ParsedCommand.NO_INDEX);
+          }
+        }
+      }
+
+      if (this.indexVerb != null && isIndex(word)) {
+        return new ParsedCommand(contextName, this.indexVerb, message.getText(), word,
+            Integer.parseInt(word));
+      }
+    }
+
+    return new ParsedCommand(contextName, this.defaultVerb, message.getText(), "",
+        ParsedCommand.NO_INDEX);
+  }
+
+  /**
+   * Whether the word is a number that fits an int
+   * @param word
+   * @return
+   */
+  private static boolean isIndex(String word) {
+    if (word.length() > 9) {
+      return false;
+    }
+    for (int i = 0; i < word.length(); i++) {
+      if (word.charAt(i) < '0' || word.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * One way of typing a verb
+   */
+  private static class Alias {
+
+    private final String verb;
+    private final ArgumentType argumentType;
+    private final String[] words;
+
+    private Alias(String verb, ArgumentType argumentType, String[] words) {
+      this.verb = verb;
+      this.argumentType = argumentType;
+      this.words = words;
+    }
+
+    private boolean matches(TokenizedMessage message, int start) {
+      if (start + this.words.length > message.size()) {
+        return false;
+      }
+      for (int i = 0; i < this.words.length; i++) {
+        if (!this.words[i].equals(message.getLowerCaseWord(start + i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.commands;
+
+/**
+ * A message parsed once into a context's command: the verb, e.g. 'SUBREDDIT',
+ * and its argument read as the verb's ArgumentType, e.g. 'java'
+ */
+
+public final class ParsedCommand {
+
+  //For commands without a number
+  public static final int NO_INDEX = -1;
+
+  private final String contextName;
+  private final String verb;
+  private final String text;
+  private final String argument;
+  private final int index;
+
+  public ParsedCommand(String contextName, String verb, String text, String argument,
+      int index) {
+    this.contextName = contextName;
+    this.verb = verb;
+    this.text = text;
+    this.argument = argument;
+    this.index = index;
+  }
+
+  public String getContextName() {
+    return contextName;
+  }
+
+  /**
+   * The verb's name in the context's grammar, null if the context has no grammar
+   * @return
+   */
+  public String getVerb() {
+    return verb;
+  }
+
+  /**
+   * The whole message as it was sent
+   * @return
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * @return empty if the command has none
+   */
+  public String getArgument() {
+    return argument;
+  }
+
+  public boolean hasArgument() {
+    return !argument.isEmpty();
+  }
+
+  /**
+   * The number of a command like 'Reddit 3', NO_INDEX for other commands
+   * @return
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  @Override
+  public String toString() {
+    return "ParsedCommand{" +
+        "contextName='" + contextName + '\'' +
+        ", verb='" + verb + '\'' +
+        ", argument='" + argument + '\'' +
+        ", index=" + index +
+        '}';
+  }
+}
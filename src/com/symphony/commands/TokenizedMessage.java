@@ -0,0 +1,120 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message split into its words once, keeping each word as sent and lower case,
+ * so routing and parsing don't lowercase or scan the text again
+ * The punctuation around a word isn't part of it, so 'search, cats' and 'help?' read as typed
+ */
+
+public final class TokenizedMessage {
+
+  //Stripped from the start and end of words - not '/', '#' or '@', which start names and URLs
+  private static final String PUNCTUATION = ",.;:!?\"'()[]{}<>";
+
+  private final String text;
+  private final String lowerCaseText;
+  private final String[] words;
+  private final String[] lowerCaseWords;
+
+  private TokenizedMessage(String text, List<String> words) {
+    this.text = text;
+    this.lowerCaseText = text.toLowerCase();
+    this.words = words.toArray(new String[words.size()]);
+    this.lowerCaseWords = new String[this.words.length];
+    for (int i = 0; i < this.words.length; i++) {
+      this.lowerCaseWords[i] = this.words[i].toLowerCase();
+    }
+  }
+
+  /**
+   * Splits the text into words on whitespace, without the punctuation around them
+   * @param text
+   * @return
+   */
+  public static TokenizedMessage of(String text) {
+    List<String> words = new ArrayList<String>();
+    int wordStart = -1;
+
+    for (int i = 0; i <= text.length(); i++) {
+      boolean whitespace = i == text.length() || Character.isWhitespace(text.charAt(i));
+      if (!whitespace && wordStart < 0) {
+        wordStart = i;
+      } else if (whitespace && wordStart >= 0) {
+        addWord(words, text, wordStart, i);
+        wordStart = -1;
+      }
+    }
+    return new TokenizedMessage(text, words);
+  }
+
+  /**
+   * Adds the word between start and end without its leading and trailing punctuation,
+   * unless that is all there is to it
+   * @param words
+   * @param text
+   * @param start
+   * @param end
+   */
+  private static void addWord(List<String> words, String text, int start, int end) {
+    while (start < end && PUNCTUATION.indexOf(text.charAt(start)) >= 0) {
+      start++;
+    }
+    while (end > start && PUNCTUATION.indexOf(text.charAt(end - 1)) >= 0) {
+      end--;
+    }
+    if (start < end) {
+      words.add(text.substring(start, end));
+    }
+  }
+
+  /**
+   * The message as it was sent
+   * @return
+   */
+  public String getText() {
+    return text;
+  }
+
+  public String getLowerCaseText() {
+    return lowerCaseText;
+  }
+
+  public int size() {
+    return words.length;
+  }
+
+  public String getWord(int index) {
+    return words[index];
+  }
+
+  public String getLowerCaseWord(int index) {
+    return lowerCaseWords[index];
+  }
+}
@@ -28,13 +28,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by ryan.dsouza on 7/22/16.
  *
  * Defines specifics needed for configuring the Symphony Client
+ *
+ * Values are read from an immutable snapshot, parsed when the configuration is loaded
+ * An override file, given by the symbrowser.config system property, can be watched: each change
+ * to it is parsed into a new snapshot that is swapped in, and listeners are told to apply it
  */
 
 public class ConfigurationProvider implements IConfigurationProvider {
@@ -43,56 +51,415 @@ public class ConfigurationProvider implements IConfigurationProvider {
 
   private static final String PROP_FILE = "/symbrowser.properties";
 
-  private Properties properties = new Properties();
+  //System property with the path of a properties file whose values override the bundled ones
+  public static final String OVERRIDE_FILE_PROPERTY = "symbrowser.config";
+
+  private final Properties defaults;
+  private final File overrideFile;
+  private final List<ConfigurationListener> listeners;
+
+  private volatile ConfigurationSnapshot snapshot;
+  private ConfigurationWatcher watcher;
 
   public ConfigurationProvider() {
+    this(loadBundledProperties(), getOverrideFileFromSystemProperty());
+  }
+
+  /**
+   * Uses the given properties instead of the bundled properties file,
+   * e.g. to point the bot at a local simulator
+   * @param properties
+   */
+  public ConfigurationProvider(Properties properties) {
+    this(properties, null);
+  }
+
+  /**
+   * Uses the given properties, overridden by those in the file if there is one
+   * @param defaults
+   * @param overrideFile null for none
+   */
+  public ConfigurationProvider(Properties defaults, File overrideFile) {
+    this.defaults = defaults;
+    this.overrideFile = overrideFile;
+    this.listeners = new CopyOnWriteArrayList<ConfigurationListener>();
+
     try {
-      properties.load(getClass().getResourceAsStream(PROP_FILE));
+      this.snapshot = loadSnapshot();
+    } catch (IOException e) {
+      throw new RuntimeException("failed to load configuration from properties file: " +
+          overrideFile, e);
+    }
+  }
+
+  private static Properties loadBundledProperties() {
+    Properties properties = new Properties();
+    try {
+      properties.load(ConfigurationProvider.class.getResourceAsStream(PROP_FILE));
     } catch (IOException e) {
       throw new RuntimeException("failed to load configuration from properties file: " + PROP_FILE,
           e);
     }
+    return properties;
+  }
+
+  private static File getOverrideFileFromSystemProperty() {
+    String path = System.getProperty(OVERRIDE_FILE_PROPERTY);
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    return new File(path);
+  }
+
+  @Override
+  public File getOutboxFile() {
+    String path = snapshot.getOutboxFile();
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    return new File(path);
+  }
+
+  @Override
+  public long getSendRetryInitialDelay() {
+    return snapshot.getSendRetryInitialDelay();
+  }
+
+  @Override
+  public long getSendRetryMaxDelay() {
+    return snapshot.getSendRetryMaxDelay();
+  }
+
+  @Override
+  public int getSendMaxAttempts() {
+    return snapshot.getSendMaxAttempts();
+  }
+
+  /**
+   * The defaults, overridden by the override file's current contents if it exists
+   * @return
+   * @throws IOException
+   */
+  private ConfigurationSnapshot loadSnapshot() throws IOException {
+    Properties properties = new Properties();
+    properties.putAll(this.defaults);
+
+    if (this.overrideFile != null && this.overrideFile.exists()) {
+      InputStream overrides = new FileInputStream(this.overrideFile);
+      try {
+        properties.load(overrides);
+      } finally {
+        overrides.close();
+      }
+    }
+    return new ConfigurationSnapshot(properties);
+  }
+
+  /**
+   * Re-reads the override file and, if any value changed, swaps in the new snapshot and tells
+   * the listeners - an unreadable or invalid file is logged and the current values are kept
+   */
+  public synchronized void reload() {
+    ConfigurationSnapshot reloaded;
+    try {
+      reloaded = loadSnapshot();
+    } catch (IOException | IllegalArgumentException exception) {
+      LOG.error("Invalid configuration in {}, keeping the current one", this.overrideFile,
+          exception);
+      return;
+    }
+
+    if (reloaded.hasSameValues(this.snapshot)) {
+      return;
+    }
+    this.snapshot = reloaded;
+    LOG.info("Configuration reloaded from {}", this.overrideFile);
+
+    for (ConfigurationListener listener : this.listeners) {
+      try {
+        listener.configurationChanged(this);
+      } catch (RuntimeException exception) {
+        LOG.error("Error applying configuration change", exception);
+      }
+    }
+  }
+
+  /**
+   * Starts reloading the configuration whenever the override file changes
+   * Does nothing if there is no override file
+   */
+  public synchronized void startWatching() {
+    if (this.overrideFile == null || this.watcher != null) {
+      return;
+    }
+
+    try {
+      this.watcher = new ConfigurationWatcher(this.overrideFile, new Runnable() {
+        @Override
+        public void run() {
+          reload();
+        }
+      });
+      this.watcher.start();
+    } catch (IOException exception) {
+      LOG.error("Could not watch {} for configuration changes", this.overrideFile, exception);
+    }
+  }
+
+  public synchronized void stopWatching() {
+    if (this.watcher != null) {
+      this.watcher.close();
+      this.watcher = null;
+    }
+  }
+
+  /**
+   * The current values, consistent with each other
+   * @return
+   */
+  public ConfigurationSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  @Override
+  public void addListener(ConfigurationListener listener) {
+    this.listeners.add(listener);
+  }
+
+  @Override
+  public void removeListener(ConfigurationListener listener) {
+    this.listeners.remove(listener);
   }
 
   @Override
   public String getRedditClientId() {
-    return properties.getProperty("redditClientId");
+    return snapshot.getRedditClientId();
   }
 
   @Override
   public String getRedditSecret() {
-    return properties.getProperty("redditSecret");
+    return snapshot.getRedditSecret();
   }
 
   @Override
   public int getMaxRedditPosts() {
-    return Integer.parseInt(properties.getProperty("redditMaxPosts"));
+    return snapshot.getMaxRedditPosts();
   }
 
   @Override
   public int getMaxRedditComments() {
-    return Integer.parseInt(properties.getProperty("redditMaxComments"));
+    return snapshot.getMaxRedditComments();
+  }
+
+  @Override
+  public String getRedditApiBaseUrl() {
+    return snapshot.getRedditApiBaseUrl();
+  }
+
+  @Override
+  public String getRedditAuthBaseUrl() {
+    return snapshot.getRedditAuthBaseUrl();
   }
 
   @Override
   public int getNumWorkerThreads() {
-    return Integer.parseInt(properties.getProperty("numWorkerThreads"));
+    return snapshot.getNumWorkerThreads();
+  }
+
+  @Override
+  public int getInformationThreads() {
+    return snapshot.getInformationThreads();
+  }
+
+  @Override
+  public int getSendMessageThreads() {
+    return snapshot.getSendMessageThreads();
+  }
+
+  @Override
+  public int getMaxConcurrentSends() {
+    return snapshot.getMaxConcurrentSends();
   }
 
   @Override
   public long getRequestProcessingTimeout() {
-    return Long.parseLong(properties.getProperty("requestProcessingTimeout"));
+    return snapshot.getRequestProcessingTimeout();
+  }
+
+  @Override
+  public int getMaxMessageLength() {
+    return snapshot.getMaxMessageLength();
+  }
+
+  @Override
+  public int getCatchUpThreshold() {
+    return snapshot.getCatchUpThreshold();
+  }
+
+  @Override
+  public int getCatchUpParallelism() {
+    return snapshot.getCatchUpParallelism();
+  }
+
+  @Override
+  public boolean getCatchUpCollapseDuplicates() {
+    return snapshot.getCatchUpCollapseDuplicates();
+  }
+
+  @Override
+  public long getMessageDedupWindow() {
+    return snapshot.getMessageDedupWindow();
+  }
+
+  @Override
+  public int getMessageDedupBuckets() {
+    return snapshot.getMessageDedupBuckets();
+  }
+
+  @Override
+  public int getMessageDedupMaxIds() {
+    return snapshot.getMessageDedupMaxIds();
+  }
+
+  @Override
+  public File getMessageDedupFile() {
+    String path = snapshot.getMessageDedupFile();
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    return new File(path);
+  }
+
+  @Override
+  public int getUserDirectoryExpectedUsers() {
+    return snapshot.getUserDirectoryExpectedUsers();
+  }
+
+  @Override
+  public boolean getUserDirectoryOffHeap() {
+    return snapshot.getUserDirectoryOffHeap();
+  }
+
+  @Override
+  public int getUserDirectoryOffHeapSize() {
+    return snapshot.getUserDirectoryOffHeapSize();
+  }
+
+  @Override
+  public int getUserDirectoryMaxUsers() {
+    return snapshot.getUserDirectoryMaxUsers();
+  }
+
+  @Override
+  public long getUserDirectoryTimeToLive() {
+    return snapshot.getUserDirectoryTimeToLive();
+  }
+
+  @Override
+  public double getTracingSampleRate() {
+    return snapshot.getTracingSampleRate();
+  }
+
+  @Override
+  public File getTracingFile() {
+    String path = snapshot.getTracingFile();
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    return new File(path);
+  }
+
+  @Override
+  public File getSearchIndexDirectory() {
+    String path = snapshot.getSearchIndexDirectory();
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    return new File(path);
+  }
+
+  @Override
+  public int getSearchIndexMaxDocuments() {
+    return snapshot.getSearchIndexMaxDocuments();
+  }
+
+  @Override
+  public long getSearchIndexRefreshInterval() {
+    return snapshot.getSearchIndexRefreshInterval();
+  }
+
+  @Override
+  public long getSearchIndexCommitInterval() {
+    return snapshot.getSearchIndexCommitInterval();
+  }
+
+  @Override
+  public int getSearchMaxResults() {
+    return snapshot.getSearchMaxResults();
+  }
+
+  @Override
+  public int getWatchThreads() {
+    return snapshot.getWatchThreads();
+  }
+
+  @Override
+  public long getWatchMinInterval() {
+    return snapshot.getWatchMinInterval();
+  }
+
+  @Override
+  public long getWatchMaxInterval() {
+    return snapshot.getWatchMaxInterval();
+  }
+
+  @Override
+  public int getAdminPort() {
+    Integer port = snapshot.getAdminPort();
+    return port == null ? -1 : port;
+  }
+
+  @Override
+  public String getAdminHost() {
+    return snapshot.getAdminHost();
+  }
+
+  @Override
+  public long getSymphonySessionLifetime() {
+    return snapshot.getSymphonySessionLifetime();
+  }
+
+  @Override
+  public long getShutdownGracePeriod() {
+    return snapshot.getShutdownGracePeriod();
+  }
+
+  @Override
+  public File getPendingWorkFile() {
+    String path = snapshot.getPendingWorkFile();
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    return new File(path);
   }
 
   @Override
   public long getBotUserId() {
-    return Long.parseLong(properties.getProperty("myUserId"));
+    return snapshot.getBotUserId();
+  }
+
+  @Override
+  public String getStartupNotificationEmail() {
+    return snapshot.getStartupNotificationEmail();
   }
 
   @Override
   public File getCertificateFile() {
-    String classpathResource = properties.getProperty("certificateResource");
-    LOG.info("attempting to load certificate file as classpath resource at " + classpathResource);
+    String classpathResource = snapshot.getCertificateResource();
+    if (classpathResource == null || classpathResource.isEmpty()) {
+      return null;
+    }
+    LOG.info("attempting to load certificate file as classpath resource at {}", classpathResource);
     File certificate = new File(getClass().getResource(classpathResource).getFile());
     if (!certificate.exists()) {
       throw new RuntimeException("no certificate found at " + certificate.getAbsolutePath());
@@ -102,56 +469,161 @@ public class ConfigurationProvider implements IConfigurationProvider {
 
   @Override
   public String getSymphonyKeystorePassword() {
-    return properties.getProperty("keystorePassword");
+    return snapshot.getKeystorePassword();
   }
 
   @Override
   public String getSymphonyKeystoreType() {
-    return properties.getProperty("keystoreType");
+    return snapshot.getKeystoreType();
   }
 
   @Override
   public String getSymphonyWebControllerUrl() {
-    return properties.getProperty("symphonyWebControllerUrl");
+    return snapshot.getSymphonyWebControllerUrl();
   }
 
   @Override
   public String getSymphonyBaseUrl() {
-    return properties.getProperty("symphonyBaseUrl");
+    return snapshot.getSymphonyBaseUrl();
   }
 
   @Override
   public String getSymphonyUserInfoPath() {
-    return getSymphonyWebControllerUrl() + properties.getProperty("pathUserInfo");
+    return snapshot.getSymphonyUserInfoPath();
   }
 
   @Override
   public String getSymphonyPodPath() {
-    return getSymphonyBaseUrl() + properties.getProperty("pathPod");
+    return snapshot.getSymphonyPodPath();
   }
 
   @Override
   public String getSymphonyAgentPath() {
-    return getSymphonyBaseUrl() + properties.getProperty("pathAgent");
+    return snapshot.getSymphonyAgentPath();
   }
 
   @Override
   public String getSymphonySbePath() {
-    return getSymphonyBaseUrl() + properties.getProperty("pathSessionAuth");
+    return snapshot.getSymphonySbePath();
   }
 
   @Override
   public String getSymphonyKeyManagerPath() {
-    return getSymphonyBaseUrl() + properties.getProperty("pathKeyAuth");
+    return snapshot.getSymphonyKeyManagerPath();
   }
 
   @Override
   public String getDiffbotApiKey() {
-    return properties.getProperty("diffbotApiKey");
+    return snapshot.getDiffbotApiKey();
+  }
+
+  @Override
+  public String getDiffbotBaseUrl() {
+    return snapshot.getDiffbotBaseUrl();
   }
 
   @Override
   public int getDiffbotMaxArticles() {
-    return Integer.parseInt(properties.getProperty("diffbotMaxArticles"));
+    return snapshot.getDiffbotMaxArticles();
+  }
+
+  @Override
+  public long getDiffbotCacheTime() {
+    return snapshot.getDiffbotCacheTime();
+  }
+
+  @Override
+  public int getDiffbotCacheSize() {
+    return snapshot.getDiffbotCacheSize();
+  }
+
+  @Override
+  public long getRedditCacheTime() {
+    return snapshot.getRedditCacheTime();
+  }
+
+  @Override
+  public int getRedditCacheSize() {
+    return snapshot.getRedditCacheSize();
+  }
+
+  @Override
+  public long getImStreamCacheTime() {
+    return snapshot.getImStreamCacheTime();
+  }
+
+  @Override
+  public int getImStreamCacheSize() {
+    return snapshot.getImStreamCacheSize();
+  }
+
+  @Override
+  public long getRoomSearchCacheTime() {
+    return snapshot.getRoomSearchCacheTime();
+  }
+
+  @Override
+  public int getRoomSearchCacheSize() {
+    return snapshot.getRoomSearchCacheSize();
+  }
+
+  @Override
+  public int getRenderedMessageCacheSize() {
+    return snapshot.getRenderedMessageCacheSize();
+  }
+
+  @Override
+  public long getBrowsingStateTime() {
+    return snapshot.getBrowsingStateTime();
+  }
+
+  @Override
+  public int getBrowsingStateSize() {
+    return snapshot.getBrowsingStateSize();
+  }
+
+  @Override
+  public double getHedgePercentile() {
+    return snapshot.getHedgePercentile();
+  }
+
+  @Override
+  public double getHedgeBudget() {
+    return snapshot.getHedgeBudget();
+  }
+
+  @Override
+  public double getUpstreamRateLimit(String upstream) {
+    return snapshot.getUpstreamSettings(upstream).getRateLimit();
+  }
+
+  @Override
+  public int getUpstreamMaxConcurrentCalls(String upstream) {
+    return snapshot.getUpstreamSettings(upstream).getMaxConcurrentCalls();
+  }
+
+  @Override
+  public int getUpstreamMinConcurrentCalls(String upstream) {
+    return snapshot.getUpstreamSettings(upstream).getMinConcurrentCalls();
+  }
+
+  @Override
+  public long getUpstreamMaxQueueWait(String upstream) {
+    return snapshot.getUpstreamSettings(upstream).getMaxQueueWait();
+  }
+
+  @Override
+  public long getUpstreamTimeout(String upstream) {
+    return snapshot.getUpstreamSettings(upstream).getTimeout();
+  }
+
+  @Override
+  public int getCircuitBreakerFailureThreshold(String upstream) {
+    return snapshot.getUpstreamSettings(upstream).getCircuitBreakerThreshold();
+  }
+
+  @Override
+  public long getCircuitBreakerOpenTime(String upstream) {
+    return snapshot.getUpstreamSettings(upstream).getCircuitBreakerOpenTime();
   }
 }
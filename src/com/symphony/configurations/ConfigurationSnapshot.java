@@ -0,0 +1,678 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.configurations;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The configuration at one point in time, parsed once into typed values
+ * Immutable - a reload builds a new snapshot and swaps it in, so readers never see a mix of
+ * old and new values and never parse anything on the request path
+ */
+
+public final class ConfigurationSnapshot {
+
+  private static final String RATE_LIMIT_SUFFIX = "RateLimit";
+
+  private final Properties source;
+
+  private final String redditClientId;
+  private final String redditSecret;
+  private final int maxRedditPosts;
+  private final int maxRedditComments;
+  private final String redditApiBaseUrl;
+  private final String redditAuthBaseUrl;
+  private final long redditCacheTime;
+  private final int redditCacheSize;
+  private final long imStreamCacheTime;
+  private final int imStreamCacheSize;
+  private final long roomSearchCacheTime;
+  private final int roomSearchCacheSize;
+
+  private final int numWorkerThreads;
+  private final int informationThreads;
+  private final int sendMessageThreads;
+  private final int maxConcurrentSends;
+  private final long requestProcessingTimeout;
+  private final int maxMessageLength;
+
+  private final int catchUpThreshold;
+  private final int catchUpParallelism;
+  private final boolean catchUpCollapseDuplicates;
+
+  private final long messageDedupWindow;
+  private final int messageDedupBuckets;
+  private final int messageDedupMaxIds;
+  private final String messageDedupFile;
+
+  private final int userDirectoryExpectedUsers;
+  private final boolean userDirectoryOffHeap;
+  private final int userDirectoryOffHeapSize;
+  private final int userDirectoryMaxUsers;
+  private final long userDirectoryTimeToLive;
+
+  private final double tracingSampleRate;
+  private final String tracingFile;
+
+  private final String searchIndexDirectory;
+  private final int searchIndexMaxDocuments;
+  private final long searchIndexRefreshInterval;
+  private final long searchIndexCommitInterval;
+  private final int searchMaxResults;
+
+  private final int watchThreads;
+  private final long watchMinInterval;
+  private final long watchMaxInterval;
+
+  private final Integer adminPort;
+  private final String adminHost;
+  private final long symphonySessionLifetime;
+
+  private final long shutdownGracePeriod;
+  private final String pendingWorkFile;
+
+  private final String outboxFile;
+  private final long sendRetryInitialDelay;
+  private final long sendRetryMaxDelay;
+  private final int sendMaxAttempts;
+
+  private final Long botUserId;
+  private final String startupNotificationEmail;
+  private final String certificateResource;
+  private final String keystorePassword;
+  private final String keystoreType;
+
+  private final String symphonyBaseUrl;
+  private final String symphonyWebControllerUrl;
+  private final String symphonyUserInfoPath;
+  private final String symphonyPodPath;
+  private final String symphonyAgentPath;
+  private final String symphonySbePath;
+  private final String symphonyKeyManagerPath;
+
+  private final String diffbotApiKey;
+  private final String diffbotBaseUrl;
+  private final int diffbotMaxArticles;
+  private final long diffbotCacheTime;
+  private final int diffbotCacheSize;
+
+  private final int renderedMessageCacheSize;
+  private final long browsingStateTime;
+  private final int browsingStateSize;
+
+  private final Map<String, UpstreamSettings> upstreams;
+  private final double hedgePercentile;
+  private final double hedgeBudget;
+
+  /**
+   * Parses every value up front
+   * @param properties copied, so later changes to it don't leak into the snapshot
+   * @throws IllegalArgumentException naming the key of a missing or malformed number
+   */
+  public ConfigurationSnapshot(Properties properties) {
+    this.source = new Properties();
+    this.source.putAll(properties);
+
+    this.redditClientId = getString("redditClientId");
+    this.redditSecret = getString("redditSecret");
+    this.maxRedditPosts = getInt("redditMaxPosts");
+    this.maxRedditComments = getInt("redditMaxComments");
+    this.redditApiBaseUrl = getString("redditApiBaseUrl");
+    this.redditAuthBaseUrl = getString("redditAuthBaseUrl");
+    this.redditCacheTime = getLong("redditCacheTime");
+    this.redditCacheSize = getInt("redditCacheSize");
+    this.imStreamCacheTime = getLong("imStreamCacheTime");
+    this.imStreamCacheSize = getInt("imStreamCacheSize");
+    this.roomSearchCacheTime = getLong("roomSearchCacheTime");
+    this.roomSearchCacheSize = getInt("roomSearchCacheSize");
+
+    this.numWorkerThreads = getInt("numWorkerThreads");
+    this.informationThreads = getInt("informationThreads");
+    this.sendMessageThreads = getInt("sendMessageThreads");
+    this.maxConcurrentSends = getInt("maxConcurrentSends");
+    this.requestProcessingTimeout = getLong("requestProcessingTimeout");
+    this.maxMessageLength = getInt("maxMessageLength");
+
+    this.catchUpThreshold = getInt("catchUpThreshold");
+    this.catchUpParallelism = getInt("catchUpParallelism");
+    this.catchUpCollapseDuplicates = getBoolean("catchUpCollapseDuplicates");
+
+    this.messageDedupWindow = getLong("messageDedupWindow");
+    this.messageDedupBuckets = getInt("messageDedupBuckets");
+    this.messageDedupMaxIds = getInt("messageDedupMaxIds");
+    this.messageDedupFile = getString("messageDedupFile");
+
+    this.userDirectoryExpectedUsers = getInt("userDirectoryExpectedUsers");
+    this.userDirectoryOffHeap = getBoolean("userDirectoryOffHeap");
+    this.userDirectoryOffHeapSize = getInt("userDirectoryOffHeapSize");
+    this.userDirectoryMaxUsers = getInt("userDirectoryMaxUsers");
+    this.userDirectoryTimeToLive = getLong("userDirectoryTimeToLive");
+
+    this.tracingSampleRate = getDouble("tracingSampleRate");
+    this.tracingFile = getString("tracingFile");
+
+    this.searchIndexDirectory = getString("searchIndexDirectory");
+    this.searchIndexMaxDocuments = getInt("searchIndexMaxDocuments");
+    this.searchIndexRefreshInterval = getLong("searchIndexRefreshInterval");
+    this.searchIndexCommitInterval = getLong("searchIndexCommitInterval");
+    this.searchMaxResults = getInt("searchMaxResults");
+
+    this.watchThreads = getInt("watchThreads");
+    this.watchMinInterval = getLong("watchMinInterval");
+    this.watchMaxInterval = getLong("watchMaxInterval");
+
+    this.adminPort = getOptionalInt("adminPort");
+    this.adminHost = getString("adminHost");
+    this.symphonySessionLifetime = getLong("symphonySessionLifetime");
+
+    this.shutdownGracePeriod = getLong("shutdownGracePeriod");
+    this.pendingWorkFile = getString("pendingWorkFile");
+
+    this.outboxFile = getString("outboxFile");
+    this.sendRetryInitialDelay = getLong("sendRetryInitialDelay");
+    this.sendRetryMaxDelay = getLong("sendRetryMaxDelay");
+    this.sendMaxAttempts = getInt("sendMaxAttempts");
+
+    //Left as a placeholder when only the contexts are being run, so it fails when used instead
+    this.botUserId = getOptionalLong("myUserId");
+    this.startupNotificationEmail = getString("startupNotificationEmail");
+    this.certificateResource = getString("certificateResource");
+    this.keystorePassword = getString("keystorePassword");
+    this.keystoreType = getString("keystoreType");
+
+    this.symphonyBaseUrl = getString("symphonyBaseUrl");
+    this.symphonyWebControllerUrl = getString("symphonyWebControllerUrl");
+    this.symphonyUserInfoPath = this.symphonyWebControllerUrl + getString("pathUserInfo");
+    this.symphonyPodPath = this.symphonyBaseUrl + getString("pathPod");
+    this.symphonyAgentPath = this.symphonyBaseUrl + getString("pathAgent");
+    this.symphonySbePath = this.symphonyBaseUrl + getString("pathSessionAuth");
+    this.symphonyKeyManagerPath = this.symphonyBaseUrl + getString("pathKeyAuth");
+
+    this.diffbotApiKey = getString("diffbotApiKey");
+    this.diffbotBaseUrl = getString("diffbotBaseUrl");
+    this.diffbotMaxArticles = getInt("diffbotMaxArticles");
+    this.diffbotCacheTime = getLong("diffbotCacheTime");
+    this.diffbotCacheSize = getInt("diffbotCacheSize");
+
+    this.renderedMessageCacheSize = getInt("renderedMessageCacheSize");
+    this.browsingStateTime = getLong("browsingStateTime");
+    this.browsingStateSize = getInt("browsingStateSize");
+
+    //Every key ending in RateLimit names an upstream, e.g. redditRateLimit
+    Map<String, UpstreamSettings> upstreams = new HashMap<String, UpstreamSettings>();
+    for (String key : this.source.stringPropertyNames()) {
+      if (key.endsWith(RATE_LIMIT_SUFFIX) && key.length() > RATE_LIMIT_SUFFIX.length()) {
+        String upstream = key.substring(0, key.length() - RATE_LIMIT_SUFFIX.length());
+        upstreams.put(upstream, new UpstreamSettings(upstream));
+      }
+    }
+    this.upstreams = Collections.unmodifiableMap(upstreams);
+    this.hedgePercentile = getDouble("hedgePercentile");
+    this.hedgeBudget = getDouble("hedgeBudget");
+  }
+
+  private String getString(String key) {
+    return this.source.getProperty(key);
+  }
+
+  private int getInt(String key) {
+    try {
+      return Integer.parseInt(requireValue(key));
+    } catch (NumberFormatException exception) {
+      throw new IllegalArgumentException("invalid integer for " + key + ": " + getString(key));
+    }
+  }
+
+  private long getLong(String key) {
+    try {
+      return Long.parseLong(requireValue(key));
+    } catch (NumberFormatException exception) {
+      throw new IllegalArgumentException("invalid number for " + key + ": " + getString(key));
+    }
+  }
+
+  /**
+   * @param key
+   * @return null if the value is empty
+   * @throws IllegalArgumentException if it isn't an integer
+   */
+  private Integer getOptionalInt(String key) {
+    String value = getString(key);
+    if (value == null || value.trim().isEmpty()) {
+      return null;
+    }
+    return getInt(key);
+  }
+
+  private Long getOptionalLong(String key) {
+    try {
+      return getLong(key);
+    } catch (IllegalArgumentException exception) {
+      return null;
+    }
+  }
+
+  private double getDouble(String key) {
+    try {
+      return Double.parseDouble(requireValue(key));
+    } catch (NumberFormatException exception) {
+      throw new IllegalArgumentException("invalid number for " + key + ": " + getString(key));
+    }
+  }
+
+  private boolean getBoolean(String key) {
+    return Boolean.parseBoolean(getString(key));
+  }
+
+  private String requireValue(String key) {
+    String value = getString(key);
+    if (value == null) {
+      throw new IllegalArgumentException("missing configuration value: " + key);
+    }
+    return value.trim();
+  }
+
+  /**
+   * The properties this snapshot was parsed from
+   * @return a copy
+   */
+  public Properties getProperties() {
+    Properties properties = new Properties();
+    properties.putAll(this.source);
+    return properties;
+  }
+
+  /**
+   * Returns true if the other snapshot was parsed from exactly the same values
+   * @param other
+   * @return
+   */
+  public boolean hasSameValues(ConfigurationSnapshot other) {
+    return other != null && this.source.equals(other.source);
+  }
+
+  public String getRedditClientId() {
+    return redditClientId;
+  }
+
+  public String getRedditSecret() {
+    return redditSecret;
+  }
+
+  public int getMaxRedditPosts() {
+    return maxRedditPosts;
+  }
+
+  public int getMaxRedditComments() {
+    return maxRedditComments;
+  }
+
+  public String getRedditApiBaseUrl() {
+    return redditApiBaseUrl;
+  }
+
+  public String getRedditAuthBaseUrl() {
+    return redditAuthBaseUrl;
+  }
+
+  public long getRedditCacheTime() {
+    return redditCacheTime;
+  }
+
+  public int getRedditCacheSize() {
+    return redditCacheSize;
+  }
+
+  public long getImStreamCacheTime() {
+    return imStreamCacheTime;
+  }
+
+  public int getImStreamCacheSize() {
+    return imStreamCacheSize;
+  }
+
+  public long getRoomSearchCacheTime() {
+    return roomSearchCacheTime;
+  }
+
+  public int getRoomSearchCacheSize() {
+    return roomSearchCacheSize;
+  }
+
+  public int getNumWorkerThreads() {
+    return numWorkerThreads;
+  }
+
+  public int getInformationThreads() {
+    return informationThreads;
+  }
+
+  public int getSendMessageThreads() {
+    return sendMessageThreads;
+  }
+
+  public int getMaxConcurrentSends() {
+    return maxConcurrentSends;
+  }
+
+  public long getRequestProcessingTimeout() {
+    return requestProcessingTimeout;
+  }
+
+  public int getMaxMessageLength() {
+    return maxMessageLength;
+  }
+
+  public int getCatchUpThreshold() {
+    return catchUpThreshold;
+  }
+
+  public int getCatchUpParallelism() {
+    return catchUpParallelism;
+  }
+
+  public boolean getCatchUpCollapseDuplicates() {
+    return catchUpCollapseDuplicates;
+  }
+
+  public long getMessageDedupWindow() {
+    return messageDedupWindow;
+  }
+
+  public int getMessageDedupBuckets() {
+    return messageDedupBuckets;
+  }
+
+  public int getMessageDedupMaxIds() {
+    return messageDedupMaxIds;
+  }
+
+  public String getMessageDedupFile() {
+    return messageDedupFile;
+  }
+
+  public int getUserDirectoryExpectedUsers() {
+    return userDirectoryExpectedUsers;
+  }
+
+  public boolean getUserDirectoryOffHeap() {
+    return userDirectoryOffHeap;
+  }
+
+  public int getUserDirectoryOffHeapSize() {
+    return userDirectoryOffHeapSize;
+  }
+
+  public int getUserDirectoryMaxUsers() {
+    return userDirectoryMaxUsers;
+  }
+
+  public long getUserDirectoryTimeToLive() {
+    return userDirectoryTimeToLive;
+  }
+
+  public double getTracingSampleRate() {
+    return tracingSampleRate;
+  }
+
+  public String getTracingFile() {
+    return tracingFile;
+  }
+
+  public String getSearchIndexDirectory() {
+    return searchIndexDirectory;
+  }
+
+  public int getSearchIndexMaxDocuments() {
+    return searchIndexMaxDocuments;
+  }
+
+  public long getSearchIndexRefreshInterval() {
+    return searchIndexRefreshInterval;
+  }
+
+  public long getSearchIndexCommitInterval() {
+    return searchIndexCommitInterval;
+  }
+
+  public int getSearchMaxResults() {
+    return searchMaxResults;
+  }
+
+  public int getWatchThreads() {
+    return watchThreads;
+  }
+
+  public long getWatchMinInterval() {
+    return watchMinInterval;
+  }
+
+  public long getWatchMaxInterval() {
+    return watchMaxInterval;
+  }
+
+  /**
+   * @return null if there is no admin endpoint
+   */
+  public Integer getAdminPort() {
+    return adminPort;
+  }
+
+  public String getAdminHost() {
+    return adminHost;
+  }
+
+  public long getSymphonySessionLifetime() {
+    return symphonySessionLifetime;
+  }
+
+  public long getShutdownGracePeriod() {
+    return shutdownGracePeriod;
+  }
+
+  public String getPendingWorkFile() {
+    return pendingWorkFile;
+  }
+
+  public String getOutboxFile() {
+    return outboxFile;
+  }
+
+  public long getSendRetryInitialDelay() {
+    return sendRetryInitialDelay;
+  }
+
+  public long getSendRetryMaxDelay() {
+    return sendRetryMaxDelay;
+  }
+
+  public int getSendMaxAttempts() {
+    return sendMaxAttempts;
+  }
+
+  /**
+   * @return
+   * @throws IllegalStateException if myUserId is missing or not a number
+   */
+  public long getBotUserId() {
+    if (botUserId == null) {
+      throw new IllegalStateException("invalid user ID for myUserId: " + getString("myUserId"));
+    }
+    return botUserId;
+  }
+
+  public String getStartupNotificationEmail() {
+    return startupNotificationEmail;
+  }
+
+  public String getCertificateResource() {
+    return certificateResource;
+  }
+
+  public String getKeystorePassword() {
+    return keystorePassword;
+  }
+
+  public String getKeystoreType() {
+    return keystoreType;
+  }
+
+  public String getSymphonyBaseUrl() {
+    return symphonyBaseUrl;
+  }
+
+  public String getSymphonyWebControllerUrl() {
+    return symphonyWebControllerUrl;
+  }
+
+  public String getSymphonyUserInfoPath() {
+    return symphonyUserInfoPath;
+  }
+
+  public String getSymphonyPodPath() {
+    return symphonyPodPath;
+  }
+
+  public String getSymphonyAgentPath() {
+    return symphonyAgentPath;
+  }
+
+  public String getSymphonySbePath() {
+    return symphonySbePath;
+  }
+
+  public String getSymphonyKeyManagerPath() {
+    return symphonyKeyManagerPath;
+  }
+
+  public String getDiffbotApiKey() {
+    return diffbotApiKey;
+  }
+
+  public String getDiffbotBaseUrl() {
+    return diffbotBaseUrl;
+  }
+
+  public int getDiffbotMaxArticles() {
+    return diffbotMaxArticles;
+  }
+
+  public long getDiffbotCacheTime() {
+    return diffbotCacheTime;
+  }
+
+  public int getDiffbotCacheSize() {
+    return diffbotCacheSize;
+  }
+
+  public int getRenderedMessageCacheSize() {
+    return renderedMessageCacheSize;
+  }
+
+  public long getBrowsingStateTime() {
+    return browsingStateTime;
+  }
+
+  public int getBrowsingStateSize() {
+    return browsingStateSize;
+  }
+
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  public double getHedgeBudget() {
+    return hedgeBudget;
+  }
+
+  /**
+   * Resilience settings of one upstream
+   * @param upstream the upstream's key, e.g. reddit
+   * @return
+   * @throws IllegalArgumentException if that upstream isn't configured
+   */
+  public UpstreamSettings getUpstreamSettings(String upstream) {
+    UpstreamSettings settings = this.upstreams.get(upstream);
+    if (settings == null) {
+      throw new IllegalArgumentException("no settings for upstream: " + upstream);
+    }
+    return settings;
+  }
+
+  /**
+   * Rate limit, concurrency cap, timeout and circuit breaker settings of one upstream
+   */
+  public final class UpstreamSettings {
+
+    private final double rateLimit;
+    private final int maxConcurrentCalls;
+    private final int minConcurrentCalls;
+    private final long maxQueueWait;
+    private final long timeout;
+    private final int circuitBreakerThreshold;
+    private final long circuitBreakerOpenTime;
+
+    private UpstreamSettings(String upstream) {
+      this.rateLimit = getDouble(upstream + RATE_LIMIT_SUFFIX);
+      this.maxConcurrentCalls = getInt(upstream + "MaxConcurrentCalls");
+      this.minConcurrentCalls = getInt(upstream + "MinConcurrentCalls");
+      this.maxQueueWait = getLong(upstream + "MaxQueueWait");
+      this.timeout = getLong(upstream + "Timeout");
+      this.circuitBreakerThreshold = getInt(upstream + "CircuitBreakerThreshold");
+      this.circuitBreakerOpenTime = getLong(upstream + "CircuitBreakerOpenTime");
+    }
+
+    public double getRateLimit() {
+      return rateLimit;
+    }
+
+    public int getMaxConcurrentCalls() {
+      return maxConcurrentCalls;
+    }
+
+    public int getMinConcurrentCalls() {
+      return minConcurrentCalls;
+    }
+
+    public long getMaxQueueWait() {
+      return maxQueueWait;
+    }
+
+    public long getTimeout() {
+      return timeout;
+    }
+
+    public int getCircuitBreakerThreshold() {
+      return circuitBreakerThreshold;
+    }
+
+    public long getCircuitBreakerOpenTime() {
+      return circuitBreakerOpenTime;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.configurations;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a single file and runs a callback when it is created or modified
+ * Events are debounced, since editors often save a file in several writes
+ */
+
+public class ConfigurationWatcher implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ConfigurationWatcher.class);
+
+  //How long the file must go without changing before the callback runs
+  private static final long QUIET_PERIOD = 250;
+
+  private final Path file;
+  private final Runnable onChange;
+  private final WatchService watchService;
+  private final Thread thread;
+
+  public ConfigurationWatcher(File file, Runnable onChange) throws IOException {
+    this.file = file.getAbsoluteFile().toPath();
+    this.onChange = onChange;
+
+    //Only directories can be watched, and replacing the file (as many editors do) is a create
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.file.getParent().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
+
+    this.thread = new Thread(this, "configuration-watcher");
+    this.thread.setDaemon(true);
+  }
+
+  public void start() {
+    this.thread.start();
+    LOG.info("Watching {} for configuration changes", this.file);
+  }
+
+  public void close() {
+    try {
+      this.watchService.close();
+    } catch (IOException exception) {
+      LOG.warn("Error closing configuration watcher", exception);
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        if (!isFileChanged(this.watchService.take())) {
+          continue;
+        }
+
+        WatchKey next;
+        while ((next = this.watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null) {
+          isFileChanged(next);
+        }
+
+        try {
+          this.onChange.run();
+        } catch (RuntimeException exception) {
+          LOG.error("Error applying configuration change", exception);
+        }
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException exception) {
+      //Closed, stop watching
+    }
+  }
+
+  /**
+   * Consumes the key's events and re-arms it
+   * @param key
+   * @return true if one of them was for the watched file, or events were lost
+   */
+  private boolean isFileChanged(WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW
+          || this.file.getFileName().equals(event.context())) {
+        changed = true;
+      }
+    }
+    key.reset();
+    return changed;
+  }
+}
@@ -43,23 +43,182 @@ public interface IConfigurationProvider {
 
   int getMaxRedditComments();
 
+  /**
+   * Base URLs for Reddit's OAuth API and for getting its access tokens,
+   * configurable so a local fixture server can stand in for Reddit
+   */
+  String getRedditApiBaseUrl();
+
+  String getRedditAuthBaseUrl();
+
   /**
    * Number of working threads
    */
   int getNumWorkerThreads();
 
+  /**
+   * Number of threads getting responses from contexts, and sending messages to Symphony
+   */
+  int getInformationThreads();
+
+  int getSendMessageThreads();
+
+  /**
+   * How many streams a broadcast sends to at once - all sends are limited by the agent's guard
+   */
+  int getMaxConcurrentSends();
+
   /**
    * How much time, in milliseconds, to allow for request processing before giving up
    */
   long getRequestProcessingTimeout();
 
+  /**
+   * Maximum length, in characters, of a single rendered message sent to Symphony
+   */
+  int getMaxMessageLength();
+
+  /**
+   * Datafeed batches of at least this many messages are processed in catch-up mode:
+   * in parallel across streams, in order within each stream
+   */
+  int getCatchUpThreshold();
+
+  int getCatchUpParallelism();
+
+  /**
+   * Whether catch-up mode drops a command repeated back to back in the same stream
+   */
+  boolean getCatchUpCollapseDuplicates();
+
+  /**
+   * How long, in milliseconds, datafeed message IDs are remembered to drop replays,
+   * in how many buckets, and at most how many IDs
+   */
+  long getMessageDedupWindow();
+
+  int getMessageDedupBuckets();
+
+  int getMessageDedupMaxIds();
+
+  /**
+   * File the recent message IDs are kept in across restarts, null to keep them in memory only
+   */
+  File getMessageDedupFile();
+
+  /**
+   * Users looked up are kept in a local directory - sized for this many users,
+   * and optionally kept off-heap in a buffer of this many bytes for very large pods
+   */
+  int getUserDirectoryExpectedUsers();
+
+  boolean getUserDirectoryOffHeap();
+
+  int getUserDirectoryOffHeapSize();
+
+  /**
+   * The most users the directory keeps, and how long (ms) a user is kept before it is
+   * looked up again, so renamed users are picked up
+   */
+  int getUserDirectoryMaxUsers();
+
+  long getUserDirectoryTimeToLive();
+
+  /**
+   * Fraction (0 to 1) of inbound messages traced, and the file their spans are appended to as
+   * JSON lines - null if tracing is off
+   */
+  double getTracingSampleRate();
+
+  File getTracingFile();
+
+  /**
+   * Directory of the full-text index of fetched articles and Reddit posts, null if there is none,
+   * at most how many are kept, and how often (ms) new ones become searchable and are committed
+   */
+  File getSearchIndexDirectory();
+
+  int getSearchIndexMaxDocuments();
+
+  long getSearchIndexRefreshInterval();
+
+  long getSearchIndexCommitInterval();
+
+  /**
+   * Number of results a search returns
+   */
+  int getSearchMaxResults();
+
+  /**
+   * Number of threads polling watched sources, and the range (ms) each source's polling
+   * interval adapts within
+   */
+  int getWatchThreads();
+
+  long getWatchMinInterval();
+
+  long getWatchMaxInterval();
+
+  /**
+   * Port and host of the read-only admin diagnostics endpoint, -1 if there is none
+   */
+  int getAdminPort();
+
+  String getAdminHost();
+
+  /**
+   * How long, in milliseconds, the pod's session tokens last
+   * Only used to report when they expire
+   */
+  long getSymphonySessionLifetime();
+
+  /**
+   * How long, in milliseconds, requests being answered and messages being sent
+   * get to finish when the bot shuts down
+   */
+  long getShutdownGracePeriod();
+
+  /**
+   * Where requests and messages that didn't finish before shutdown are saved,
+   * to be answered and sent on the next start - null to drop them
+   */
+  File getPendingWorkFile();
+
+  /**
+   * The journal of messages being sent, so a message the agent failed to take
+   * is still sent after a restart - null to only keep them in memory
+   * Only read when the bot starts
+   */
+  File getOutboxFile();
+
+  /**
+   * How long, in milliseconds, to wait before sending a message again after the first failure
+   * Doubles with each failure, up to getSendRetryMaxDelay
+   */
+  long getSendRetryInitialDelay();
+
+  /**
+   * The longest wait, in milliseconds, between attempts to send a message
+   */
+  long getSendRetryMaxDelay();
+
+  /**
+   * How many times a message is tried before it is dropped
+   */
+  int getSendMaxAttempts();
+
   /**
    * The bot's user ID
    */
   long getBotUserId();
 
   /**
-   * Name of certificate file for authentication with Symphony
+   * Who the bot tells it is up and running, empty for no one
+   */
+  String getStartupNotificationEmail();
+
+  /**
+   * Name of certificate file for authentication with Symphony, null if none is configured
    */
   File getCertificateFile();
 
@@ -95,5 +254,94 @@ public interface IConfigurationProvider {
    */
   String getDiffbotApiKey();
 
+  /**
+   * Base URL of the Diffbot API, e.g. http://api.diffbot.com
+   */
+  String getDiffbotBaseUrl();
+
   int getDiffbotMaxArticles();
+
+  /**
+   * How long, in milliseconds, fetched content is reused and how many entries are kept
+   */
+  long getDiffbotCacheTime();
+
+  int getDiffbotCacheSize();
+
+  long getRedditCacheTime();
+
+  int getRedditCacheSize();
+
+  /**
+   * How long, in milliseconds, the IM stream with a set of users is reused, and how many are kept
+   */
+  long getImStreamCacheTime();
+
+  int getImStreamCacheSize();
+
+  /**
+   * How long, in milliseconds, the room search results of a query are reused, and how many
+   * queries are kept - all the pages of a query expire together
+   */
+  long getRoomSearchCacheTime();
+
+  int getRoomSearchCacheSize();
+
+  /**
+   * Number of sources (listings, articles) whose rendered messages are cached per context
+   */
+  int getRenderedMessageCacheSize();
+
+  /**
+   * How long, in milliseconds, a context remembers what a stream browsed after the stream last
+   * used it, and for how many streams
+   */
+  long getBrowsingStateTime();
+
+  int getBrowsingStateSize();
+
+  /**
+   * Resilience settings per upstream, keyed by upstream name
+   * (e.g. reddit, diffbot, symphonyAgent, symphonyPod)
+   */
+  double getUpstreamRateLimit(String upstream);
+
+  int getUpstreamMaxConcurrentCalls(String upstream);
+
+  /**
+   * The fewest concurrent calls the upstream is allowed when its latency cuts the limit down
+   * The same as getUpstreamMaxConcurrentCalls for a fixed limit
+   */
+  int getUpstreamMinConcurrentCalls(String upstream);
+
+  /**
+   * How long (ms) a call waits for one of the concurrent calls to finish before it is refused,
+   * so calls over a limit that was just cut queue briefly instead of failing at once
+   */
+  long getUpstreamMaxQueueWait(String upstream);
+
+  long getUpstreamTimeout(String upstream);
+
+  int getCircuitBreakerFailureThreshold(String upstream);
+
+  long getCircuitBreakerOpenTime(String upstream);
+
+  /**
+   * The latency percentile (e.g. 95) of recent calls after which a slow read is made again,
+   * taking whichever returns first - 0 to never hedge
+   */
+  double getHedgePercentile();
+
+  /**
+   * Hedged calls allowed per call, e.g. 0.05 for at most 5% more calls to an upstream
+   */
+  double getHedgeBudget();
+
+  /**
+   * Registers a listener to apply the new values whenever the configuration is reloaded
+   * @param listener
+   */
+  void addListener(ConfigurationListener listener);
+
+  void removeListener(ConfigurationListener listener);
 }
\ No newline at end of file
@@ -24,26 +24,34 @@
 
 package com.symphony.contexts;
 
+import com.symphony.admin.Diagnostics;
+import com.symphony.clients.IRedditClient;
+import com.symphony.clients.RedditRESTClient;
+import com.symphony.commands.ArgumentType;
+import com.symphony.commands.CommandGrammar;
+import com.symphony.commands.ParsedCommand;
 import com.symphony.configurations.IConfigurationProvider;
 import com.symphony.formatters.MessageML;
-
-import net.dean.jraw.RedditClient;
-import net.dean.jraw.http.NetworkException;
-import net.dean.jraw.http.UserAgent;
-import net.dean.jraw.http.oauth.Credentials;
-import net.dean.jraw.http.oauth.OAuthData;
-import net.dean.jraw.http.oauth.OAuthException;
-import net.dean.jraw.models.CommentNode;
-import net.dean.jraw.models.Listing;
-import net.dean.jraw.models.Submission;
-import net.dean.jraw.paginators.SubredditPaginator;
+import com.symphony.formatters.RenderedMessageCache;
+import com.symphony.models.RedditComment;
+import com.symphony.models.RedditListing;
+import com.symphony.models.RedditSubmission;
+import com.symphony.resilience.UpstreamUnavailableException;
+import com.symphony.search.ContentIndexes;
+import com.symphony.search.IContentIndex;
+import com.symphony.search.IndexedContent;
+import com.symphony.search.SearchResults;
+import com.symphony.utils.ExpiringCache;
+import com.symphony.watch.SeenItems;
+import com.symphony.watch.WatchSource;
+
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
 
 /**
  * Created by ryan.dsouza on 7/27/16.
@@ -56,30 +64,79 @@ public class RedditContext extends ServiceContext {
   protected static final Logger LOG = LoggerFactory.getLogger(RedditContext.class);
 
   private static final String contextName = "Reddit";
+  private static final String FRONTPAGE_SOURCE = "frontpage";
+
+  //Posts remembered per watched listing, well beyond what one page shows
+  private static final int MAX_SEEN_POSTS = 1000;
+
+  private final IRedditClient redditClient;
+  private final IContentIndex contentIndex;
 
-  private final RedditClient redditClient;
+  //First page of the frontpage and each subreddit - the cached listing is also its version
+  private final ExpiringCache<String, RedditListing> listingCache;
+  private final RenderedMessageCache renderedMessageCache;
 
-  private Command lastUsedCommand;
-  private SubredditPaginator paginator;
-  private List<Submission> lastUsedListing;
-  private Submission lastUsedSubmission;
-  private CommentNode lastUsedComment;
+  //What each stream browsed last
+  private final StreamStates<Browsing> browsings;
 
-  private int maxRedditComments;
-  private int maxRedditPosts;
+  private volatile int maxRedditComments;
+  private volatile int maxRedditPosts;
+  private volatile int searchMaxResults;
 
   public RedditContext(IConfigurationProvider configurationProvider) {
     super(configurationProvider);
-    this.redditClient = new RedditClient(UserAgent.of("RedditContextBot"));
-    this.lastUsedListing = new ArrayList<>();
+    this.redditClient = new RedditRESTClient(configurationProvider);
+    this.contentIndex = ContentIndexes.forConfiguration(configurationProvider);
+    this.browsings = new StreamStates<Browsing>(configurationProvider.getBrowsingStateTime(),
+        configurationProvider.getBrowsingStateSize(), Browsing.FACTORY);
+
+    this.maxRedditComments = configurationProvider.getMaxRedditComments();
+    this.maxRedditPosts = configurationProvider.getMaxRedditPosts();
+    this.searchMaxResults = configurationProvider.getSearchMaxResults();
+
+    this.listingCache = new ExpiringCache<String, RedditListing>(
+        configurationProvider.getRedditCacheTime(), configurationProvider.getRedditCacheSize(),
+        new ExpiringCache.Weigher<RedditListing>() {
+          @Override
+          public long estimateBytes(RedditListing listing) {
+            return listing.estimateBytes();
+          }
+        });
+    this.renderedMessageCache =
+        new RenderedMessageCache(configurationProvider.getRenderedMessageCacheSize());
+  }
 
-    this.lastUsedCommand = Command.UNRECOGNIZED;
+  @Override
+  protected void applyConfiguration(IConfigurationProvider configurationProvider) {
     this.maxRedditComments = configurationProvider.getMaxRedditComments();
     this.maxRedditPosts = configurationProvider.getMaxRedditPosts();
+    this.searchMaxResults = configurationProvider.getSearchMaxResults();
+
+    this.listingCache.setTimeToLiveMillis(configurationProvider.getRedditCacheTime());
+    this.listingCache.setMaxSize(configurationProvider.getRedditCacheSize());
+    this.renderedMessageCache.setMaxSources(configurationProvider.getRenderedMessageCacheSize());
+    this.browsings.setTimeToLiveMillis(configurationProvider.getBrowsingStateTime());
+    this.browsings.setMaxStreams(configurationProvider.getBrowsingStateSize());
   }
 
-  private static void addCommentToMessageML(CommentNode comment, MessageML messageML) {
-    String commentBody = comment.getComment().getBody();
+  @Override
+  public JSONObject getDiagnostics() {
+    return super.getDiagnostics()
+        .put("listingCache", Diagnostics.cache(this.listingCache.size(),
+            this.listingCache.getEstimatedBytes()))
+        .put("renderedMessageCache", Diagnostics.cache(this.renderedMessageCache.size(),
+            this.renderedMessageCache.getEstimatedBytes()))
+        .put("browsingStreams", this.browsings.size())
+        .put("reddit", this.redditClient.getDiagnostics());
+  }
+
+  @Override
+  public void close() {
+    this.redditClient.close();
+  }
+
+  private static void addCommentToMessageML(RedditComment comment, MessageML messageML) {
+    String commentBody = comment.getBody();
     commentBody = commentBody.replace("\n", " ");
 
     if (!commentBody.isEmpty()) {
@@ -95,86 +152,132 @@ public class RedditContext extends ServiceContext {
       messageML.addParagraph(commentBody);
     }
 
-    messageML.addItalicText(" -- " + comment.getComment().getAuthor());
-    messageML.addParagraph(" (score: " + comment.getComment().getScore() + ")");
+    messageML.addItalicText(" -- " + comment.getAuthor());
+    messageML.addParagraph(" (score: " + comment.getScore() + ")");
   }
 
   public void authenticate() {
-    Credentials credentials = Credentials.userless(configurationProvider.getRedditClientId(),
-        configurationProvider.getRedditSecret(), UUID.randomUUID());
-    try {
-      OAuthData authData = redditClient.getOAuthHelper().easyAuth(credentials);
-      redditClient.authenticate(authData);
-      LOG.debug("Authenticated Reddit Context");
-    } catch (OAuthException exception) {
-      LOG.error("Error authenticating Reddit client", exception);
+    this.redditClient.authenticate();
+    LOG.debug("Authenticated Reddit Context");
+  }
+
+  /**
+   * Returns the first page of the frontpage (null subreddit) or of a subreddit,
+   * from the listing cache if it was fetched recently
+   * Either way the stream's 'Reddit next' continues from this page
+   * Returns null if the subreddit doesn't exist
+   * @param browsing
+   * @param sourceId
+   * @param subRedditName
+   * @return
+   */
+  private RedditListing getFirstPage(Browsing browsing, String sourceId, String subRedditName) {
+
+    RedditListing listing = this.listingCache.get(sourceId);
+    if (listing == null) {
+      listing = this.redditClient.getListing(subRedditName, null, this.maxRedditPosts);
+
+      if (listing != null && listing.size() > 0) {
+        this.listingCache.put(sourceId, listing);
+        this.renderedMessageCache.invalidate(sourceId);
+      }
+    }
+
+    if (listing != null) {
+      browsing.lastUsedSubRedditName = subRedditName;
+      browsing.nextPageAfter = listing.getAfter();
     }
+    return listing;
   }
 
-  public List<MessageML> getFrontPage(String fullCommand) {
+  private List<MessageML> getFrontPage(Browsing browsing) {
 
-    this.paginator = new SubredditPaginator(this.redditClient);
-    this.paginator.setLimit(this.maxRedditPosts);
+    RedditListing frontPageSubmissions = getFirstPage(browsing, FRONTPAGE_SOURCE, null);
+    boolean found = frontPageSubmissions != null && frontPageSubmissions.size() > 0;
 
-    Listing<Submission> frontPageSubmissions = paginator.next();
+    if (found) {
+      browsing.lastUsedListing.clear();
+      browsing.lastUsedListing.addAll(frontPageSubmissions.getSubmissions());
 
-    if (frontPageSubmissions != null && frontPageSubmissions.size() > 0) {
-      this.lastUsedListing.clear();
-      this.lastUsedListing.addAll(frontPageSubmissions);
+      List<MessageML> cachedResponse =
+          this.renderedMessageCache.get(FRONTPAGE_SOURCE, frontPageSubmissions, "frontpage");
+      if (cachedResponse != null) {
+        return cachedResponse;
+      }
     }
 
     MessageML response = new MessageML();
     response.addParagraph("Type 'Reddit frontpage #' where # is the article to view");
     response.addLineBreak();
-    updateMessageMLWithListing(response);
-
-    return Collections.singletonList(response);
+    //Rendered from the listing it is cached under, the shared one may change meanwhile
+    updateMessageMLWithListing(response,
+        found ? frontPageSubmissions.getSubmissions() : browsing.lastUsedListing, 0);
+
+    List<MessageML> responses = Collections.singletonList(response);
+    if (found) {
+      this.renderedMessageCache.put(FRONTPAGE_SOURCE, frontPageSubmissions, "frontpage",
+          responses);
+    }
+    return responses;
   }
 
-  public List<MessageML> getSubReddit(String fullCommand) {
-
-    String subRedditName = fullCommand.toLowerCase();
-
-    Command subredditCommand = Command.SUBREDDIT;
-    for (String trigger : subredditCommand.getTriggerWords()) {
-      if (subRedditName.contains(trigger)) {
-        int start = subRedditName.indexOf(trigger);
-        subRedditName = subRedditName.substring(start).replace(trigger, "");
-      }
+  /**
+   * The subreddit named after the verb, e.g. 'java' for 'subreddit java' or 'subreddit r/java'
+   * @param command
+   * @return empty if nothing was named
+   */
+  private static String getSubRedditName(ParsedCommand command) {
+    String subRedditName = command.getArgument();
+    if (subRedditName.startsWith("/")) {
+      subRedditName = subRedditName.substring(1);
     }
-    subRedditName = subRedditName.replace(" ", "");
+    if (subRedditName.startsWith("r/")) {
+      subRedditName = subRedditName.substring("r/".length());
+    }
+    return subRedditName;
+  }
 
-    this.paginator = new SubredditPaginator(this.redditClient);
-    paginator.setSubreddit(subRedditName);
-    this.paginator.setLimit(this.maxRedditPosts);
+  private List<MessageML> getSubReddit(Browsing browsing, ParsedCommand command) {
+
+    String subRedditName = getSubRedditName(command);
+    String sourceId = "r/" + subRedditName;
 
     MessageML response = new MessageML();
 
-    try {
-      Listing<Submission> subredditSubmissions = paginator.next();
+    RedditListing subredditSubmissions = getFirstPage(browsing, sourceId, subRedditName);
 
-      if (subredditSubmissions != null && subredditSubmissions.size() > 0) {
-        this.lastUsedListing.clear();
-        this.lastUsedListing.addAll(subredditSubmissions);
-        response.addParagraph("Browsing " + subRedditName + " subreddit. Type article # to view: ");
-        response.addLineBreak();
-        updateMessageMLWithListing(response);
-      } else {
-        response.addParagraph("No posts found for subreddit '" + subRedditName + "'");
-        response.addLineBreak();
-      }
-    } catch (NetworkException exception) {
+    if (subredditSubmissions == null) {
       response.addParagraph("'" + subRedditName + "' was not recognized as a valid subreddit");
       response.addLineBreak();
+    } else if (subredditSubmissions.size() > 0) {
+      browsing.lastUsedListing.clear();
+      browsing.lastUsedListing.addAll(subredditSubmissions.getSubmissions());
+
+      List<MessageML> cachedResponse =
+          this.renderedMessageCache.get(sourceId, subredditSubmissions, "subreddit");
+      if (cachedResponse != null) {
+        return cachedResponse;
+      }
+
+      response.addParagraph("Browsing " + subRedditName + " subreddit. Type article # to view: ");
+      response.addLineBreak();
+      updateMessageMLWithListing(response, subredditSubmissions.getSubmissions(), 0);
+
+      List<MessageML> responses = Collections.singletonList(response);
+      this.renderedMessageCache.put(sourceId, subredditSubmissions, "subreddit", responses);
+      return responses;
+    } else {
+      response.addParagraph("No posts found for subreddit '" + subRedditName + "'");
+      response.addLineBreak();
     }
     return Collections.singletonList(response);
   }
 
-  private void updateMessageMLWithListing(MessageML response, List<Submission> submissions,
+  private void updateMessageMLWithListing(MessageML response, List<RedditSubmission> submissions,
       int startCounter) {
 
     for (int i = 0; i < submissions.size(); i++) {
-      Submission submission = submissions.get(i);
+      RedditSubmission submission = submissions.get(i);
 
       try {
         response.addParagraph(String.valueOf(i + startCounter + 1) + ": ");
@@ -186,15 +289,11 @@ public class RedditContext extends ServiceContext {
         response.addParagraph(", comments: " + submission.getCommentCount() + ")");
         response.addLineBreak();
       } catch (NullPointerException exception) {
-        LOG.error("Nullpointer exception: " + exception);
+        LOG.error("Nullpointer exception: {}", exception);
       }
     }
   }
 
-  private void updateMessageMLWithListing(MessageML response) {
-    updateMessageMLWithListing(response, this.lastUsedListing, 0);
-  }
-
   private void updateMessageMLWithRecognizedCommands(MessageML messageML) {
     messageML.addParagraph("Recognized Reddit commands: ");
     messageML.addLineBreak();
@@ -207,6 +306,15 @@ public class RedditContext extends ServiceContext {
     messageML.addParagraph("View subreddit");
     messageML.addLineBreak();
 
+    messageML.addBoldText("Reddit search <words>: ");
+    messageML.addParagraph("Search the posts viewed so far");
+    messageML.addLineBreak();
+
+    messageML.addBoldText("Reddit watch <subredditName>: ");
+    messageML.addParagraph("Post new posts of a subreddit (or the frontpage) in this room, ");
+    messageML.addParagraph("'Reddit unwatch <subredditName>' to stop");
+    messageML.addLineBreak();
+
     messageML.addParagraph("After choosing frontpage or a subreddit, type: ");
     messageML.addLineBreak();
 
@@ -246,44 +354,97 @@ public class RedditContext extends ServiceContext {
     return Collections.singletonList(response);
   }
 
-  public List<MessageML> getNextPage() {
-    Listing<Submission> nextSubmission = paginator.next();
+  public List<MessageML> getSearchResults(ParsedCommand command) {
+    return SearchResults.search(this.contentIndex, IndexedContent.TYPE_REDDIT,
+        command.getArgument(), this.searchMaxResults, "Reddit search <words>");
+  }
+
+  /**
+   * The subreddit (or frontpage) named after the verb, e.g. 'java' for 'watch r/java'
+   * @param command
+   * @return FRONTPAGE_SOURCE for the frontpage, empty if nothing was named
+   */
+  private static String getWatchedSubRedditName(ParsedCommand command) {
+    String subRedditName = getSubRedditName(command);
+    if (Command.FRONTPAGE.isAlias(subRedditName)) {
+      return FRONTPAGE_SOURCE;
+    }
+    return subRedditName;
+  }
+
+  private static String getWatchSourceId(String subRedditName) {
+    return FRONTPAGE_SOURCE.equals(subRedditName) ? FRONTPAGE_SOURCE : "r/" + subRedditName;
+  }
+
+  public List<MessageML> getWatchResponse(ParsedCommand command, String streamId) {
+    String subRedditName = getWatchedSubRedditName(command);
+    if (subRedditName.isEmpty()) {
+      return getWatched(streamId, "Reddit watch <subredditName>");
+    }
+    return watch(streamId, new ListingWatch(subRedditName));
+  }
+
+  public List<MessageML> getUnwatchResponse(ParsedCommand command, String streamId) {
+    String subRedditName = getWatchedSubRedditName(command);
+    if (subRedditName.isEmpty()) {
+      return getWatched(streamId, "Reddit watch <subredditName>");
+    }
+    String sourceId = getWatchSourceId(subRedditName);
+    return unwatch(streamId, sourceId, sourceId);
+  }
+
+  private List<MessageML> getNextPage(Browsing browsing) {
     MessageML response = new MessageML();
+
+    if (browsing.lastUsedListing.isEmpty()) {
+      response.addParagraph("Must call 'Reddit frontpage' or 'Reddit subreddit <subredditName>' ");
+      response.addParagraph("before viewing the next page");
+      return Collections.singletonList(response);
+    }
+    if (browsing.nextPageAfter == null) {
+      response.addParagraph("No more posts to show");
+      return Collections.singletonList(response);
+    }
+
+    RedditListing nextSubmissions = this.redditClient.getListing(browsing.lastUsedSubRedditName,
+        browsing.nextPageAfter, this.maxRedditPosts);
+    if (nextSubmissions == null) {
+      response.addParagraph("No more posts to show");
+      return Collections.singletonList(response);
+    }
+
     response.addParagraph("More reddit");
     response.addLineBreak();
-    updateMessageMLWithListing(response, nextSubmission, this.lastUsedListing.size());
-    this.lastUsedListing.addAll(nextSubmission);
+    updateMessageMLWithListing(response, nextSubmissions.getSubmissions(),
+        browsing.lastUsedListing.size());
+    browsing.lastUsedListing.addAll(nextSubmissions.getSubmissions());
+    browsing.nextPageAfter = nextSubmissions.getAfter();
     return Collections.singletonList(response);
   }
 
-  public List<MessageML> getArticleForNumber(String fullCommand) {
-    fullCommand = fullCommand.replace(" ", "");
+  private List<MessageML> getArticleForNumber(Browsing browsing, ParsedCommand command) {
     MessageML messageML = new MessageML();
-    try {
-      int articleNumber = Integer.parseInt(fullCommand) - 1;
-      if (this.lastUsedListing == null || this.lastUsedListing.size() == 0) {
-        messageML.addParagraph("Must say either 'Reddit frontpage' or " +
-            "'Reddit Subreddit subRedditName' before chosing an article");
-      } else if (articleNumber < 0 || articleNumber >= this.lastUsedListing.size()) {
-        messageML.addParagraph("Error: invalid article selection" +
-            "Valid range: 1 to " + this.lastUsedListing.size());
-      } else {
-        this.lastUsedSubmission = this.lastUsedListing.get(articleNumber);
-        updateMessageWithLastUsedSubmission(messageML);
-      }
-    } catch (NumberFormatException exception) {
-      messageML.addParagraph("Error parsing your article selection: " + fullCommand);
-      LOG.error("Error parsing", exception);
+    int articleNumber = command.getIndex() - 1;
+    if (browsing.lastUsedListing == null || browsing.lastUsedListing.size() == 0) {
+      messageML.addParagraph("Must say either 'Reddit frontpage' or " +
+          "'Reddit Subreddit subRedditName' before chosing an article");
+    } else if (articleNumber < 0 || articleNumber >= browsing.lastUsedListing.size()) {
+      messageML.addParagraph("Error: invalid article selection" +
+          "Valid range: 1 to " + browsing.lastUsedListing.size());
+    } else {
+      browsing.lastUsedSubmission = browsing.lastUsedListing.get(articleNumber);
+      updateMessageWithSubmission(browsing.lastUsedSubmission, messageML);
     }
 
     return Collections.singletonList(messageML);
   }
 
-  private void updateMessageWithLastUsedSubmission(MessageML messageML) {
+  private static void updateMessageWithSubmission(RedditSubmission submission,
+      MessageML messageML) {
 
-    String selfText = this.lastUsedSubmission.getSelftext();
+    String selfText = submission.getSelfText();
 
-    messageML.addParagraph(this.lastUsedSubmission.getTitle());
+    messageML.addParagraph(submission.getTitle());
     messageML.addLineBreak();
 
     if (selfText != null && selfText.length() > 1) {
@@ -293,77 +454,160 @@ public class RedditContext extends ServiceContext {
         messageML.addLineBreak();
       }
     } else {
-      messageML.addParagraph(this.lastUsedSubmission.getUrl());
+      messageML.addParagraph(submission.getUrl());
     }
   }
 
-  public List<MessageML> getCommentsForPost() {
+  /**
+   * Pushes the header before the submission is fetched, then each comment as it is read
+   * @param browsing
+   * @param sink
+   */
+  private void pushCommentsForPost(Browsing browsing, ResponseSink sink) {
     MessageML response = new MessageML();
 
-    if (this.lastUsedListing == null || this.lastUsedListing.size() == 0) {
+    if (browsing.lastUsedListing == null || browsing.lastUsedListing.size() == 0) {
       response.addParagraph("Must call 'Reddit frontpage' or 'Reddit subreddit <subredditName> ");
       response.addParagraph("before being able to view comments");
-    } else if (this.lastUsedSubmission == null) {
+      sink.push(response);
+    } else if (browsing.lastUsedSubmission == null) {
       response.addParagraph("Must choose a Reddit post ('Reddit <postNumber>') ");
       response.addParagraph("before being able to view comments");
+      sink.push(response);
     } else {
-      this.lastUsedSubmission = this.redditClient.getSubmission(this.lastUsedSubmission.getId());
-      this.lastUsedComment = this.lastUsedSubmission.getComments();
-      Iterable<CommentNode> iterable = this.lastUsedComment.walkTree();
-
-      response.addParagraph("Comments for " + this.lastUsedSubmission.getTitle());
+      response.addParagraph("Comments for " + browsing.lastUsedSubmission.getTitle());
       response.addLineBreak();
+      sink.push(response);
+
+      RedditSubmission submission = this.redditClient.getSubmissionWithComments(
+          browsing.lastUsedSubmission.getId(), this.maxRedditComments);
+      if (submission == null) {
+        MessageML removed = new MessageML();
+        removed.addParagraph("This post is no longer available");
+        sink.push(removed);
+        return;
+      }
+      browsing.lastUsedSubmission = submission;
 
-      int counter = 0;
-
-      for (CommentNode node : iterable) {
-        if (counter > this.maxRedditComments) {
-          break;
-        }
-        addCommentToMessageML(node, response);
-        counter++;
+      for (RedditComment redditComment : submission.getComments()) {
+        MessageML comment = new MessageML();
+        addCommentToMessageML(redditComment, comment);
+        sink.push(comment);
       }
     }
-
-    return Collections.singletonList(response);
   }
 
   @Override
   public List<MessageML> responsesToAction(String action) {
+    return collectResponses(action);
+  }
 
-    Command command = Command.getCommandForText(action);
+  @Override
+  public void respondToAction(String action, ResponseSink sink) {
+    respondToAction(action, null, sink);
+  }
 
-    if (command != Command.UNRECOGNIZED) {
-      this.lastUsedCommand = command;
-    }
-    action = action.toLowerCase();
-    if (action.indexOf("reddit") == 0) {
-      action = action.substring("reddit".length());
+  @Override
+  public void respondToAction(String action, String streamId, ResponseSink sink) {
+    respondToAction(parse(action), streamId, sink);
+  }
+
+  @Override
+  public void respondToAction(ParsedCommand parsedCommand, ResponseSink sink) {
+    respondToAction(parsedCommand, null, sink);
+  }
+
+  @Override
+  public void respondToAction(ParsedCommand parsedCommand, String streamId, ResponseSink sink) {
+
+    Command command = Command.forVerb(parsedCommand.getVerb());
+    Browsing browsing = this.browsings.get(streamId);
+
+    //The stream's commands run one at a time, so 'next' follows what was shown before it
+    synchronized (browsing) {
+      if (command != Command.UNRECOGNIZED) {
+        browsing.lastUsedCommand = command;
+      }
+
+      List<MessageML> responses;
+      try {
+        switch (command) {
+          case SEARCH:
+            LOG.debug("Searching posts");
+            responses = getSearchResults(parsedCommand);
+            break;
+          case UNWATCH:
+            LOG.debug("Unwatching");
+            responses = getUnwatchResponse(parsedCommand, streamId);
+            break;
+          case WATCH:
+            LOG.debug("Watching");
+            responses = getWatchResponse(parsedCommand, streamId);
+            break;
+          case FRONTPAGE:
+            LOG.debug("Getting front page");
+            responses = getFrontPage(browsing);
+            break;
+          case SUBREDDIT:
+            LOG.debug("Getting subreddit");
+            responses = getSubReddit(browsing, parsedCommand);
+            break;
+          case NUMBER:
+            LOG.debug("Getting article number");
+            responses = getArticleForNumber(browsing, parsedCommand);
+            break;
+          case HELP:
+            LOG.debug("Getting recognized commands");
+            responses = getRecognizedCommands();
+            break;
+          case NEXTPAGE:
+            LOG.debug("Getting next page");
+            responses = getNextPage(browsing);
+            break;
+          case COMMENTS:
+            LOG.debug("Getting comments");
+            pushCommentsForPost(browsing, sink);
+            return;
+          default:
+            LOG.debug("Unrecognized command");
+            responses = getUnrecognizedCommand(parsedCommand.getText());
+        }
+      } catch (UpstreamUnavailableException exception) {
+        LOG.warn("Not calling Reddit: {}", exception.getMessage());
+        responses = getUnavailableResponse(exception);
+      }
+
+      for (MessageML messageML : responses) {
+        sink.push(messageML);
+      }
     }
+  }
 
-    switch (command) {
+  @Override
+  public void copyStreamState(String fromStreamId, String toStreamId) {
+    this.browsings.copy(fromStreamId, toStreamId);
+  }
+
+  @Override
+  public String getCoalescingKey(String action) {
+    return getCoalescingKey(parse(action));
+  }
+
+  @Override
+  public String getCoalescingKey(ParsedCommand parsedCommand) {
+    switch (Command.forVerb(parsedCommand.getVerb())) {
+      case SEARCH:
+        return "search:" + parsedCommand.getArgument();
       case FRONTPAGE:
-        LOG.debug("Getting front page");
-        return getFrontPage(action);
+        return "frontpage";
       case SUBREDDIT:
-        LOG.debug("Getting subreddit");
-        return getSubReddit(action);
-      case NUMBER:
-        LOG.debug("Getting article number");
-        return getArticleForNumber(action);
+        return "subreddit:" + getSubRedditName(parsedCommand);
       case HELP:
-        LOG.debug("Getting recognized commands");
-        return getRecognizedCommands();
-      case NEXTPAGE:
-        LOG.debug("Getting next page");
-        return getNextPage();
-      case COMMENTS:
-        LOG.debug("Getting comments");
-        return getCommentsForPost();
+        return "help";
+      default:
+        //Next page, article numbers and comments depend on what was browsed last
+        return null;
     }
-
-    LOG.debug("Unrecognized command");
-    return getUnrecognizedCommand(action);
   }
 
   @Override
@@ -371,62 +615,160 @@ public class RedditContext extends ServiceContext {
     return contextName;
   }
 
+  @Override
+  protected CommandGrammar getCommandGrammar() {
+    return Command.GRAMMAR;
+  }
+
   /**
-   * Enum of possible Reddit commands
+   * What a stream browsed last - 'Reddit next', article numbers and comments continue from it
    */
-  private enum Command {
+  private static final class Browsing {
+
+    private static final StreamStates.Factory<Browsing> FACTORY =
+        new StreamStates.Factory<Browsing>() {
+          @Override
+          public Browsing create() {
+            return new Browsing();
+          }
 
-    FRONTPAGE("frontpage", "front_page", "front page", "fp"),
-    SUBREDDIT("subreddit", "sub reddit", "sub_reddit", "sr"),
-    NEXTPAGE("next", "next page", "next_page", "more"),
-    NUMBER(1, 100),
-    COMMENTS("comment", "comments"),
-    HELP("help", "h", "instructions", "guide", "reddit"),
-    UNRECOGNIZED();
+          @Override
+          public void copy(Browsing from, Browsing to) {
+            to.lastUsedCommand = from.lastUsedCommand;
+            to.lastUsedSubRedditName = from.lastUsedSubRedditName;
+            to.nextPageAfter = from.nextPageAfter;
+            to.lastUsedListing.clear();
+            to.lastUsedListing.addAll(from.lastUsedListing);
+            to.lastUsedSubmission = from.lastUsedSubmission;
+          }
+        };
 
-    private final List<String> triggerWords;
+    private final List<RedditSubmission> lastUsedListing = new ArrayList<>();
+    private Command lastUsedCommand = Command.UNRECOGNIZED;
+    private String lastUsedSubRedditName;
+    private String nextPageAfter;
+    private RedditSubmission lastUsedSubmission;
+  }
 
-    Command(String... triggerWords) {
-      this.triggerWords = new ArrayList<String>();
+  /**
+   * A watched subreddit or the frontpage - the first page of its listing is polled,
+   * and posts that weren't on it before are new
+   */
+  private class ListingWatch implements WatchSource {
 
-      for (String triggerWord : triggerWords) {
-        this.triggerWords.add(triggerWord);
-      }
+    //Null for the frontpage
+    private final String subRedditName;
+    private final String sourceId;
+    private final SeenItems seenPosts;
+
+    private boolean polled;
+
+    private ListingWatch(String subRedditName) {
+      this.subRedditName = FRONTPAGE_SOURCE.equals(subRedditName) ? null : subRedditName;
+      this.sourceId = getWatchSourceId(subRedditName);
+      this.seenPosts = new SeenItems(MAX_SEEN_POSTS);
     }
 
-    Command(int rangeStart, int rangeEnd) {
-      this.triggerWords = new ArrayList<String>();
+    @Override
+    public String getKey() {
+      return getWatchKey(this.sourceId);
+    }
 
-      for (int i = rangeStart; i <= rangeEnd; i++) {
-        this.triggerWords.add(String.valueOf(i));
-      }
+    @Override
+    public String getDescription() {
+      return this.sourceId;
     }
 
-    public static Command getCommandForText(String text) {
-      text = text.toLowerCase();
-      for (Command command : Command.values()) {
-        List<String> triggerWords = command.getTriggerWords();
-        for (String triggerWord : triggerWords) {
-          if (text.contains(triggerWord)) {
-            return command;
-          }
+    @Override
+    public List<MessageML> pollNewItems() {
+      RedditListing listing = redditClient.getListing(this.subRedditName, null, maxRedditPosts);
+      if (listing == null) {
+        return Collections.emptyList();
+      }
+
+      List<RedditSubmission> newPosts = new ArrayList<RedditSubmission>();
+      for (RedditSubmission submission : listing.getSubmissions()) {
+        if (this.seenPosts.markSeen(submission.getId())) {
+          newPosts.add(submission);
         }
       }
-      return UNRECOGNIZED;
+
+      //What is there when watching starts isn't new
+      boolean firstPoll = !this.polled;
+      this.polled = true;
+      if (firstPoll || newPosts.isEmpty()) {
+        return Collections.emptyList();
+      }
+
+      MessageML digest = new MessageML();
+      digest.addParagraph("New in " + this.sourceId + ": ");
+      for (RedditSubmission submission : newPosts) {
+        digest.addLineBreak();
+        digest.addBoldText(submission.getTitle());
+        digest.addLineBreak();
+        digest.addParagraph("------> from ");
+        digest.addItalicText(submission.getSubredditName());
+        digest.addParagraph(" " + submission.getUrl());
+      }
+      return Collections.singletonList(digest);
     }
+  }
+
+  /**
+   * Enum of possible Reddit commands, each with the words it is typed as
+   */
+  private enum Command {
 
-    public List<String> getTriggerWords() {
-      return this.triggerWords;
+    SEARCH(ArgumentType.WORDS, "search"),
+    UNWATCH(ArgumentType.NAME, "unwatch", "stop watching"),
+    WATCH(ArgumentType.NAME, "watch"),
+    FRONTPAGE(ArgumentType.NONE, "frontpage", "front_page", "front page", "fp"),
+    SUBREDDIT(ArgumentType.NAME, "subreddit", "sub reddit", "sub_reddit", "sr"),
+    NEXTPAGE(ArgumentType.NONE, "next", "next page", "next_page", "more"),
+    //A post number on its own, e.g. 'Reddit 3'
+    NUMBER(ArgumentType.NONE),
+    COMMENTS(ArgumentType.NONE, "comment", "comments"),
+    //Also what just 'Reddit' is
+    HELP(ArgumentType.NONE, "help", "h", "instructions", "guide"),
+    UNRECOGNIZED(ArgumentType.NONE);
+
+    //Created after the commands, from their words
+    private static final CommandGrammar GRAMMAR = createGrammar();
+
+    private final ArgumentType argumentType;
+    private final String[] aliases;
+
+    Command(ArgumentType argumentType, String... aliases) {
+      this.argumentType = argumentType;
+      this.aliases = aliases;
     }
 
-    @Override
-    public String toString() {
-      return "Command{" +
-          "triggerWords=" + triggerWords +
-          '}';
+    private static CommandGrammar createGrammar() {
+      CommandGrammar grammar = new CommandGrammar()
+          .setIndexVerb(NUMBER.name())
+          .setDefaultVerb(HELP.name());
+      for (Command command : values()) {
+        grammar.addVerb(command.name(), command.argumentType, command.aliases);
+      }
+      return grammar;
     }
-  }
 
+    public static Command forVerb(String verb) {
+      return verb == null ? UNRECOGNIZED : valueOf(verb);
+    }
 
-  ;
-}
\ No newline at end of file
+    /**
+     * Whether the name is one of the command's words, written without spaces
+     * @param name
+     * @return
+     */
+    public boolean isAlias(String name) {
+      for (String alias : this.aliases) {
+        if (alias.replace(" ", "").equals(name)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package com.symphony.contexts;
+
+import com.symphony.configurations.IConfigurationProvider;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Creates the Reddit context
+ */
+
+public class RedditContextFactory implements ServiceContextFactory {
+
+  @Override
+  public String getContextName() {
+    return "Reddit";
+  }
+
+  @Override
+  public List<String> getAliases() {
+    return Collections.singletonList("reddit");
+  }
+
+  @Override
+  public ServiceContext create(IConfigurationProvider configurationProvider) {
+    return new RedditContext(configurationProvider);
+  }
+}
@@ -24,11 +24,25 @@
 
 package com.symphony.contexts;
 
+import com.symphony.admin.DiagnosticsSource;
+import com.symphony.commands.CommandGrammar;
+import com.symphony.commands.ParsedCommand;
+import com.symphony.commands.TokenizedMessage;
+import com.symphony.configurations.ConfigurationListener;
 import com.symphony.configurations.IConfigurationProvider;
 import com.symphony.formatters.MessageML;
+import com.symphony.resilience.UpstreamUnavailableException;
+import com.symphony.watch.WatchScheduler;
+import com.symphony.watch.WatchSource;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by ryan.dsouza on 7/28/16.
@@ -36,26 +50,308 @@ import java.util.List;
  * Represents the skeleton of a Context which is extended/implemented by unique services
  */
 
-public abstract class ServiceContext {
+public abstract class ServiceContext implements DiagnosticsSource {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ServiceContext.class);
 
   protected final IConfigurationProvider configurationProvider;
   protected final List<String> possibleCommands;
 
+  private volatile boolean authenticated;
+
+  //Null when nothing can be watched, e.g. when a context is run without the bot
+  private volatile WatchScheduler watchScheduler;
+
   public ServiceContext(IConfigurationProvider configurationProvider) {
     this.configurationProvider = configurationProvider;
     this.possibleCommands = new ArrayList<String>();
+
+    configurationProvider.addListener(new ConfigurationListener() {
+      @Override
+      public void configurationChanged(IConfigurationProvider configurationProvider) {
+        applyConfiguration(configurationProvider);
+      }
+    });
   }
 
+  /**
+   * Called after the configuration was reloaded, for contexts to resize their caches and limits
+   * Does nothing by default
+   * @param configurationProvider
+   */
+  protected void applyConfiguration(IConfigurationProvider configurationProvider) {
+  }
+
+  /**
+   * Authenticates with the context's service - throws if that failed
+   */
   public abstract void authenticate();
 
+  /**
+   * Authenticates unless that already succeeded
+   * Called in the background at startup and again before each use, so the first use
+   * waits for an authentication still in progress and retries one that failed
+   */
+  public void ensureAuthenticated() {
+    if (this.authenticated) {
+      return;
+    }
+    synchronized (this) {
+      if (this.authenticated) {
+        return;
+      }
+      try {
+        authenticate();
+        this.authenticated = true;
+      } catch (RuntimeException exception) {
+        LOG.error("Error authenticating {} context", getContextName(), exception);
+      }
+    }
+  }
+
   public abstract String getContextName();
 
   public abstract List<MessageML> responsesToAction(String action);
 
+  /**
+   * The verbs of this context's commands, null if it only handles actions as text
+   * @return
+   */
+  protected CommandGrammar getCommandGrammar() {
+    return null;
+  }
+
+  /**
+   * Parses the message into this context's command, once per message
+   * Without a grammar the command has no verb and the whole message is its argument
+   * @param message
+   * @return
+   */
+  public ParsedCommand parse(TokenizedMessage message) {
+    CommandGrammar grammar = getCommandGrammar();
+    if (grammar == null) {
+      return new ParsedCommand(getContextName(), null, message.getText(), message.getText(),
+          ParsedCommand.NO_INDEX);
+    }
+    return grammar.parse(getContextName(), message);
+  }
+
+  public ParsedCommand parse(String action) {
+    return parse(TokenizedMessage.of(action));
+  }
+
+  /**
+   * Streams the response to a parsed command, see respondToAction(String, ResponseSink)
+   * The default responds to the command's text - contexts with a grammar override it
+   * @param command
+   * @param sink
+   */
+  public void respondToAction(ParsedCommand command, ResponseSink sink) {
+    respondToAction(command.getText(), sink);
+  }
+
+  /**
+   * Streams the response to a parsed command sent in that stream,
+   * see respondToAction(String, String, ResponseSink)
+   * The default responds to the command's text - contexts with a grammar override it
+   * @param command
+   * @param streamId
+   * @param sink
+   */
+  public void respondToAction(ParsedCommand command, String streamId, ResponseSink sink) {
+    respondToAction(command.getText(), streamId, sink);
+  }
+
+  /**
+   * Streams the response to the action into the sink, so the first messages can be sent
+   * while the rest are still being fetched or rendered
+   * The default pushes the response from responsesToAction once all of it is ready
+   * @param action
+   * @param sink
+   */
+  public void respondToAction(String action, ResponseSink sink) {
+    for (MessageML messageML : responsesToAction(action)) {
+      sink.push(messageML);
+    }
+  }
+
+  /**
+   * Streams the response to an action sent in that stream - for actions whose response
+   * depends on where they were sent, e.g. watching a source for that room
+   * The default ignores the stream
+   * @param action
+   * @param streamId
+   * @param sink
+   */
+  public void respondToAction(String action, String streamId, ResponseSink sink) {
+    respondToAction(action, sink);
+  }
+
+  /**
+   * For contexts that implement respondToAction - collects its streamed response
+   * @param action
+   * @return
+   */
+  protected List<MessageML> collectResponses(String action) {
+    CollectingResponseSink sink = new CollectingResponseSink();
+    respondToAction(action, sink);
+    return sink.getMessageMLs();
+  }
+
+  /**
+   * Returns a normalized key (command + argument) for actions whose response doesn't depend on
+   * who asked or where, so identical concurrent requests can share a single response
+   * Returns null for actions that must run once per request, which is the default
+   * @param action
+   * @return
+   */
+  public String getCoalescingKey(String action) {
+    return null;
+  }
+
+  /**
+   * The coalescing key of a parsed command, see getCoalescingKey(String)
+   * The default uses the command's text - contexts with a grammar override it
+   * @param command
+   * @return
+   */
+  public String getCoalescingKey(ParsedCommand command) {
+    return getCoalescingKey(command.getText());
+  }
+
+  /**
+   * Called once a stream was sent the response to a command another stream sent,
+   * so it can carry on from it (e.g. with 'next') as if it had sent the command itself
+   * Does nothing by default, for contexts that don't remember what a stream was shown
+   * @param fromStreamId the stream the response was made for
+   * @param toStreamId the stream that shared it
+   */
+  public void copyStreamState(String fromStreamId, String toStreamId) {
+  }
+
+  public void setWatchScheduler(WatchScheduler watchScheduler) {
+    this.watchScheduler = watchScheduler;
+  }
+
+  protected WatchScheduler getWatchScheduler() {
+    return watchScheduler;
+  }
+
+  /**
+   * Whether the context has authenticated - contexts add their caches and clients
+   * @return
+   */
+  @Override
+  public JSONObject getDiagnostics() {
+    return new JSONObject().put("authenticated", this.authenticated);
+  }
+
+  /**
+   * Releases the context's clients when the bot shuts down - contexts with clients override it
+   */
+  public void close() {
+  }
+
   public List<String> getPossibleCommands() {
     return possibleCommands;
   }
 
+  /**
+   * Key of one of this context's watched sources, e.g. 'Reddit:r/java'
+   * @param sourceId
+   * @return
+   */
+  protected String getWatchKey(String sourceId) {
+    return getContextName() + ":" + sourceId;
+  }
+
+  /**
+   * Sends the stream the source's new items from now on, and says so
+   * @param streamId null if the action wasn't sent in a stream
+   * @param source
+   * @return
+   */
+  protected List<MessageML> watch(String streamId, WatchSource source) {
+    MessageML response = new MessageML();
+    WatchScheduler watchScheduler = this.watchScheduler;
+
+    if (watchScheduler == null || streamId == null) {
+      response.addParagraph("Watching is not available here");
+    } else if (watchScheduler.subscribe(streamId, source)) {
+      response.addParagraph("Watching " + source.getDescription() +
+          " - new items will be posted here");
+    } else {
+      response.addParagraph("Already watching " + source.getDescription());
+    }
+    return Collections.singletonList(response);
+  }
+
+  /**
+   * Stops sending the stream the source's new items, and says so
+   * @param streamId null if the action wasn't sent in a stream
+   * @param sourceId
+   * @param description
+   * @return
+   */
+  protected List<MessageML> unwatch(String streamId, String sourceId, String description) {
+    MessageML response = new MessageML();
+    WatchScheduler watchScheduler = this.watchScheduler;
+
+    if (watchScheduler == null || streamId == null) {
+      response.addParagraph("Watching is not available here");
+    } else if (watchScheduler.unsubscribe(streamId, getWatchKey(sourceId))) {
+      response.addParagraph("Stopped watching " + description);
+    } else {
+      response.addParagraph("Was not watching " + description);
+    }
+    return Collections.singletonList(response);
+  }
+
+  /**
+   * Lists what the stream watches from this context
+   * @param streamId null if the action wasn't sent in a stream
+   * @param usage how to watch something, shown when nothing is watched
+   * @return
+   */
+  protected List<MessageML> getWatched(String streamId, String usage) {
+    MessageML response = new MessageML();
+    WatchScheduler watchScheduler = this.watchScheduler;
+
+    if (watchScheduler == null || streamId == null) {
+      response.addParagraph("Watching is not available here");
+      return Collections.singletonList(response);
+    }
+
+    List<String> watched = watchScheduler.getWatched(streamId, getWatchKey(""));
+    if (watched.isEmpty()) {
+      response.addParagraph("Not watching anything - type '" + usage + "' to start");
+      return Collections.singletonList(response);
+    }
+
+    response.addParagraph("Watching: ");
+    for (String description : watched) {
+      response.addLineBreak();
+      response.addBoldText(description);
+    }
+    return Collections.singletonList(response);
+  }
+
+  /**
+   * The fail-fast response for when an upstream this context depends on is unavailable
+   * @param exception
+   * @return
+   */
+  protected List<MessageML> getUnavailableResponse(UpstreamUnavailableException exception) {
+    MessageML response = new MessageML();
+    response.addParagraph(getContextName() + " is temporarily unavailable");
+
+    long retryAfterSeconds = TimeUnit.MILLISECONDS.toSeconds(exception.getRetryAfterMillis());
+    if (retryAfterSeconds > 0) {
+      response.addParagraph(", please try again in " + retryAfterSeconds + " seconds");
+    }
+    return Collections.singletonList(response);
+  }
+
   @Override
   public boolean equals(Object otherContext) {
     if (!(otherContext instanceof ServiceContext)) {
@@ -0,0 +1,25 @@
+package com.symphony.contexts;
+
+import com.symphony.configurations.IConfigurationProvider;
+
+import java.util.List;
+
+/**
+ * Creates a ServiceContext - implementations are discovered with java.util.ServiceLoader,
+ * listed in META-INF/services/com.symphony.contexts.ServiceContextFactory
+ */
+
+public interface ServiceContextFactory {
+
+  /**
+   * The name of the context it creates
+   */
+  String getContextName();
+
+  /**
+   * Single lower case words that route a message to the context, e.g. 'reddit'
+   */
+  List<String> getAliases();
+
+  ServiceContext create(IConfigurationProvider configurationProvider);
+}
@@ -0,0 +1,248 @@
+package com.symphony.contexts;
+
+import com.symphony.admin.DiagnosticsSource;
+import com.symphony.configurations.IConfigurationProvider;
+import com.symphony.watch.WatchScheduler;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Every ServiceContext on the classpath, found through ServiceContextFactory
+ *
+ * Routing looks each word of a message up in an index of the contexts' aliases,
+ * so its cost depends on the message, not on how many contexts there are
+ * The bot's own names are skipped, so 'sym browser reddit' goes to the context named after it
+ * rather than to the one whose alias is 'browser'
+ * Contexts are only created when first routed to or warmed up
+ */
+
+public class ServiceContextRegistry implements DiagnosticsSource {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ServiceContextRegistry.class);
+
+  private final IConfigurationProvider configurationProvider;
+
+  //By context name, in discovery order
+  private final Map<String, ServiceContextFactory> factories;
+  //Alias -> context name
+  private final Map<String, String> aliasIndex;
+  private final ConcurrentMap<String, ServiceContext> contexts;
+  //The words of the bot's names, e.g. {sym, browser}
+  private volatile List<String[]> botNames;
+
+  private volatile WatchScheduler watchScheduler;
+
+  public ServiceContextRegistry(IConfigurationProvider configurationProvider) {
+    this(configurationProvider, ServiceLoader.load(ServiceContextFactory.class));
+  }
+
+  public ServiceContextRegistry(IConfigurationProvider configurationProvider,
+      Iterable<ServiceContextFactory> factories) {
+    this.configurationProvider = configurationProvider;
+    this.factories = new LinkedHashMap<String, ServiceContextFactory>();
+    this.aliasIndex = new HashMap<String, String>();
+    this.contexts = new ConcurrentHashMap<String, ServiceContext>();
+    this.botNames = Collections.emptyList();
+
+    for (ServiceContextFactory factory : factories) {
+      String contextName = factory.getContextName();
+      if (this.factories.containsKey(contextName)) {
+        LOG.warn("Ignoring second {} context: {}", contextName, factory.getClass());
+        continue;
+      }
+      this.factories.put(contextName, factory);
+
+      for (String alias : factory.getAliases()) {
+        String existing = this.aliasIndex.put(alias.toLowerCase(), contextName);
+        if (existing != null && !existing.equals(contextName)) {
+          LOG.warn("Alias '{}' of {} is now used by {}", alias, existing, contextName);
+        }
+      }
+    }
+    LOG.info("Found contexts: {}", this.factories.keySet());
+  }
+
+  /**
+   * Sets the names the bot is called by, which are never routed on even if they contain an alias
+   * @param botNames e.g. 'sym browser'
+   */
+  public void setBotNames(List<String> botNames) {
+    List<String[]> botNameWords = new ArrayList<String[]>();
+    for (String botName : botNames) {
+      List<String> words = splitWords(botName.toLowerCase());
+      if (!words.isEmpty()) {
+        botNameWords.add(words.toArray(new String[words.size()]));
+      }
+    }
+    this.botNames = botNameWords;
+  }
+
+  /**
+   * Returns the context named by the first word of the text that is an alias,
+   * or null if none is
+   * @param lowerCaseText
+   * @return
+   */
+  public ServiceContext route(String lowerCaseText) {
+    List<String> words = splitWords(lowerCaseText);
+    List<String[]> botNames = this.botNames;
+
+    int i = 0;
+    while (i < words.size()) {
+      int botNameLength = matchBotName(botNames, words, i);
+      if (botNameLength > 0) {
+        i += botNameLength;
+        continue;
+      }
+      String contextName = this.aliasIndex.get(words.get(i));
+      if (contextName != null) {
+        return getContext(contextName);
+      }
+      i++;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of words of the longest bot name starting at start, 0 if none does
+   * @param botNames
+   * @param words
+   * @param start
+   * @return
+   */
+  private static int matchBotName(List<String[]> botNames, List<String> words, int start) {
+    int longest = 0;
+    for (String[] botName : botNames) {
+      if (botName.length <= longest || start + botName.length > words.size()) {
+        continue;
+      }
+      boolean matches = true;
+      for (int i = 0; i < botName.length && matches; i++) {
+        matches = botName[i].equals(words.get(start + i));
+      }
+      if (matches) {
+        longest = botName.length;
+      }
+    }
+    return longest;
+  }
+
+  /**
+   * Splits the text into words of letters and digits
+   * @param text
+   * @return
+   */
+  private static List<String> splitWords(String text) {
+    List<String> words = new ArrayList<String>();
+    int length = text.length();
+    int wordStart = -1;
+
+    for (int i = 0; i <= length; i++) {
+      boolean wordCharacter = i < length && Character.isLetterOrDigit(text.charAt(i));
+      if (wordCharacter && wordStart < 0) {
+        wordStart = i;
+      } else if (!wordCharacter && wordStart >= 0) {
+        words.add(text.substring(wordStart, i));
+        wordStart = -1;
+      }
+    }
+    return words;
+  }
+
+  /**
+   * Returns the context, creating it on first use
+   * @param contextName
+   * @return
+   */
+  public ServiceContext getContext(String contextName) {
+    ServiceContext context = this.contexts.get(contextName);
+    if (context != null) {
+      return context;
+    }
+
+    ServiceContextFactory factory = this.factories.get(contextName);
+    if (factory == null) {
+      return null;
+    }
+    synchronized (factory) {
+      context = this.contexts.get(contextName);
+      if (context == null) {
+        context = factory.create(this.configurationProvider);
+        context.setWatchScheduler(this.watchScheduler);
+        this.contexts.put(contextName, context);
+        LOG.debug("Created {} context", contextName);
+      }
+    }
+    return context;
+  }
+
+  /**
+   * Lets every context, including those already created, watch sources for rooms
+   * @param watchScheduler
+   */
+  public void setWatchScheduler(WatchScheduler watchScheduler) {
+    this.watchScheduler = watchScheduler;
+    for (ServiceContext context : this.contexts.values()) {
+      context.setWatchScheduler(watchScheduler);
+    }
+  }
+
+  /**
+   * Creates and authenticates every context in the background,
+   * so first requests don't have to wait for it
+   * @param executor
+   */
+  public void warmUp(Executor executor) {
+    for (final String contextName : this.factories.keySet()) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          getContext(contextName).ensureAuthenticated();
+        }
+      });
+    }
+  }
+
+  /**
+   * Each context's diagnostics, by name - contexts that weren't created yet aren't created
+   * @return
+   */
+  @Override
+  public JSONObject getDiagnostics() {
+    JSONObject diagnostics = new JSONObject();
+    for (Map.Entry<String, ServiceContext> context : this.contexts.entrySet()) {
+      diagnostics.put(context.getKey(), context.getValue().getDiagnostics());
+    }
+    return diagnostics;
+  }
+
+  /**
+   * Closes every context that was created
+   */
+  public void close() {
+    for (ServiceContext context : this.contexts.values()) {
+      try {
+        context.close();
+      } catch (RuntimeException exception) {
+        LOG.warn("Error closing {} context", context.getContextName(), exception);
+      }
+    }
+  }
+
+  public List<String> getContextNames() {
+    return Collections.unmodifiableList(new ArrayList<String>(this.factories.keySet()));
+  }
+}
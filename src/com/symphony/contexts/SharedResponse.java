@@ -0,0 +1,75 @@
+package com.symphony.contexts;
+
+import com.symphony.formatters.MessageML;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A response being streamed to several requesters at once
+ * Requesters that subscribe late are sent everything pushed so far, then the rest as it arrives
+ * It is made for one stream, and the others that follow it are told about once it is complete
+ */
+
+public class SharedResponse implements ResponseSink {
+
+  private final String streamId;
+  private final List<MessageML> pushedMessageMLs = new ArrayList<MessageML>();
+  private final List<ResponseSink> subscribers = new ArrayList<ResponseSink>();
+  private final List<String> followerStreamIds = new ArrayList<String>();
+
+  private boolean finished;
+
+  /**
+   * @param streamId the stream the response is made for
+   */
+  public SharedResponse(String streamId) {
+    this.streamId = streamId;
+  }
+
+  public String getStreamId() {
+    return streamId;
+  }
+
+  @Override
+  public synchronized void push(MessageML messageML) {
+    this.pushedMessageMLs.add(messageML);
+    for (ResponseSink subscriber : this.subscribers) {
+      subscriber.push(messageML);
+    }
+  }
+
+  /**
+   * Replays the response so far into the sink and sends it the rest as it is pushed
+   * @param sink
+   */
+  public synchronized void subscribe(ResponseSink sink) {
+    for (MessageML messageML : this.pushedMessageMLs) {
+      sink.push(messageML);
+    }
+    this.subscribers.add(sink);
+  }
+
+  /**
+   * Adds a stream that is sent this response besides the one it is made for,
+   * to be returned by finish
+   * @param streamId
+   * @return false if the response is already complete, so it won't be
+   */
+  public synchronized boolean follow(String streamId) {
+    if (this.finished) {
+      return false;
+    }
+    this.followerStreamIds.add(streamId);
+    return true;
+  }
+
+  /**
+   * Marks the response complete
+   * @return the streams that followed it
+   */
+  public synchronized List<String> finish() {
+    this.finished = true;
+    return new ArrayList<String>(this.followerStreamIds);
+  }
+}
@@ -0,0 +1,88 @@
+package com.symphony.contexts;
+
+import com.symphony.utils.ExpiringCache;
+
+/**
+ * What a context last showed each stream, e.g. the listing 'Reddit next' continues from
+ * Kept per stream, so rooms browsing at once don't page through each other's results,
+ * and dropped once a stream hasn't used the context for a while
+ * Callers lock a stream's state while they use it, so the commands of a stream run one at a time
+ * @param <S> the context's state of one stream
+ */
+
+public class StreamStates<S> {
+
+  /**
+   * Creates the state of a stream that has none yet, and copies one stream's into another's
+   */
+  public interface Factory<S> {
+    S create();
+
+    void copy(S from, S to);
+  }
+
+  //Key of the state of actions that weren't sent in a stream
+  private static final String NO_STREAM = "";
+
+  private final ExpiringCache<String, S> states;
+  private final Factory<S> factory;
+
+  public StreamStates(long timeToLiveMillis, int maxStreams, Factory<S> factory) {
+    this.states = new ExpiringCache<String, S>(timeToLiveMillis, maxStreams);
+    this.factory = factory;
+  }
+
+  /**
+   * Returns the stream's state, creating it if the stream has none or it expired
+   * @param streamId null if the action wasn't sent in a stream
+   * @return
+   */
+  public synchronized S get(String streamId) {
+    String key = streamId == null ? NO_STREAM : streamId;
+    S state = this.states.get(key);
+    if (state == null) {
+      state = this.factory.create();
+    }
+    //Put back on every use, so it expires once the stream stops using the context
+    this.states.put(key, state);
+    return state;
+  }
+
+  /**
+   * Makes one stream's state a copy of another's, e.g. after both were sent the same response
+   * The states are locked one after the other, never both at once
+   * @param fromStreamId
+   * @param toStreamId
+   */
+  public void copy(String fromStreamId, String toStreamId) {
+    S from = get(fromStreamId);
+    S to = get(toStreamId);
+    if (from == to) {
+      return;
+    }
+
+    S snapshot = this.factory.create();
+    synchronized (from) {
+      this.factory.copy(from, snapshot);
+    }
+    synchronized (to) {
+      this.factory.copy(snapshot, to);
+    }
+  }
+
+  /**
+   * The number of streams with a state, including expired ones not cleaned up yet
+   * @return
+   */
+  public int size() {
+    return this.states.size();
+  }
+
+  public void setTimeToLiveMillis(long timeToLiveMillis) {
+    this.states.setTimeToLiveMillis(timeToLiveMillis);
+  }
+
+  public void setMaxStreams(int maxStreams) {
+    this.states.setMaxSize(maxStreams);
+  }
+}
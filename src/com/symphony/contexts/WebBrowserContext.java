@@ -24,12 +24,25 @@
 
 package com.symphony.contexts;
 
+import com.symphony.admin.Diagnostics;
 import com.symphony.clients.IWebsiteBrowserClient;
 import com.symphony.clients.WebsiteBrowserClient;
+import com.symphony.commands.ArgumentType;
+import com.symphony.commands.CommandGrammar;
+import com.symphony.commands.ParsedCommand;
 import com.symphony.configurations.IConfigurationProvider;
 import com.symphony.formatters.MessageML;
+import com.symphony.formatters.RenderedMessageCache;
 import com.symphony.models.WebsiteBrowserArticle;
-
+import com.symphony.resilience.UpstreamUnavailableException;
+import com.symphony.search.ContentIndexes;
+import com.symphony.search.IContentIndex;
+import com.symphony.search.IndexedContent;
+import com.symphony.search.SearchResults;
+import com.symphony.watch.SeenItems;
+import com.symphony.watch.WatchSource;
+
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,19 +62,52 @@ public class WebBrowserContext extends ServiceContext {
 
   private static final String contextName = "WebBrowser";
 
+  //Items remembered per watched website, well beyond what one page shows
+  private static final int MAX_SEEN_ITEMS = 1000;
+
   private final IWebsiteBrowserClient websiteBrowserClient;
-  private final int maxArticles;
+  private final IContentIndex contentIndex;
+  private volatile int maxArticles;
+  private volatile int searchMaxResults;
+  private final RenderedMessageCache renderedMessageCache;
 
-  private Command lastUsedCommand;
-  private WebsiteBrowserArticle lastUsedArticle;
-  private List<List<WebsiteBrowserArticle.Article>> lastUsedComments;
+  //What each stream looked up last
+  private final StreamStates<Browsing> browsings;
 
   public WebBrowserContext(IConfigurationProvider configurationProvider) {
     super(configurationProvider);
 
     this.maxArticles = configurationProvider.getDiffbotMaxArticles();
+    this.searchMaxResults = configurationProvider.getSearchMaxResults();
     this.websiteBrowserClient = new WebsiteBrowserClient(configurationProvider);
-    this.lastUsedCommand = Command.UNRECOGNIZED;
+    this.contentIndex = ContentIndexes.forConfiguration(configurationProvider);
+    this.renderedMessageCache =
+        new RenderedMessageCache(configurationProvider.getRenderedMessageCacheSize());
+    this.browsings = new StreamStates<Browsing>(configurationProvider.getBrowsingStateTime(),
+        configurationProvider.getBrowsingStateSize(), Browsing.FACTORY);
+  }
+
+  @Override
+  protected void applyConfiguration(IConfigurationProvider configurationProvider) {
+    this.maxArticles = configurationProvider.getDiffbotMaxArticles();
+    this.searchMaxResults = configurationProvider.getSearchMaxResults();
+    this.renderedMessageCache.setMaxSources(configurationProvider.getRenderedMessageCacheSize());
+    this.browsings.setTimeToLiveMillis(configurationProvider.getBrowsingStateTime());
+    this.browsings.setMaxStreams(configurationProvider.getBrowsingStateSize());
+  }
+
+  @Override
+  public JSONObject getDiagnostics() {
+    return super.getDiagnostics()
+        .put("renderedMessageCache", Diagnostics.cache(this.renderedMessageCache.size(),
+            this.renderedMessageCache.getEstimatedBytes()))
+        .put("browsingStreams", this.browsings.size())
+        .put("diffbot", this.websiteBrowserClient.getDiagnostics());
+  }
+
+  @Override
+  public void close() {
+    this.websiteBrowserClient.close();
   }
 
   @Override
@@ -70,108 +116,192 @@ public class WebBrowserContext extends ServiceContext {
   }
 
   public List<MessageML> getResponseFromLookingUp(String action) {
+    CollectingResponseSink sink = new CollectingResponseSink();
+    Browsing browsing = this.browsings.get(null);
+    synchronized (browsing) {
+      getResponseFromLookingUp(browsing, parse(action), sink);
+    }
+    return sink.getMessageMLs();
+  }
 
-    String websiteUrl = action.toLowerCase();
+  private void getResponseFromLookingUp(Browsing browsing, ParsedCommand command,
+      ResponseSink sink) {
 
-    for (String trigger : Command.LOOKUP.getTriggerWords()) {
-      if (websiteUrl.contains(trigger)) {
-        int start = websiteUrl.indexOf(trigger);
-        websiteUrl = websiteUrl.substring(start).replace(trigger, "");
-      }
-    }
-    websiteUrl = websiteUrl.replace(" ", "");
+    String websiteUrl = command.getArgument();
 
     MessageML response = new MessageML();
 
     try {
-      this.lastUsedArticle = this.websiteBrowserClient.getTextFromWebsite(websiteUrl);
-      this.lastUsedComments = this.lastUsedArticle.getArticles();
-      return getMessageWithLastUsedArticle();
+      WebsiteBrowserArticle article = this.websiteBrowserClient.getTextFromWebsite(websiteUrl);
+      if (article != null) {
+        browsing.lastUsedArticle = article;
+        browsing.lastUsedArticleUrl = websiteUrl;
+        browsing.articleOffset = 0;
+        pushCachedArticlePage(browsing, websiteUrl, article, sink);
+        return;
+      }
+      response.addParagraph("Error getting text from: " + websiteUrl);
+    } catch (UpstreamUnavailableException exception) {
+      LOG.warn("Not looking up {}: {}", websiteUrl, exception.getMessage());
+      pushAll(getUnavailableResponse(exception), sink);
+      return;
     } catch (Exception exception) {
-      LOG.error("Error getting text from website: " + websiteUrl, exception);
+      LOG.error("Error getting text from website: {}", websiteUrl, exception);
       response.addParagraph("Error getting text from: " + websiteUrl);
     }
 
-    return Collections.singletonList(response);
+    sink.push(response);
+  }
+
+  private List<MessageML> getSearchResults(ParsedCommand command) {
+    return SearchResults.search(this.contentIndex, IndexedContent.TYPE_ARTICLE,
+        command.getArgument(), this.searchMaxResults, "Browser search <words>");
+  }
+
+  private List<MessageML> getWatchResponse(ParsedCommand command, String streamId) {
+    String websiteUrl = command.getArgument();
+    if (websiteUrl.isEmpty()) {
+      return getWatched(streamId, "Browser watch <websiteUrl>");
+    }
+    return watch(streamId, new WebsiteWatch(websiteUrl));
   }
 
-  private List<MessageML> getNextComments(String action) {
+  private List<MessageML> getUnwatchResponse(ParsedCommand command, String streamId) {
+    String websiteUrl = command.getArgument();
+    if (websiteUrl.isEmpty()) {
+      return getWatched(streamId, "Browser watch <websiteUrl>");
+    }
+    return unwatch(streamId, websiteUrl, websiteUrl);
+  }
 
-    if (this.lastUsedArticle == null) {
+  private void getNextComments(Browsing browsing, ResponseSink sink) {
+
+    WebsiteBrowserArticle article = browsing.lastUsedArticle;
+    if (article == null) {
       MessageML noArticle = new MessageML();
       noArticle.addParagraph(
           "Must call 'Browser lookup <websiteUrl>' before calling 'Browser next'");
-      return Collections.singletonList(noArticle);
-    }
-    if (this.lastUsedComments == null) {
-      this.lastUsedComments = this.lastUsedArticle.getArticles();
+      sink.push(noArticle);
+      return;
     }
 
-    if (this.lastUsedComments.isEmpty() || this.lastUsedComments.get(0).isEmpty()) {
+    if (browsing.articleOffset >= getNumberOfItems(article)) {
       MessageML noComments = new MessageML();
       noComments.addParagraph("No more articles or comments to show");
-      return Collections.singletonList(noComments);
+      sink.push(noComments);
+      return;
     }
 
-    return getMessageWithLastUsedArticle();
+    pushCachedArticlePage(browsing, browsing.lastUsedArticleUrl, article, sink);
   }
 
-  private List<MessageML> getMessageWithLastUsedArticle() {
+  /**
+   * Pushes the page of the article at the stream's articleOffset and moves the offset past it
+   * Pages are cached per article version, so every room reading the same article shares them
+   * @param browsing
+   * @param websiteUrl
+   * @param article
+   * @param sink
+   */
+  private void pushCachedArticlePage(Browsing browsing, String websiteUrl,
+      WebsiteBrowserArticle article, ResponseSink sink) {
+    int offset = browsing.articleOffset;
+    String renderKey = "offset=" + offset + ",max=" + this.maxArticles;
+
+    List<MessageML> messageMLs = this.renderedMessageCache.get(websiteUrl, article, renderKey);
+    if (messageMLs != null) {
+      pushAll(messageMLs, sink);
+    } else {
+      messageMLs = pushArticlePage(article, offset, sink);
+      this.renderedMessageCache.put(websiteUrl, article, renderKey, messageMLs);
+    }
+
+    browsing.articleOffset = offset + this.maxArticles;
+  }
+
+  /**
+   * Renders the title followed by up to maxArticles items starting at offset,
+   * one message per article or comment thread, pushing each one as soon as it is built
+   * The article is shared through the cache, so it is only read here
+   * @param article
+   * @param offset
+   * @param sink
+   * @return the rendered page
+   */
+  private List<MessageML> pushArticlePage(WebsiteBrowserArticle article, int offset,
+      ResponseSink sink) {
     List<MessageML> messageMLs = new ArrayList<>();
-    int counter = 0;
 
     MessageML title = new MessageML();
-    title.addParagraph(this.lastUsedArticle.getArticleTitle());
+    title.addParagraph(article.getArticleTitle());
     messageMLs.add(title);
+    sink.push(title);
 
-    for (int i = 0; i < this.lastUsedComments.size(); i++) {
-
-      MessageML messageML = new MessageML();
-      messageMLs.add(messageML);
+    int itemIndex = 0;
+    int end = offset + this.maxArticles;
+    //Threads already on this page, which is how deep the next one is indented
+    int depth = 0;
 
-      List<WebsiteBrowserArticle.Article> articles = this.lastUsedComments.get(i);
-      if (counter > this.maxArticles) {
-        if (this.lastUsedComments.size() > 0) {
-          this.lastUsedComments.remove(0);
-        }
-        return messageMLs;
+    for (List<WebsiteBrowserArticle.Article> thread : article.getArticles()) {
+      if (itemIndex >= end) {
+        break;
+      }
+      if (itemIndex + thread.size() <= offset) {
+        itemIndex += thread.size();
+        continue;
       }
 
+      MessageML messageML = new MessageML();
       messageML.addLineBreak();
 
-      String indentation = "";
-      for (int y = 0; y < i; y++) {
-        if (i > 1) {
-          indentation += "------";
-          if (y == (i - 1)) {
-            indentation += ">";
-          }
+      String indentation = getIndentation(depth);
+      for (WebsiteBrowserArticle.Article item : thread) {
+        if (itemIndex >= offset && itemIndex < end) {
+          messageML.addParagraph(indentation);
+          messageML.addParagraph(item.getText());
         }
+        itemIndex++;
       }
+      depth++;
 
-      for (int y = 0; y < articles.size(); y++) {
-        messageML.addParagraph(indentation);
-        messageML.addParagraph(articles.get(y).getText());
+      messageMLs.add(messageML);
+      sink.push(messageML);
+    }
+    return messageMLs;
+  }
 
-        //Remove subarticles - as opposed to index to keep track of which one we're on
-        if (counter > this.maxArticles) {
-          if (articles.size() > 0) {
-            articles.remove(y);
-            y--;
-          }
-          return messageMLs;
-        }
-        counter++;
-      }
+  /**
+   * The prefix of the items of a thread, depth times '------' and then '>',
+   * with the first two threads of a page left unindented
+   * @param depth
+   * @return
+   */
+  private static String getIndentation(int depth) {
+    if (depth <= 1) {
+      return "";
+    }
+    StringBuilder indentation = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      indentation.append("------");
+    }
+    return indentation.append('>').toString();
+  }
 
-      //Remove articles - as opposed to index to keep track of which one we're on
-      this.lastUsedComments.remove(i);
-      i--;
+  private static void pushAll(List<MessageML> messageMLs, ResponseSink sink) {
+    for (MessageML messageML : messageMLs) {
+      sink.push(messageML);
     }
-    return messageMLs;
   }
 
-  private List<MessageML> getHelpCommands(String action) {
+  private static int getNumberOfItems(WebsiteBrowserArticle article) {
+    int numberOfItems = 0;
+    for (List<WebsiteBrowserArticle.Article> thread : article.getArticles()) {
+      numberOfItems += thread.size();
+    }
+    return numberOfItems;
+  }
+
+  private List<MessageML> getHelpCommands() {
     MessageML response = new MessageML();
     updateMessageMLWithRecognizedCommands(response);
     return Collections.singletonList(response);
@@ -200,6 +330,15 @@ public class WebBrowserContext extends ServiceContext {
     messageML.addParagraph("Get the text from a website URL");
     messageML.addLineBreak();
 
+    messageML.addBoldText("Browser search <words>: ");
+    messageML.addParagraph("Search the websites looked up so far");
+    messageML.addLineBreak();
+
+    messageML.addBoldText("Browser watch <websiteUrl>: ");
+    messageML.addParagraph("Post new articles or comments of a website in this room, ");
+    messageML.addParagraph("'Browser unwatch <websiteUrl>' to stop");
+    messageML.addLineBreak();
+
     messageML.addParagraph("After choosing a link to lookup, type: ");
     messageML.addLineBreak();
 
@@ -211,93 +350,232 @@ public class WebBrowserContext extends ServiceContext {
 
   @Override
   public List<MessageML> responsesToAction(String action) {
+    return collectResponses(action);
+  }
+
+  @Override
+  public void respondToAction(String action, ResponseSink sink) {
+    respondToAction(action, null, sink);
+  }
 
-    Command command = Command.getCommandForText(action);
+  @Override
+  public void respondToAction(String action, String streamId, ResponseSink sink) {
+    respondToAction(parse(action), streamId, sink);
+  }
 
-    if (command != Command.UNRECOGNIZED) {
-      this.lastUsedCommand = command;
-    }
-    action = action.toLowerCase();
-    if (action.indexOf("webbrowser") == 0) {
-      action = action.substring("webbrowser".length());
+  @Override
+  public void respondToAction(ParsedCommand parsedCommand, ResponseSink sink) {
+    respondToAction(parsedCommand, null, sink);
+  }
+
+  @Override
+  public void respondToAction(ParsedCommand parsedCommand, String streamId, ResponseSink sink) {
+
+    Command command = Command.forVerb(parsedCommand.getVerb());
+    Browsing browsing = this.browsings.get(streamId);
+
+    //The stream's commands run one at a time, so 'next' follows what was shown before it
+    synchronized (browsing) {
+      if (command != Command.UNRECOGNIZED) {
+        browsing.lastUsedCommand = command;
+      }
+
+      switch (command) {
+        case LOOKUP:
+          LOG.debug("Looking up website");
+          getResponseFromLookingUp(browsing, parsedCommand, sink);
+          break;
+
+        case SEARCH:
+          LOG.debug("Searching websites");
+          pushAll(getSearchResults(parsedCommand), sink);
+          break;
+
+        case UNWATCH:
+          LOG.debug("Unwatching website");
+          pushAll(getUnwatchResponse(parsedCommand, streamId), sink);
+          break;
+
+        case WATCH:
+          LOG.debug("Watching website");
+          pushAll(getWatchResponse(parsedCommand, streamId), sink);
+          break;
+
+        case NEXT_COMMENTS:
+          LOG.debug("Next group of comments");
+          getNextComments(browsing, sink);
+          break;
+        case HELP:
+          LOG.debug("Getting recognized commands");
+          pushAll(getHelpCommands(), sink);
+          break;
+
+        default:
+          LOG.debug("Getting recognized commands - command was not recognied");
+          pushAll(getUnRecognizedCommand(parsedCommand.getText()), sink);
+      }
     }
+  }
 
-    switch (command) {
-      case LOOKUP:
-        LOG.debug("Looking up website");
-        return getResponseFromLookingUp(action);
+  @Override
+  public void copyStreamState(String fromStreamId, String toStreamId) {
+    this.browsings.copy(fromStreamId, toStreamId);
+  }
 
-      case NEXT_COMMENTS:
-        LOG.debug("Next group of comments");
-        return getNextComments(action);
-      case HELP:
-        LOG.debug("Getting recognized commands");
-        return getHelpCommands(action);
+  @Override
+  public String getCoalescingKey(String action) {
+    return getCoalescingKey(parse(action));
+  }
 
+  @Override
+  public String getCoalescingKey(ParsedCommand parsedCommand) {
+    switch (Command.forVerb(parsedCommand.getVerb())) {
+      case LOOKUP:
+        return "lookup:" + parsedCommand.getArgument();
+      case SEARCH:
+        return "search:" + parsedCommand.getArgument();
+      case HELP:
+        return "help";
       default:
-        LOG.debug("Getting recognized commands - command was not recognied");
-        return getUnRecognizedCommand(action);
+        //'Browser next' depends on what was looked up last
+        return null;
     }
   }
 
-
   @Override
   public String getContextName() {
     return contextName;
   }
 
+  @Override
+  protected CommandGrammar getCommandGrammar() {
+    return Command.GRAMMAR;
+  }
+
   /**
-   * Enum of possible WebBrowser commands
+   * What a stream looked up last and how far it read - 'Browser next' continues from it
    */
-  private enum Command {
+  private static final class Browsing {
 
-    LOOKUP("lookup", "look up", "look_up", "openlink", "open link", "open_link"),
-    NEXT_COMMENTS("next", "next page", "next_page", "more", "next comments", "next_comments"),
-    HELP("help", "h", "instructions", "guide", "reddit"),
-    UNRECOGNIZED();
+    private static final StreamStates.Factory<Browsing> FACTORY =
+        new StreamStates.Factory<Browsing>() {
+          @Override
+          public Browsing create() {
+            return new Browsing();
+          }
 
-    private final List<String> triggerWords;
+          @Override
+          public void copy(Browsing from, Browsing to) {
+            to.lastUsedCommand = from.lastUsedCommand;
+            to.lastUsedArticle = from.lastUsedArticle;
+            to.lastUsedArticleUrl = from.lastUsedArticleUrl;
+            to.articleOffset = from.articleOffset;
+          }
+        };
 
-    Command(String... triggerWords) {
-      this.triggerWords = new ArrayList<String>();
+    private Command lastUsedCommand = Command.UNRECOGNIZED;
+    private WebsiteBrowserArticle lastUsedArticle;
+    private String lastUsedArticleUrl;
+    private int articleOffset;
+  }
 
-      for (String triggerWord : triggerWords) {
-        this.triggerWords.add(triggerWord);
-      }
+  /**
+   * A watched website - articles and comments that weren't on it before are new
+   * It is fetched through the client's cache, so it is analyzed again at most once per
+   * cache period however often it is polled
+   */
+  private class WebsiteWatch implements WatchSource {
+
+    private final String websiteUrl;
+    private final SeenItems seenItems;
+
+    private boolean polled;
+
+    private WebsiteWatch(String websiteUrl) {
+      this.websiteUrl = websiteUrl;
+      this.seenItems = new SeenItems(MAX_SEEN_ITEMS);
     }
 
-    Command(int rangeStart, int rangeEnd) {
-      this.triggerWords = new ArrayList<String>();
+    @Override
+    public String getKey() {
+      return getWatchKey(this.websiteUrl);
+    }
 
-      for (int i = rangeStart; i <= rangeEnd; i++) {
-        this.triggerWords.add(String.valueOf(i));
-      }
+    @Override
+    public String getDescription() {
+      return this.websiteUrl;
     }
 
-    public static Command getCommandForText(String text) {
-      text = text.toLowerCase();
-      for (Command command : Command.values()) {
-        for (String triggerWord : command.getTriggerWords()) {
-          if (text.contains(triggerWord)) {
-            return command;
+    @Override
+    public List<MessageML> pollNewItems() {
+      WebsiteBrowserArticle article = websiteBrowserClient.getTextFromWebsite(this.websiteUrl);
+      if (article == null) {
+        return Collections.emptyList();
+      }
+
+      List<String> newItems = new ArrayList<String>();
+      for (List<WebsiteBrowserArticle.Article> thread : article.getArticles()) {
+        for (WebsiteBrowserArticle.Article item : thread) {
+          if (item.getText() != null && this.seenItems.markSeen(item.getText())) {
+            newItems.add(item.getText());
           }
         }
       }
-      return UNRECOGNIZED;
-    }
 
-    public List<String> getTriggerWords() {
-      return this.triggerWords;
-    }
+      //What is there when watching starts isn't new
+      boolean firstPoll = !this.polled;
+      this.polled = true;
+      if (firstPoll || newItems.isEmpty()) {
+        return Collections.emptyList();
+      }
 
-    @Override
-    public String toString() {
-      return "Command{" +
-          "triggerWords=" + triggerWords +
-          '}';
+      MessageML digest = new MessageML();
+      digest.addParagraph("New on " + this.websiteUrl + ": ");
+      for (String item : newItems.subList(0, Math.min(newItems.size(), maxArticles))) {
+        digest.addLineBreak();
+        digest.addParagraph(item);
+      }
+      return Collections.singletonList(digest);
     }
   }
 
+  /**
+   * Enum of possible WebBrowser commands, each with the words it is typed as
+   */
+  private enum Command {
 
-  ;
+    LOOKUP(ArgumentType.URL, "lookup", "look up", "look_up", "openlink", "open link",
+        "open_link"),
+    SEARCH(ArgumentType.WORDS, "search"),
+    UNWATCH(ArgumentType.URL, "unwatch", "stop watching"),
+    WATCH(ArgumentType.URL, "watch"),
+    NEXT_COMMENTS(ArgumentType.NONE, "next", "next page", "next_page", "more", "next comments",
+        "next_comments"),
+    //Also what just 'Browser' is
+    HELP(ArgumentType.NONE, "help", "h", "instructions", "guide"),
+    UNRECOGNIZED(ArgumentType.NONE);
+
+    //Created after the commands, from their words
+    private static final CommandGrammar GRAMMAR = createGrammar();
+
+    private final ArgumentType argumentType;
+    private final String[] aliases;
+
+    Command(ArgumentType argumentType, String... aliases) {
+      this.argumentType = argumentType;
+      this.aliases = aliases;
+    }
+
+    private static CommandGrammar createGrammar() {
+      CommandGrammar grammar = new CommandGrammar().setDefaultVerb(HELP.name());
+      for (Command command : values()) {
+        grammar.addVerb(command.name(), command.argumentType, command.aliases);
+      }
+      return grammar;
+    }
+
+    public static Command forVerb(String verb) {
+      return verb == null ? UNRECOGNIZED : valueOf(verb);
+    }
+  }
 }
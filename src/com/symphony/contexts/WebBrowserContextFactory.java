@@ -0,0 +1,28 @@
+package com.symphony.contexts;
+
+import com.symphony.configurations.IConfigurationProvider;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates the WebBrowser context
+ */
+
+public class WebBrowserContextFactory implements ServiceContextFactory {
+
+  @Override
+  public String getContextName() {
+    return "WebBrowser";
+  }
+
+  @Override
+  public List<String> getAliases() {
+    return Arrays.asList("webbrowser", "browser");
+  }
+
+  @Override
+  public ServiceContext create(IConfigurationProvider configurationProvider) {
+    return new WebBrowserContext(configurationProvider);
+  }
+}
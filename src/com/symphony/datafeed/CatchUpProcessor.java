@@ -0,0 +1,254 @@
+package com.symphony.datafeed;
+
+import com.symphony.admin.Diagnostics;
+import com.symphony.models.Message;
+import com.symphony.utils.MonitoredThreadPoolExecutor;
+import com.symphony.utils.NamedThreadFactory;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains a datafeed backlog (e.g. after a restart) by handling each stream's messages
+ * on a fixed size pool - streams run in parallel, messages within a stream in order
+ *
+ * Each stream being caught up on has a queue, drained by one task at a time, so the
+ * datafeed keeps being read while the backlog is handled. Messages for that stream read
+ * afterwards are queued behind it, see offer()
+ *
+ * Optionally drops a command repeated back to back in the same stream,
+ * e.g. five 'Reddit next' in a row become one
+ */
+
+public class CatchUpProcessor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CatchUpProcessor.class);
+
+  private final MonitoredThreadPoolExecutor pool;
+  //Streams with messages waiting or being handled, guarded by this
+  private final Map<String, StreamQueue> streams;
+  private boolean shutDown;
+  private volatile boolean collapseDuplicates;
+
+  public CatchUpProcessor(int parallelism, boolean collapseDuplicates) {
+    //Handlers make blocking calls, so they get threads of their own
+    this.pool = new MonitoredThreadPoolExecutor(parallelism, parallelism, 0L,
+        TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+        new NamedThreadFactory("catch-up", false));
+    this.streams = new HashMap<String, StreamQueue>();
+    this.collapseDuplicates = collapseDuplicates;
+  }
+
+  /**
+   * Queues every message to be handled, returning without waiting for them
+   * @param messages in datafeed order
+   * @param handler called on pool threads, at most once at a time per stream
+   * @throws RejectedExecutionException if the processor was shut down
+   */
+  public synchronized void process(List<Message> messages, MessageHandler handler) {
+    if (this.shutDown) {
+      throw new RejectedExecutionException("Catch-up processor is shut down");
+    }
+
+    Map<String, List<Message>> partitions = partitionByStream(messages);
+    LOG.info("Catching up on {} messages in {} streams", messages.size(), partitions.size());
+
+    for (Map.Entry<String, List<Message>> partition : partitions.entrySet()) {
+      StreamQueue queue = getQueue(partition.getKey());
+      for (Message message : partition.getValue()) {
+        queue.waiting.add(new QueuedMessage(message, handler));
+      }
+    }
+  }
+
+  /**
+   * Queues the message behind the backlog of its stream, if it is still being caught up on
+   * @param message
+   * @param handler
+   * @return false if the stream has no backlog, so the message may be handled straight away
+   */
+  public synchronized boolean offer(Message message, MessageHandler handler) {
+    StreamQueue queue = this.streams.get(message.getStreamId());
+    if (queue == null || this.shutDown) {
+      return false;
+    }
+    queue.waiting.add(new QueuedMessage(message, handler));
+    return true;
+  }
+
+  /**
+   * Returns the stream's queue, starting a task to drain it if it has none
+   * @param streamId
+   * @return
+   */
+  private StreamQueue getQueue(String streamId) {
+    StreamQueue queue = this.streams.get(streamId);
+    if (queue == null) {
+      queue = new StreamQueue(streamId);
+      this.streams.put(streamId, queue);
+      this.pool.execute(queue);
+    }
+    return queue;
+  }
+
+  /**
+   * Groups messages by stream, keeping their order within each stream
+   * @param messages
+   * @return
+   */
+  private Map<String, List<Message>> partitionByStream(List<Message> messages) {
+    Map<String, List<Message>> partitions = new LinkedHashMap<String, List<Message>>();
+    int collapsed = 0;
+
+    for (Message message : messages) {
+      List<Message> partition = partitions.get(message.getStreamId());
+      if (partition == null) {
+        partition = new ArrayList<Message>();
+        partitions.put(message.getStreamId(), partition);
+      }
+
+      if (this.collapseDuplicates && !partition.isEmpty()
+          && isSameCommand(partition.get(partition.size() - 1), message)) {
+        collapsed++;
+        continue;
+      }
+      partition.add(message);
+    }
+
+    if (collapsed > 0) {
+      LOG.info("Collapsed {} repeated commands", collapsed);
+    }
+    return partitions;
+  }
+
+  private static boolean isSameCommand(Message previous, Message message) {
+    return normalize(previous.getMessage()).equals(normalize(message.getMessage()));
+  }
+
+  private static String normalize(String text) {
+    return text == null ? "" : text.trim().replaceAll("\\s+", " ").toLowerCase();
+  }
+
+  /**
+   * Changes the number of streams handled at once - extra threads stop once they are idle
+   * @param parallelism
+   */
+  public void setParallelism(int parallelism) {
+    this.pool.setPoolSize(parallelism);
+  }
+
+  public void setCollapseDuplicates(boolean collapseDuplicates) {
+    this.collapseDuplicates = collapseDuplicates;
+  }
+
+  /**
+   * Stops taking new messages - the ones already queued are still handled
+   */
+  public synchronized void shutdown() {
+    this.shutDown = true;
+    this.pool.shutdown();
+  }
+
+  /**
+   * Waits for the queued messages to be handled, after shutdown()
+   * @param timeout
+   * @param unit
+   * @return true if they all were
+   * @throws InterruptedException
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return this.pool.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Stops handling messages, interrupting the handlers that are running
+   * @return the messages that weren't handled, in datafeed order within each stream
+   */
+  public synchronized List<Message> shutdownNow() {
+    this.shutDown = true;
+    this.pool.shutdownNow();
+
+    List<Message> notHandled = new ArrayList<Message>();
+    for (StreamQueue queue : this.streams.values()) {
+      for (QueuedMessage queued : queue.waiting) {
+        notHandled.add(queued.message);
+      }
+      //Left to the task draining it, if one is running, to remove it from the map
+      queue.waiting.clear();
+    }
+    return notHandled;
+  }
+
+  public JSONObject getDiagnostics() {
+    int waiting = 0;
+    int numStreams;
+    synchronized (this) {
+      numStreams = this.streams.size();
+      for (StreamQueue queue : this.streams.values()) {
+        waiting += queue.waiting.size();
+      }
+    }
+    return new JSONObject()
+        .put("pool", Diagnostics.pool(this.pool))
+        .put("streams", numStreams)
+        .put("waitingMessages", waiting);
+  }
+
+  /**
+   * A stream's messages waiting to be handled, and the task handling them one at a time
+   * Once it is empty the stream is forgotten, and its next message is handled as usual
+   */
+  private class StreamQueue implements Runnable {
+
+    private final String streamId;
+    private final Deque<QueuedMessage> waiting;
+
+    private StreamQueue(String streamId) {
+      this.streamId = streamId;
+      this.waiting = new ArrayDeque<QueuedMessage>();
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        QueuedMessage next;
+        synchronized (CatchUpProcessor.this) {
+          next = this.waiting.poll();
+          if (next == null) {
+            streams.remove(this.streamId);
+            return;
+          }
+        }
+
+        try {
+          next.handler.handle(next.message);
+        } catch (RuntimeException exception) {
+          LOG.error("Error handling message {}", next.message.getId(), exception);
+        }
+      }
+    }
+  }
+
+  private static class QueuedMessage {
+
+    private final Message message;
+    private final MessageHandler handler;
+
+    private QueuedMessage(Message message, MessageHandler handler) {
+      this.message = message;
+      this.handler = handler;
+    }
+  }
+}
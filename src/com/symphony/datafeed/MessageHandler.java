@@ -0,0 +1,12 @@
+package com.symphony.datafeed;
+
+import com.symphony.models.Message;
+
+/**
+ * Handles one message read from the datafeed
+ */
+
+public interface MessageHandler {
+
+  void handle(Message message);
+}
@@ -0,0 +1,266 @@
+package com.symphony.datafeed;
+
+import com.symphony.utils.NamedThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the IDs of recently seen datafeed messages so replays (a retried read,
+ * a re-created datafeed) are dropped before they're parsed or answered
+ *
+ * IDs are kept in time buckets - the oldest bucket is dropped as time moves on, or early
+ * if more than maxIds are remembered, so memory stays bounded
+ * If a file is given the window is saved there whenever a bucket rotates and loaded on start,
+ * so replays right after a restart are also dropped - saved on a background thread, so
+ * isNew never waits on the disk
+ */
+
+public class MessageIdFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MessageIdFilter.class);
+
+  //How long closing waits for a queued save before saving the window itself
+  private static final long SAVE_TIMEOUT = 5000;
+
+  private final long bucketMillis;
+  private final int numBuckets;
+  private final int maxIds;
+  private final File file;
+
+  //Newest bucket first
+  private final Deque<Bucket> buckets;
+  private int size;
+
+  //Null if the window isn't persisted
+  private final ExecutorService saveExecutor;
+  //Set while a save is waiting to run, so rotations don't queue one each
+  private boolean saveQueued;
+  //Keeps a save run by close() from writing the file at the same time as a queued one
+  private final Object saveLock;
+
+  /**
+   * @param windowMillis how long an ID is remembered
+   * @param numBuckets how many pieces the window is dropped in
+   * @param maxIds
+   * @param file where the window is persisted, null to keep it in memory only
+   */
+  public MessageIdFilter(long windowMillis, int numBuckets, int maxIds, File file) {
+    this.bucketMillis = Math.max(1, windowMillis / numBuckets);
+    this.numBuckets = numBuckets;
+    this.maxIds = maxIds;
+    this.file = file;
+    this.buckets = new ArrayDeque<Bucket>();
+    this.saveExecutor = file == null ? null
+        : Executors.newSingleThreadExecutor(new NamedThreadFactory("dedup-save", true));
+    this.saveLock = new Object();
+
+    if (file != null && file.isFile()) {
+      load();
+    }
+  }
+
+  /**
+   * Returns true, and remembers the ID, if it hasn't been seen within the window
+   * @param messageId
+   * @return
+   */
+  public synchronized boolean isNew(String messageId) {
+    boolean rotated = rotate(System.currentTimeMillis());
+
+    for (Bucket bucket : this.buckets) {
+      if (bucket.ids.contains(messageId)) {
+        return false;
+      }
+    }
+
+    this.buckets.peekFirst().ids.add(messageId);
+    this.size++;
+
+    while (this.size > this.maxIds && this.buckets.size() > 1) {
+      this.size -= this.buckets.removeLast().ids.size();
+    }
+
+    if (rotated && this.saveExecutor != null && !this.saveQueued) {
+      this.saveQueued = true;
+      this.saveExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          save();
+        }
+      });
+    }
+    return true;
+  }
+
+  /**
+   * Starts a new bucket if the newest one is over, dropping those past the window
+   * @param now
+   * @return whether the buckets changed
+   */
+  private boolean rotate(long now) {
+    long bucketStart = now - now % this.bucketMillis;
+
+    Bucket newest = this.buckets.peekFirst();
+    if (newest != null && newest.startMillis == bucketStart) {
+      return false;
+    }
+
+    this.buckets.addFirst(new Bucket(bucketStart));
+    Iterator<Bucket> iterator = this.buckets.descendingIterator();
+    while (iterator.hasNext()) {
+      Bucket bucket = iterator.next();
+      if (bucket.startMillis > bucketStart - this.numBuckets * this.bucketMillis) {
+        break;
+      }
+      this.size -= bucket.ids.size();
+      iterator.remove();
+    }
+    return true;
+  }
+
+  public synchronized int size() {
+    return this.size;
+  }
+
+  /**
+   * Saves the window if it is persisted, so IDs seen since the last rotation aren't lost
+   */
+  public void close() {
+    if (this.saveExecutor == null) {
+      return;
+    }
+    this.saveExecutor.shutdown();
+    try {
+      this.saveExecutor.awaitTermination(SAVE_TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+    save();
+  }
+
+  /**
+   * Writes the window to the file, one 'bucketStart id' line per ID
+   * Only copying the window holds the filter's lock, not the writing
+   */
+  public void save() {
+    if (this.file == null) {
+      return;
+    }
+    List<Bucket> snapshot = new ArrayList<Bucket>(this.numBuckets);
+    synchronized (this) {
+      this.saveQueued = false;
+      for (Bucket bucket : this.buckets) {
+        snapshot.add(bucket.copy());
+      }
+    }
+
+    synchronized (this.saveLock) {
+      write(snapshot);
+    }
+  }
+
+  private void write(List<Bucket> snapshot) {
+    File temporaryFile = new File(this.file.getPath() + ".tmp");
+    try {
+      BufferedWriter writer = new BufferedWriter(
+          new OutputStreamWriter(new FileOutputStream(temporaryFile), StandardCharsets.UTF_8));
+      try {
+        for (Bucket bucket : snapshot) {
+          for (String id : bucket.ids) {
+            writer.write(bucket.startMillis + " " + id);
+            writer.newLine();
+          }
+        }
+      } finally {
+        writer.close();
+      }
+      if (!temporaryFile.renameTo(this.file)) {
+        this.file.delete();
+        if (!temporaryFile.renameTo(this.file)) {
+          LOG.warn("Could not replace {}", this.file);
+        }
+      }
+    } catch (IOException exception) {
+      LOG.warn("Could not save recent message IDs to {}", this.file, exception);
+    }
+  }
+
+  private void load() {
+    long now = System.currentTimeMillis();
+    long oldestKept = now - now % this.bucketMillis - (this.numBuckets - 1) * this.bucketMillis;
+
+    try {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new FileInputStream(this.file), StandardCharsets.UTF_8));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          int space = line.indexOf(' ');
+          if (space <= 0) {
+            continue;
+          }
+          long startMillis = Long.parseLong(line.substring(0, space));
+          if (startMillis < oldestKept) {
+            continue;
+          }
+
+          //Buckets were saved newest first
+          Bucket bucket = this.buckets.peekLast();
+          if (bucket == null || bucket.startMillis != startMillis) {
+            bucket = new Bucket(startMillis);
+            this.buckets.addLast(bucket);
+          }
+          if (bucket.ids.add(line.substring(space + 1))) {
+            this.size++;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+      LOG.info("Loaded {} recent message IDs from {}", this.size, this.file);
+    } catch (IOException | NumberFormatException exception) {
+      LOG.warn("Could not load recent message IDs from {}", this.file, exception);
+    }
+  }
+
+  /**
+   * IDs first seen during one bucketMillis long period
+   */
+  private static class Bucket {
+
+    private final long startMillis;
+    private final Set<String> ids;
+
+    private Bucket(long startMillis) {
+      this.startMillis = startMillis;
+      this.ids = new HashSet<String>();
+    }
+
+    private Bucket copy() {
+      Bucket copy = new Bucket(this.startMillis);
+      copy.ids.addAll(this.ids);
+      return copy;
+    }
+  }
+}
@@ -29,9 +29,17 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -54,24 +62,90 @@ public class MessageML {
 
   private static final Logger LOG = LoggerFactory.getLogger(MessageML.class);
 
-  private static final DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-  private DocumentBuilder documentBuilder;
+  //DocumentBuilderFactory and DocumentBuilder aren't thread safe, and messages are built on
+  //many threads at once, so each thread has a builder - shared with the packer
+  private static final ThreadLocal<DocumentBuilder> documentBuilder =
+      new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+          try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+          } catch (ParserConfigurationException exception) {
+            throw new RuntimeException("Unable to create XML document builder", exception);
+          }
+        }
+      };
+
   private Document document;
   private Element rootElement;
 
   private int numChildren;
 
+  //Rendered string, kept until the document changes so shared responses are serialized once
+  private String renderedString;
+
   public MessageML() {
 
+    this.document = newDocument();
+
+    this.rootElement = this.document.createElement("messageML");
+    this.document.appendChild(this.rootElement);
+    this.numChildren = 0;
+  }
+
+  /**
+   * A new empty document from the current thread's builder
+   * @return
+   */
+  static Document newDocument() {
+    return documentBuilder.get().newDocument();
+  }
+
+  /**
+   * Rebuilds a message from the string its toString() returned, e.g. after it was saved
+   * @param markup
+   * @return
+   * @throws IllegalArgumentException if it isn't well formed MessageML
+   */
+  public static MessageML fromString(String markup) {
+    MessageML messageML = new MessageML();
+    if (markup.isEmpty()) {
+      return messageML;
+    }
+
     try {
-      this.documentBuilder = builderFactory.newDocumentBuilder();
-      this.document = this.documentBuilder.newDocument();
-
-      this.rootElement = this.document.createElement("messageML");
-      this.document.appendChild(this.rootElement);
-      this.numChildren = 0;
-    } catch (ParserConfigurationException exception) {
-      throw new RuntimeException("Unable to create XML document", exception);
+      Document parsed = documentBuilder.get().parse(new InputSource(new StringReader(markup)));
+      removeIndentation(parsed.getDocumentElement());
+      NodeList children = parsed.getDocumentElement().getChildNodes();
+      for (int i = 0; i < children.getLength(); i++) {
+        messageML.rootElement.appendChild(messageML.document.importNode(children.item(i), true));
+        messageML.numChildren++;
+      }
+    } catch (SAXException | IOException exception) {
+      throw new IllegalArgumentException("Not MessageML: " + markup, exception);
+    }
+    return messageML;
+  }
+
+  /**
+   * Removes the whitespace rendering indented the text with, so it isn't indented twice
+   * @param element
+   */
+  private static void removeIndentation(Element element) {
+    Node child = element.getFirstChild();
+    while (child != null) {
+      Node next = child.getNextSibling();
+      if (child.getNodeType() == Node.TEXT_NODE) {
+        String text = child.getNodeValue().trim();
+        if (text.isEmpty()) {
+          element.removeChild(child);
+        } else {
+          child.setNodeValue(text);
+        }
+      } else if (child.getNodeType() == Node.ELEMENT_NODE) {
+        removeIndentation((Element) child);
+      }
+      child = next;
     }
   }
 
@@ -102,6 +176,7 @@ public class MessageML {
     element.appendChild(elementText);
     parentElement.appendChild(element);
     this.numChildren++;
+    this.renderedString = null;
   }
 
   /**
@@ -121,6 +196,7 @@ public class MessageML {
     Text elementText = this.document.createTextNode(text);
     this.rootElement.appendChild(elementText);
     this.numChildren++;
+    this.renderedString = null;
     //this.addSimpleTag("p", text);
   }
 
@@ -171,6 +247,7 @@ public class MessageML {
     Element element = this.document.createElement(tag);
     root.appendChild(element);
     this.numChildren++;
+    this.renderedString = null;
   }
 
   /**
@@ -186,6 +263,7 @@ public class MessageML {
     cashTag.setAttributeNode(tagAttribute);
     this.rootElement.appendChild(cashTag);
     this.numChildren++;
+    this.renderedString = null;
   }
 
   /**
@@ -228,10 +306,43 @@ public class MessageML {
     }
 
     this.rootElement.appendChild(parentElement);
+    this.renderedString = null;
+  }
+
+  /**
+   * Copies the top level elements and text into another document, for splitting and merging
+   * Synchronized as even reading a DOM isn't thread safe, and cached messages are shared
+   * @param targetDocument
+   * @return
+   */
+  synchronized List<Node> copyChildrenTo(Document targetDocument) {
+    NodeList children = this.rootElement.getChildNodes();
+    List<Node> copies = new ArrayList<Node>(children.getLength());
+    for (int i = 0; i < children.getLength(); i++) {
+      copies.add(targetDocument.importNode(children.item(i), true));
+    }
+    return copies;
+  }
+
+  /**
+   * Appends a copy of a top level element or text node from another document
+   * @param node
+   */
+  void appendNode(Node node) {
+    this.rootElement.appendChild(this.document.importNode(node, true));
+    this.numChildren++;
+    this.renderedString = null;
   }
 
   @Override
-  public String toString() {
+  public synchronized String toString() {
+    if (this.renderedString == null) {
+      this.renderedString = render();
+    }
+    return this.renderedString;
+  }
+
+  private String render() {
 
     try {
       Transformer transformer = TransformerFactory.newInstance().newTransformer();
@@ -0,0 +1,392 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.formatters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Packs the messages of a response into as few sends as possible without exceeding
+ * the maximum message length
+ *
+ * Consecutive messages that fit together are merged (separated by a line break)
+ * Messages that are too long are split between top level elements, and inside elements or text
+ * when a single one is too long - text is split on whitespace where possible
+ * Messages that are already a good size are passed through untouched
+ */
+
+public class MessageMLPacker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MessageMLPacker.class);
+
+  //Length of an empty "<messageML></messageML>" and of the "<br/>" between merged messages
+  private static final int ENVELOPE_LENGTH = 23;
+  private static final int SEPARATOR_LENGTH = 5;
+
+  private volatile int maxMessageLength;
+
+  public MessageMLPacker(int maxMessageLength) {
+    this.maxMessageLength = maxMessageLength;
+  }
+
+  /**
+   * Returns the messages packed into as few messages as possible, in the same order
+   * The given messages are never modified
+   * @param messageMLs
+   * @return
+   */
+  public List<MessageML> pack(List<MessageML> messageMLs) {
+    int maxLength = this.maxMessageLength;
+
+    List<MessageML> packed = new ArrayList<MessageML>();
+    List<MessageML> group = new ArrayList<MessageML>();
+    int groupLength = ENVELOPE_LENGTH;
+
+    for (MessageML messageML : messageMLs) {
+      int length = messageML.toString().length();
+
+      if (length == 0) {
+        continue;
+      }
+
+      if (length > maxLength) {
+        addGroup(group, packed, maxLength);
+        groupLength = ENVELOPE_LENGTH;
+        packed.addAll(split(messageML, maxLength));
+        continue;
+      }
+
+      int addedLength = length - ENVELOPE_LENGTH + (group.isEmpty() ? 0 : SEPARATOR_LENGTH);
+      if (groupLength + addedLength > maxLength) {
+        addGroup(group, packed, maxLength);
+        groupLength = ENVELOPE_LENGTH;
+        addedLength = length - ENVELOPE_LENGTH;
+      }
+
+      group.add(messageML);
+      groupLength += addedLength;
+    }
+
+    addGroup(group, packed, maxLength);
+    return packed;
+  }
+
+  public void setMaxMessageLength(int maxMessageLength) {
+    this.maxMessageLength = maxMessageLength;
+  }
+
+  /**
+   * Adds the group to the packed messages as one merged message, and clears it
+   * @param group
+   * @param packed
+   * @param maxLength
+   */
+  private void addGroup(List<MessageML> group, List<MessageML> packed, int maxLength) {
+    if (group.size() == 1) {
+      packed.add(group.get(0));
+    } else if (group.size() > 1) {
+      Document scratchDocument = newScratchDocument();
+      MessageML merged = new MessageML();
+
+      for (int i = 0; i < group.size(); i++) {
+        if (i > 0) {
+          merged.addLineBreak();
+        }
+        for (Node node : group.get(i).copyChildrenTo(scratchDocument)) {
+          merged.appendNode(node);
+        }
+      }
+
+      //The lengths are additive, but don't send an oversized message if the serializer disagrees
+      if (merged.toString().length() <= maxLength) {
+        packed.add(merged);
+      } else {
+        packed.addAll(group);
+      }
+    }
+    group.clear();
+  }
+
+  /**
+   * Splits a message that is too long into messages that fit
+   * @param messageML
+   * @param maxLength
+   * @return
+   */
+  private List<MessageML> split(MessageML messageML, int maxLength) {
+    int capacity = maxLength - ENVELOPE_LENGTH;
+
+    List<Node> units = new ArrayList<Node>();
+    for (Node node : messageML.copyChildrenTo(newScratchDocument())) {
+      units.addAll(splitNode(node, capacity));
+    }
+
+    List<MessageML> pieces = new ArrayList<MessageML>();
+    List<Node> pieceUnits = new ArrayList<Node>();
+    int pieceLength = 0;
+
+    for (Node unit : units) {
+      int unitLength = estimateLength(unit);
+      if (!pieceUnits.isEmpty() && pieceLength + unitLength > capacity) {
+        addPieces(pieceUnits, pieces, maxLength);
+        pieceUnits = new ArrayList<Node>();
+        pieceLength = 0;
+      }
+      pieceUnits.add(unit);
+      pieceLength += unitLength;
+    }
+    addPieces(pieceUnits, pieces, maxLength);
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Split message of length {} into {} messages", messageML.toString().length(),
+          pieces.size());
+    }
+    return pieces;
+  }
+
+  /**
+   * Adds the units as one message
+   * The lengths of units are estimates (e.g. indentation isn't counted), so if the message
+   * turns out too long it is halved, or a single unit is split again with less room
+   * @param units
+   * @param pieces
+   * @param maxLength
+   */
+  private void addPieces(List<Node> units, List<MessageML> pieces, int maxLength) {
+    if (units.isEmpty()) {
+      return;
+    }
+
+    MessageML piece = new MessageML();
+    for (Node unit : units) {
+      piece.appendNode(unit);
+    }
+
+    int length = piece.toString().length();
+    if (length <= maxLength) {
+      pieces.add(piece);
+      return;
+    }
+
+    if (units.size() > 1) {
+      int half = units.size() / 2;
+      addPieces(units.subList(0, half), pieces, maxLength);
+      addPieces(units.subList(half, units.size()), pieces, maxLength);
+      return;
+    }
+
+    Node unit = units.get(0);
+    int reducedCapacity = estimateLength(unit) - (length - maxLength) - SEPARATOR_LENGTH;
+    List<Node> smallerUnits = reducedCapacity > 0
+        ? splitNode(unit, reducedCapacity) : Collections.<Node>emptyList();
+
+    if (smallerUnits.size() > 1) {
+      for (Node smallerUnit : smallerUnits) {
+        addPieces(Collections.singletonList(smallerUnit), pieces, maxLength);
+      }
+    } else {
+      LOG.warn("Could not split element to fit in {} characters", maxLength);
+      pieces.add(piece);
+    }
+  }
+
+  /**
+   * Splits a node into nodes that each fit in capacity characters where possible
+   * @param node
+   * @param capacity
+   * @return
+   */
+  private static List<Node> splitNode(Node node, int capacity) {
+    if (estimateLength(node) <= capacity) {
+      return Collections.singletonList(node);
+    }
+
+    if (node.getNodeType() == Node.TEXT_NODE) {
+      List<Node> textNodes = new ArrayList<Node>();
+      for (String text : splitText(node.getNodeValue(), capacity)) {
+        textNodes.add(node.getOwnerDocument().createTextNode(text));
+      }
+      return textNodes;
+    }
+
+    if (node.getNodeType() != Node.ELEMENT_NODE || !node.hasChildNodes()) {
+      return Collections.singletonList(node);
+    }
+
+    //Split the children, then wrap them in as few copies of the element as possible
+    Element element = (Element) node;
+    int tagsLength = estimateOpeningTagLength(element) + element.getTagName().length() + 3;
+    int childCapacity = capacity - tagsLength;
+    if (childCapacity <= 0) {
+      return Collections.singletonList(node);
+    }
+
+    List<Node> copies = new ArrayList<Node>();
+    Element copy = null;
+    int copyLength = 0;
+
+    NodeList children = element.getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      for (Node childUnit : splitNode(children.item(i), childCapacity)) {
+        int childLength = estimateLength(childUnit);
+        if (copy == null || copyLength + childLength > childCapacity) {
+          copy = (Element) element.cloneNode(false);
+          copies.add(copy);
+          copyLength = 0;
+        }
+        copy.appendChild(childUnit.getParentNode() == null ? childUnit
+            : childUnit.cloneNode(true));
+        copyLength += childLength;
+      }
+    }
+    return copies;
+  }
+
+  /**
+   * Splits text into chunks whose escaped length fits in capacity, on whitespace where possible
+   * and never inside a surrogate pair
+   * @param text
+   * @param capacity
+   * @return
+   */
+  private static List<String> splitText(String text, int capacity) {
+    List<String> chunks = new ArrayList<String>();
+
+    int start = 0;
+    while (start < text.length()) {
+      int length = 0;
+      int end = start;
+      int lastWhitespace = -1;
+
+      //By code point, so a surrogate pair is never cut in two
+      while (end < text.length()) {
+        int codePoint = text.codePointAt(end);
+        int charCount = Character.charCount(codePoint);
+        int charLength = escapedLength(codePoint, false);
+        if (length + charLength > capacity) {
+          break;
+        }
+        if (Character.isWhitespace(codePoint)) {
+          lastWhitespace = end;
+        }
+        length += charLength;
+        end += charCount;
+      }
+
+      if (end < text.length() && lastWhitespace > start) {
+        end = lastWhitespace + 1;
+      }
+      if (end == start) {
+        end = start + Character.charCount(text.codePointAt(start));
+      }
+      chunks.add(text.substring(start, end));
+      start = end;
+    }
+    return chunks;
+  }
+
+  /**
+   * Estimates the serialized length of a node the way MessageML.toString() renders it
+   * @param node
+   * @return
+   */
+  static int estimateLength(Node node) {
+    switch (node.getNodeType()) {
+      case Node.TEXT_NODE:
+        return escapedLength(node.getNodeValue(), false);
+      case Node.ELEMENT_NODE:
+        Element element = (Element) node;
+        int length = estimateOpeningTagLength(element);
+        if (!element.hasChildNodes()) {
+          return length + 1;
+        }
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+          length += estimateLength(children.item(i));
+        }
+        return length + element.getTagName().length() + 3;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Length of "<tag attr="value">"
+   * @param element
+   * @return
+   */
+  private static int estimateOpeningTagLength(Element element) {
+    int length = element.getTagName().length() + 2;
+    NamedNodeMap attributes = element.getAttributes();
+    for (int i = 0; i < attributes.getLength(); i++) {
+      Node attribute = attributes.item(i);
+      length += attribute.getNodeName().length() + 4
+          + escapedLength(attribute.getNodeValue(), true);
+    }
+    return length;
+  }
+
+  private static int escapedLength(String text, boolean inAttribute) {
+    int length = 0;
+    for (int i = 0; i < text.length(); ) {
+      int codePoint = text.codePointAt(i);
+      length += escapedLength(codePoint, inAttribute);
+      i += Character.charCount(codePoint);
+    }
+    return length;
+  }
+
+  private static int escapedLength(int codePoint, boolean inAttribute) {
+    switch (codePoint) {
+      case '&':
+        return 5;
+      case '<':
+      case '>':
+        return 4;
+      case '"':
+        return inAttribute ? 6 : 1;
+      default:
+        //Control characters are stripped from the rendered message, and characters outside
+        //the BMP (e.g. emoji) are written as a character reference like "&#128512;"
+        if (Character.isSupplementaryCodePoint(codePoint)) {
+          return String.valueOf(codePoint).length() + 3;
+        }
+        return codePoint < 0x20 ? 0 : 1;
+    }
+  }
+
+  private static Document newScratchDocument() {
+    return MessageML.newDocument();
+  }
+}
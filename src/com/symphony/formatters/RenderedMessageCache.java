@@ -0,0 +1,176 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.formatters;
+
+import com.symphony.utils.MemoryEstimates;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches rendered responses so hot content is rendered once and sent many times
+ *
+ * Entries are grouped by source (e.g. a subreddit or an article URL) and tagged with the version
+ * of the content they were rendered from - the cached listing or article object itself
+ * Asking for a different version of a source drops every render of the old one, while
+ * storing a render of a version other than the cached one is ignored: callers ask for a
+ * version before rendering it, so the other version was asked for later and is the newer one
+ * Its size and estimated memory can be read without locking, for diagnostics
+ */
+
+public class RenderedMessageCache {
+
+  private final LinkedHashMap<String, SourceRenders> sources;
+
+  private int maxSources;
+
+  //Written while holding the lock, read without it
+  private volatile int size;
+  private volatile long estimatedBytes;
+
+  public RenderedMessageCache(int maxSources) {
+    this.maxSources = maxSources;
+    this.sources = new LinkedHashMap<String, SourceRenders>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, SourceRenders> eldest) {
+        if (size() > RenderedMessageCache.this.maxSources) {
+          removed(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns the cached render, or null if that page of that version of the source isn't cached
+   * @param sourceId the content the render came from
+   * @param contentVersion the cached content entry it was rendered from
+   * @param renderKey the page/cursor and render options
+   * @return
+   */
+  public synchronized List<MessageML> get(String sourceId, Object contentVersion,
+      String renderKey) {
+    SourceRenders renders = this.sources.get(sourceId);
+    if (renders == null || renders.contentVersion != contentVersion) {
+      //Kept as the source's version, so a render of the one it replaces can't be stored
+      removed(this.sources.put(sourceId, new SourceRenders(contentVersion)));
+      return null;
+    }
+    RenderedMessages rendered = renders.messageMLs.get(renderKey);
+    return rendered == null ? null : rendered.messageMLs;
+  }
+
+  /**
+   * Caches the render, serializing each message up front so later sends reuse the string
+   * @param sourceId
+   * @param contentVersion
+   * @param renderKey
+   * @param messageMLs must not be modified afterwards
+   * @return false if a different version of the source is cached, so the render was stale
+   */
+  public boolean put(String sourceId, Object contentVersion, String renderKey,
+      List<MessageML> messageMLs) {
+    long bytes = MemoryEstimates.OBJECT_OVERHEAD;
+    for (MessageML messageML : messageMLs) {
+      bytes += MemoryEstimates.ofString(messageML.toString());
+    }
+
+    synchronized (this) {
+      SourceRenders renders = this.sources.get(sourceId);
+      if (renders == null) {
+        renders = new SourceRenders(contentVersion);
+        this.sources.put(sourceId, renders);
+      } else if (renders.contentVersion != contentVersion) {
+        return false;
+      }
+
+      RenderedMessages previous =
+          renders.messageMLs.put(renderKey, new RenderedMessages(messageMLs, bytes));
+      if (previous != null) {
+        this.size--;
+        this.estimatedBytes -= previous.estimatedBytes;
+      }
+      this.size++;
+      this.estimatedBytes += bytes;
+    }
+    return true;
+  }
+
+  /**
+   * Drops every render of that source
+   * @param sourceId
+   */
+  public synchronized void invalidate(String sourceId) {
+    removed(this.sources.remove(sourceId));
+  }
+
+  /**
+   * The number of renders cached, across all sources
+   * @return
+   */
+  public int size() {
+    return size;
+  }
+
+  public long getEstimatedBytes() {
+    return estimatedBytes;
+  }
+
+  public synchronized void setMaxSources(int maxSources) {
+    this.maxSources = maxSources;
+  }
+
+  private void removed(SourceRenders renders) {
+    if (renders != null) {
+      for (RenderedMessages rendered : renders.messageMLs.values()) {
+        this.size--;
+        this.estimatedBytes -= rendered.estimatedBytes;
+      }
+    }
+  }
+
+  private static class SourceRenders {
+    private final Object contentVersion;
+    private final Map<String, RenderedMessages> messageMLs;
+
+    private SourceRenders(Object contentVersion) {
+      this.contentVersion = contentVersion;
+      this.messageMLs = new HashMap<String, RenderedMessages>();
+    }
+  }
+
+  private static class RenderedMessages {
+    private final List<MessageML> messageMLs;
+    private final long estimatedBytes;
+
+    private RenderedMessages(List<MessageML> messageMLs, long estimatedBytes) {
+      this.messageMLs = messageMLs;
+      this.estimatedBytes = estimatedBytes;
+    }
+  }
+}
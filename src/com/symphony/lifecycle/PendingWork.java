@@ -0,0 +1,255 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.lifecycle;
+
+import com.symphony.formatters.MessageML;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Requests and messages that didn't finish before the bot shut down,
+ * saved so they are answered and sent on the next start
+ *
+ * The file has one JSON object per line: each stream's unsent messages in the order
+ * they were queued, then the requests that weren't answered in the order they came in
+ */
+
+public class PendingWork {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PendingWork.class);
+
+  private static final String MESSAGE = "message";
+  private static final String REQUEST = "request";
+
+  //Rendered MessageML by stream, in the order the streams were added
+  private final Map<String, List<String>> messagesByStream;
+  private final List<PendingRequest> requests;
+
+  public PendingWork() {
+    this.messagesByStream = new LinkedHashMap<String, List<String>>();
+    this.requests = new ArrayList<PendingRequest>();
+  }
+
+  /**
+   * Reads the work saved in the file and deletes it, so it is only resumed once
+   * @param file
+   * @return the saved work, empty if there is none or it can't be read
+   */
+  public static PendingWork takeFrom(File file) {
+    PendingWork pendingWork = new PendingWork();
+    if (!file.isFile()) {
+      return pendingWork;
+    }
+
+    try {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (!line.isEmpty()) {
+            pendingWork.add(new JSONObject(line));
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException | JSONException exception) {
+      LOG.warn("Could not read the work saved in {}", file, exception);
+    }
+
+    if (!file.delete()) {
+      LOG.warn("Could not delete {}, its work may be resumed again", file);
+    }
+    return pendingWork;
+  }
+
+  private synchronized void add(JSONObject line) {
+    String streamId = line.getString("streamId");
+    if (MESSAGE.equals(line.getString("type"))) {
+      getMessageList(streamId).add(line.getString("messageML"));
+    } else {
+      this.requests.add(new PendingRequest(streamId, line.getString("context"),
+          line.getString("text")));
+    }
+  }
+
+  /**
+   * Adds messages to be sent to the stream after any already added for it
+   * @param streamId
+   * @param messageMLs
+   */
+  public synchronized void addMessages(String streamId, List<MessageML> messageMLs) {
+    List<String> messages = getMessageList(streamId);
+    for (MessageML messageML : messageMLs) {
+      messages.add(messageML.toString());
+    }
+  }
+
+  /**
+   * Adds a request to be answered
+   * @param streamId
+   * @param contextName the context that answers it
+   * @param messageText
+   */
+  public synchronized void addRequest(String streamId, String contextName, String messageText) {
+    this.requests.add(new PendingRequest(streamId, contextName, messageText));
+  }
+
+  private List<String> getMessageList(String streamId) {
+    List<String> messages = this.messagesByStream.get(streamId);
+    if (messages == null) {
+      messages = new ArrayList<String>();
+      this.messagesByStream.put(streamId, messages);
+    }
+    return messages;
+  }
+
+  public synchronized boolean isEmpty() {
+    return this.messagesByStream.isEmpty() && this.requests.isEmpty();
+  }
+
+  /**
+   * Returns the messages to send by stream, each stream's in order
+   * Messages that are no longer valid MessageML are dropped
+   * @return
+   */
+  public synchronized Map<String, List<MessageML>> getMessages() {
+    Map<String, List<MessageML>> messages = new LinkedHashMap<String, List<MessageML>>();
+    for (Map.Entry<String, List<String>> stream : this.messagesByStream.entrySet()) {
+      List<MessageML> messageMLs = new ArrayList<MessageML>();
+      for (String markup : stream.getValue()) {
+        try {
+          messageMLs.add(MessageML.fromString(markup));
+        } catch (IllegalArgumentException exception) {
+          LOG.warn("Dropping a saved message to {}", stream.getKey(), exception);
+        }
+      }
+      messages.put(stream.getKey(), messageMLs);
+    }
+    return messages;
+  }
+
+  public synchronized List<PendingRequest> getRequests() {
+    return Collections.unmodifiableList(new ArrayList<PendingRequest>(this.requests));
+  }
+
+  public synchronized int getNumMessages() {
+    int numMessages = 0;
+    for (List<String> messages : this.messagesByStream.values()) {
+      numMessages += messages.size();
+    }
+    return numMessages;
+  }
+
+  /**
+   * Writes the work to the file, replacing it
+   * @param file
+   */
+  public synchronized void save(File file) {
+    File temporaryFile = new File(file.getPath() + ".tmp");
+    try {
+      BufferedWriter writer = new BufferedWriter(
+          new OutputStreamWriter(new FileOutputStream(temporaryFile), StandardCharsets.UTF_8));
+      try {
+        for (Map.Entry<String, List<String>> stream : this.messagesByStream.entrySet()) {
+          for (String markup : stream.getValue()) {
+            writer.write(new JSONObject()
+                .put("type", MESSAGE)
+                .put("streamId", stream.getKey())
+                .put("messageML", markup)
+                .toString());
+            writer.newLine();
+          }
+        }
+        for (PendingRequest request : this.requests) {
+          writer.write(new JSONObject()
+              .put("type", REQUEST)
+              .put("streamId", request.getStreamId())
+              .put("context", request.getContextName())
+              .put("text", request.getMessageText())
+              .toString());
+          writer.newLine();
+        }
+      } finally {
+        writer.close();
+      }
+      if (!temporaryFile.renameTo(file)) {
+        file.delete();
+        if (!temporaryFile.renameTo(file)) {
+          LOG.warn("Could not replace {}", file);
+        }
+      }
+    } catch (IOException exception) {
+      LOG.error("Could not save unfinished work to {}", file, exception);
+    }
+  }
+
+  /**
+   * A request that came in but wasn't answered
+   */
+  public static class PendingRequest {
+
+    private final String streamId;
+    private final String contextName;
+    private final String messageText;
+
+    private PendingRequest(String streamId, String contextName, String messageText) {
+      this.streamId = streamId;
+      this.contextName = contextName;
+      this.messageText = messageText;
+    }
+
+    public String getStreamId() {
+      return streamId;
+    }
+
+    public String getContextName() {
+      return contextName;
+    }
+
+    public String getMessageText() {
+      return messageText;
+    }
+  }
+}
@@ -30,7 +30,7 @@ package com.symphony.models;
 
 public interface ISymphonyUser {
 
-  Long getUserId();
+  long getUserId();
 
   String getEmailAddress();
 
@@ -43,7 +43,7 @@ public class Message {
 
   private final JSONArray attachments;
   private final String streamId;
-  private final Long fromUserId;
+  private final long fromUserId;
   private final String id;
   private final String message;
   private final String timestamp;
@@ -61,7 +61,7 @@ public class Message {
       messageParser.parseMessage(messageML);
       message = messageParser.getText();
     } catch (Exception exception) {
-      LOG.error("Error parsing messageML: " + messageML, exception);
+      LOG.error("Error parsing messageML: {}", messageML, exception);
     }
     this.message = message;
   }
@@ -74,7 +74,7 @@ public class Message {
     return streamId;
   }
 
-  public Long getFromUserId() {
+  public long getFromUserId() {
     return fromUserId;
   }
 
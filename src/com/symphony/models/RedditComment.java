@@ -0,0 +1,47 @@
+package com.symphony.models;
+
+import org.json.JSONObject;
+
+/**
+ * A Reddit comment ('t1' thing) - depth is 1 for top level comments
+ */
+
+public class RedditComment {
+
+  private final String body;
+  private final String author;
+  private final int score;
+  private final int depth;
+
+  public RedditComment(JSONObject data, int depth) {
+    this.body = data.optString("body");
+    this.author = data.optString("author");
+    this.score = data.optInt("score");
+    this.depth = depth;
+  }
+
+  public String getBody() {
+    return body;
+  }
+
+  public String getAuthor() {
+    return author;
+  }
+
+  public int getScore() {
+    return score;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  @Override
+  public String toString() {
+    return "RedditComment{" +
+        "author='" + author + '\'' +
+        ", score=" + score +
+        ", depth=" + depth +
+        '}';
+  }
+}
@@ -0,0 +1,80 @@
+package com.symphony.models;
+
+import com.symphony.utils.MemoryEstimates;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of Reddit posts, with the token for fetching the page after it
+ */
+
+public class RedditListing {
+
+  private final List<RedditSubmission> submissions;
+  private final String after;
+
+  public RedditListing(JSONObject listing) {
+    JSONObject data = listing.getJSONObject("data");
+    JSONArray children = data.getJSONArray("children");
+
+    this.submissions = new ArrayList<RedditSubmission>();
+    for (int i = 0; i < children.length(); i++) {
+      JSONObject child = children.getJSONObject(i);
+      if (child.optString("kind").equals("t3")) {
+        this.submissions.add(new RedditSubmission(child.getJSONObject("data")));
+      }
+    }
+
+    this.after = data.isNull("after") ? null : data.optString("after", null);
+  }
+
+  public List<RedditSubmission> getSubmissions() {
+    return submissions;
+  }
+
+  public int size() {
+    return submissions.size();
+  }
+
+  /**
+   * Rough memory taken by the listing's posts and their comments
+   * @return
+   */
+  public long estimateBytes() {
+    long bytes = MemoryEstimates.OBJECT_OVERHEAD;
+    for (RedditSubmission submission : submissions) {
+      bytes += MemoryEstimates.OBJECT_OVERHEAD
+          + MemoryEstimates.ofString(submission.getId())
+          + MemoryEstimates.ofString(submission.getTitle())
+          + MemoryEstimates.ofString(submission.getSubredditName())
+          + MemoryEstimates.ofString(submission.getSelfText())
+          + MemoryEstimates.ofString(submission.getUrl());
+      for (RedditComment comment : submission.getComments()) {
+        bytes += MemoryEstimates.OBJECT_OVERHEAD
+            + MemoryEstimates.ofString(comment.getBody())
+            + MemoryEstimates.ofString(comment.getAuthor());
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Token for the next page, null if this is the last one
+   * @return
+   */
+  public String getAfter() {
+    return after;
+  }
+
+  @Override
+  public String toString() {
+    return "RedditListing{" +
+        "submissions=" + submissions +
+        ", after='" + after + '\'' +
+        '}';
+  }
+}
@@ -0,0 +1,76 @@
+package com.symphony.models;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Reddit post ('t3' thing) - its comments are only filled in when fetched with them
+ */
+
+public class RedditSubmission {
+
+  private final String id;
+  private final String title;
+  private final String subredditName;
+  private final int score;
+  private final int commentCount;
+  private final String selfText;
+  private final String url;
+  private final List<RedditComment> comments;
+
+  public RedditSubmission(JSONObject data) {
+    this.id = data.getString("id");
+    this.title = data.getString("title");
+    this.subredditName = data.optString("subreddit");
+    this.score = data.optInt("score");
+    this.commentCount = data.optInt("num_comments");
+    this.selfText = data.optString("selftext");
+    this.url = data.optString("url");
+    this.comments = new ArrayList<RedditComment>();
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getSubredditName() {
+    return subredditName;
+  }
+
+  public int getScore() {
+    return score;
+  }
+
+  public int getCommentCount() {
+    return commentCount;
+  }
+
+  public String getSelfText() {
+    return selfText;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public List<RedditComment> getComments() {
+    return comments;
+  }
+
+  @Override
+  public String toString() {
+    return "RedditSubmission{" +
+        "id='" + id + '\'' +
+        ", title='" + title + '\'' +
+        ", subredditName='" + subredditName + '\'' +
+        ", score=" + score +
+        ", commentCount=" + commentCount +
+        '}';
+  }
+}
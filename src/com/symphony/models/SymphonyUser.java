@@ -5,17 +5,17 @@ package com.symphony.models;
  */
 public class SymphonyUser implements ISymphonyUser {
 
-  private final Long userId;
+  private final long userId;
   private final String emailAddress;
   private final String displayName;
 
-  public SymphonyUser(Long userId, String emailAddress, String displayName) {
+  public SymphonyUser(long userId, String emailAddress, String displayName) {
     this.userId = userId;
     this.emailAddress = emailAddress;
     this.displayName = displayName;
   }
 
-  public Long getUserId() {
+  public long getUserId() {
     return userId;
   }
 
@@ -1,5 +1,7 @@
 package com.symphony.models;
 
+import com.symphony.utils.MemoryEstimates;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -122,6 +124,22 @@ public class WebsiteBrowserArticle {
     return articles;
   }
 
+  /**
+   * Rough memory taken by the title and every article or comment
+   * @return
+   */
+  public long estimateBytes() {
+    long bytes = MemoryEstimates.OBJECT_OVERHEAD + MemoryEstimates.ofString(articleTitle);
+    for (List<Article> thread : articles) {
+      for (Article article : thread) {
+        bytes += MemoryEstimates.OBJECT_OVERHEAD
+            + MemoryEstimates.ofString(article.getTitle())
+            + MemoryEstimates.ofString(article.getText());
+      }
+    }
+    return bytes;
+  }
+
   @Override
   public String toString() {
     return "WebsiteBrowserArticle{" +
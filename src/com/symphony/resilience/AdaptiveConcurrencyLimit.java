@@ -0,0 +1,150 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+/**
+ * Concurrency limit for one upstream that follows the upstream's latency (AIMD)
+ *
+ * Calls are sampled in windows of at least MIN_WINDOW_SIZE calls. At the end of each window
+ * the window's average latency is compared to the upstream's baseline, its latency without
+ * queueing:
+ *  - slower than LATENCY_TOLERANCE times the baseline, or any call failed: the upstream is
+ *    queueing, so the limit is cut to BACKOFF_RATIO of itself
+ *  - otherwise, if the window's calls used at least half of the limit: it is raised by one
+ * The limit stays between minLimit and maxLimit, and is applied to the guard's semaphore
+ *
+ * The baseline is the fastest call seen, and drifts up by BASELINE_DRIFT each window,
+ * so an upstream that gets slower for good is eventually allowed its old concurrency again
+ */
+
+public class AdaptiveConcurrencyLimit {
+
+  private static final int MIN_WINDOW_SIZE = 10;
+  private static final double LATENCY_TOLERANCE = 2.0;
+  private static final double BACKOFF_RATIO = 0.9;
+  private static final double BASELINE_DRIFT = 0.01;
+
+  private final ResizableSemaphore permits;
+  private volatile int minLimit;
+  private volatile int maxLimit;
+  private double limit;
+
+  private volatile long baselineNanos;
+
+  //The window being sampled
+  private int windowCalls;
+  private long windowNanos;
+  private long windowMinNanos;
+  private int windowMaxInFlight;
+  private boolean windowFailed;
+
+  //Last window's average, for diagnostics
+  private volatile long recentNanos;
+
+  public AdaptiveConcurrencyLimit(ResizableSemaphore permits, int minLimit, int maxLimit) {
+    this.permits = permits;
+    //Starts at the most calls allowed, so a healthy upstream gets what it got before
+    this.limit = maxLimit;
+    setBounds(minLimit, maxLimit);
+  }
+
+  /**
+   * Changes the range the limit is kept in, moving it inside if it is outside
+   * @param minLimit
+   * @param maxLimit
+   */
+  public synchronized void setBounds(int minLimit, int maxLimit) {
+    this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+    this.maxLimit = Math.max(this.minLimit, maxLimit);
+    this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, this.limit));
+    this.permits.setMaxPermits((int) this.limit);
+  }
+
+  /**
+   * Records a call to the upstream
+   * @param latencyNanos how long the upstream took
+   * @param inFlight calls in flight when it was made, including itself
+   * @param succeeded
+   */
+  public synchronized void record(long latencyNanos, int inFlight, boolean succeeded) {
+    this.windowCalls++;
+    this.windowNanos += latencyNanos;
+    this.windowMinNanos = this.windowCalls == 1
+        ? latencyNanos : Math.min(this.windowMinNanos, latencyNanos);
+    this.windowMaxInFlight = Math.max(this.windowMaxInFlight, inFlight);
+    this.windowFailed |= !succeeded;
+
+    if (this.windowCalls >= Math.max(MIN_WINDOW_SIZE, (int) this.limit)) {
+      endWindow();
+    }
+  }
+
+  private void endWindow() {
+    long averageNanos = this.windowNanos / this.windowCalls;
+    this.recentNanos = averageNanos;
+
+    if (this.baselineNanos == 0 || this.windowMinNanos < this.baselineNanos) {
+      this.baselineNanos = this.windowMinNanos;
+    } else {
+      this.baselineNanos += Math.max(1, (long) (this.baselineNanos * BASELINE_DRIFT));
+    }
+
+    if (this.windowFailed || averageNanos > this.baselineNanos * LATENCY_TOLERANCE) {
+      this.limit = Math.max(this.minLimit, this.limit * BACKOFF_RATIO);
+    } else if (this.windowMaxInFlight * 2 >= (int) this.limit) {
+      this.limit = Math.min(this.maxLimit, this.limit + 1);
+    }
+    this.permits.setMaxPermits((int) this.limit);
+
+    this.windowCalls = 0;
+    this.windowNanos = 0;
+    this.windowMaxInFlight = 0;
+    this.windowFailed = false;
+  }
+
+  /**
+   * The number of concurrent calls allowed now
+   * @return
+   */
+  public int getLimit() {
+    return this.permits.getMaxPermits();
+  }
+
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  public long getBaselineNanos() {
+    return baselineNanos;
+  }
+
+  public long getRecentNanos() {
+    return recentNanos;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+/**
+ * Circuit breaker for a single upstream
+ *
+ * CLOSED: calls go through, consecutive failures are counted
+ * OPEN: calls fail fast until openTimeMillis has passed since the circuit opened
+ * HALF_OPEN: a single probe call is let through - success closes the circuit, failure re-opens it
+ */
+
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private int failureThreshold;
+  private long openTimeMillis;
+
+  private State state;
+  private int consecutiveFailures;
+  private long openedAtMillis;
+  private boolean probeInFlight;
+
+  public CircuitBreaker(int failureThreshold, long openTimeMillis) {
+    this.failureThreshold = failureThreshold;
+    this.openTimeMillis = openTimeMillis;
+    this.state = State.CLOSED;
+  }
+
+  /**
+   * Returns true if a call may be made now
+   * In HALF_OPEN only the first caller gets through, the rest are rejected until it reports back
+   * @return
+   */
+  public synchronized boolean allowRequest() {
+    switch (this.state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (System.currentTimeMillis() - this.openedAtMillis < this.openTimeMillis) {
+          return false;
+        }
+        this.state = State.HALF_OPEN;
+        this.probeInFlight = true;
+        return true;
+      case HALF_OPEN:
+      default:
+        if (this.probeInFlight) {
+          return false;
+        }
+        this.probeInFlight = true;
+        return true;
+    }
+  }
+
+  public synchronized void recordSuccess() {
+    this.consecutiveFailures = 0;
+    this.probeInFlight = false;
+    this.state = State.CLOSED;
+  }
+
+  public synchronized void recordFailure() {
+    this.consecutiveFailures++;
+    this.probeInFlight = false;
+
+    if (this.state == State.HALF_OPEN || this.consecutiveFailures >= this.failureThreshold) {
+      this.state = State.OPEN;
+      this.openedAtMillis = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * For a request that was allowed but never made - frees the half-open probe slot
+   */
+  public synchronized void recordNotAttempted() {
+    this.probeInFlight = false;
+  }
+
+  public synchronized State getState() {
+    return this.state;
+  }
+
+  /**
+   * How long until an OPEN circuit lets a probe through, 0 if it isn't open
+   * @return
+   */
+  public synchronized long getRemainingOpenTime() {
+    if (this.state != State.OPEN) {
+      return 0;
+    }
+    return Math.max(0, this.openTimeMillis - (System.currentTimeMillis() - this.openedAtMillis));
+  }
+
+  public synchronized void setFailureThreshold(int failureThreshold) {
+    this.failureThreshold = failureThreshold;
+  }
+
+  public synchronized void setOpenTimeMillis(long openTimeMillis) {
+    this.openTimeMillis = openTimeMillis;
+  }
+}
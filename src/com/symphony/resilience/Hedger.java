@@ -0,0 +1,307 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+import com.symphony.configurations.IConfigurationProvider;
+import com.symphony.tracing.Trace;
+import com.symphony.utils.MonitoredThreadPoolExecutor;
+import com.symphony.utils.NamedThreadFactory;
+
+import org.json.JSONObject;
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hedges an idempotent read: if it hasn't returned after the hedgePercentile latency of recent
+ * calls, the same call is made again and whichever returns first is used
+ *
+ * The loser is cancelled, which interrupts its thread - a blocking HTTP read may still run to
+ * the end, but its result is dropped and it holds nothing the caller waits for. A cancelled
+ * attempt's failure says nothing about the upstream, see isCancelled()
+ * Attempts run under the caller's trace and logging context, on at most MAX_THREADS threads -
+ * when they are all busy calls aren't hedged, and are made on the caller's thread if need be
+ * Hedges are paid for out of a budget that grows by hedgeBudget for every call, so they add at
+ * most that share of calls to the upstream, in bursts of at most MAX_BUDGET
+ */
+
+public class Hedger {
+
+  //Recent latencies the delay is taken from
+  private static final int SAMPLES = 256;
+  //Calls timed before the first hedge, so the delay means something
+  private static final int MIN_SAMPLES = 20;
+  private static final int RECOMPUTE_EVERY = 32;
+  private static final double MAX_BUDGET = 10;
+  //Attempts running at once, across every upstream
+  private static final int MAX_THREADS = 64;
+
+  //Runs both attempts of a hedged call, so the caller can take whichever finishes first
+  private static final MonitoredThreadPoolExecutor executor =
+      new MonitoredThreadPoolExecutor(0, MAX_THREADS, 60L, TimeUnit.SECONDS,
+          new SynchronousQueue<Runnable>(), new NamedThreadFactory("hedge", true));
+
+  //The attempt running on this thread, if any
+  private static final ThreadLocal<Attempt<?>> currentAttempt = new ThreadLocal<Attempt<?>>();
+
+  private final IConfigurationProvider configurationProvider;
+
+  private final long[] latencies;
+  private int numSamples;
+  private int nextSample;
+  //0 until there are enough samples, or if hedging is off
+  private volatile long hedgeDelayNanos;
+  private double budget;
+
+  private final AtomicLong calls;
+  private final AtomicLong hedges;
+  private final AtomicLong hedgeWins;
+
+  public Hedger(IConfigurationProvider configurationProvider) {
+    this.configurationProvider = configurationProvider;
+    this.latencies = new long[SAMPLES];
+    this.budget = MAX_BUDGET;
+    this.calls = new AtomicLong();
+    this.hedges = new AtomicLong();
+    this.hedgeWins = new AtomicLong();
+  }
+
+  /**
+   * Makes the call, hedging it if it is slower than usual and the budget allows
+   * @param call must be safe to make twice at the same time
+   * @param <T>
+   * @return the first result
+   * @throws RuntimeException the last attempt's failure if every attempt failed
+   */
+  public <T> T call(Callable<T> call) {
+    this.calls.incrementAndGet();
+    addToBudget();
+
+    long delay = this.hedgeDelayNanos;
+    if (delay <= 0 || this.configurationProvider.getHedgePercentile() <= 0) {
+      //Nothing to hedge against yet, so it is made on the caller's thread
+      return getResult(new Attempt<T>(call, false).call());
+    }
+
+    CompletionService<Result<T>> attempts = new ExecutorCompletionService<Result<T>>(executor);
+    List<Attempt<T>> started = new ArrayList<Attempt<T>>(2);
+    List<Future<Result<T>>> futures = new ArrayList<Future<Result<T>>>(2);
+    try {
+      Attempt<T> first = new Attempt<T>(call, false);
+      try {
+        futures.add(attempts.submit(first));
+        started.add(first);
+      } catch (RejectedExecutionException exception) {
+        //Every attempt thread is busy - made without a hedge instead
+        return getResult(first.call());
+      }
+
+      Future<Result<T>> next = attempts.poll(delay, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        if (tryTakeFromBudget()) {
+          Attempt<T> hedge = new Attempt<T>(call, true);
+          try {
+            futures.add(attempts.submit(hedge));
+            started.add(hedge);
+            this.hedges.incrementAndGet();
+          } catch (RejectedExecutionException exception) {
+            //Every attempt thread is busy, so the first attempt is waited for alone
+          }
+        }
+        next = attempts.take();
+      }
+
+      int remaining = futures.size();
+      while (true) {
+        remaining--;
+        Result<T> result = next.get();
+        if (result.failure == null || remaining == 0) {
+          if (result.failure == null && result.hedge) {
+            this.hedgeWins.incrementAndGet();
+          }
+          return getResult(result);
+        }
+        next = attempts.take();
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while waiting for a hedged call", exception);
+    } catch (ExecutionException exception) {
+      //Attempts catch their own failures, so only a rejected or broken attempt gets here
+      throw new RuntimeException("hedged call failed", exception.getCause());
+    } finally {
+      //Marked first, so the attempt sees why it was interrupted
+      for (Attempt<T> attempt : started) {
+        attempt.cancelled = true;
+      }
+      for (Future<Result<T>> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Returns true if the current thread is running an attempt that was cancelled, because
+   * another attempt finished first - its failure is the hedge's doing, not the upstream's
+   * @return
+   */
+  public static boolean isCancelled() {
+    Attempt<?> attempt = currentAttempt.get();
+    return attempt != null && attempt.cancelled;
+  }
+
+  private static <T> T getResult(Result<T> result) {
+    if (result.failure == null) {
+      return result.value;
+    }
+    if (result.failure instanceof RuntimeException) {
+      throw (RuntimeException) result.failure;
+    }
+    throw new RuntimeException(result.failure);
+  }
+
+  private synchronized void addToBudget() {
+    this.budget = Math.min(MAX_BUDGET,
+        this.budget + this.configurationProvider.getHedgeBudget());
+  }
+
+  private synchronized boolean tryTakeFromBudget() {
+    if (this.budget < 1) {
+      return false;
+    }
+    this.budget -= 1;
+    return true;
+  }
+
+  /**
+   * Records a successful call's latency, working out the hedge delay again every so often
+   * @param latencyNanos
+   */
+  private synchronized void record(long latencyNanos) {
+    this.latencies[this.nextSample] = latencyNanos;
+    this.nextSample = (this.nextSample + 1) % SAMPLES;
+    this.numSamples = Math.min(SAMPLES, this.numSamples + 1);
+
+    if (this.numSamples >= MIN_SAMPLES
+        && (this.hedgeDelayNanos == 0 || this.nextSample % RECOMPUTE_EVERY == 0)) {
+      double percentile = this.configurationProvider.getHedgePercentile();
+      if (percentile <= 0) {
+        this.hedgeDelayNanos = 0;
+        return;
+      }
+      long[] sorted = Arrays.copyOf(this.latencies, this.numSamples);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+      this.hedgeDelayNanos = Math.max(1, sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+    }
+  }
+
+  public JSONObject getDiagnostics() {
+    return new JSONObject()
+        .put("hedgeDelayMillis", TimeUnit.NANOSECONDS.toMillis(this.hedgeDelayNanos))
+        .put("calls", this.calls.get())
+        .put("hedges", this.hedges.get())
+        .put("hedgeWins", this.hedgeWins.get());
+  }
+
+  /**
+   * One attempt at the call, timed, under the trace and logging context of the caller
+   * it was created on
+   */
+  private class Attempt<T> implements Callable<Result<T>> {
+
+    private final Callable<T> call;
+    private final Trace trace;
+    private final Map<String, String> logContext;
+    private final boolean hedge;
+    //Set once another attempt has won, before this one is interrupted
+    private volatile boolean cancelled;
+
+    private Attempt(Callable<T> call, boolean hedge) {
+      this.call = call;
+      this.trace = Trace.current();
+      this.logContext = MDC.getCopyOfContextMap();
+      this.hedge = hedge;
+    }
+
+    @Override
+    public Result<T> call() {
+      Trace previousTrace = Trace.current();
+      Map<String, String> previousLogContext = MDC.getCopyOfContextMap();
+      Attempt<?> previousAttempt = currentAttempt.get();
+      Trace.setCurrent(this.trace);
+      setLogContext(this.logContext);
+      currentAttempt.set(this);
+      long start = System.nanoTime();
+      try {
+        T value = this.call.call();
+        record(System.nanoTime() - start);
+        return new Result<T>(value, null, this.hedge);
+      } catch (Exception exception) {
+        return new Result<T>(null, exception, this.hedge);
+      } finally {
+        currentAttempt.set(previousAttempt);
+        setLogContext(previousLogContext);
+        Trace.setCurrent(previousTrace);
+      }
+    }
+  }
+
+  private static void setLogContext(Map<String, String> logContext) {
+    if (logContext == null) {
+      MDC.clear();
+    } else {
+      MDC.setContextMap(logContext);
+    }
+  }
+
+  /**
+   * What an attempt returned or threw
+   */
+  private static class Result<T> {
+
+    private final T value;
+    private final Exception failure;
+    private final boolean hedge;
+
+    private Result(T value, Exception failure, boolean hedge) {
+      this.value = value;
+      this.failure = failure;
+      this.hedge = hedge;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Semaphore whose number of permits can be changed while permits are held
+ * Shrinking it below the number in use doesn't revoke anything - new acquires just fail until
+ * enough permits have been released
+ */
+
+public class ResizableSemaphore extends Semaphore {
+
+  private static final long serialVersionUID = 1L;
+
+  private int maxPermits;
+
+  public ResizableSemaphore(int maxPermits, boolean fair) {
+    super(maxPermits, fair);
+    this.maxPermits = maxPermits;
+  }
+
+  public synchronized int getMaxPermits() {
+    return maxPermits;
+  }
+
+  public synchronized void setMaxPermits(int maxPermits) {
+    if (maxPermits < 0) {
+      throw new IllegalArgumentException("maxPermits must not be negative: " + maxPermits);
+    }
+
+    int difference = maxPermits - this.maxPermits;
+    if (difference > 0) {
+      release(difference);
+    } else if (difference < 0) {
+      reducePermits(-difference);
+    }
+    this.maxPermits = maxPermits;
+  }
+}
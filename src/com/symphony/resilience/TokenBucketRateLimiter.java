@@ -0,0 +1,107 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter
+ * Refills continuously at permitsPerSecond and holds at most one second's worth of permits
+ */
+
+public class TokenBucketRateLimiter {
+
+  private double permitsPerSecond;
+  private double maxPermits;
+  private double storedPermits;
+  private long lastRefillNanos;
+
+  public TokenBucketRateLimiter(double permitsPerSecond) {
+    if (permitsPerSecond <= 0) {
+      throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+    }
+    this.permitsPerSecond = permitsPerSecond;
+    this.maxPermits = Math.max(1, permitsPerSecond);
+    this.storedPermits = this.maxPermits;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Takes a permit, waiting up to timeoutMillis for one to become available
+   * @param timeoutMillis
+   * @return false if no permit could be taken in time
+   */
+  public boolean tryAcquire(long timeoutMillis) {
+    long waitNanos;
+
+    synchronized (this) {
+      refill();
+      if (this.storedPermits >= 1) {
+        this.storedPermits -= 1;
+        return true;
+      }
+
+      //Reserve the next permit if it will arrive in time, and sleep outside of the lock
+      waitNanos = (long) ((1 - this.storedPermits) / this.permitsPerSecond * 1e9);
+      if (waitNanos > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+        return false;
+      }
+      this.storedPermits -= 1;
+    }
+
+    try {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+      return true;
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  public synchronized double getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  /**
+   * Changes the rate without losing permits that are already stored
+   * @param permitsPerSecond
+   */
+  public synchronized void setPermitsPerSecond(double permitsPerSecond) {
+    if (permitsPerSecond <= 0) {
+      throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+    }
+    refill();
+    this.permitsPerSecond = permitsPerSecond;
+    this.maxPermits = Math.max(1, permitsPerSecond);
+    this.storedPermits = Math.min(this.storedPermits, this.maxPermits);
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    double newPermits = (now - this.lastRefillNanos) / 1e9 * this.permitsPerSecond;
+    this.storedPermits = Math.min(this.maxPermits, this.storedPermits + newPermits);
+    this.lastRefillNanos = now;
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+import com.symphony.configurations.ConfigurationListener;
+import com.symphony.configurations.IConfigurationProvider;
+import com.symphony.tracing.Span;
+import com.symphony.tracing.Trace;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps every call to one upstream with:
+ *  - a token bucket rate limit
+ *  - a circuit breaker that fails fast after repeated errors and probes when half-open
+ *  - a cap on concurrent calls, so a hanging upstream can't take every worker thread
+ *    away from the contexts that are still healthy - it follows the upstream's latency,
+ *    see AdaptiveConcurrencyLimit, and calls over it wait a little for a free slot
+ * All three are resized in place when the configuration is reloaded
+ */
+
+public class UpstreamGuard implements ConfigurationListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UpstreamGuard.class);
+
+  private final Upstream upstream;
+  private final TokenBucketRateLimiter rateLimiter;
+  private final CircuitBreaker circuitBreaker;
+  private final ResizableSemaphore concurrentCalls;
+  private final AdaptiveConcurrencyLimit concurrencyLimit;
+  private final Hedger hedger;
+  private volatile long maxRateLimitWait;
+  private volatile long maxQueueWait;
+  private final String spanName;
+
+  public UpstreamGuard(Upstream upstream, IConfigurationProvider configurationProvider) {
+    String key = upstream.getKey();
+
+    this.upstream = upstream;
+    this.rateLimiter =
+        new TokenBucketRateLimiter(configurationProvider.getUpstreamRateLimit(key));
+    this.circuitBreaker =
+        new CircuitBreaker(configurationProvider.getCircuitBreakerFailureThreshold(key),
+            configurationProvider.getCircuitBreakerOpenTime(key));
+    this.concurrentCalls =
+        new ResizableSemaphore(configurationProvider.getUpstreamMaxConcurrentCalls(key), true);
+    this.concurrencyLimit = new AdaptiveConcurrencyLimit(this.concurrentCalls,
+        configurationProvider.getUpstreamMinConcurrentCalls(key),
+        configurationProvider.getUpstreamMaxConcurrentCalls(key));
+    this.maxRateLimitWait = configurationProvider.getUpstreamTimeout(key);
+    this.maxQueueWait = configurationProvider.getUpstreamMaxQueueWait(key);
+    this.hedger = new Hedger(configurationProvider);
+    this.spanName = "upstream." + key;
+  }
+
+  /**
+   * Applies the upstream's new settings without dropping calls in flight or the circuit's state
+   * @param configurationProvider
+   */
+  @Override
+  public void configurationChanged(IConfigurationProvider configurationProvider) {
+    String key = this.upstream.getKey();
+
+    this.rateLimiter.setPermitsPerSecond(configurationProvider.getUpstreamRateLimit(key));
+    this.circuitBreaker.setFailureThreshold(
+        configurationProvider.getCircuitBreakerFailureThreshold(key));
+    this.circuitBreaker.setOpenTimeMillis(configurationProvider.getCircuitBreakerOpenTime(key));
+    this.concurrencyLimit.setBounds(configurationProvider.getUpstreamMinConcurrentCalls(key),
+        configurationProvider.getUpstreamMaxConcurrentCalls(key));
+    this.maxRateLimitWait = configurationProvider.getUpstreamTimeout(key);
+    this.maxQueueWait = configurationProvider.getUpstreamMaxQueueWait(key);
+  }
+
+  /**
+   * Runs the call if the upstream is available, recording its outcome on the circuit breaker
+   * @param call
+   * @param <T>
+   * @return the call's result
+   * @throws UpstreamUnavailableException if the call was not attempted
+   */
+  public <T> T call(Callable<T> call) {
+    Span span = Trace.current().startSpan(this.spanName);
+    try {
+      T result = guardedCall(call);
+      span.setAttribute("outcome", "ok");
+      return result;
+    } catch (UpstreamUnavailableException exception) {
+      span.setAttribute("outcome", "unavailable");
+      throw exception;
+    } catch (RuntimeException exception) {
+      span.setAttribute("outcome", "error");
+      throw exception;
+    } finally {
+      span.end();
+    }
+  }
+
+  /**
+   * Like call, but hedged: an idempotent read that is slower than usual is made again,
+   * each attempt going through the guard, and the first result is returned
+   * @param call
+   * @param <T>
+   * @return the call's result
+   * @throws UpstreamUnavailableException if no attempt was made
+   */
+  public <T> T hedgedCall(final Callable<T> call) {
+    return this.hedger.call(new Callable<T>() {
+      @Override
+      public T call() {
+        return UpstreamGuard.this.call(call);
+      }
+    });
+  }
+
+  private <T> T guardedCall(Callable<T> call) {
+
+    if (!this.circuitBreaker.allowRequest()) {
+      throw new UpstreamUnavailableException(this.upstream, "circuit open",
+          this.circuitBreaker.getRemainingOpenTime());
+    }
+
+    if (!acquireCallPermit()) {
+      this.circuitBreaker.recordNotAttempted();
+      throw new UpstreamUnavailableException(this.upstream, "too many concurrent calls", 0);
+    }
+
+    long start = 0;
+    try {
+      if (!this.rateLimiter.tryAcquire(this.maxRateLimitWait)) {
+        this.circuitBreaker.recordNotAttempted();
+        throw new UpstreamUnavailableException(this.upstream, "rate limit exceeded", 0);
+      }
+
+      //Only the upstream's own time counts towards its latency, not the rate limit's wait
+      start = System.nanoTime();
+      T result = call.call();
+      this.concurrencyLimit.record(System.nanoTime() - start, getInFlight(), true);
+      this.circuitBreaker.recordSuccess();
+      return result;
+    } catch (UpstreamUnavailableException exception) {
+      throw exception;
+    } catch (RuntimeException exception) {
+      onFailure(exception, start);
+      throw exception;
+    } catch (Exception exception) {
+      onFailure(exception, start);
+      throw new RuntimeException("call to " + this.upstream + " failed", exception);
+    } finally {
+      this.concurrentCalls.release();
+    }
+  }
+
+  /**
+   * Takes one of the concurrent calls, waiting up to maxQueueWait for one to finish, so a burst
+   * over a limit that was just cut is queued rather than refused
+   * @return false if none was free in time
+   */
+  private boolean acquireCallPermit() {
+    try {
+      return this.concurrentCalls.tryAcquire(this.maxQueueWait, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void onFailure(Exception exception, long start) {
+    //A hedge's loser was interrupted by the hedger, which says nothing about the upstream
+    if (Hedger.isCancelled() || Thread.currentThread().isInterrupted()) {
+      this.circuitBreaker.recordNotAttempted();
+      return;
+    }
+    this.concurrencyLimit.record(System.nanoTime() - start, getInFlight(), false);
+    this.circuitBreaker.recordFailure();
+    if (this.circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+      LOG.warn("Circuit opened for {} after: {}", this.upstream, exception);
+    }
+  }
+
+  /**
+   * Calls holding a permit, including the caller's
+   * @return
+   */
+  private int getInFlight() {
+    return Math.max(0,
+        this.concurrentCalls.getMaxPermits() - this.concurrentCalls.availablePermits());
+  }
+
+  /**
+   * The concurrency limit, the latency it follows and the circuit's state
+   * @return
+   */
+  public JSONObject getDiagnostics() {
+    return new JSONObject()
+        .put("concurrencyLimit", this.concurrencyLimit.getLimit())
+        .put("minConcurrencyLimit", this.concurrencyLimit.getMinLimit())
+        .put("maxConcurrencyLimit", this.concurrencyLimit.getMaxLimit())
+        .put("inFlight", getInFlight())
+        .put("baselineLatencyMillis",
+            TimeUnit.NANOSECONDS.toMillis(this.concurrencyLimit.getBaselineNanos()))
+        .put("recentLatencyMillis",
+            TimeUnit.NANOSECONDS.toMillis(this.concurrencyLimit.getRecentNanos()))
+        .put("circuit", this.circuitBreaker.getState().name())
+        .put("hedging", this.hedger.getDiagnostics());
+  }
+
+  public Upstream getUpstream() {
+    return upstream;
+  }
+
+  public TokenBucketRateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+}
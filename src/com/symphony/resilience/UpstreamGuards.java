@@ -0,0 +1,80 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+import com.symphony.configurations.IConfigurationProvider;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared registry so every client and context talking to the same upstream
+ * goes through the same rate limiter and circuit breaker
+ */
+
+public final class UpstreamGuards {
+
+  private static final ConcurrentMap<Upstream, UpstreamGuard> guards =
+      new ConcurrentHashMap<Upstream, UpstreamGuard>();
+
+  private UpstreamGuards() {
+  }
+
+  /**
+   * Returns the guard for that upstream, creating it from the configuration on first use
+   * The guard then follows that configuration's reloads
+   * @param upstream
+   * @param configurationProvider
+   * @return
+   */
+  public static UpstreamGuard forUpstream(final Upstream upstream,
+      final IConfigurationProvider configurationProvider) {
+    UpstreamGuard guard = guards.get(upstream);
+    if (guard == null) {
+      guard = new UpstreamGuard(upstream, configurationProvider);
+      UpstreamGuard existing = guards.putIfAbsent(upstream, guard);
+      if (existing != null) {
+        guard = existing;
+      } else {
+        configurationProvider.addListener(guard);
+      }
+    }
+    return guard;
+  }
+
+  /**
+   * Every guard's diagnostics, by upstream
+   * @return
+   */
+  public static JSONObject getDiagnostics() {
+    JSONObject diagnostics = new JSONObject();
+    for (UpstreamGuard guard : guards.values()) {
+      diagnostics.put(guard.getUpstream().getKey(), guard.getDiagnostics());
+    }
+    return diagnostics;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+/**
+ * Thrown instead of calling an upstream when its circuit is open, it is over its rate limit
+ * or all of its concurrent call slots are taken
+ */
+
+public class UpstreamUnavailableException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Upstream upstream;
+  private final long retryAfterMillis;
+
+  public UpstreamUnavailableException(Upstream upstream, String reason, long retryAfterMillis) {
+    super(upstream + " unavailable: " + reason);
+    this.upstream = upstream;
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  public Upstream getUpstream() {
+    return upstream;
+  }
+
+  /**
+   * Roughly how long until the upstream will be tried again, 0 if unknown
+   * @return
+   */
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+}
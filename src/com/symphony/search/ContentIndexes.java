@@ -0,0 +1,120 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.search;
+
+import com.symphony.configurations.ConfigurationListener;
+import com.symphony.configurations.IConfigurationProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shared registry so every client and context indexes into and searches the same index
+ */
+
+public final class ContentIndexes {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ContentIndexes.class);
+
+  private static final IContentIndex DISABLED = new IContentIndex() {
+    @Override
+    public boolean isEnabled() {
+      return false;
+    }
+
+    @Override
+    public void add(IndexedContent content) {
+    }
+
+    @Override
+    public List<IndexedContent> search(String type, String queryText, int maxResults) {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  private static IContentIndex contentIndex;
+
+  private ContentIndexes() {
+  }
+
+  /**
+   * Returns the index, opening it from the configuration on first use
+   * If no directory is configured, or it can't be opened, the index is disabled
+   * @param configurationProvider
+   * @return
+   */
+  public static synchronized IContentIndex forConfiguration(
+      IConfigurationProvider configurationProvider) {
+    if (contentIndex == null) {
+      contentIndex = open(configurationProvider);
+    }
+    return contentIndex;
+  }
+
+  /**
+   * Closes the index if it was opened - the next use opens it again
+   */
+  public static synchronized void close() {
+    if (contentIndex != null) {
+      contentIndex.close();
+      contentIndex = null;
+    }
+  }
+
+  private static IContentIndex open(IConfigurationProvider configurationProvider) {
+    File directory = configurationProvider.getSearchIndexDirectory();
+    if (directory == null) {
+      LOG.info("No search index directory configured, search is disabled");
+      return DISABLED;
+    }
+
+    try {
+      final LuceneContentIndex index = new LuceneContentIndex(directory,
+          configurationProvider.getSearchIndexMaxDocuments(),
+          configurationProvider.getSearchIndexRefreshInterval(),
+          configurationProvider.getSearchIndexCommitInterval());
+      configurationProvider.addListener(new ConfigurationListener() {
+        @Override
+        public void configurationChanged(IConfigurationProvider configurationProvider) {
+          index.setMaxDocuments(configurationProvider.getSearchIndexMaxDocuments());
+        }
+      });
+      return index;
+    } catch (IOException exception) {
+      LOG.error("Could not open search index at {}, search is disabled",
+          directory.getAbsolutePath(), exception);
+      return DISABLED;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.search;
+
+import java.util.List;
+
+/**
+ * Local full-text index of the content the contexts have fetched
+ */
+
+public interface IContentIndex {
+
+  /**
+   * False if no index is configured - nothing is indexed and searches find nothing
+   */
+  boolean isEnabled();
+
+  /**
+   * Queues the content to be indexed, replacing any earlier version with the same type and ID
+   * Returns right away - the content is searchable shortly after
+   * @param content
+   */
+  void add(IndexedContent content);
+
+  /**
+   * The best matches of that type for the words, best first
+   * @param type e.g. IndexedContent.TYPE_ARTICLE
+   * @param queryText what the user typed - not a query syntax
+   * @param maxResults
+   * @return
+   */
+  List<IndexedContent> search(String type, String queryText, int maxResults);
+
+  /**
+   * Indexes what is queued, commits and closes the index
+   */
+  void close();
+}
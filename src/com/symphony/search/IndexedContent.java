@@ -0,0 +1,155 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.search;
+
+import com.symphony.models.RedditComment;
+import com.symphony.models.RedditSubmission;
+import com.symphony.models.WebsiteBrowserArticle;
+
+import java.util.List;
+
+/**
+ * Something fetched by a context that can be found again with a search,
+ * e.g. an analyzed website or a Reddit post
+ * For search results, the text is a short snippet of the indexed text
+ */
+
+public class IndexedContent {
+
+  public static final String TYPE_ARTICLE = "article";
+  public static final String TYPE_REDDIT = "reddit";
+
+  private final String type;
+  private final String id;
+  private final String title;
+  private final String url;
+  private final String source;
+  private final String text;
+  private final long fetchedAt;
+
+  public IndexedContent(String type, String id, String title, String url, String source,
+      String text, long fetchedAt) {
+    this.type = type;
+    this.id = id;
+    this.title = title;
+    this.url = url;
+    this.source = source;
+    this.text = text;
+    this.fetchedAt = fetchedAt;
+  }
+
+  /**
+   * An analyzed website, found by its title and every piece of text on it
+   * @param websiteUrl
+   * @param article
+   * @return
+   */
+  public static IndexedContent fromArticle(String websiteUrl, WebsiteBrowserArticle article) {
+    StringBuilder text = new StringBuilder();
+    for (List<WebsiteBrowserArticle.Article> thread : article.getArticles()) {
+      for (WebsiteBrowserArticle.Article item : thread) {
+        appendText(text, item.getTitle());
+        appendText(text, item.getText());
+      }
+    }
+
+    String title = article.getArticleTitle();
+    if (title == null || title.isEmpty()) {
+      title = websiteUrl;
+    }
+    return new IndexedContent(TYPE_ARTICLE, websiteUrl, title, websiteUrl, getHost(websiteUrl),
+        text.toString(), System.currentTimeMillis());
+  }
+
+  /**
+   * A Reddit post, found by its title, its text and the comments fetched with it
+   * @param submission
+   * @return
+   */
+  public static IndexedContent fromSubmission(RedditSubmission submission) {
+    StringBuilder text = new StringBuilder();
+    appendText(text, submission.getSelfText());
+    for (RedditComment comment : submission.getComments()) {
+      appendText(text, comment.getBody());
+    }
+
+    return new IndexedContent(TYPE_REDDIT, submission.getId(), submission.getTitle(),
+        submission.getUrl(), submission.getSubredditName(), text.toString(),
+        System.currentTimeMillis());
+  }
+
+  private static void appendText(StringBuilder text, String addition) {
+    if (addition != null && !addition.isEmpty()) {
+      if (text.length() > 0) {
+        text.append('\n');
+      }
+      text.append(addition);
+    }
+  }
+
+  private static String getHost(String websiteUrl) {
+    String host = websiteUrl.replaceFirst("^[a-zA-Z]+://", "");
+    int end = host.indexOf('/');
+    return end < 0 ? host : host.substring(0, end);
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public String getSource() {
+    return source;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public long getFetchedAt() {
+    return fetchedAt;
+  }
+
+  @Override
+  public String toString() {
+    return "IndexedContent{" +
+        "type='" + type + '\'' +
+        ", id='" + id + '\'' +
+        ", title='" + title + '\'' +
+        ", fetchedAt=" + fetchedAt +
+        '}';
+  }
+}
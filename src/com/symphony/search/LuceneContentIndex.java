@@ -0,0 +1,317 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.search;
+
+import com.symphony.utils.NamedThreadFactory;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk Lucene index of fetched content
+ *
+ * Content is indexed on a single background thread, so fetching never waits for the index
+ * Searches use a near-real-time searcher that is refreshed periodically, and the index is
+ * committed to disk less often - Lucene merges its segments in the background as it grows
+ * When it holds more than maxDocuments, the content fetched longest ago is deleted
+ */
+
+public class LuceneContentIndex implements IContentIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LuceneContentIndex.class);
+
+  private static final String KEY = "key";
+  private static final String TYPE = "type";
+  private static final String ID = "id";
+  private static final String TITLE = "title";
+  private static final String TEXT = "text";
+  private static final String SNIPPET = "snippet";
+  private static final String URL = "url";
+  private static final String SOURCE = "source";
+  private static final String FETCHED_AT = "fetchedAt";
+
+  private static final int SNIPPET_LENGTH = 300;
+  private static final int MAX_QUEUED_CONTENT = 1000;
+
+  //Titles say more about what something is than any one sentence of its text
+  private static final Map<String, Float> FIELD_BOOSTS = new HashMap<String, Float>() {{
+    put(TITLE, 2f);
+    put(TEXT, 1f);
+  }};
+
+  private final Analyzer analyzer;
+  private final Directory directory;
+  private final IndexWriter indexWriter;
+  private final SearcherManager searcherManager;
+
+  private final ThreadPoolExecutor indexExecutor;
+  private final ScheduledExecutorService maintenanceExecutor;
+
+  private volatile int maxDocuments;
+
+  public LuceneContentIndex(File directory, int maxDocuments, long refreshInterval,
+      long commitInterval) throws IOException {
+    this.maxDocuments = maxDocuments;
+    this.analyzer = new StandardAnalyzer();
+    this.directory = FSDirectory.open(directory.toPath());
+
+    IndexWriterConfig config = new IndexWriterConfig(this.analyzer)
+        .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+        .setMergePolicy(new TieredMergePolicy())
+        .setMergeScheduler(new ConcurrentMergeScheduler());
+    this.indexWriter = new IndexWriter(this.directory, config);
+    this.searcherManager = new SearcherManager(this.indexWriter, null);
+
+    //Content fetched faster than it can be indexed is dropped, not queued without bound
+    this.indexExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(MAX_QUEUED_CONTENT),
+        new NamedThreadFactory("search-index", true));
+
+    this.maintenanceExecutor =
+        Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("search-refresh", true));
+    this.maintenanceExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        refresh();
+      }
+    }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    this.maintenanceExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        pruneAndCommit();
+      }
+    }, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+
+    LOG.info("Opened content index at {}", directory.getAbsolutePath());
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public void add(final IndexedContent content) {
+    try {
+      this.indexExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            indexWriter.updateDocument(new Term(KEY, getKey(content.getType(), content.getId())),
+                toDocument(content));
+          } catch (IOException | RuntimeException exception) {
+            LOG.error("Error indexing {}", content, exception);
+          }
+        }
+      });
+    } catch (RejectedExecutionException exception) {
+      LOG.debug("Index queue full, not indexing {}", content);
+    }
+  }
+
+  @Override
+  public List<IndexedContent> search(String type, String queryText, int maxResults) {
+    Query query;
+    try {
+      //Escaped, so what the user typed is only ever words to look for
+      QueryParser parser = new MultiFieldQueryParser(new String[]{TITLE, TEXT}, this.analyzer,
+          FIELD_BOOSTS);
+      query = new BooleanQuery.Builder()
+          .add(parser.parse(QueryParser.escape(queryText)), BooleanClause.Occur.MUST)
+          .add(new TermQuery(new Term(TYPE, type)), BooleanClause.Occur.FILTER)
+          .build();
+    } catch (ParseException exception) {
+      return Collections.emptyList();
+    }
+
+    try {
+      IndexSearcher searcher = this.searcherManager.acquire();
+      try {
+        TopDocs topDocs = searcher.search(query, maxResults);
+        List<IndexedContent> results = new ArrayList<IndexedContent>(topDocs.scoreDocs.length);
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+          results.add(fromDocument(searcher.doc(scoreDoc.doc)));
+        }
+        return results;
+      } finally {
+        this.searcherManager.release(searcher);
+      }
+    } catch (IOException exception) {
+      LOG.error("Error searching for '{}'", queryText, exception);
+      return Collections.emptyList();
+    }
+  }
+
+  public void setMaxDocuments(int maxDocuments) {
+    this.maxDocuments = maxDocuments;
+  }
+
+  @Override
+  public void close() {
+    this.indexExecutor.shutdown();
+    this.maintenanceExecutor.shutdown();
+    try {
+      this.indexExecutor.awaitTermination(10, TimeUnit.SECONDS);
+      this.maintenanceExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+
+    try {
+      pruneAndCommit();
+      this.searcherManager.close();
+      this.indexWriter.close();
+      this.directory.close();
+    } catch (IOException exception) {
+      LOG.error("Error closing content index", exception);
+    }
+  }
+
+  private void refresh() {
+    try {
+      this.searcherManager.maybeRefresh();
+    } catch (IOException | RuntimeException exception) {
+      LOG.error("Error refreshing content index", exception);
+    }
+  }
+
+  private void pruneAndCommit() {
+    try {
+      prune();
+      this.indexWriter.commit();
+    } catch (IOException | RuntimeException exception) {
+      LOG.error("Error committing content index", exception);
+    }
+  }
+
+  /**
+   * Deletes the content fetched longest ago until at most maxDocuments are left
+   * The space is reclaimed as the segments holding it are merged
+   * @throws IOException
+   */
+  private void prune() throws IOException {
+    int excess = this.indexWriter.getDocStats().numDocs - this.maxDocuments;
+    if (excess <= 0) {
+      return;
+    }
+
+    IndexSearcher searcher = this.searcherManager.acquire();
+    try {
+      Sort oldestFirst = new Sort(new SortField(FETCHED_AT, SortField.Type.LONG));
+      ScoreDoc[] oldest = searcher.search(new MatchAllDocsQuery(), excess, oldestFirst).scoreDocs;
+      if (oldest.length == 0) {
+        return;
+      }
+
+      long cutoff = (Long) ((FieldDoc) oldest[oldest.length - 1]).fields[0];
+      this.indexWriter.deleteDocuments(LongPoint.newRangeQuery(FETCHED_AT, Long.MIN_VALUE,
+          cutoff));
+      LOG.info("Pruned content index of content fetched before {}", cutoff);
+    } finally {
+      this.searcherManager.release(searcher);
+    }
+  }
+
+  private static String getKey(String type, String id) {
+    return type + ":" + id;
+  }
+
+  private static Document toDocument(IndexedContent content) {
+    String text = content.getText() == null ? "" : content.getText();
+    String snippet = text.length() > SNIPPET_LENGTH ? text.substring(0, SNIPPET_LENGTH) : text;
+
+    Document document = new Document();
+    document.add(new StringField(KEY, getKey(content.getType(), content.getId()),
+        Field.Store.NO));
+    document.add(new StringField(TYPE, content.getType(), Field.Store.YES));
+    document.add(new StoredField(ID, content.getId()));
+    document.add(new TextField(TITLE, content.getTitle(), Field.Store.YES));
+    document.add(new TextField(TEXT, text, Field.Store.NO));
+    document.add(new StoredField(SNIPPET, snippet));
+    if (content.getUrl() != null) {
+      document.add(new StoredField(URL, content.getUrl()));
+    }
+    if (content.getSource() != null) {
+      document.add(new StoredField(SOURCE, content.getSource()));
+    }
+
+    //Indexed to delete by range, doc values to sort by, stored to return
+    document.add(new LongPoint(FETCHED_AT, content.getFetchedAt()));
+    document.add(new NumericDocValuesField(FETCHED_AT, content.getFetchedAt()));
+    document.add(new StoredField(FETCHED_AT, content.getFetchedAt()));
+    return document;
+  }
+
+  private static IndexedContent fromDocument(Document document) {
+    Number fetchedAt = document.getField(FETCHED_AT).numericValue();
+    return new IndexedContent(document.get(TYPE), document.get(ID), document.get(TITLE),
+        document.get(URL), document.get(SOURCE), document.get(SNIPPET), fetchedAt.longValue());
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.search;
+
+import com.symphony.formatters.MessageML;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared handling of a context's search command: rendering what the index found
+ */
+
+public final class SearchResults {
+
+  private SearchResults() {
+  }
+
+  /**
+   * Searches the index for content of that type and renders the results as one message
+   * @param contentIndex
+   * @param type e.g. IndexedContent.TYPE_REDDIT
+   * @param query the words searched for, e.g. 'rate limits' for 'Reddit search rate limits'
+   * @param maxResults
+   * @param usage how to search, shown when there is nothing to search for
+   * @return
+   */
+  public static List<MessageML> search(IContentIndex contentIndex, String type, String query,
+      int maxResults, String usage) {
+    MessageML response = new MessageML();
+
+    if (!contentIndex.isEnabled()) {
+      response.addParagraph("Search is not enabled");
+      return Collections.singletonList(response);
+    }
+    if (query.isEmpty()) {
+      response.addParagraph("Type '" + usage + "' to search what has already been viewed");
+      return Collections.singletonList(response);
+    }
+
+    List<IndexedContent> results = contentIndex.search(type, query, maxResults);
+    if (results.isEmpty()) {
+      response.addParagraph("No results for '" + query + "'");
+      return Collections.singletonList(response);
+    }
+
+    response.addParagraph("Results for '" + query + "': ");
+    response.addLineBreak();
+
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < results.size(); i++) {
+      IndexedContent result = results.get(i);
+
+      response.addParagraph(String.valueOf(i + 1) + ": ");
+      response.addBoldText(result.getTitle());
+      response.addLineBreak();
+      response.addParagraph("------> from ");
+      response.addItalicText(String.valueOf(result.getSource()));
+      response.addParagraph(" (viewed " + getAge(now - result.getFetchedAt()) + " ago)");
+      response.addLineBreak();
+      if (result.getUrl() != null) {
+        response.addParagraph(result.getUrl());
+        response.addLineBreak();
+      }
+      if (result.getText() != null && !result.getText().isEmpty()) {
+        response.addParagraph(result.getText().replace("\n", " ") + "...");
+        response.addLineBreak();
+      }
+    }
+    return Collections.singletonList(response);
+  }
+
+  private static String getAge(long millis) {
+    long minutes = TimeUnit.MILLISECONDS.toMinutes(Math.max(millis, 0));
+    if (minutes < 60) {
+      return minutes + " min";
+    }
+    long hours = TimeUnit.MINUTES.toHours(minutes);
+    if (hours < 24) {
+      return hours + " h";
+    }
+    return TimeUnit.HOURS.toDays(hours) + " days";
+  }
+}
@@ -0,0 +1,111 @@
+package com.symphony.simulator;
+
+import com.symphony.configurations.ConfigurationProvider;
+import com.symphony.configurations.IConfigurationProvider;
+import com.symphony.contexts.RedditContext;
+import com.symphony.contexts.ServiceContext;
+import com.symphony.contexts.WebBrowserContext;
+import com.symphony.formatters.MessageML;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Times the contexts' commands against the FixtureServer with no injected latency,
+ * so the numbers are our own overhead (HTTP to localhost, parsing, rendering) without
+ * upstream noise
+ *
+ * Usage: ContextBenchmark [iterations]
+ * Caches are disabled so every iteration takes the full path
+ */
+
+public class ContextBenchmark {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ContextBenchmark.class);
+
+  private static final List<String> REDDIT_COMMANDS =
+      Arrays.asList("reddit frontpage", "reddit 1", "reddit comments",
+          "reddit subreddit programming");
+
+  private static final List<String> BROWSER_COMMANDS =
+      Arrays.asList("browser lookup http://example.com/article", "browser next");
+
+  public static void main(String[] args) throws IOException {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+    FixtureServer fixtureServer = new FixtureServer(0);
+    fixtureServer.start();
+
+    try {
+      IConfigurationProvider configurationProvider =
+          new ConfigurationProvider(getFixtureProperties(fixtureServer));
+
+      RedditContext redditContext = new RedditContext(configurationProvider);
+      redditContext.ensureAuthenticated();
+      benchmark(redditContext, REDDIT_COMMANDS, iterations);
+
+      WebBrowserContext webBrowserContext = new WebBrowserContext(configurationProvider);
+      benchmark(webBrowserContext, BROWSER_COMMANDS, iterations);
+    } finally {
+      fixtureServer.stop();
+    }
+  }
+
+  /**
+   * The bundled properties, pointed at the fixture server with caches and limits disabled
+   * @param fixtureServer
+   * @return
+   * @throws IOException
+   */
+  public static Properties getFixtureProperties(FixtureServer fixtureServer) throws IOException {
+    Properties properties = new Properties();
+    properties.load(ContextBenchmark.class.getResourceAsStream("/symbrowser.properties"));
+
+    properties.setProperty("redditApiBaseUrl", fixtureServer.getBaseUrl());
+    properties.setProperty("redditAuthBaseUrl", fixtureServer.getBaseUrl());
+    properties.setProperty("diffbotBaseUrl", fixtureServer.getBaseUrl());
+    properties.setProperty("redditCacheTime", "0");
+    properties.setProperty("diffbotCacheTime", "0");
+    properties.setProperty("redditRateLimit", "100000");
+    properties.setProperty("diffbotRateLimit", "100000");
+    return properties;
+  }
+
+  /**
+   * Runs the commands in order, iterations times, and logs each one's latency in microseconds
+   * @param serviceContext
+   * @param commands
+   * @param iterations
+   */
+  private static void benchmark(ServiceContext serviceContext, List<String> commands,
+      int iterations) {
+
+    LatencyRecorder[] recorders = new LatencyRecorder[commands.size()];
+    for (int i = 0; i < recorders.length; i++) {
+      recorders[i] = new LatencyRecorder();
+    }
+
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      for (int i = 0; i < commands.size(); i++) {
+        long start = System.nanoTime();
+        List<MessageML> response = serviceContext.responsesToAction(commands.get(i));
+        for (MessageML messageML : response) {
+          messageML.toString();
+        }
+        recorders[i].record((System.nanoTime() - start) / 1000);
+      }
+    }
+
+    for (int i = 0; i < commands.size(); i++) {
+      LatencyRecorder recorder = recorders[i];
+      LOG.info("{} '{}': p50={}us p90={}us p99={}us max={}us", serviceContext.getContextName(),
+          commands.get(i), recorder.getPercentile(50), recorder.getPercentile(90),
+          recorder.getPercentile(99), recorder.getMax());
+    }
+  }
+}
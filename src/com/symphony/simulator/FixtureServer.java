@@ -0,0 +1,232 @@
+package com.symphony.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-process stand-in for Reddit and Diffbot that replays recorded responses, so context
+ * benchmarks are reproducible and run offline
+ *
+ * Fixtures are the raw JSON responses, looked up under the fixture directory if one is set,
+ * then on the classpath under /fixtures:
+ *  - reddit/frontpage.json, reddit/r/[name].json - listings, with '.after-[token]' before
+ *    '.json' for later pages
+ *  - reddit/comments/[id].json - a post and its comment tree
+ *  - diffbot/[host and path, non alphanumerics as '_'].json, else diffbot/default.json
+ *
+ * A missing Reddit fixture is a 404, as Reddit answers for an unknown subreddit or post
+ * Point redditApiBaseUrl, redditAuthBaseUrl and diffbotBaseUrl at getBaseUrl()
+ */
+
+public class FixtureServer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FixtureServer.class);
+
+  //Endpoint names for latency injection and error rates
+  public static final String REDDIT = "reddit";
+  public static final String DIFFBOT = "diffbot";
+
+  private static final String CLASSPATH_ROOT = "/fixtures/";
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final LatencyInjector latencyInjector;
+  private final ConcurrentMap<String, Double> errorRates;
+
+  private File fixtureDirectory;
+
+  /**
+   * @param port 0 for any free port
+   * @throws IOException
+   */
+  public FixtureServer(int port) throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    this.executor = Executors.newCachedThreadPool();
+    this.latencyInjector = new LatencyInjector();
+    this.errorRates = new ConcurrentHashMap<String, Double>();
+
+    this.server.createContext("/", new FixtureHandler());
+    this.server.setExecutor(this.executor);
+  }
+
+  public void start() {
+    this.server.start();
+    LOG.info("Fixture server listening on {}", getBaseUrl());
+  }
+
+  public void stop() {
+    this.server.stop(0);
+    this.executor.shutdownNow();
+  }
+
+  public String getBaseUrl() {
+    return "http://localhost:" + this.server.getAddress().getPort();
+  }
+
+  public LatencyInjector getLatencyInjector() {
+    return latencyInjector;
+  }
+
+  /**
+   * Share of requests, between 0 and 1, that fail with a 503
+   * @param endpoint REDDIT or DIFFBOT
+   * @param errorRate
+   */
+  public void setErrorRate(String endpoint, double errorRate) {
+    this.errorRates.put(endpoint, errorRate);
+  }
+
+  /**
+   * Directory searched for fixtures before the classpath
+   * @param fixtureDirectory
+   */
+  public void setFixtureDirectory(File fixtureDirectory) {
+    this.fixtureDirectory = fixtureDirectory;
+  }
+
+  private boolean shouldFail(String endpoint) {
+    Double errorRate = this.errorRates.get(endpoint);
+    return errorRate != null && ThreadLocalRandom.current().nextDouble() < errorRate;
+  }
+
+  /**
+   * Returns the fixture's contents, or null if there is no such fixture
+   * @param name
+   * @return
+   * @throws IOException
+   */
+  private String readFixture(String name) throws IOException {
+    InputStream inputStream = null;
+    if (this.fixtureDirectory != null) {
+      File file = new File(this.fixtureDirectory, name);
+      if (file.isFile()) {
+        inputStream = new FileInputStream(file);
+      }
+    }
+    if (inputStream == null) {
+      inputStream = FixtureServer.class.getResourceAsStream(CLASSPATH_ROOT + name);
+    }
+    if (inputStream == null) {
+      return null;
+    }
+
+    try {
+      ByteArrayOutputStream contents = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        contents.write(buffer, 0, read);
+      }
+      return new String(contents.toByteArray(), StandardCharsets.UTF_8);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private static String getQueryParameter(String query, String name) throws IOException {
+    if (query == null) {
+      return null;
+    }
+    for (String field : query.split("&")) {
+      String[] pair = field.split("=", 2);
+      if (pair.length == 2 && pair[0].equals(name)) {
+        return URLDecoder.decode(pair[1], "UTF-8");
+      }
+    }
+    return null;
+  }
+
+  private static String getListingFixtureName(String path, String after) {
+    String name = path.equals("/hot") ? "reddit/frontpage"
+        : "reddit/r/" + path.substring("/r/".length(), path.length() - "/hot".length());
+    return (after == null ? name : name + ".after-" + after) + ".json";
+  }
+
+  private String getDiffbotFixture(String websiteUrl) throws IOException {
+    String name = websiteUrl == null ? "" : websiteUrl.replaceFirst("^https?://", "")
+        .replaceAll("[^A-Za-z0-9]", "_");
+    String fixture = readFixture("diffbot/" + name + ".json");
+    if (fixture == null) {
+      fixture = readFixture("diffbot/default.json");
+    }
+    return fixture;
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream outputStream = exchange.getResponseBody();
+    outputStream.write(bytes);
+    outputStream.close();
+  }
+
+  private static String error(String message) {
+    return new JSONObject().put("error", message).toString();
+  }
+
+  /**
+   * Serves the fixture for each request
+   */
+  private class FixtureHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      String path = exchange.getRequestURI().getPath();
+      String query = exchange.getRequestURI().getRawQuery();
+      String endpoint = path.startsWith("/v3/") ? DIFFBOT : REDDIT;
+
+      try {
+        latencyInjector.inject(endpoint);
+        if (shouldFail(endpoint)) {
+          respond(exchange, 503, error("injected failure"));
+          return;
+        }
+
+        String fixture = null;
+        if (path.equals("/api/v1/access_token")) {
+          JSONObject token = new JSONObject();
+          token.put("access_token", "fixture-token");
+          token.put("token_type", "bearer");
+          token.put("expires_in", 3600);
+          fixture = token.toString();
+        } else if (path.equals("/hot") || (path.startsWith("/r/") && path.endsWith("/hot"))) {
+          fixture = readFixture(getListingFixtureName(path, getQueryParameter(query, "after")));
+        } else if (path.startsWith("/comments/")) {
+          fixture = readFixture("reddit" + path + ".json");
+        } else if (path.equals("/v3/analyze")) {
+          fixture = getDiffbotFixture(getQueryParameter(query, "url"));
+        }
+
+        if (fixture == null) {
+          respond(exchange, 404, error("no fixture for " + path));
+        } else {
+          respond(exchange, 200, fixture);
+        }
+      } catch (RuntimeException exception) {
+        LOG.error("Error serving fixture for {}", path, exception);
+        respond(exchange, 500, error(exception.toString()));
+      }
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package com.symphony.simulator;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays simulated endpoints by a base latency plus uniform random jitter, per endpoint
+ */
+
+public class LatencyInjector {
+
+  private final ConcurrentMap<String, long[]> latencies;
+
+  public LatencyInjector() {
+    this.latencies = new ConcurrentHashMap<String, long[]>();
+  }
+
+  /**
+   * @param endpoint one of the SymphonySimulator endpoint names
+   * @param baseMillis
+   * @param jitterMillis
+   */
+  public void setLatency(String endpoint, long baseMillis, long jitterMillis) {
+    this.latencies.put(endpoint, new long[]{baseMillis, jitterMillis});
+  }
+
+  /**
+   * Sleeps for the endpoint's latency, if one is set
+   * @param endpoint
+   */
+  public void inject(String endpoint) {
+    long[] latency = this.latencies.get(endpoint);
+    if (latency == null) {
+      return;
+    }
+
+    long delay = latency[0];
+    if (latency[1] > 0) {
+      delay += ThreadLocalRandom.current().nextLong(latency[1] + 1);
+    }
+
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.symphony.simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects latency samples, in whatever unit the caller uses, and reports percentiles over them
+ */
+
+public class LatencyRecorder {
+
+  private final List<Long> samples = new ArrayList<Long>();
+
+  public synchronized void record(long latency) {
+    this.samples.add(latency);
+  }
+
+  public synchronized int getCount() {
+    return this.samples.size();
+  }
+
+  /**
+   * Returns the latency below which the given share of samples fall, -1 if there are none
+   * @param percentile between 0 and 100
+   * @return
+   */
+  public synchronized long getPercentile(double percentile) {
+    if (this.samples.isEmpty()) {
+      return -1;
+    }
+    List<Long> sorted = new ArrayList<Long>(this.samples);
+    Collections.sort(sorted);
+
+    int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+    return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+  }
+
+  public long getMax() {
+    return getPercentile(100);
+  }
+}
@@ -0,0 +1,183 @@
+package com.symphony.simulator;
+
+import com.symphony.SymBrowserBot;
+import com.symphony.configurations.ConfigurationProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the bot against the SymphonySimulator and reports message -> reply latency
+ * percentiles and throughput
+ *
+ * Usage: LoadTest [rooms] [users] [messagesPerSecond] [triggerRatio] [totalMessages]
+ *
+ * A reply is matched to the oldest unanswered command in its room, ignoring the
+ * "Getting response" notice - so latencies are exact for single message replies
+ * (the default commands), and approximate when replies are streamed in several parts
+ */
+
+public class LoadTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadTest.class);
+
+  private static final long BOT_USER_ID = 1;
+  private static final String NOTICE_PREFIX = "Getting response from ";
+  private static final long DRAIN_TIMEOUT = 30000;
+
+  private final SymphonySimulator simulator;
+  private final TrafficProfile trafficProfile;
+  private final LatencyRecorder latencyRecorder;
+  private final ConcurrentMap<String, Queue<Long>> unansweredCommands;
+  private final AtomicInteger commandsPosted;
+  private final AtomicInteger messagesPosted;
+
+  public LoadTest(SymphonySimulator simulator, TrafficProfile trafficProfile) {
+    this.simulator = simulator;
+    this.trafficProfile = trafficProfile;
+    this.latencyRecorder = new LatencyRecorder();
+    this.unansweredCommands = new ConcurrentHashMap<String, Queue<Long>>();
+    this.commandsPosted = new AtomicInteger();
+    this.messagesPosted = new AtomicInteger();
+
+    this.simulator.setReplyListener(new SymphonySimulator.ReplyListener() {
+      @Override
+      public void onReply(String streamId, String messageML, long timestamp) {
+        onBotReply(streamId, messageML, timestamp);
+      }
+    });
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    int users = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    double messagesPerSecond = args.length > 2 ? Double.parseDouble(args[2]) : 50;
+    double triggerRatio = args.length > 3 ? Double.parseDouble(args[3]) : 0.3;
+    int totalMessages = args.length > 4 ? Integer.parseInt(args[4]) : 5000;
+
+    SymphonySimulator simulator = new SymphonySimulator(0, BOT_USER_ID);
+    simulator.setNumRooms(rooms);
+    simulator.start();
+
+    try {
+      final SymBrowserBot browserBot =
+          new SymBrowserBot(new ConfigurationProvider(getSimulatorProperties(simulator)));
+      Thread botThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          browserBot.start();
+        }
+      }, "symbrowser-bot");
+      botThread.setDaemon(true);
+      botThread.start();
+
+      TrafficProfile profile = new RandomTrafficProfile(rooms, users, messagesPerSecond,
+          triggerRatio, totalMessages, 42);
+      new LoadTest(simulator, profile).run();
+    } finally {
+      simulator.stop();
+    }
+  }
+
+  /**
+   * The bundled properties, pointed at the simulator with the agent limits lifted
+   * and nothing carried over between runs
+   * @param simulator
+   * @return
+   * @throws IOException
+   */
+  public static Properties getSimulatorProperties(SymphonySimulator simulator)
+      throws IOException {
+    Properties properties = new Properties();
+    properties.load(LoadTest.class.getResourceAsStream("/symbrowser.properties"));
+
+    properties.setProperty("symphonyBaseUrl", simulator.getBaseUrl());
+    properties.setProperty("symphonyWebControllerUrl", simulator.getWebControllerUrl());
+    properties.setProperty("myUserId", String.valueOf(BOT_USER_ID));
+    properties.setProperty("certificateResource", "");
+    properties.setProperty("symphonyAgentRateLimit", "100000");
+    properties.setProperty("symphonyAgentMaxConcurrentCalls", "64");
+    properties.setProperty("symphonyPodRateLimit", "100000");
+    properties.setProperty("symphonyPodMaxConcurrentCalls", "64");
+    properties.setProperty("pendingWorkFile", "");
+    properties.setProperty("outboxFile", "");
+    return properties;
+  }
+
+  /**
+   * Posts the profile's traffic, waits for the replies and logs the results
+   * @throws InterruptedException
+   */
+  public void run() throws InterruptedException {
+    long start = System.currentTimeMillis();
+
+    SimulatedMessage message;
+    while (true) {
+      Thread.sleep(this.trafficProfile.getDelayBeforeNextMessage());
+      message = this.trafficProfile.nextMessage();
+      if (message == null) {
+        break;
+      }
+
+      if (message.isTrigger()) {
+        getUnansweredCommands(message.getStreamId()).add(System.currentTimeMillis());
+        this.commandsPosted.incrementAndGet();
+      }
+      this.simulator.postMessage(message);
+      this.messagesPosted.incrementAndGet();
+    }
+
+    long postingDone = System.currentTimeMillis();
+    while (this.latencyRecorder.getCount() < this.commandsPosted.get()
+        && System.currentTimeMillis() - postingDone < DRAIN_TIMEOUT) {
+      Thread.sleep(100);
+    }
+    long elapsed = System.currentTimeMillis() - start;
+
+    LOG.info("Posted {} messages ({} commands) in {}ms", this.messagesPosted.get(),
+        this.commandsPosted.get(), postingDone - start);
+    LOG.info("Answered {} commands in {}ms: {} replies/s", this.latencyRecorder.getCount(), elapsed,
+        String.format("%.1f", this.latencyRecorder.getCount() * 1000.0 / elapsed));
+    LOG.info("Latency p50={}ms p90={}ms p99={}ms max={}ms", this.latencyRecorder.getPercentile(50),
+        this.latencyRecorder.getPercentile(90), this.latencyRecorder.getPercentile(99),
+        this.latencyRecorder.getMax());
+  }
+
+  public LatencyRecorder getLatencyRecorder() {
+    return latencyRecorder;
+  }
+
+  private Queue<Long> getUnansweredCommands(String streamId) {
+    Queue<Long> commands = this.unansweredCommands.get(streamId);
+    if (commands == null) {
+      commands = new ConcurrentLinkedQueue<Long>();
+      Queue<Long> existing = this.unansweredCommands.putIfAbsent(streamId, commands);
+      if (existing != null) {
+        commands = existing;
+      }
+    }
+    return commands;
+  }
+
+  private void onBotReply(String streamId, String messageML, long timestamp) {
+    String content = messageML.replaceAll("<[^>]*>", "")
+        .replaceAll(NOTICE_PREFIX + "\\w+ context", "").trim();
+    if (content.isEmpty()) {
+      return;
+    }
+
+    Queue<Long> commands = this.unansweredCommands.get(streamId);
+    Long postedAt = commands == null ? null : commands.poll();
+    if (postedAt != null) {
+      this.latencyRecorder.record(timestamp - postedAt);
+    }
+  }
+}
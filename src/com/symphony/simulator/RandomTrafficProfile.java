@@ -0,0 +1,79 @@
+package com.symphony.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Posts messages from random users in random rooms, with exponentially distributed gaps
+ * averaging to the given rate
+ *
+ * A triggerRatio share of the messages are bot commands, the rest is chatter the bot ignores
+ * Seeded, so the same profile always produces the same traffic
+ */
+
+public class RandomTrafficProfile implements TrafficProfile {
+
+  public static final long FIRST_USER_ID = 1000;
+
+  private static final List<String> DEFAULT_COMMANDS =
+      Arrays.asList("reddit help", "browser help", "symbrowser");
+
+  private static final List<String> CHATTER =
+      Arrays.asList("good morning", "lunch anyone?", "see the latest numbers",
+          "can you send me the deck", "thanks!", "on a call, back in 10");
+
+  private final int numRooms;
+  private final int numUsers;
+  private final double messagesPerSecond;
+  private final double triggerRatio;
+  private final int totalMessages;
+  private final Random random;
+
+  private List<String> commands;
+  private int messagesPosted;
+
+  public RandomTrafficProfile(int numRooms, int numUsers, double messagesPerSecond,
+      double triggerRatio, int totalMessages, long seed) {
+    this.numRooms = numRooms;
+    this.numUsers = numUsers;
+    this.messagesPerSecond = messagesPerSecond;
+    this.triggerRatio = triggerRatio;
+    this.totalMessages = totalMessages;
+    this.random = new Random(seed);
+    this.commands = DEFAULT_COMMANDS;
+  }
+
+  /**
+   * Sets the bot commands to pick from - the defaults don't call any upstream
+   * @param commands
+   */
+  public void setCommands(List<String> commands) {
+    this.commands = new ArrayList<String>(commands);
+  }
+
+  @Override
+  public synchronized long getDelayBeforeNextMessage() {
+    double seconds = -Math.log(1 - this.random.nextDouble()) / this.messagesPerSecond;
+    return (long) (seconds * 1000);
+  }
+
+  @Override
+  public synchronized SimulatedMessage nextMessage() {
+    if (this.messagesPosted >= this.totalMessages) {
+      return null;
+    }
+    this.messagesPosted++;
+
+    String streamId = "room-" + this.random.nextInt(this.numRooms);
+    long fromUserId = FIRST_USER_ID + this.random.nextInt(this.numUsers);
+
+    if (this.random.nextDouble() < this.triggerRatio) {
+      String command = this.commands.get(this.random.nextInt(this.commands.size()));
+      return new SimulatedMessage(streamId, fromUserId, command, true);
+    }
+    String chatter = CHATTER.get(this.random.nextInt(CHATTER.size()));
+    return new SimulatedMessage(streamId, fromUserId, chatter, false);
+  }
+}
@@ -0,0 +1,45 @@
+package com.symphony.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Posts a fixed list of messages in order, a fixed interval apart, optionally repeating it
+ */
+
+public class ScriptedTrafficProfile implements TrafficProfile {
+
+  private final List<SimulatedMessage> script;
+  private final long intervalMillis;
+  private final int repetitions;
+
+  private int position;
+
+  /**
+   * @param script
+   * @param intervalMillis
+   * @param repetitions how many times the whole script is posted
+   */
+  public ScriptedTrafficProfile(List<SimulatedMessage> script, long intervalMillis,
+      int repetitions) {
+    this.script = new ArrayList<SimulatedMessage>(script);
+    this.intervalMillis = intervalMillis;
+    this.repetitions = repetitions;
+    this.position = 0;
+  }
+
+  @Override
+  public long getDelayBeforeNextMessage() {
+    return this.intervalMillis;
+  }
+
+  @Override
+  public synchronized SimulatedMessage nextMessage() {
+    if (this.script.isEmpty() || this.position >= this.script.size() * this.repetitions) {
+      return null;
+    }
+    SimulatedMessage message = this.script.get(this.position % this.script.size());
+    this.position++;
+    return message;
+  }
+}
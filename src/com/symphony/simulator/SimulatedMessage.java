@@ -0,0 +1,52 @@
+package com.symphony.simulator;
+
+/**
+ * A message a simulated user posts into a simulated room
+ */
+
+public class SimulatedMessage {
+
+  private final String streamId;
+  private final long fromUserId;
+  private final String text;
+  private final boolean trigger;
+
+  /**
+   * @param streamId
+   * @param fromUserId
+   * @param text
+   * @param trigger whether the bot is expected to reply to it
+   */
+  public SimulatedMessage(String streamId, long fromUserId, String text, boolean trigger) {
+    this.streamId = streamId;
+    this.fromUserId = fromUserId;
+    this.text = text;
+    this.trigger = trigger;
+  }
+
+  public String getStreamId() {
+    return streamId;
+  }
+
+  public long getFromUserId() {
+    return fromUserId;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public boolean isTrigger() {
+    return trigger;
+  }
+
+  @Override
+  public String toString() {
+    return "SimulatedMessage{" +
+        "streamId='" + streamId + '\'' +
+        ", fromUserId=" + fromUserId +
+        ", text='" + text + '\'' +
+        ", trigger=" + trigger +
+        '}';
+  }
+}
@@ -0,0 +1,387 @@
+package com.symphony.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process HTTP stand-in for the Symphony endpoints the bot uses, for load testing it
+ * end to end without a pod:
+ *  - sessionauth / keyauth authenticate
+ *  - agent datafeed create and read (long polls for messages queued with postMessage)
+ *  - agent message create (hands every reply to the ReplyListener)
+ *  - pod user lookup, IM create and room search
+ *  - web controller UserInfo
+ *
+ * Point symphonyBaseUrl at getBaseUrl() and symphonyWebControllerUrl at getWebControllerUrl()
+ */
+
+public class SymphonySimulator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SymphonySimulator.class);
+
+  //Endpoint names for latency injection
+  public static final String AUTHENTICATE = "authenticate";
+  public static final String DATAFEED_CREATE = "datafeedCreate";
+  public static final String DATAFEED_READ = "datafeedRead";
+  public static final String MESSAGE_CREATE = "messageCreate";
+  public static final String USER_LOOKUP = "userLookup";
+  public static final String USER_INFO = "userInfo";
+  public static final String IM_CREATE = "imCreate";
+  public static final String ROOM_SEARCH = "roomSearch";
+
+  private static final int MAX_MESSAGES_PER_READ = 100;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final LatencyInjector latencyInjector;
+  private final BlockingQueue<JSONObject> pendingMessages;
+  private final AtomicLong messageCounter;
+  private final long botUserId;
+
+  private long datafeedPollTime;
+  private int numRooms;
+  private ReplyListener replyListener;
+
+  /**
+   * @param port 0 for any free port
+   * @param botUserId the user ID replies are posted as
+   * @throws IOException
+   */
+  public SymphonySimulator(int port, long botUserId) throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    this.executor = Executors.newCachedThreadPool();
+    this.latencyInjector = new LatencyInjector();
+    this.pendingMessages = new LinkedBlockingQueue<JSONObject>();
+    this.messageCounter = new AtomicLong();
+    this.botUserId = botUserId;
+    this.datafeedPollTime = 1000;
+    this.numRooms = 10;
+
+    this.server.createContext("/", new Dispatcher());
+    this.server.setExecutor(this.executor);
+  }
+
+  public void start() {
+    this.server.start();
+    LOG.info("Symphony simulator listening on {}", getBaseUrl());
+  }
+
+  public void stop() {
+    this.server.stop(0);
+    this.executor.shutdownNow();
+  }
+
+  public String getBaseUrl() {
+    return "http://localhost:" + this.server.getAddress().getPort();
+  }
+
+  public String getWebControllerUrl() {
+    return getBaseUrl() + "/webcontroller";
+  }
+
+  public LatencyInjector getLatencyInjector() {
+    return latencyInjector;
+  }
+
+  /**
+   * Sets the listener told about every message the bot sends
+   * @param replyListener
+   */
+  public void setReplyListener(ReplyListener replyListener) {
+    this.replyListener = replyListener;
+  }
+
+  /**
+   * How long, in milliseconds, an empty datafeed read waits for messages before returning
+   * @param datafeedPollTime
+   */
+  public void setDatafeedPollTime(long datafeedPollTime) {
+    this.datafeedPollTime = datafeedPollTime;
+  }
+
+  /**
+   * Number of rooms room search can find
+   * @param numRooms
+   */
+  public void setNumRooms(int numRooms) {
+    this.numRooms = numRooms;
+  }
+
+  /**
+   * Queues a message for the bot's next datafeed read
+   * @param message
+   * @return the message ID
+   */
+  public String postMessage(SimulatedMessage message) {
+    String messageId = "msg-" + this.messageCounter.incrementAndGet();
+
+    JSONObject object = new JSONObject();
+    object.put("id", messageId);
+    object.put("timestamp", String.valueOf(System.currentTimeMillis()));
+    object.put("v2messageType", "V2Message");
+    object.put("streamId", message.getStreamId());
+    object.put("message", "<messageML>" + escapeXml(message.getText()) + "</messageML>");
+    object.put("fromUserId", message.getFromUserId());
+    object.put("attachments", new JSONArray());
+
+    this.pendingMessages.add(object);
+    return messageId;
+  }
+
+  /**
+   * Number of posted messages the bot hasn't read yet
+   * @return
+   */
+  public int getPendingMessageCount() {
+    return this.pendingMessages.size();
+  }
+
+  private static String escapeXml(String text) {
+    return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+  }
+
+  private String readDatafeed() throws InterruptedException {
+    JSONArray messages = new JSONArray();
+
+    JSONObject first = this.pendingMessages.poll(this.datafeedPollTime, TimeUnit.MILLISECONDS);
+    if (first != null) {
+      messages.put(first);
+
+      List<JSONObject> rest = new ArrayList<JSONObject>();
+      this.pendingMessages.drainTo(rest, MAX_MESSAGES_PER_READ - 1);
+      for (JSONObject message : rest) {
+        messages.put(message);
+      }
+    }
+    return messages.toString();
+  }
+
+  private String createMessage(String streamId, String body) {
+    JSONObject submission = new JSONObject(body);
+    String messageML = submission.getString("message");
+    long timestamp = System.currentTimeMillis();
+
+    JSONObject message = new JSONObject();
+    message.put("id", "reply-" + this.messageCounter.incrementAndGet());
+    message.put("timestamp", String.valueOf(timestamp));
+    message.put("v2messageType", "V2Message");
+    message.put("streamId", streamId);
+    message.put("message", messageML);
+    message.put("fromUserId", this.botUserId);
+    message.put("attachments", new JSONArray());
+
+    ReplyListener listener = this.replyListener;
+    if (listener != null) {
+      listener.onReply(streamId, messageML, timestamp);
+    }
+    return message.toString();
+  }
+
+  private static String getUserInfo(String body) throws UnsupportedEncodingException {
+    String userId = "0";
+    for (String field : body.split("&")) {
+      String[] pair = field.split("=", 2);
+      if (pair.length == 2 && pair[0].equals("userid")) {
+        userId = URLDecoder.decode(pair[1], "UTF-8");
+      }
+    }
+
+    JSONObject person = new JSONObject();
+    person.put("emailAddress", "user" + userId + "@simulator.local");
+    person.put("prettyName", "Simulated User " + userId);
+
+    JSONObject response = new JSONObject();
+    response.put("status", "OK");
+    response.put("person", person);
+    return response.toString();
+  }
+
+  private static String getUser(String query) throws UnsupportedEncodingException {
+    String email = "";
+    if (query != null) {
+      for (String field : query.split("&")) {
+        String[] pair = field.split("=", 2);
+        if (pair.length == 2 && pair[0].equals("email")) {
+          email = URLDecoder.decode(pair[1], "UTF-8");
+        }
+      }
+    }
+
+    JSONObject user = new JSONObject();
+    user.put("id", RandomTrafficProfile.FIRST_USER_ID - 1);
+    user.put("emailAddress", email);
+    user.put("displayName", email);
+    return user.toString();
+  }
+
+  private static String createIm(String body) {
+    JSONArray userIds = new JSONArray(body);
+    StringBuilder streamId = new StringBuilder("im");
+    for (int i = 0; i < userIds.length(); i++) {
+      streamId.append('-').append(userIds.getLong(i));
+    }
+
+    JSONObject stream = new JSONObject();
+    stream.put("id", streamId.toString());
+    return stream.toString();
+  }
+
+  private String searchRooms(String body, String parameters) {
+    String query = new JSONObject(body).optString("query", "");
+    int skip = 0;
+    int limit = Integer.MAX_VALUE;
+    if (parameters != null) {
+      for (String field : parameters.split("&")) {
+        String[] pair = field.split("=", 2);
+        if (pair.length == 2 && pair[0].equals("skip")) {
+          skip = Integer.parseInt(pair[1]);
+        } else if (pair.length == 2 && pair[0].equals("limit")) {
+          limit = Integer.parseInt(pair[1]);
+        }
+      }
+    }
+
+    JSONArray rooms = new JSONArray();
+    int count = 0;
+    for (int i = 0; i < this.numRooms; i++) {
+      String roomId = "room-" + i;
+      if (!roomId.contains(query)) {
+        continue;
+      }
+      count++;
+      if (count <= skip || rooms.length() >= limit) {
+        continue;
+      }
+      JSONObject attributes = new JSONObject();
+      attributes.put("name", roomId);
+      JSONObject systemInfo = new JSONObject();
+      systemInfo.put("id", roomId);
+      systemInfo.put("active", true);
+
+      JSONObject room = new JSONObject();
+      room.put("roomAttributes", attributes);
+      room.put("roomSystemInfo", systemInfo);
+      rooms.put(room);
+    }
+
+    JSONObject results = new JSONObject();
+    results.put("count", count);
+    results.put("skip", skip);
+    results.put("limit", limit == Integer.MAX_VALUE ? rooms.length() : limit);
+    results.put("rooms", rooms);
+    return results.toString();
+  }
+
+  private static String createToken(String name) {
+    JSONObject token = new JSONObject();
+    token.put("name", name);
+    token.put("token", UUID.randomUUID().toString());
+    return token.toString();
+  }
+
+  private static String readBody(HttpExchange exchange) throws IOException {
+    InputStream inputStream = exchange.getRequestBody();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = inputStream.read(buffer)) != -1) {
+      body.write(buffer, 0, read);
+    }
+    return new String(body.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream outputStream = exchange.getResponseBody();
+    outputStream.write(bytes);
+    outputStream.close();
+  }
+
+  /**
+   * Told about every message the bot sends
+   */
+  public interface ReplyListener {
+
+    void onReply(String streamId, String messageML, long timestamp);
+  }
+
+  /**
+   * Routes requests by path to the simulated endpoints
+   */
+  private class Dispatcher implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      String path = exchange.getRequestURI().getPath();
+
+      try {
+        String body = readBody(exchange);
+
+        if (path.endsWith("/sessionauth/v1/authenticate")) {
+          latencyInjector.inject(AUTHENTICATE);
+          respond(exchange, 200, createToken("sessionToken"));
+        } else if (path.endsWith("/keyauth/v1/authenticate")) {
+          latencyInjector.inject(AUTHENTICATE);
+          respond(exchange, 200, createToken("keyManagerToken"));
+        } else if (path.endsWith("/agent/v1/datafeed/create")) {
+          latencyInjector.inject(DATAFEED_CREATE);
+          respond(exchange, 200, new JSONObject().put("id", UUID.randomUUID()).toString());
+        } else if (path.startsWith("/agent/v2/datafeed/") && path.endsWith("/read")) {
+          latencyInjector.inject(DATAFEED_READ);
+          respond(exchange, 200, readDatafeed());
+        } else if (path.startsWith("/agent/v2/stream/") && path.endsWith("/message/create")) {
+          latencyInjector.inject(MESSAGE_CREATE);
+          String streamId = path.substring("/agent/v2/stream/".length(),
+              path.length() - "/message/create".length());
+          respond(exchange, 200, createMessage(streamId, body));
+        } else if (path.endsWith("/pod/v1/user")) {
+          latencyInjector.inject(USER_LOOKUP);
+          respond(exchange, 200, getUser(exchange.getRequestURI().getRawQuery()));
+        } else if (path.endsWith("/pod/v1/im/create")) {
+          latencyInjector.inject(IM_CREATE);
+          respond(exchange, 200, createIm(body));
+        } else if (path.endsWith("/pod/v2/room/search")) {
+          latencyInjector.inject(ROOM_SEARCH);
+          respond(exchange, 200, searchRooms(body, exchange.getRequestURI().getRawQuery()));
+        } else if (path.startsWith("/webcontroller/")) {
+          latencyInjector.inject(USER_INFO);
+          respond(exchange, 200, getUserInfo(body));
+        } else {
+          respond(exchange, 404, new JSONObject().put("message", "not simulated").toString());
+        }
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        respond(exchange, 503, new JSONObject().put("message", "shutting down").toString());
+      } catch (RuntimeException exception) {
+        LOG.error("Error simulating {}", path, exception);
+        respond(exchange, 500, new JSONObject().put("message", exception.toString()).toString());
+      }
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package com.symphony.simulator;
+
+/**
+ * Decides what simulated users say and when
+ */
+
+public interface TrafficProfile {
+
+  /**
+   * How long to wait, in milliseconds, before posting the next message
+   */
+  long getDelayBeforeNextMessage();
+
+  /**
+   * Returns the next message to post, or null once the profile is finished
+   */
+  SimulatedMessage nextMessage();
+}
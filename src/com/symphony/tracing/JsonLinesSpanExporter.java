@@ -0,0 +1,158 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.tracing;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends ended spans to a file, one JSON object per line, with the field names of an
+ * OTLP span (traceId, spanId, parentSpanId, name, startTimeUnixNano, endTimeUnixNano, attributes)
+ * so a collector's file receiver or a script can pick them up
+ *
+ * Spans are handed to a background thread through a bounded queue - if it falls behind, spans
+ * are dropped rather than slowing down the threads that recorded them
+ */
+
+public class JsonLinesSpanExporter implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JsonLinesSpanExporter.class);
+
+  private static final int QUEUE_CAPACITY = 8192;
+
+  private final File file;
+  private final BlockingQueue<Span> spans;
+  private final AtomicLong droppedSpans;
+  private final Thread thread;
+
+  public JsonLinesSpanExporter(File file) {
+    this.file = file;
+    this.spans = new ArrayBlockingQueue<Span>(QUEUE_CAPACITY);
+    this.droppedSpans = new AtomicLong();
+
+    this.thread = new Thread(this, "span-exporter");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  public void export(Span span) {
+    if (!this.spans.offer(span)) {
+      this.droppedSpans.incrementAndGet();
+    }
+  }
+
+  public long getDroppedSpans() {
+    return droppedSpans.get();
+  }
+
+  /**
+   * Writes the spans already queued and stops
+   * @param timeoutMillis how long to wait for them to be written
+   */
+  public void close(long timeoutMillis) {
+    this.thread.interrupt();
+    try {
+      this.thread.join(timeoutMillis);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void run() {
+    Writer writer;
+    try {
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true),
+          StandardCharsets.UTF_8));
+    } catch (IOException exception) {
+      LOG.error("Could not open {} to export spans", this.file, exception);
+      return;
+    }
+
+    try {
+      boolean closing = false;
+      while (!closing) {
+        Span span;
+        try {
+          span = this.spans.poll(1, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+          closing = true;
+          span = this.spans.poll();
+        }
+
+        //Write everything queued, then flush once
+        while (span != null) {
+          writer.write(toJson(span).toString());
+          writer.write('\n');
+          span = this.spans.poll();
+        }
+        writer.flush();
+      }
+    } catch (IOException exception) {
+      LOG.error("Could not export spans to {}", this.file, exception);
+    } finally {
+      try {
+        writer.close();
+      } catch (IOException exception) {
+        LOG.warn("Error closing {}", this.file, exception);
+      }
+    }
+  }
+
+  private static JSONObject toJson(Span span) {
+    Trace trace = span.getTrace();
+
+    JSONObject json = new JSONObject();
+    json.put("traceId", trace.getTraceId());
+    json.put("spanId", span.getSpanId());
+    if (span.getParentSpanId() != null) {
+      json.put("parentSpanId", span.getParentSpanId());
+    }
+    json.put("name", span.getName());
+    json.put("startTimeUnixNano", trace.toEpochNanos(span.getStartNanos()));
+    json.put("endTimeUnixNano", trace.toEpochNanos(span.getEndNanos()));
+
+    JSONObject attributes = new JSONObject();
+    for (Map.Entry<String, String> attribute : span.getAttributes().entrySet()) {
+      attributes.put(attribute.getKey(), attribute.getValue());
+    }
+    json.put("attributes", attributes);
+    return json;
+  }
+}
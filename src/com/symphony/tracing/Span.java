@@ -0,0 +1,121 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.tracing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One timed stage of a trace, exported once it ends
+ * Spans of unsampled traces are a shared no-op instance, so they cost nothing
+ */
+
+public class Span {
+
+  static final Span NOOP = new Span(null, null, null, null, 0);
+
+  private final Trace trace;
+  private final String name;
+  private final String spanId;
+  private final String parentSpanId;
+  private final long startNanos;
+
+  private Map<String, String> attributes;
+  private long endNanos;
+
+  Span(Trace trace, String name, String spanId, String parentSpanId, long startNanos) {
+    this.trace = trace;
+    this.name = name;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.startNanos = startNanos;
+  }
+
+  /**
+   * Adds a key/value describing the span, e.g. the context that responded
+   * @param key
+   * @param value
+   * @return this span
+   */
+  public Span setAttribute(String key, Object value) {
+    if (this.trace != null) {
+      if (this.attributes == null) {
+        this.attributes = new LinkedHashMap<String, String>();
+      }
+      this.attributes.put(key, String.valueOf(value));
+    }
+    return this;
+  }
+
+  public void end() {
+    end(System.nanoTime());
+  }
+
+  /**
+   * Ends the span at the given System.nanoTime() and exports it
+   * @param endNanos
+   */
+  public void end(long endNanos) {
+    if (this.trace != null) {
+      this.endNanos = endNanos;
+      this.trace.export(this);
+    }
+  }
+
+  public Trace getTrace() {
+    return trace;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getSpanId() {
+    return spanId;
+  }
+
+  /**
+   * @return null for a trace's root span
+   */
+  public String getParentSpanId() {
+    return parentSpanId;
+  }
+
+  public long getStartNanos() {
+    return startNanos;
+  }
+
+  public long getEndNanos() {
+    return endNanos;
+  }
+
+  public Map<String, String> getAttributes() {
+    if (this.attributes == null) {
+      return Collections.emptyMap();
+    }
+    return attributes;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The spans recorded for one inbound message, from the datafeed read to the reply being sent
+ * Every span is a child of the trace's root span, and is exported as soon as it ends
+ *
+ * The trace being worked on is kept per thread, and handed over explicitly wherever the work
+ * moves to another thread, so code deep in a call (e.g. an upstream call) can add its span
+ * Unsampled messages get the shared NOOP trace, whose spans do nothing
+ */
+
+public class Trace {
+
+  public static final Trace NOOP = new Trace(null, null);
+
+  private static final ThreadLocal<Trace> currentTrace = new ThreadLocal<Trace>();
+
+  private final String traceId;
+  private final String rootSpanId;
+  private final JsonLinesSpanExporter exporter;
+
+  //Converts System.nanoTime() to nanoseconds since the epoch, for the exported timestamps
+  private final long epochOffsetNanos;
+
+  Trace(String traceId, JsonLinesSpanExporter exporter) {
+    this.traceId = traceId;
+    this.rootSpanId = traceId == null ? null : newSpanId();
+    this.exporter = exporter;
+    this.epochOffsetNanos =
+        TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+  }
+
+  /**
+   * The trace of the work the current thread is doing, NOOP if there is none
+   * @return
+   */
+  public static Trace current() {
+    Trace trace = currentTrace.get();
+    return trace == null ? NOOP : trace;
+  }
+
+  /**
+   * Makes the trace the current thread's, null or NOOP to clear it
+   * @param trace
+   */
+  public static void setCurrent(Trace trace) {
+    if (trace == null || trace == NOOP) {
+      currentTrace.remove();
+    } else {
+      currentTrace.set(trace);
+    }
+  }
+
+  private static String newSpanId() {
+    return String.format("%016x", ThreadLocalRandom.current().nextLong());
+  }
+
+  public boolean isSampled() {
+    return this.traceId != null;
+  }
+
+  /**
+   * Starts the root span, which the trace's other spans are children of
+   * @param name
+   * @param startNanos System.nanoTime() when it began
+   * @return
+   */
+  public Span startRootSpan(String name, long startNanos) {
+    if (!isSampled()) {
+      return Span.NOOP;
+    }
+    return new Span(this, name, this.rootSpanId, null, startNanos);
+  }
+
+  public Span startSpan(String name) {
+    return startSpan(name, System.nanoTime());
+  }
+
+  /**
+   * Starts a span that began earlier, e.g. when a task was queued
+   * @param name
+   * @param startNanos System.nanoTime() when it began
+   * @return
+   */
+  public Span startSpan(String name, long startNanos) {
+    if (!isSampled()) {
+      return Span.NOOP;
+    }
+    return new Span(this, name, newSpanId(), this.rootSpanId, startNanos);
+  }
+
+  /**
+   * Records a span that has already ended
+   * @param name
+   * @param startNanos
+   * @param endNanos
+   */
+  public void recordSpan(String name, long startNanos, long endNanos) {
+    startSpan(name, startNanos).end(endNanos);
+  }
+
+  /**
+   * Converts a wall clock time, e.g. a timestamp from Symphony, to the System.nanoTime() scale
+   * @param epochMillis
+   * @return
+   */
+  public long toNanoTime(long epochMillis) {
+    return TimeUnit.MILLISECONDS.toNanos(epochMillis) - this.epochOffsetNanos;
+  }
+
+  long toEpochNanos(long nanoTime) {
+    return nanoTime + this.epochOffsetNanos;
+  }
+
+  void export(Span span) {
+    this.exporter.export(span);
+  }
+
+  public String getTraceId() {
+    return traceId;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.tracing;
+
+import com.symphony.configurations.ConfigurationListener;
+import com.symphony.configurations.IConfigurationProvider;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts a trace for a sampled fraction of the inbound messages
+ * Tracing is off unless a file to export spans to is configured
+ */
+
+public class Tracer implements ConfigurationListener {
+
+  private final JsonLinesSpanExporter exporter;
+  private volatile double sampleRate;
+
+  public Tracer(IConfigurationProvider configurationProvider) {
+    File file = configurationProvider.getTracingFile();
+    this.exporter = file == null ? null : new JsonLinesSpanExporter(file);
+    this.sampleRate = configurationProvider.getTracingSampleRate();
+  }
+
+  /**
+   * A new trace, or Trace.NOOP if this message isn't sampled
+   * @return
+   */
+  public Trace startTrace() {
+    if (this.exporter == null || ThreadLocalRandom.current().nextDouble() >= this.sampleRate) {
+      return Trace.NOOP;
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String traceId = String.format("%016x%016x", random.nextLong(), random.nextLong());
+    return new Trace(traceId, this.exporter);
+  }
+
+  @Override
+  public void configurationChanged(IConfigurationProvider configurationProvider) {
+    this.sampleRate = configurationProvider.getTracingSampleRate();
+  }
+
+  /**
+   * Writes out the spans still queued
+   * @param timeoutMillis
+   */
+  public void close(long timeoutMillis) {
+    if (this.exporter != null) {
+      this.exporter.close(timeoutMillis);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.symphony.users;
+
+import com.symphony.models.ISymphonyUser;
+
+/**
+ * Local directory of Symphony users already looked up, keyed by user ID
+ * Lookups don't take a lock, so every datafeed and response thread can share it
+ */
+
+public interface IUserDirectory {
+
+  /**
+   * Returns the user, or null if they aren't in the directory or are due to be looked up again
+   * @param userId
+   * @return
+   */
+  ISymphonyUser get(long userId);
+
+  /**
+   * Adds or replaces the user
+   * @param user
+   */
+  void put(ISymphonyUser user);
+
+  /**
+   * Changes how many users are kept and for how long - applied from the next put
+   * @param maxUsers
+   * @param timeToLiveMillis
+   */
+  void setLimits(int maxUsers, long timeToLiveMillis);
+
+  /**
+   * Can be called without locking, for diagnostics
+   */
+  int size();
+
+  /**
+   * Rough memory taken by the directory, on and off the heap - can be called without locking
+   */
+  long getEstimatedBytes();
+}
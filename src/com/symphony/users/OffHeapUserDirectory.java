@@ -0,0 +1,300 @@
+package com.symphony.users;
+
+import com.symphony.models.ISymphonyUser;
+import com.symphony.models.SymphonyUser;
+import com.symphony.utils.LongIntHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * User directory for very large pods that keeps the users' details in a direct buffer,
+ * outside the heap - the heap only holds the ID to offset index (a long and an int per user)
+ *
+ * Records are appended as [added at millis][email length][email UTF-8][name length][name UTF-8]
+ * A lookup decodes the record, so unlike UserDirectory a hit allocates the returned user
+ * Lookups are optimistic reads that only fall back to the read lock if a put ran meanwhile
+ *
+ * A user put again is rewritten in place if it still fits, otherwise its old record is left
+ * as garbage. When the buffer is full, or maxUsers are kept, the buffer is compacted: expired
+ * users and garbage are dropped, then the oldest users until 1/EVICT_DIVISOR of it is free
+ */
+
+public class OffHeapUserDirectory implements IUserDirectory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OffHeapUserDirectory.class);
+
+  private static final int MISSING = -1;
+  private static final int EVICT_DIVISOR = 8;
+  //The added time and the two lengths
+  private static final int HEADER_BYTES = 16;
+
+  private final LongIntHashMap offsets;
+  private final ByteBuffer records;
+  private final StampedLock lock;
+  //Bytes of records that were replaced, reclaimed on the next compaction
+  private int garbageBytes;
+
+  private volatile int maxUsers;
+  private volatile long timeToLiveMillis;
+
+  //Written while holding the lock, read without it
+  private volatile int size;
+  private volatile int recordBytes;
+
+  /**
+   * @param expectedUsers
+   * @param maxUsers
+   * @param timeToLiveMillis
+   * @param capacityBytes size of the direct buffer
+   */
+  public OffHeapUserDirectory(int expectedUsers, int maxUsers, long timeToLiveMillis,
+      int capacityBytes) {
+    this.offsets = new LongIntHashMap(Math.min(expectedUsers, maxUsers), MISSING);
+    this.records = ByteBuffer.allocateDirect(capacityBytes);
+    this.lock = new StampedLock();
+    setLimits(maxUsers, timeToLiveMillis);
+  }
+
+  @Override
+  public ISymphonyUser get(long userId) {
+    long stamp = this.lock.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        ISymphonyUser user = read(userId);
+        if (this.lock.validate(stamp)) {
+          return user;
+        }
+      } catch (RuntimeException exception) {
+        //Read a record while a put moved or rewrote it - read again under the lock
+      }
+    }
+
+    stamp = this.lock.readLock();
+    try {
+      return read(userId);
+    } finally {
+      this.lock.unlockRead(stamp);
+    }
+  }
+
+  private ISymphonyUser read(long userId) {
+    int offset = this.offsets.get(userId);
+    if (offset == MISSING) {
+      return null;
+    }
+    if (System.currentTimeMillis() - this.records.getLong(offset) >= this.timeToLiveMillis) {
+      return null;
+    }
+
+    int emailLength = this.records.getInt(offset + 8);
+    String emailAddress = readString(offset + 12, emailLength);
+    int nameOffset = offset + 12 + Math.max(emailLength, 0);
+    String displayName = readString(nameOffset + 4, this.records.getInt(nameOffset));
+    return new SymphonyUser(userId, emailAddress, displayName);
+  }
+
+  @Override
+  public void put(ISymphonyUser user) {
+    byte[] email = getBytes(user.getEmailAddress());
+    byte[] name = getBytes(user.getDisplayName());
+    int recordLength = HEADER_BYTES + (email == null ? 0 : email.length)
+        + (name == null ? 0 : name.length);
+
+    long stamp = this.lock.writeLock();
+    try {
+      int previous = this.offsets.get(user.getUserId());
+      if (previous != MISSING) {
+        int previousLength = getRecordLength(previous);
+        if (recordLength <= previousLength) {
+          writeRecord(previous, email, name);
+          this.garbageBytes += previousLength - recordLength;
+          return;
+        }
+        this.offsets.remove(user.getUserId());
+        this.garbageBytes += previousLength;
+      }
+
+      if (this.records.remaining() < recordLength || this.offsets.size() >= this.maxUsers) {
+        compact(recordLength);
+      }
+      if (this.records.remaining() < recordLength) {
+        LOG.warn("Off-heap user directory can't hold a record of {} bytes", recordLength);
+        return;
+      }
+
+      int offset = this.records.position();
+      writeRecord(offset, email, name);
+      this.records.position(offset + recordLength);
+      this.offsets.put(user.getUserId(), offset);
+    } finally {
+      this.size = this.offsets.size();
+      this.recordBytes = this.records.position() - this.garbageBytes;
+      this.lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public void setLimits(int maxUsers, long timeToLiveMillis) {
+    this.maxUsers = Math.max(1, maxUsers);
+    this.timeToLiveMillis = timeToLiveMillis;
+  }
+
+  /**
+   * Moves the records kept to the start of the buffer, dropping the expired ones and the
+   * oldest if there still wouldn't be room for a while
+   * @param neededBytes the record about to be added
+   */
+  private void compact(int neededBytes) {
+    long expiredBefore = System.currentTimeMillis() - this.timeToLiveMillis;
+    List<Record> kept = new ArrayList<Record>(this.offsets.size());
+    int keptBytes = 0;
+    for (long userId : this.offsets.keys()) {
+      Record record = new Record(userId, this.offsets.get(userId));
+      if (record.addedAtMillis < expiredBefore) {
+        this.offsets.remove(userId);
+      } else {
+        kept.add(record);
+        keptBytes += record.length;
+      }
+    }
+
+    int capacity = this.records.capacity();
+    int maxBytes = capacity - capacity / EVICT_DIVISOR - neededBytes;
+    int maxKept = this.maxUsers - Math.max(1, this.maxUsers / EVICT_DIVISOR);
+    if (keptBytes > maxBytes || kept.size() > maxKept) {
+      Collections.sort(kept, new Comparator<Record>() {
+        @Override
+        public int compare(Record first, Record second) {
+          return Long.compare(second.addedAtMillis, first.addedAtMillis);
+        }
+      });
+      while (!kept.isEmpty() && (keptBytes > maxBytes || kept.size() > maxKept)) {
+        Record oldest = kept.remove(kept.size() - 1);
+        this.offsets.remove(oldest.userId);
+        keptBytes -= oldest.length;
+      }
+    }
+
+    //In buffer order, so each record only moves towards the start
+    Collections.sort(kept, new Comparator<Record>() {
+      @Override
+      public int compare(Record first, Record second) {
+        return Integer.compare(first.offset, second.offset);
+      }
+    });
+    int position = 0;
+    byte[] copy = new byte[256];
+    for (Record record : kept) {
+      if (record.offset != position) {
+        if (copy.length < record.length) {
+          copy = new byte[record.length];
+        }
+        this.records.position(record.offset);
+        this.records.get(copy, 0, record.length);
+        this.records.position(position);
+        this.records.put(copy, 0, record.length);
+        this.offsets.put(record.userId, position);
+      }
+      position += record.length;
+    }
+    this.records.position(position);
+    this.records.limit(capacity);
+    this.garbageBytes = 0;
+  }
+
+  private int getRecordLength(int offset) {
+    int emailLength = Math.max(this.records.getInt(offset + 8), 0);
+    int nameLength = this.records.getInt(offset + 12 + emailLength);
+    return HEADER_BYTES + emailLength + Math.max(nameLength, 0);
+  }
+
+  /**
+   * Writes the record at the offset without moving the buffer's position
+   * @param offset
+   * @param email
+   * @param name
+   */
+  private void writeRecord(int offset, byte[] email, byte[] name) {
+    this.records.putLong(offset, System.currentTimeMillis());
+    int nameOffset = putBytes(offset + 8, email);
+    putBytes(nameOffset, name);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The records written to the buffer, and a long and an int per user in the index
+   * @return
+   */
+  @Override
+  public long getEstimatedBytes() {
+    return recordBytes + size * 12L;
+  }
+
+  private static byte[] getBytes(String string) {
+    return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the length (-1 for null) then the bytes
+   * @param offset
+   * @param bytes
+   * @return the offset after them
+   */
+  private int putBytes(int offset, byte[] bytes) {
+    if (bytes == null) {
+      this.records.putInt(offset, -1);
+      return offset + 4;
+    }
+    this.records.putInt(offset, bytes.length);
+    for (int i = 0; i < bytes.length; i++) {
+      this.records.put(offset + 4 + i, bytes[i]);
+    }
+    return offset + 4 + bytes.length;
+  }
+
+  private String readString(int offset, int length) {
+    if (length < 0) {
+      return null;
+    }
+    //Only a record being rewritten under an optimistic read can be longer than the buffer
+    if (length > this.records.capacity() - offset) {
+      throw new IllegalStateException("record at " + offset + " was changed while read");
+    }
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = this.records.get(offset + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Where a user's record is, read while compacting
+   */
+  private class Record {
+
+    private final long userId;
+    private final int offset;
+    private final int length;
+    private final long addedAtMillis;
+
+    private Record(long userId, int offset) {
+      this.userId = userId;
+      this.offset = offset;
+      this.length = getRecordLength(offset);
+      this.addedAtMillis = records.getLong(offset);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package com.symphony.users;
+
+import com.symphony.models.ISymphonyUser;
+import com.symphony.models.SymphonyUser;
+import com.symphony.utils.LongObjectHashMap;
+import com.symphony.utils.MemoryEstimates;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * On-heap user directory - a primitive long keyed map, so a lookup doesn't box the ID
+ * and a hit returns the stored user without allocating
+ * Equal display names and email addresses are stored once, however many times
+ * users are looked up again
+ *
+ * Lookups are optimistic reads that only fall back to the read lock if a put ran meanwhile
+ * Users expire timeToLive after they were added, and once maxUsers are kept the expired ones
+ * and the oldest 1/EVICT_DIVISOR of the rest are dropped together
+ */
+
+public class UserDirectory implements IUserDirectory {
+
+  private static final int EVICT_DIVISOR = 8;
+
+  private final LongObjectHashMap<DirectoryEntry> users;
+  private Map<String, String> stringPool;
+  private final StampedLock lock;
+
+  private volatile int maxUsers;
+  private volatile long timeToLiveMillis;
+
+  //Written while holding the lock, read without it
+  private volatile int size;
+  private volatile long pooledStringBytes;
+
+  public UserDirectory(int expectedUsers, int maxUsers, long timeToLiveMillis) {
+    this.users = new LongObjectHashMap<DirectoryEntry>(Math.min(expectedUsers, maxUsers));
+    this.stringPool = new HashMap<String, String>();
+    this.lock = new StampedLock();
+    setLimits(maxUsers, timeToLiveMillis);
+  }
+
+  @Override
+  public ISymphonyUser get(long userId) {
+    DirectoryEntry entry = null;
+    long stamp = this.lock.tryOptimisticRead();
+    boolean read = false;
+    if (stamp != 0) {
+      try {
+        entry = this.users.get(userId);
+        read = this.lock.validate(stamp);
+      } catch (RuntimeException exception) {
+        //Read while a put resized the table - read again under the lock
+      }
+    }
+
+    if (!read) {
+      stamp = this.lock.readLock();
+      try {
+        entry = this.users.get(userId);
+      } finally {
+        this.lock.unlockRead(stamp);
+      }
+    }
+
+    if (entry == null
+        || System.currentTimeMillis() - entry.addedAtMillis >= this.timeToLiveMillis) {
+      return null;
+    }
+    return entry.user;
+  }
+
+  @Override
+  public void put(ISymphonyUser user) {
+    long stamp = this.lock.writeLock();
+    try {
+      if (this.users.get(user.getUserId()) == null && this.users.size() >= this.maxUsers) {
+        evict();
+      }
+
+      ISymphonyUser compactUser = new SymphonyUser(user.getUserId(),
+          pooled(user.getEmailAddress()), pooled(user.getDisplayName()));
+      this.users.put(user.getUserId(),
+          new DirectoryEntry(compactUser, System.currentTimeMillis()));
+      this.size = this.users.size();
+
+      //Replaced names and evicted users leave strings behind
+      if (this.stringPool.size() > 2 * (this.size + 16)) {
+        rebuildStringPool();
+      }
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public void setLimits(int maxUsers, long timeToLiveMillis) {
+    this.maxUsers = Math.max(1, maxUsers);
+    this.timeToLiveMillis = timeToLiveMillis;
+  }
+
+  /**
+   * Drops the expired users, and the oldest of the rest so there is room for a while
+   */
+  private void evict() {
+    long[] userIds = this.users.keys();
+    long[] addedAt = new long[userIds.length];
+    for (int i = 0; i < userIds.length; i++) {
+      addedAt[i] = this.users.get(userIds[i]).addedAtMillis;
+    }
+
+    long[] sorted = Arrays.copyOf(addedAt, addedAt.length);
+    Arrays.sort(sorted);
+    int toEvict = Math.max(1, userIds.length / EVICT_DIVISOR);
+    long oldest = sorted[Math.min(toEvict, sorted.length) - 1];
+    long expiredBefore = System.currentTimeMillis() - this.timeToLiveMillis;
+
+    int evicted = 0;
+    for (int i = 0; i < userIds.length; i++) {
+      if (addedAt[i] < expiredBefore || (evicted < toEvict && addedAt[i] <= oldest)) {
+        this.users.remove(userIds[i]);
+        evicted++;
+      }
+    }
+    rebuildStringPool();
+  }
+
+  /**
+   * Pools only the strings of the users still kept
+   */
+  private void rebuildStringPool() {
+    this.stringPool = new HashMap<String, String>();
+    this.pooledStringBytes = 0;
+    for (long userId : this.users.keys()) {
+      ISymphonyUser user = this.users.get(userId).user;
+      pooled(user.getEmailAddress());
+      pooled(user.getDisplayName());
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Each user is a slot in the map and two small objects, and the strings are shared
+   * @return
+   */
+  @Override
+  public long getEstimatedBytes() {
+    return size * (2 * MemoryEstimates.OBJECT_OVERHEAD + 32L) + pooledStringBytes;
+  }
+
+  /**
+   * Returns the pooled copy of the string, so equal strings share one instance
+   * @param string
+   * @return
+   */
+  private String pooled(String string) {
+    if (string == null) {
+      return null;
+    }
+    String pooledString = this.stringPool.get(string);
+    if (pooledString == null) {
+      this.stringPool.put(string, string);
+      this.pooledStringBytes += MemoryEstimates.ofString(string);
+      pooledString = string;
+    }
+    return pooledString;
+  }
+
+  /**
+   * A user and when it was added, immutable so a lookup can read it without the lock
+   */
+  private static class DirectoryEntry {
+
+    private final ISymphonyUser user;
+    private final long addedAtMillis;
+
+    private DirectoryEntry(ISymphonyUser user, long addedAtMillis) {
+      this.user = user;
+      this.addedAtMillis = addedAtMillis;
+    }
+  }
+}
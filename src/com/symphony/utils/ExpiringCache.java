@@ -0,0 +1,193 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small LRU cache whose entries also expire a fixed time after they were put
+ * Its size and estimated memory can be read without locking, for diagnostics
+ */
+
+public class ExpiringCache<K, V> {
+
+  /**
+   * Estimates how much memory a value takes
+   */
+  public interface Weigher<V> {
+    long estimateBytes(V value);
+  }
+
+  private final LinkedHashMap<K, Entry<V>> entries;
+  private final Weigher<V> weigher;
+
+  private long timeToLiveMillis;
+  private int maxSize;
+
+  //Written while holding the lock, read without it
+  private volatile int size;
+  private volatile long estimatedBytes;
+
+  public ExpiringCache(long timeToLiveMillis, int maxSize) {
+    this(timeToLiveMillis, maxSize, null);
+  }
+
+  /**
+   * @param timeToLiveMillis
+   * @param maxSize
+   * @param weigher null if memory isn't estimated
+   */
+  public ExpiringCache(long timeToLiveMillis, int maxSize, Weigher<V> weigher) {
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.maxSize = maxSize;
+    this.weigher = weigher;
+
+    //Access ordered, so the eldest entry is the least recently used one
+    this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        if (size() > ExpiringCache.this.maxSize) {
+          removed(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns the value for the key, or null if there is none or it has expired
+   * @param key
+   * @return
+   */
+  public synchronized V get(K key) {
+    Entry<V> entry = this.entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (isExpired(entry, System.currentTimeMillis())) {
+      removed(this.entries.remove(key));
+      updateSize();
+      return null;
+    }
+    return entry.value;
+  }
+
+  public synchronized void put(K key, V value) {
+    long bytes = this.weigher == null ? 0 : this.weigher.estimateBytes(value);
+    this.estimatedBytes += bytes;
+    removed(this.entries.put(key, new Entry<V>(value, System.currentTimeMillis(), bytes)));
+    updateSize();
+  }
+
+  public synchronized V remove(K key) {
+    Entry<V> entry = this.entries.remove(key);
+    removed(entry);
+    updateSize();
+    return entry == null ? null : entry.value;
+  }
+
+  public synchronized void clear() {
+    this.entries.clear();
+    this.estimatedBytes = 0;
+    updateSize();
+  }
+
+  /**
+   * The number of entries, including expired ones that haven't been cleaned up yet
+   * @return
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Estimated memory taken by the values, 0 if there is no weigher
+   * @return
+   */
+  public long getEstimatedBytes() {
+    return estimatedBytes;
+  }
+
+  /**
+   * Drops every expired entry
+   */
+  public synchronized void removeExpired() {
+    long now = System.currentTimeMillis();
+    Iterator<Entry<V>> iterator = this.entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry<V> entry = iterator.next();
+      if (isExpired(entry, now)) {
+        iterator.remove();
+        removed(entry);
+      }
+    }
+    updateSize();
+  }
+
+  public synchronized void setTimeToLiveMillis(long timeToLiveMillis) {
+    this.timeToLiveMillis = timeToLiveMillis;
+  }
+
+  public synchronized void setMaxSize(int maxSize) {
+    this.maxSize = maxSize;
+
+    Iterator<Entry<V>> iterator = this.entries.values().iterator();
+    while (this.entries.size() > maxSize && iterator.hasNext()) {
+      Entry<V> entry = iterator.next();
+      iterator.remove();
+      removed(entry);
+    }
+    updateSize();
+  }
+
+  private boolean isExpired(Entry<V> entry, long now) {
+    return now - entry.createdAtMillis > this.timeToLiveMillis;
+  }
+
+  private void removed(Entry<V> entry) {
+    if (entry != null) {
+      this.estimatedBytes -= entry.estimatedBytes;
+    }
+  }
+
+  private void updateSize() {
+    this.size = this.entries.size();
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private final long createdAtMillis;
+    private final long estimatedBytes;
+
+    private Entry(V value, long createdAtMillis, long estimatedBytes) {
+      this.value = value;
+      this.createdAtMillis = createdAtMillis;
+      this.estimatedBytes = estimatedBytes;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.utils;
+
+/**
+ * Names of the structured fields put in the logging MDC, so every line logged while handling
+ * a request can be tied to its stream, context and command, e.g. to analyze latencies
+ */
+
+public final class LogFields {
+
+  public static final String STREAM_ID = "streamId";
+  public static final String CONTEXT = "context";
+  public static final String COMMAND = "command";
+
+  //Milliseconds from starting to respond to the last part of the response being queued
+  public static final String LATENCY = "latency";
+
+  private static final int MAX_COMMAND_LENGTH = 64;
+
+  private LogFields() {
+  }
+
+  /**
+   * The message text as a short, single line command field
+   * @param messageText
+   * @return
+   */
+  public static String command(String messageText) {
+    String command = messageText.trim().replaceAll("\\s+", " ").toLowerCase();
+    if (command.length() > MAX_COMMAND_LENGTH) {
+      command = command.substring(0, MAX_COMMAND_LENGTH);
+    }
+    return command;
+  }
+}
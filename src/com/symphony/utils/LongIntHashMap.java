@@ -0,0 +1,177 @@
+package com.symphony.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing (linear probing) map from primitive long keys to primitive int values
+ * Not thread safe
+ */
+
+public class LongIntHashMap {
+
+  private static final int MIN_CAPACITY = 16;
+
+  private final int missingValue;
+
+  //0 marks an empty slot, so the 0 key is kept on the side
+  private long[] keys;
+  private int[] values;
+  private int size;
+  private boolean hasZeroKey;
+  private int zeroValue;
+
+  /**
+   * @param expectedSize
+   * @param missingValue returned by get for absent keys
+   */
+  public LongIntHashMap(int expectedSize, int missingValue) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    this.missingValue = missingValue;
+  }
+
+  public int get(long key) {
+    if (key == 0) {
+      return this.hasZeroKey ? this.zeroValue : this.missingValue;
+    }
+
+    int mask = this.keys.length - 1;
+    int index = LongObjectHashMap.hash(key) & mask;
+    while (true) {
+      long slot = this.keys[index];
+      if (slot == key) {
+        return this.values[index];
+      }
+      if (slot == 0) {
+        return this.missingValue;
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  public void put(long key, int value) {
+    if (key == 0) {
+      if (!this.hasZeroKey) {
+        this.hasZeroKey = true;
+        this.size++;
+      }
+      this.zeroValue = value;
+      return;
+    }
+
+    int mask = this.keys.length - 1;
+    int index = LongObjectHashMap.hash(key) & mask;
+    while (true) {
+      long slot = this.keys[index];
+      if (slot == key) {
+        this.values[index] = value;
+        return;
+      }
+      if (slot == 0) {
+        this.keys[index] = key;
+        this.values[index] = value;
+        this.size++;
+        if (this.size * 2 > this.keys.length) {
+          resize(this.keys.length * 2);
+        }
+        return;
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  /**
+   * Removes the key, moving back the keys probed past it so no lookup stops short
+   * @param key
+   * @return the value removed, or the missing value
+   */
+  public int remove(long key) {
+    if (key == 0) {
+      if (!this.hasZeroKey) {
+        return this.missingValue;
+      }
+      this.hasZeroKey = false;
+      this.size--;
+      return this.zeroValue;
+    }
+
+    int mask = this.keys.length - 1;
+    int index = LongObjectHashMap.hash(key) & mask;
+    while (this.keys[index] != key) {
+      if (this.keys[index] == 0) {
+        return this.missingValue;
+      }
+      index = (index + 1) & mask;
+    }
+    int previous = this.values[index];
+    this.size--;
+
+    //Each following key moves into the gap unless the gap is before its own slot
+    int gap = index;
+    int next = (index + 1) & mask;
+    while (this.keys[next] != 0) {
+      int home = LongObjectHashMap.hash(this.keys[next]) & mask;
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        this.keys[gap] = this.keys[next];
+        this.values[gap] = this.values[next];
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    this.keys[gap] = 0;
+    return previous;
+  }
+
+  /**
+   * Returns a copy of the keys, in no particular order
+   * @return
+   */
+  public long[] keys() {
+    long[] copy = new long[this.size];
+    int count = 0;
+    if (this.hasZeroKey) {
+      copy[count++] = 0;
+    }
+    for (long key : this.keys) {
+      if (key != 0) {
+        copy[count++] = key;
+      }
+    }
+    return copy;
+  }
+
+  private void resize(int capacity) {
+    long[] oldKeys = this.keys;
+    int[] oldValues = this.values;
+
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    int mask = capacity - 1;
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      long key = oldKeys[i];
+      if (key != 0) {
+        int index = LongObjectHashMap.hash(key) & mask;
+        while (this.keys[index] != 0) {
+          index = (index + 1) & mask;
+        }
+        this.keys[index] = key;
+        this.values[index] = oldValues[i];
+      }
+    }
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public void clear() {
+    Arrays.fill(this.keys, 0);
+    this.hasZeroKey = false;
+    this.size = 0;
+  }
+}
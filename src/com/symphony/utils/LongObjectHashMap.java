@@ -0,0 +1,194 @@
+package com.symphony.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing (linear probing) map from primitive long keys to values,
+ * so lookups neither box the key nor allocate
+ * Not thread safe
+ * @param <V>
+ */
+
+public class LongObjectHashMap<V> {
+
+  private static final int MIN_CAPACITY = 16;
+
+  //0 marks an empty slot, so the 0 key is kept on the side
+  private long[] keys;
+  private Object[] values;
+  private int size;
+  private boolean hasZeroKey;
+  private Object zeroValue;
+
+  public LongObjectHashMap(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    this.keys = new long[capacity];
+    this.values = new Object[capacity];
+  }
+
+  static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    if (key == 0) {
+      return (V) this.zeroValue;
+    }
+
+    int mask = this.keys.length - 1;
+    int index = hash(key) & mask;
+    while (true) {
+      long slot = this.keys[index];
+      if (slot == key) {
+        return (V) this.values[index];
+      }
+      if (slot == 0) {
+        return null;
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  /**
+   * @param key
+   * @param value
+   * @return the previous value, or null
+   */
+  @SuppressWarnings("unchecked")
+  public V put(long key, V value) {
+    if (key == 0) {
+      Object previous = this.zeroValue;
+      if (!this.hasZeroKey) {
+        this.hasZeroKey = true;
+        this.size++;
+      }
+      this.zeroValue = value;
+      return (V) previous;
+    }
+
+    int mask = this.keys.length - 1;
+    int index = hash(key) & mask;
+    while (true) {
+      long slot = this.keys[index];
+      if (slot == key) {
+        Object previous = this.values[index];
+        this.values[index] = value;
+        return (V) previous;
+      }
+      if (slot == 0) {
+        this.keys[index] = key;
+        this.values[index] = value;
+        this.size++;
+        //Keep the table at most half full so probe sequences stay short
+        if (this.size * 2 > this.keys.length) {
+          resize(this.keys.length * 2);
+        }
+        return null;
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  /**
+   * Removes the key, moving back the keys probed past it so no lookup stops short
+   * @param key
+   * @return the value removed, or null
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(long key) {
+    if (key == 0) {
+      Object previous = this.zeroValue;
+      if (this.hasZeroKey) {
+        this.hasZeroKey = false;
+        this.zeroValue = null;
+        this.size--;
+      }
+      return (V) previous;
+    }
+
+    int mask = this.keys.length - 1;
+    int index = hash(key) & mask;
+    while (this.keys[index] != key) {
+      if (this.keys[index] == 0) {
+        return null;
+      }
+      index = (index + 1) & mask;
+    }
+    Object previous = this.values[index];
+    this.size--;
+
+    //Each following key moves into the gap unless the gap is before its own slot
+    int gap = index;
+    int next = (index + 1) & mask;
+    while (this.keys[next] != 0) {
+      int home = hash(this.keys[next]) & mask;
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        this.keys[gap] = this.keys[next];
+        this.values[gap] = this.values[next];
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    this.keys[gap] = 0;
+    this.values[gap] = null;
+    return (V) previous;
+  }
+
+  /**
+   * Returns a copy of the keys, in no particular order
+   * @return
+   */
+  public long[] keys() {
+    long[] copy = new long[this.size];
+    int count = 0;
+    if (this.hasZeroKey) {
+      copy[count++] = 0;
+    }
+    for (long key : this.keys) {
+      if (key != 0) {
+        copy[count++] = key;
+      }
+    }
+    return copy;
+  }
+
+  private void resize(int capacity) {
+    long[] oldKeys = this.keys;
+    Object[] oldValues = this.values;
+
+    this.keys = new long[capacity];
+    this.values = new Object[capacity];
+    int mask = capacity - 1;
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      long key = oldKeys[i];
+      if (key != 0) {
+        int index = hash(key) & mask;
+        while (this.keys[index] != 0) {
+          index = (index + 1) & mask;
+        }
+        this.keys[index] = key;
+        this.values[index] = oldValues[i];
+      }
+    }
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public void clear() {
+    Arrays.fill(this.keys, 0);
+    Arrays.fill(this.values, null);
+    this.hasZeroKey = false;
+    this.zeroValue = null;
+    this.size = 0;
+  }
+}
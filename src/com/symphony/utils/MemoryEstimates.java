@@ -0,0 +1,47 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.utils;
+
+/**
+ * Rough heap sizes of cached content, for diagnostics - not exact, but comparable
+ */
+
+public final class MemoryEstimates {
+
+  //Header, hash and array header of a String, and of a small object holding fields
+  private static final long STRING_OVERHEAD = 40;
+  public static final long OBJECT_OVERHEAD = 16;
+
+  private MemoryEstimates() {
+  }
+
+  /**
+   * @param string may be null
+   * @return
+   */
+  public static long ofString(String string) {
+    return string == null ? 0 : STRING_OVERHEAD + 2L * string.length();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.utils;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool that counts its running and completed tasks itself, so they can be sampled
+ * without taking the pool's lock as getActiveCount() and getCompletedTaskCount() do
+ */
+
+public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor {
+
+  private final AtomicInteger runningTasks;
+  private final AtomicLong completedTasks;
+
+  public MonitoredThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime,
+      TimeUnit unit, BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
+    super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+    this.runningTasks = new AtomicInteger();
+    this.completedTasks = new AtomicLong();
+  }
+
+  @Override
+  protected void beforeExecute(Thread thread, Runnable runnable) {
+    super.beforeExecute(thread, runnable);
+    this.runningTasks.incrementAndGet();
+  }
+
+  @Override
+  protected void afterExecute(Runnable runnable, Throwable throwable) {
+    this.runningTasks.decrementAndGet();
+    this.completedTasks.incrementAndGet();
+    super.afterExecute(runnable, throwable);
+  }
+
+  /**
+   * Changes the number of threads of a fixed size pool - extra threads stop once they are idle
+   * @param numThreads
+   */
+  public void setPoolSize(int numThreads) {
+    //The core size may never be above the maximum size, so the order depends on the direction
+    if (numThreads > getMaximumPoolSize()) {
+      setMaximumPoolSize(numThreads);
+      setCorePoolSize(numThreads);
+    } else {
+      setCorePoolSize(numThreads);
+      setMaximumPoolSize(numThreads);
+    }
+  }
+
+  public int getRunningTasks() {
+    return runningTasks.get();
+  }
+
+  /**
+   * Tasks waiting for a thread - the pool's queue counts them without locking
+   * @return
+   */
+  public int getQueuedTasks() {
+    return getQueue().size();
+  }
+
+  public long getCompletedTasks() {
+    return completedTasks.get();
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names the threads of a pool after what they do, e.g. symbrowser-information-3,
+ * so they can be told apart in thread dumps
+ */
+
+public class NamedThreadFactory implements ThreadFactory {
+
+  //Prefix of every thread the bot names, used to pick them out of thread dumps
+  public static final String PREFIX = "symbrowser-";
+
+  private final String namePrefix;
+  private final boolean daemon;
+  private final AtomicInteger threadCount;
+
+  public NamedThreadFactory(String role, boolean daemon) {
+    this.namePrefix = PREFIX + role + "-";
+    this.daemon = daemon;
+    this.threadCount = new AtomicInteger();
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable) {
+    Thread thread = new Thread(runnable, this.namePrefix + this.threadCount.incrementAndGet());
+    thread.setDaemon(this.daemon);
+    return thread;
+  }
+}
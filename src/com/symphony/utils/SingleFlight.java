@@ -0,0 +1,93 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Makes concurrent calls for the same key share a single execution
+ *
+ * The first caller for a key runs the call on its own thread, callers that arrive while it is
+ * still running wait for and receive the same result (or exception)
+ * Nothing is kept once the call completes, so later callers trigger a fresh execution
+ */
+
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, FutureTask<V>> inFlight =
+      new ConcurrentHashMap<K, FutureTask<V>>();
+
+  /**
+   * Runs the call, or joins the execution already in flight for that key
+   * @param key
+   * @param call
+   * @return
+   */
+  public V execute(K key, Callable<V> call) {
+    FutureTask<V> task = new FutureTask<V>(call);
+    FutureTask<V> existing = this.inFlight.putIfAbsent(key, task);
+
+    if (existing != null) {
+      return getResult(existing);
+    }
+
+    try {
+      task.run();
+      return getResult(task);
+    } finally {
+      this.inFlight.remove(key, task);
+    }
+  }
+
+  /**
+   * The number of distinct keys currently executing
+   * @return
+   */
+  public int getInFlightCount() {
+    return this.inFlight.size();
+  }
+
+  private static <V> V getResult(FutureTask<V> task) {
+    try {
+      return task.get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while waiting for shared result", exception);
+    } catch (ExecutionException exception) {
+      Throwable cause = exception.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.watch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The IDs of the most recent items a watched source has shown, so an item that drops out of
+ * the source and comes back isn't sent again
+ * Not thread-safe - only used by one source's polls
+ */
+
+public class SeenItems {
+
+  private final Map<String, Boolean> ids;
+
+  public SeenItems(final int maxItems) {
+    this.ids = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > maxItems;
+      }
+    };
+  }
+
+  /**
+   * @param id
+   * @return true if the item wasn't seen before
+   */
+  public boolean markSeen(String id) {
+    return this.ids.put(id, Boolean.TRUE) == null;
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.watch;
+
+import com.symphony.configurations.ConfigurationListener;
+import com.symphony.configurations.IConfigurationProvider;
+import com.symphony.contexts.ResponseSink;
+import com.symphony.contexts.ResponseSinks;
+import com.symphony.formatters.MessageML;
+import com.symphony.utils.NamedThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls each watched source once, however many rooms watch it, and sends what is new
+ * to every one of them
+ *
+ * Each source is polled at its own interval, which adapts to how often it changes:
+ * halved when a poll finds new items, and grown by half when it doesn't,
+ * between the configured minimum and maximum
+ */
+
+public class WatchScheduler implements ConfigurationListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WatchScheduler.class);
+
+  private final ResponseSinks responseSinks;
+  private final ScheduledThreadPoolExecutor poller;
+
+  //By source key - only changed while holding the lock on it
+  private final Map<String, Watch> watches;
+
+  private volatile long minInterval;
+  private volatile long maxInterval;
+
+  public WatchScheduler(IConfigurationProvider configurationProvider,
+      ResponseSinks responseSinks) {
+    this.responseSinks = responseSinks;
+    this.poller = new ScheduledThreadPoolExecutor(configurationProvider.getWatchThreads(),
+        new NamedThreadFactory("watch", true));
+    this.poller.setRemoveOnCancelPolicy(true);
+    this.watches = new HashMap<String, Watch>();
+    this.minInterval = configurationProvider.getWatchMinInterval();
+    this.maxInterval = configurationProvider.getWatchMaxInterval();
+  }
+
+  @Override
+  public void configurationChanged(IConfigurationProvider configurationProvider) {
+    this.poller.setCorePoolSize(configurationProvider.getWatchThreads());
+    this.minInterval = configurationProvider.getWatchMinInterval();
+    this.maxInterval = configurationProvider.getWatchMaxInterval();
+  }
+
+  /**
+   * Sends the stream the source's new items from now on
+   * The source is polled right away if no room was watching it yet
+   * @param streamId
+   * @param source
+   * @return false if the stream was already watching it
+   */
+  public boolean subscribe(String streamId, WatchSource source) {
+    synchronized (this.watches) {
+      Watch watch = this.watches.get(source.getKey());
+      if (watch == null) {
+        watch = new Watch(source);
+        this.watches.put(source.getKey(), watch);
+        watch.schedule(0);
+        LOG.info("Watching {}", source.getKey());
+      }
+      return watch.streamIds.add(streamId);
+    }
+  }
+
+  /**
+   * Stops sending the source's new items to the stream
+   * The source stops being polled once no room watches it
+   * @param streamId
+   * @param sourceKey
+   * @return false if the stream wasn't watching it
+   */
+  public boolean unsubscribe(String streamId, String sourceKey) {
+    synchronized (this.watches) {
+      Watch watch = this.watches.get(sourceKey);
+      if (watch == null) {
+        return false;
+      }
+
+      boolean removed = watch.streamIds.remove(streamId);
+      if (watch.streamIds.isEmpty()) {
+        this.watches.remove(sourceKey);
+        watch.cancel();
+        LOG.info("Stopped watching {}", sourceKey);
+      }
+      return removed;
+    }
+  }
+
+  /**
+   * The descriptions of the sources the stream watches whose keys start with the prefix
+   * @param streamId
+   * @param keyPrefix e.g. the context's name
+   * @return
+   */
+  public List<String> getWatched(String streamId, String keyPrefix) {
+    List<String> watched = new ArrayList<String>();
+    synchronized (this.watches) {
+      for (Watch watch : this.watches.values()) {
+        if (watch.source.getKey().startsWith(keyPrefix) && watch.streamIds.contains(streamId)) {
+          watched.add(watch.source.getDescription());
+        }
+      }
+    }
+    Collections.sort(watched);
+    return watched;
+  }
+
+  /**
+   * Stops polling - polls already running are interrupted
+   */
+  public void close() {
+    this.poller.shutdownNow();
+  }
+
+  /**
+   * A watched source, the streams watching it and when it is polled next
+   */
+  private class Watch implements Runnable {
+
+    private final WatchSource source;
+    private final Set<String> streamIds;
+
+    //Only read and written by the poll, which runs one at a time
+    private long interval;
+
+    private ScheduledFuture<?> nextPoll;
+    private boolean cancelled;
+
+    private Watch(WatchSource source) {
+      this.source = source;
+      this.streamIds = new CopyOnWriteArraySet<String>();
+      this.interval = minInterval;
+    }
+
+    @Override
+    public void run() {
+      List<MessageML> digest;
+      try {
+        digest = this.source.pollNewItems();
+      } catch (RuntimeException exception) {
+        LOG.warn("Error polling {}: {}", this.source.getKey(), exception.toString());
+        digest = Collections.emptyList();
+      }
+
+      for (String streamId : this.streamIds) {
+        ResponseSink sink = responseSinks.sinkFor(streamId);
+        for (MessageML messageML : digest) {
+          sink.push(messageML);
+        }
+      }
+
+      //Sources that change often are polled more often, down to the minimum interval
+      long previousInterval = this.interval;
+      long nextInterval = digest.isEmpty() ? this.interval + this.interval / 2 : this.interval / 2;
+      this.interval = Math.max(minInterval, Math.min(maxInterval, nextInterval));
+      if (this.interval != previousInterval) {
+        LOG.debug("Polling {} every {}ms", this.source.getKey(), this.interval);
+      }
+
+      schedule(this.interval);
+    }
+
+    private synchronized void schedule(long delay) {
+      if (this.cancelled) {
+        return;
+      }
+      try {
+        this.nextPoll = poller.schedule(this, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException exception) {
+        //Closed
+      }
+    }
+
+    private synchronized void cancel() {
+      this.cancelled = true;
+      if (this.nextPoll != null) {
+        this.nextPoll.cancel(false);
+      }
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.watch;
+
+import com.symphony.formatters.MessageML;
+
+import java.util.List;
+
+/**
+ * Something rooms can watch for new items, e.g. a subreddit or a website
+ * Only the scheduler's poller calls it, one poll at a time, so it may keep what it has seen
+ */
+
+public interface WatchSource {
+
+  /**
+   * Identifies the source across rooms and contexts, e.g. 'Reddit:r/java'
+   */
+  String getKey();
+
+  /**
+   * What rooms are told they are watching, e.g. 'r/java'
+   */
+  String getDescription();
+
+  /**
+   * Fetches the source and renders the items that are new since the last poll
+   * The first poll only remembers what is there
+   * @return the digest to send to every subscribed room, empty if nothing is new
+   */
+  List<MessageML> pollNewItems();
+}
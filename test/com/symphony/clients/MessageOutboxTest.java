@@ -0,0 +1,198 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.clients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.symphony.formatters.MessageML;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class MessageOutboxTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void replaysTheMessagesNeverSent() throws IOException {
+    File file = folder.newFile("outbox.journal");
+    MessageOutbox outbox = MessageOutbox.open(file);
+    assertTrue(outbox.isDurable());
+    MessageOutbox.Entry sent = outbox.add("stream-1", message("sent"));
+    MessageOutbox.Entry dropped = outbox.add("stream-1", message("dropped"));
+    MessageOutbox.Entry unsent = outbox.add("stream-2", message("unsent"));
+    outbox.markSent(sent);
+    outbox.markDropped(dropped);
+    outbox.close();
+
+    MessageOutbox reopened = MessageOutbox.open(file);
+    List<MessageOutbox.Entry> pending = reopened.getPending();
+    reopened.close();
+
+    assertEquals(1, pending.size());
+    MessageOutbox.Entry replayed = pending.get(0);
+    assertEquals(unsent.getKey(), replayed.getKey());
+    assertEquals("stream-2", replayed.getStreamId());
+    assertEquals(unsent.getMarkup(), replayed.getMarkup());
+    assertEquals(unsent.getMarkup(), replayed.getMessageML().toString());
+    assertTrue(reopened.isFinished(sent.getKey()));
+    assertFalse(reopened.isFinished(unsent.getKey()));
+  }
+
+  @Test
+  public void keepsTheOrderMessagesWereAddedIn() throws IOException {
+    File file = folder.newFile("outbox.journal");
+    MessageOutbox outbox = MessageOutbox.open(file);
+    List<String> keys = new ArrayList<String>();
+    for (int i = 0; i < 10; i++) {
+      keys.add(outbox.add("stream", message("message " + i)).getKey());
+    }
+    outbox.close();
+
+    MessageOutbox reopened = MessageOutbox.open(file);
+    List<String> replayedKeys = new ArrayList<String>();
+    for (MessageOutbox.Entry entry : reopened.getPending()) {
+      replayedKeys.add(entry.getKey());
+    }
+    reopened.close();
+
+    assertEquals(keys, replayedKeys);
+  }
+
+  @Test
+  public void sentMessagesStaySentAfterEveryRestart() throws IOException {
+    File file = folder.newFile("outbox.journal");
+    MessageOutbox outbox = MessageOutbox.open(file);
+    outbox.markSent(outbox.add("stream", message("sent")));
+    outbox.close();
+
+    //Opening compacts the journal, which must not bring the message back
+    MessageOutbox.open(file).close();
+    MessageOutbox reopened = MessageOutbox.open(file);
+    int size = reopened.size();
+    reopened.close();
+
+    assertEquals(0, size);
+  }
+
+  @Test
+  public void usesWhatItCanOfAJournalCutShort() throws IOException {
+    File file = folder.newFile("outbox.journal");
+    MessageOutbox outbox = MessageOutbox.open(file);
+    MessageOutbox.Entry entry = outbox.add("stream", message("unsent"));
+    outbox.close();
+
+    OutputStream stream = new FileOutputStream(file, true);
+    try {
+      stream.write("{\"type\":\"added\",\"key\":\"cut sh".getBytes(StandardCharsets.UTF_8));
+    } finally {
+      stream.close();
+    }
+
+    MessageOutbox reopened = MessageOutbox.open(file);
+    List<MessageOutbox.Entry> pending = reopened.getPending();
+    reopened.close();
+
+    assertEquals(1, pending.size());
+    assertEquals(entry.getKey(), pending.get(0).getKey());
+  }
+
+  @Test
+  public void concurrentAddsAreAllJournaled() throws Exception {
+    File file = folder.newFile("outbox.journal");
+    final MessageOutbox outbox = MessageOutbox.open(file);
+    final List<String> keys = new CopyOnWriteArrayList<String>();
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      final String streamId = "stream-" + i;
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 50; j++) {
+            MessageOutbox.Entry entry = outbox.add(streamId, message(streamId + " " + j));
+            if (j % 2 == 0) {
+              outbox.markSent(entry);
+            } else {
+              keys.add(entry.getKey());
+            }
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join(TimeUnit.SECONDS.toMillis(30));
+    }
+    outbox.close();
+
+    MessageOutbox reopened = MessageOutbox.open(file);
+    List<String> replayedKeys = new ArrayList<String>();
+    for (MessageOutbox.Entry entry : reopened.getPending()) {
+      replayedKeys.add(entry.getKey());
+    }
+    reopened.close();
+
+    assertEquals(keys.size(), replayedKeys.size());
+    assertTrue(replayedKeys.containsAll(keys));
+  }
+
+  @Test
+  public void keepsMessagesInMemoryWithoutAFile() {
+    MessageOutbox outbox = MessageOutbox.open(null);
+    assertFalse(outbox.isDurable());
+
+    MessageOutbox.Entry entry = outbox.add("stream", message("in memory"));
+    assertEquals(1, outbox.size());
+    assertEquals(1, entry.recordAttempt());
+    assertEquals(2, entry.recordAttempt());
+
+    outbox.markSent(entry);
+    assertEquals(0, outbox.size());
+    assertTrue(outbox.isFinished(entry.getKey()));
+    outbox.close();
+  }
+
+  private static MessageML message(String text) {
+    MessageML messageML = new MessageML();
+    messageML.addParagraph(text);
+    return messageML;
+  }
+}
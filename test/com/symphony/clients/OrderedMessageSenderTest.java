@@ -0,0 +1,91 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.clients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.symphony.configurations.ConfigurationProvider;
+import com.symphony.resilience.Upstream;
+import com.symphony.resilience.UpstreamUnavailableException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Properties;
+
+public class OrderedMessageSenderTest {
+
+  private static final RuntimeException TIMEOUT =
+      new RuntimeException(new SocketTimeoutException("Read timed out"));
+
+  private OrderedMessageSender sender;
+
+  @Before
+  public void createSender() throws IOException {
+    this.sender = newSender(60000);
+  }
+
+  @Test
+  public void retriesATimeoutWithBackoff() {
+    long first = this.sender.getRetryDelay(TIMEOUT, 1);
+    long third = this.sender.getRetryDelay(TIMEOUT, 3);
+
+    assertTrue(String.valueOf(first), first >= 500 && first <= 1000);
+    assertTrue(String.valueOf(third), third >= 2000 && third <= 4000);
+  }
+
+  @Test
+  public void dropsATimeoutAfterTheLastAttempt() {
+    assertEquals(OrderedMessageSender.DROP, this.sender.getRetryDelay(TIMEOUT, 5));
+  }
+
+  @Test
+  public void waitsAsLongAsTheGuardAsks() {
+    RuntimeException refused = new UpstreamUnavailableException(Upstream.SYMPHONY_AGENT,
+        "circuit open", 30000);
+
+    assertEquals(30000, this.sender.getRetryDelay(refused, 1));
+  }
+
+  @Test
+  public void capsTheBackoffAtTheMaximumDelay() throws IOException {
+    long delay = newSender(3000).getRetryDelay(TIMEOUT, 4);
+
+    assertTrue(String.valueOf(delay), delay >= 1500 && delay <= 3000);
+  }
+
+  private static OrderedMessageSender newSender(long maxDelay) throws IOException {
+    Properties properties = new Properties();
+    properties.load(OrderedMessageSenderTest.class.getResourceAsStream("/symbrowser.properties"));
+    properties.setProperty("sendRetryInitialDelay", "1000");
+    properties.setProperty("sendRetryMaxDelay", String.valueOf(maxDelay));
+    properties.setProperty("sendMaxAttempts", "5");
+    return new OrderedMessageSender(null, null, null, MessageOutbox.open(null),
+        new ConfigurationProvider(properties));
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CommandGrammarTest {
+
+  private static final CommandGrammar GRAMMAR = new CommandGrammar()
+      .addVerb("NEXT", ArgumentType.NONE, "next", "more")
+      .addVerb("NEXT_PAGE", ArgumentType.NONE, "next page")
+      .addVerb("SEARCH", ArgumentType.WORDS, "search", "find")
+      .addVerb("SUBREDDIT", ArgumentType.NAME, "sub", "subreddit")
+      .addVerb("OPEN", ArgumentType.URL, "open")
+      .addVerb("HELP", ArgumentType.NONE, "help")
+      .setIndexVerb("NUMBER")
+      .setDefaultVerb("HELP");
+
+  @Test
+  public void findsTheVerbAfterTheContextName() {
+    ParsedCommand command = parse("Reddit next");
+
+    assertEquals("reddit", command.getContextName());
+    assertEquals("NEXT", command.getVerb());
+    assertFalse(command.hasArgument());
+    assertEquals(ParsedCommand.NO_INDEX, command.getIndex());
+  }
+
+  @Test
+  public void matchesVerbsInAnyCase() {
+    assertEquals("NEXT", parse("@bot REDDIT More").getVerb());
+  }
+
+  @Test
+  public void triesLongerAliasesFirst() {
+    assertEquals("NEXT_PAGE", parse("reddit next page").getVerb());
+    assertEquals("NEXT", parse("reddit next pages").getVerb());
+  }
+
+  @Test
+  public void readsTheArgumentTheVerbsWay() {
+    ParsedCommand search = parse("reddit search  Cute\tCats ");
+    assertEquals("SEARCH", search.getVerb());
+    assertEquals("cute cats", search.getArgument());
+
+    assertEquals("askscience", parse("reddit sub Ask Science").getArgument());
+    assertEquals("https://Example.com/Path", parse("web open https://Example.com/Path")
+        .getArgument());
+    assertEquals("", parse("reddit next three pages").getArgument());
+  }
+
+  @Test
+  public void readsANumberOnItsOwnAsAnIndex() {
+    ParsedCommand command = parse("reddit 3");
+
+    assertEquals("NUMBER", command.getVerb());
+    assertEquals(3, command.getIndex());
+    assertTrue(command.hasArgument());
+  }
+
+  @Test
+  public void ignoresNumbersTooLongForAnIndex() {
+    assertEquals("HELP", parse("reddit 12345678901").getVerb());
+  }
+
+  @Test
+  public void fallsBackToTheDefaultVerb() {
+    ParsedCommand command = parse("Reddit");
+
+    assertEquals("HELP", command.getVerb());
+    assertEquals("", command.getArgument());
+    assertEquals("Reddit", command.getText());
+  }
+
+  @Test
+  public void keepsTheOriginalText() {
+    assertEquals("reddit Search Cats", parse("reddit Search Cats").getText());
+  }
+
+  @Test
+  public void ignoresThePunctuationAroundWords() {
+    ParsedCommand search = parse("reddit, search, cute cats!");
+    assertEquals("SEARCH", search.getVerb());
+    assertEquals("cute cats", search.getArgument());
+    assertEquals("reddit, search, cute cats!", search.getText());
+
+    //Read as 'next' if 'help?' weren't 'help'
+    assertEquals("HELP", parse("reddit help? next").getVerb());
+    assertEquals("NEXT", parse("Reddit: (more)").getVerb());
+    assertEquals(2, parse("reddit 2.").getIndex());
+    assertEquals("https://example.com/path/", parse("web open https://example.com/path/.")
+        .getArgument());
+    assertEquals("/r/askscience", parse("reddit sub /r/askscience ?").getArgument());
+  }
+
+  private static ParsedCommand parse(String text) {
+    return GRAMMAR.parse("reddit", TokenizedMessage.of(text));
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.contexts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.symphony.configurations.ConfigurationProvider;
+import com.symphony.configurations.IConfigurationProvider;
+import com.symphony.formatters.MessageML;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+public class ServiceContextRegistryTest {
+
+  private ServiceContextRegistry registry;
+
+  @Before
+  public void createRegistry() throws IOException {
+    Properties properties = new Properties();
+    properties.load(ServiceContextRegistryTest.class.getResourceAsStream("/symbrowser.properties"));
+    this.registry = new ServiceContextRegistry(new ConfigurationProvider(properties),
+        Arrays.<ServiceContextFactory>asList(
+            new FakeContextFactory("Reddit", "reddit"),
+            new FakeContextFactory("WebBrowser", "webbrowser", "browser")));
+    this.registry.setBotNames(Arrays.asList("symbrowser", "sym browser", "sym_browser"));
+  }
+
+  @Test
+  public void routesToTheFirstAlias() {
+    assertEquals("Reddit", route("reddit frontpage"));
+    assertEquals("WebBrowser", route("@bot browser open example.com"));
+    assertEquals("Reddit", route("hey, reddit! search browser games"));
+  }
+
+  @Test
+  public void skipsTheBotsOwnNames() {
+    assertEquals("Reddit", route("sym browser reddit frontpage"));
+    assertEquals("Reddit", route("sym_browser reddit frontpage"));
+    assertEquals("WebBrowser", route("sym browser browser open example.com"));
+    assertNull(route("sym browser help"));
+  }
+
+  @Test
+  public void routesNowhereWithoutAnAlias() {
+    assertNull(route("hello there"));
+    assertNull(route(""));
+  }
+
+  private String route(String lowerCaseText) {
+    ServiceContext context = this.registry.route(lowerCaseText);
+    return context == null ? null : context.getContextName();
+  }
+
+  private static class FakeContextFactory implements ServiceContextFactory {
+
+    private final String contextName;
+    private final List<String> aliases;
+
+    private FakeContextFactory(String contextName, String... aliases) {
+      this.contextName = contextName;
+      this.aliases = Arrays.asList(aliases);
+    }
+
+    @Override
+    public String getContextName() {
+      return contextName;
+    }
+
+    @Override
+    public List<String> getAliases() {
+      return aliases;
+    }
+
+    @Override
+    public ServiceContext create(IConfigurationProvider configurationProvider) {
+      return new ServiceContext(configurationProvider) {
+        @Override
+        public void authenticate() {
+        }
+
+        @Override
+        public String getContextName() {
+          return contextName;
+        }
+
+        @Override
+        public List<MessageML> responsesToAction(String action) {
+          return Collections.emptyList();
+        }
+
+        @Override
+        public JSONObject getDiagnostics() {
+          return new JSONObject();
+        }
+      };
+    }
+  }
+}
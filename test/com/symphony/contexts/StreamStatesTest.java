@@ -0,0 +1,102 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.contexts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StreamStatesTest {
+
+  private static final StreamStates.Factory<List<String>> FACTORY =
+      new StreamStates.Factory<List<String>>() {
+        @Override
+        public List<String> create() {
+          return new ArrayList<String>();
+        }
+
+        @Override
+        public void copy(List<String> from, List<String> to) {
+          to.clear();
+          to.addAll(from);
+        }
+      };
+
+  @Test
+  public void keepsAStatePerStream() {
+    StreamStates<List<String>> states = new StreamStates<List<String>>(60000, 10, FACTORY);
+
+    states.get("stream-1").add("frontpage");
+    states.get("stream-2").add("r/java");
+
+    assertEquals(Arrays.asList("frontpage"), states.get("stream-1"));
+    assertEquals(Arrays.asList("r/java"), states.get("stream-2"));
+    assertSame(states.get(null), states.get(null));
+    assertEquals(3, states.size());
+  }
+
+  @Test
+  public void copiesOneStreamsStateIntoAnothers() {
+    StreamStates<List<String>> states = new StreamStates<List<String>>(60000, 10, FACTORY);
+    states.get("stream-1").add("frontpage");
+    List<String> copied = states.get("stream-2");
+    copied.add("r/java");
+
+    states.copy("stream-1", "stream-2");
+    states.get("stream-1").add("next");
+
+    assertSame(copied, states.get("stream-2"));
+    assertEquals(Arrays.asList("frontpage"), copied);
+  }
+
+  @Test
+  public void forgetsTheLeastRecentlyUsedStream() {
+    StreamStates<List<String>> states = new StreamStates<List<String>>(60000, 2, FACTORY);
+    List<String> first = states.get("stream-1");
+    states.get("stream-2");
+    states.get("stream-1");
+    states.get("stream-3");
+
+    assertSame(first, states.get("stream-1"));
+    assertEquals(0, states.get("stream-2").size());
+  }
+
+  @Test
+  public void forgetsStreamsThatStoppedUsingTheContext() throws InterruptedException {
+    StreamStates<List<String>> states = new StreamStates<List<String>>(100, 10, FACTORY);
+    List<String> state = states.get("stream");
+    state.add("frontpage");
+
+    Thread.sleep(200);
+
+    assertNotSame(state, states.get("stream"));
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.datafeed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class MessageIdFilterTest {
+
+  private static final long BUCKET_MILLIS = 100;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void dropsIdsSeenWithinTheWindow() {
+    MessageIdFilter filter = new MessageIdFilter(60000, 6, 1000, null);
+
+    assertTrue(filter.isNew("a"));
+    assertTrue(filter.isNew("b"));
+    assertFalse(filter.isNew("a"));
+    assertEquals(2, filter.size());
+  }
+
+  @Test
+  public void forgetsIdsOnceTheWindowHasPassed() throws InterruptedException {
+    MessageIdFilter filter = new MessageIdFilter(2 * BUCKET_MILLIS, 2, 1000, null);
+    assertTrue(filter.isNew("a"));
+
+    Thread.sleep(3 * BUCKET_MILLIS);
+
+    assertTrue(filter.isNew("b"));
+    assertEquals(1, filter.size());
+    assertTrue(filter.isNew("a"));
+  }
+
+  @Test
+  public void dropsTheOldestBucketOverTheMaximum() throws InterruptedException {
+    MessageIdFilter filter = new MessageIdFilter(100 * BUCKET_MILLIS, 100, 3, null);
+    //So a and b are in the same bucket
+    awaitNextBucket();
+    filter.isNew("a");
+    filter.isNew("b");
+
+    awaitNextBucket();
+    filter.isNew("c");
+    filter.isNew("d");
+
+    assertEquals(2, filter.size());
+    assertFalse(filter.isNew("c"));
+    assertTrue(filter.isNew("a"));
+  }
+
+  @Test
+  public void keepsTheNewestBucketOverTheMaximum() {
+    MessageIdFilter filter = new MessageIdFilter(60000, 1, 2, null);
+    filter.isNew("a");
+    filter.isNew("b");
+    filter.isNew("c");
+
+    assertEquals(3, filter.size());
+    assertFalse(filter.isNew("a"));
+  }
+
+  @Test
+  public void remembersTheWindowAcrossARestart() {
+    File file = new File(folder.getRoot(), "message-ids");
+    MessageIdFilter filter = new MessageIdFilter(60000, 6, 1000, file);
+    filter.isNew("a");
+    filter.isNew("b");
+    filter.close();
+
+    MessageIdFilter restarted = new MessageIdFilter(60000, 6, 1000, file);
+
+    assertEquals(2, restarted.size());
+    assertFalse(restarted.isNew("a"));
+    assertFalse(restarted.isNew("b"));
+    assertTrue(restarted.isNew("c"));
+    restarted.close();
+  }
+
+  @Test
+  public void doesNotLoadIdsPastTheWindow() throws InterruptedException {
+    File file = new File(folder.getRoot(), "message-ids");
+    MessageIdFilter filter = new MessageIdFilter(2 * BUCKET_MILLIS, 2, 1000, file);
+    filter.isNew("a");
+    filter.close();
+
+    Thread.sleep(3 * BUCKET_MILLIS);
+    MessageIdFilter restarted = new MessageIdFilter(2 * BUCKET_MILLIS, 2, 1000, file);
+
+    assertEquals(0, restarted.size());
+    assertTrue(restarted.isNew("a"));
+    restarted.close();
+  }
+
+  /**
+   * Sleeps into the next BUCKET_MILLIS long bucket
+   * @throws InterruptedException
+   */
+  private static void awaitNextBucket() throws InterruptedException {
+    long now = System.currentTimeMillis();
+    Thread.sleep(BUCKET_MILLIS - now % BUCKET_MILLIS + 10);
+  }
+}
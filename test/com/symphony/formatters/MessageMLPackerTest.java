@@ -0,0 +1,177 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.formatters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+public class MessageMLPackerTest {
+
+  private static final String GRINNING_FACE = "\uD83D\uDE00";
+
+  @Test
+  public void passesThroughAMessageThatFits() {
+    MessageML messageML = paragraph("short");
+
+    List<MessageML> packed = new MessageMLPacker(100).pack(Collections.singletonList(messageML));
+
+    assertEquals(1, packed.size());
+    assertSame(messageML, packed.get(0));
+  }
+
+  @Test
+  public void mergesMessagesThatFitTogether() {
+    List<MessageML> packed = new MessageMLPacker(200).pack(Arrays.asList(
+        paragraph("first"), paragraph("second"), paragraph("third")));
+
+    assertEquals(1, packed.size());
+    //Rendering indents the text between elements
+    String markup = packed.get(0).toString().replace(" ", "");
+    assertEquals("<messageML>first<br/>second<br/>third</messageML>", markup);
+  }
+
+  @Test
+  public void keepsMessagesApartWhenTheyDoNotFitTogether() {
+    List<MessageML> packed = new MessageMLPacker(40).pack(Arrays.asList(
+        paragraph("first message"), paragraph("second message")));
+
+    assertEquals(2, packed.size());
+  }
+
+  @Test
+  public void splitsLongTextOnWhitespace() {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 60; i++) {
+      text.append("word").append(i).append(' ');
+    }
+
+    List<MessageML> packed = new MessageMLPacker(100).pack(
+        Collections.singletonList(paragraph(text.toString())));
+
+    assertTrue(packed.size() > 1);
+    StringBuilder joined = new StringBuilder();
+    for (MessageML piece : packed) {
+      assertTrue(piece.toString(), piece.toString().length() <= 100);
+      String pieceText = textOf(piece);
+      assertTrue(pieceText, pieceText.endsWith(" "));
+      joined.append(pieceText);
+    }
+    assertEquals(text.toString(), joined.toString());
+  }
+
+  @Test
+  public void neverSplitsASurrogatePair() throws ParserConfigurationException {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      text.append(GRINNING_FACE);
+    }
+
+    List<MessageML> packed = new MessageMLPacker(60).pack(
+        Collections.singletonList(paragraph(text.toString())));
+
+    assertTrue(packed.size() > 1);
+    StringBuilder joined = new StringBuilder();
+    for (MessageML piece : packed) {
+      //Read back, since the serializer writes each one as a character reference
+      assertTrue(piece.toString(), piece.toString().length() <= 60);
+      String pieceText = MessageML.fromString(piece.toString()).copyChildrenTo(newDocument())
+          .get(0).getNodeValue();
+      assertFalse(Character.isLowSurrogate(pieceText.charAt(0)));
+      assertFalse(Character.isHighSurrogate(pieceText.charAt(pieceText.length() - 1)));
+      joined.append(pieceText);
+    }
+    assertEquals(text.toString(), joined.toString());
+  }
+
+  @Test
+  public void splitsALongElementIntoCopiesOfIt() {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 30; i++) {
+      text.append("bold").append(i).append(' ');
+    }
+    MessageML messageML = new MessageML();
+    messageML.addBoldText(text.toString());
+
+    List<MessageML> packed = new MessageMLPacker(80).pack(Collections.singletonList(messageML));
+
+    assertTrue(packed.size() > 1);
+    for (MessageML piece : packed) {
+      String markup = piece.toString();
+      assertTrue(markup, markup.length() <= 80);
+      assertTrue(markup, markup.matches("<messageML> *<b>[^<]+</b></messageML>"));
+    }
+  }
+
+  @Test
+  public void estimatesTheEscapedLengthOfText() throws ParserConfigurationException {
+    Document document = newDocument();
+
+    assertEquals("a &lt; b &amp; c".length(),
+        MessageMLPacker.estimateLength(document.createTextNode("a < b & c")));
+    assertEquals("&#128512;".length(),
+        MessageMLPacker.estimateLength(document.createTextNode(GRINNING_FACE)));
+    assertEquals("<b>bold</b>".length(), MessageMLPacker.estimateLength(bold(document, "bold")));
+  }
+
+  private static Element bold(Document document, String text) {
+    Element element = document.createElement("b");
+    element.appendChild(document.createTextNode(text));
+    return element;
+  }
+
+  private static Document newDocument() throws ParserConfigurationException {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+  }
+
+  private static MessageML paragraph(String text) {
+    MessageML messageML = new MessageML();
+    messageML.addParagraph(text);
+    return messageML;
+  }
+
+  /**
+   * The text of a message holding only text
+   * @param messageML
+   * @return
+   */
+  private static String textOf(MessageML messageML) {
+    String markup = messageML.toString();
+    assertTrue(markup, markup.startsWith("<messageML>") && markup.endsWith("</messageML>"));
+    return markup.substring("<messageML>".length(), markup.length() - "</messageML>".length());
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.lifecycle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.symphony.formatters.MessageML;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class PendingWorkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void savedWorkIsTakenBackInOrder() throws IOException {
+    File file = new File(folder.getRoot(), "pending.work");
+    PendingWork pendingWork = new PendingWork();
+    pendingWork.addMessages("stream-2", Arrays.asList(message("first"), message("second")));
+    pendingWork.addMessages("stream-1", Arrays.asList(message("third")));
+    pendingWork.addMessages("stream-2", Arrays.asList(message("fourth")));
+    pendingWork.addRequest("stream-3", "reddit", "Reddit next");
+    pendingWork.addRequest("stream-1", "web", "web open example.com");
+    pendingWork.save(file);
+
+    PendingWork taken = PendingWork.takeFrom(file);
+
+    assertFalse(taken.isEmpty());
+    assertEquals(4, taken.getNumMessages());
+    Map<String, List<MessageML>> messages = taken.getMessages();
+    assertEquals(Arrays.asList("stream-2", "stream-1"), new ArrayList<String>(messages.keySet()));
+    assertEquals(Arrays.asList(message("first").toString(), message("second").toString(),
+        message("fourth").toString()), toStrings(messages.get("stream-2")));
+    assertEquals(Arrays.asList(message("third").toString()), toStrings(messages.get("stream-1")));
+
+    List<PendingWork.PendingRequest> requests = taken.getRequests();
+    assertEquals(2, requests.size());
+    assertEquals("stream-3", requests.get(0).getStreamId());
+    assertEquals("reddit", requests.get(0).getContextName());
+    assertEquals("Reddit next", requests.get(0).getMessageText());
+    assertEquals("web open example.com", requests.get(1).getMessageText());
+  }
+
+  @Test
+  public void takingTheWorkDeletesTheFile() throws IOException {
+    File file = new File(folder.getRoot(), "pending.work");
+    PendingWork pendingWork = new PendingWork();
+    pendingWork.addRequest("stream", "reddit", "Reddit");
+    pendingWork.save(file);
+    assertTrue(file.isFile());
+
+    PendingWork.takeFrom(file);
+
+    assertFalse(file.exists());
+    assertTrue(PendingWork.takeFrom(file).isEmpty());
+  }
+
+  @Test
+  public void savingReplacesTheFile() throws IOException {
+    File file = new File(folder.getRoot(), "pending.work");
+    PendingWork first = new PendingWork();
+    first.addRequest("stream", "reddit", "Reddit");
+    first.save(file);
+    PendingWork second = new PendingWork();
+    second.addRequest("stream", "web", "web");
+    second.save(file);
+
+    List<PendingWork.PendingRequest> requests = PendingWork.takeFrom(file).getRequests();
+
+    assertEquals(1, requests.size());
+    assertEquals("web", requests.get(0).getContextName());
+  }
+
+  @Test
+  public void dropsMessagesThatAreNoLongerMessageML() throws IOException {
+    File file = new File(folder.getRoot(), "pending.work");
+    OutputStream stream = new FileOutputStream(file);
+    try {
+      stream.write(("{\"type\":\"message\",\"streamId\":\"stream\",\"messageML\":\"<messageML>\"}\n"
+          + "{\"type\":\"message\",\"streamId\":\"stream\","
+          + "\"messageML\":\"<messageML>kept</messageML>\"}\n")
+          .getBytes(StandardCharsets.UTF_8));
+    } finally {
+      stream.close();
+    }
+
+    List<MessageML> messages = PendingWork.takeFrom(file).getMessages().get("stream");
+
+    assertEquals(1, messages.size());
+    assertEquals("<messageML>kept</messageML>", messages.get(0).toString());
+  }
+
+  @Test
+  public void usesWhatItCanOfAFileCutShort() throws IOException {
+    File file = new File(folder.getRoot(), "pending.work");
+    PendingWork pendingWork = new PendingWork();
+    pendingWork.addRequest("stream", "reddit", "Reddit");
+    pendingWork.save(file);
+    OutputStream stream = new FileOutputStream(file, true);
+    try {
+      stream.write("{\"type\":\"requ".getBytes(StandardCharsets.UTF_8));
+    } finally {
+      stream.close();
+    }
+
+    assertEquals(1, PendingWork.takeFrom(file).getRequests().size());
+  }
+
+  private static MessageML message(String text) {
+    MessageML messageML = new MessageML();
+    messageML.addParagraph(text);
+    return messageML;
+  }
+
+  private static List<String> toStrings(List<MessageML> messageMLs) {
+    List<String> strings = new ArrayList<String>();
+    for (MessageML messageML : messageMLs) {
+      strings.add(messageML.toString());
+    }
+    return strings;
+  }
+}
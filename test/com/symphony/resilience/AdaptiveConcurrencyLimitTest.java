@@ -0,0 +1,135 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveConcurrencyLimitTest {
+
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+  @Test
+  public void startsAtTheMaximum() {
+    ResizableSemaphore permits = new ResizableSemaphore(1, false);
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(permits, 2, 20);
+
+    assertEquals(20, limit.getLimit());
+    assertEquals(20, permits.getMaxPermits());
+  }
+
+  @Test
+  public void backsOffWhenLatencyRisesAboveTheBaseline() {
+    ResizableSemaphore permits = new ResizableSemaphore(20, false);
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(permits, 2, 20);
+
+    recordWindow(limit, 20, FAST, 1, true);
+    assertEquals(20, limit.getLimit());
+    assertEquals(FAST, limit.getBaselineNanos());
+
+    recordWindow(limit, 20, SLOW, 1, true);
+    assertEquals(18, limit.getLimit());
+    assertEquals(18, permits.getMaxPermits());
+    assertEquals(SLOW, limit.getRecentNanos());
+  }
+
+  @Test
+  public void backsOffWhenACallFails() {
+    ResizableSemaphore permits = new ResizableSemaphore(20, false);
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(permits, 2, 20);
+
+    recordWindow(limit, 19, FAST, 1, true);
+    limit.record(FAST, 1, false);
+
+    assertEquals(18, limit.getLimit());
+  }
+
+  @Test
+  public void growsWhenBusyAndFast() {
+    ResizableSemaphore permits = new ResizableSemaphore(20, false);
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(permits, 2, 20);
+    recordWindow(limit, 20, FAST, 1, false);
+    assertEquals(18, limit.getLimit());
+
+    //Half the limit in use is busy enough
+    recordWindow(limit, 18, FAST, 9, true);
+    assertEquals(19, limit.getLimit());
+
+    //Not busy, so it isn't raised
+    recordWindow(limit, 19, FAST, 1, true);
+    assertEquals(19, limit.getLimit());
+  }
+
+  @Test
+  public void staysWithinTheBounds() {
+    ResizableSemaphore permits = new ResizableSemaphore(10, false);
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(permits, 3, 10);
+
+    for (int i = 0; i < 50; i++) {
+      recordWindow(limit, 10, FAST, 1, false);
+    }
+    assertEquals(3, limit.getLimit());
+
+    limit.setBounds(5, 8);
+    assertEquals(5, limit.getLimit());
+    assertEquals(5, permits.getMaxPermits());
+
+    for (int i = 0; i < 50; i++) {
+      recordWindow(limit, 10, FAST, 8, true);
+    }
+    assertEquals(8, limit.getLimit());
+  }
+
+  @Test
+  public void keepsTheBoundsConsistent() {
+    ResizableSemaphore permits = new ResizableSemaphore(10, false);
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(permits, 0, 10);
+    assertEquals(1, limit.getMinLimit());
+
+    limit.setBounds(12, 4);
+    assertEquals(4, limit.getMinLimit());
+    assertEquals(4, limit.getMaxLimit());
+    assertEquals(4, limit.getLimit());
+  }
+
+  /**
+   * Records the calls of a window, all with the same latency and concurrency
+   * @param limit
+   * @param calls at least the window size, which is the limit with a minimum of 10
+   * @param latencyNanos
+   * @param inFlight
+   * @param succeeded
+   */
+  private static void recordWindow(AdaptiveConcurrencyLimit limit, int calls, long latencyNanos,
+      int inFlight, boolean succeeded) {
+    for (int i = 0; i < calls; i++) {
+      limit.record(latencyNanos, inFlight, succeeded);
+    }
+  }
+}
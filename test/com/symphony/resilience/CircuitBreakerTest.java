@@ -0,0 +1,109 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+  private static final long OPEN_TIME = 50;
+
+  @Test
+  public void opensAfterConsecutiveFailures() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(3, 60000);
+
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordFailure();
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertTrue(circuitBreaker.allowRequest());
+
+    circuitBreaker.recordFailure();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.allowRequest());
+    assertTrue(circuitBreaker.getRemainingOpenTime() > 0);
+  }
+
+  @Test
+  public void successResetsTheFailureCount() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(2, 60000);
+
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordSuccess();
+    circuitBreaker.recordFailure();
+
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertEquals(0, circuitBreaker.getRemainingOpenTime());
+  }
+
+  @Test
+  public void letsOneProbeThroughOnceTheOpenTimeHasPassed() throws InterruptedException {
+    CircuitBreaker circuitBreaker = openCircuitBreaker();
+    Thread.sleep(OPEN_TIME + 20);
+
+    assertTrue(circuitBreaker.allowRequest());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.allowRequest());
+
+    circuitBreaker.recordSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertTrue(circuitBreaker.allowRequest());
+  }
+
+  @Test
+  public void failedProbeOpensTheCircuitAgain() throws InterruptedException {
+    CircuitBreaker circuitBreaker = openCircuitBreaker();
+    Thread.sleep(OPEN_TIME + 20);
+
+    assertTrue(circuitBreaker.allowRequest());
+    circuitBreaker.recordFailure();
+
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.allowRequest());
+  }
+
+  @Test
+  public void probeNotAttemptedFreesTheSlot() throws InterruptedException {
+    CircuitBreaker circuitBreaker = openCircuitBreaker();
+    Thread.sleep(OPEN_TIME + 20);
+
+    assertTrue(circuitBreaker.allowRequest());
+    circuitBreaker.recordNotAttempted();
+
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    assertTrue(circuitBreaker.allowRequest());
+    assertFalse(circuitBreaker.allowRequest());
+  }
+
+  private static CircuitBreaker openCircuitBreaker() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker(1, OPEN_TIME);
+    circuitBreaker.recordFailure();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    return circuitBreaker;
+  }
+}
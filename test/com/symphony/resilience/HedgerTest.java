@@ -0,0 +1,166 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.symphony.configurations.ConfigurationProvider;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HedgerTest {
+
+  //Latency of the calls the hedge delay is worked out from
+  private static final long USUAL_MILLIS = 5;
+
+  @After
+  public void clearLogContext() {
+    MDC.clear();
+  }
+
+  @Test
+  public void callsOnTheCallersThreadUntilThereAreEnoughSamples() throws IOException {
+    Hedger hedger = new Hedger(newConfigurationProvider(95, 0.5));
+
+    Thread thread = hedger.call(new Callable<Thread>() {
+      @Override
+      public Thread call() {
+        return Thread.currentThread();
+      }
+    });
+
+    assertSame(Thread.currentThread(), thread);
+  }
+
+  @Test
+  public void hedgesASlowCallAndCancelsTheLoser() throws Exception {
+    Hedger hedger = new Hedger(newConfigurationProvider(95, 0.5));
+    warmUp(hedger);
+    //A slow warm up call may have been hedged already
+    JSONObject before = hedger.getDiagnostics();
+
+    final AtomicInteger attempts = new AtomicInteger();
+    final AtomicBoolean loserSawCancel = new AtomicBoolean();
+    final CountDownLatch loserDone = new CountDownLatch(1);
+    MDC.put("requestId", "request-1");
+
+    String result = hedger.call(new Callable<String>() {
+      @Override
+      public String call() {
+        if (attempts.incrementAndGet() > 1) {
+          return "hedge " + MDC.get("requestId");
+        }
+        try {
+          Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+          return "first";
+        } catch (InterruptedException exception) {
+          loserSawCancel.set(Hedger.isCancelled());
+          throw new RuntimeException("interrupted", exception);
+        } finally {
+          loserDone.countDown();
+        }
+      }
+    });
+
+    assertEquals("hedge request-1", result);
+    assertTrue(loserDone.await(5, TimeUnit.SECONDS));
+    assertTrue(loserSawCancel.get());
+    assertFalse(Hedger.isCancelled());
+
+    JSONObject after = hedger.getDiagnostics();
+    assertEquals(1, after.getLong("hedges") - before.getLong("hedges"));
+    assertEquals(1, after.getLong("hedgeWins") - before.getLong("hedgeWins"));
+  }
+
+  @Test
+  public void doesNotHedgeWhenTurnedOff() throws Exception {
+    Hedger hedger = new Hedger(newConfigurationProvider(0, 0.5));
+    warmUp(hedger);
+
+    final AtomicInteger attempts = new AtomicInteger();
+    hedger.call(new Callable<Void>() {
+      @Override
+      public Void call() throws InterruptedException {
+        attempts.incrementAndGet();
+        Thread.sleep(USUAL_MILLIS * 10);
+        return null;
+      }
+    });
+
+    assertEquals(1, attempts.get());
+    assertEquals(0, hedger.getDiagnostics().getLong("hedges"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void throwsTheFailureOfTheCall() throws IOException {
+    Hedger hedger = new Hedger(newConfigurationProvider(95, 0.5));
+
+    hedger.call(new Callable<Void>() {
+      @Override
+      public Void call() {
+        throw new IllegalStateException("upstream failed");
+      }
+    });
+  }
+
+  /**
+   * Makes enough calls for the hedge delay to be worked out
+   * @param hedger
+   */
+  private static void warmUp(Hedger hedger) {
+    for (int i = 0; i < 40; i++) {
+      hedger.call(new Callable<Void>() {
+        @Override
+        public Void call() throws InterruptedException {
+          Thread.sleep(USUAL_MILLIS);
+          return null;
+        }
+      });
+    }
+  }
+
+  private static ConfigurationProvider newConfigurationProvider(double hedgePercentile,
+      double hedgeBudget) throws IOException {
+    Properties properties = new Properties();
+    properties.load(HedgerTest.class.getResourceAsStream("/symbrowser.properties"));
+    properties.setProperty("hedgePercentile", String.valueOf(hedgePercentile));
+    properties.setProperty("hedgeBudget", String.valueOf(hedgeBudget));
+    return new ConfigurationProvider(properties);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.resilience;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketRateLimiterTest {
+
+  @Test
+  public void startsWithOneSecondOfPermits() {
+    TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(5);
+
+    for (int i = 0; i < 5; i++) {
+      assertTrue(rateLimiter.tryAcquire(0));
+    }
+    assertFalse(rateLimiter.tryAcquire(0));
+  }
+
+  @Test
+  public void waitsForTheNextPermitIfItArrivesInTime() {
+    TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(5);
+    drain(rateLimiter);
+
+    long start = System.nanoTime();
+    assertTrue(rateLimiter.tryAcquire(1000));
+    long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    //A permit every 200ms
+    assertTrue("waited " + waitedMillis + "ms", waitedMillis >= 100);
+  }
+
+  @Test
+  public void doesNotWaitForAPermitThatArrivesTooLate() {
+    TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1);
+    drain(rateLimiter);
+
+    long start = System.nanoTime();
+    assertFalse(rateLimiter.tryAcquire(100));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+  }
+
+  @Test
+  public void loweringTheRateCapsTheStoredPermits() {
+    TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10);
+    rateLimiter.setPermitsPerSecond(2);
+
+    assertEquals(2, rateLimiter.getPermitsPerSecond(), 0);
+    assertTrue(rateLimiter.tryAcquire(0));
+    assertTrue(rateLimiter.tryAcquire(0));
+    assertFalse(rateLimiter.tryAcquire(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANonPositiveRate() {
+    new TokenBucketRateLimiter(0);
+  }
+
+  private static void drain(TokenBucketRateLimiter rateLimiter) {
+    while (rateLimiter.tryAcquire(0)) {
+      //Takes every stored permit
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongIntHashMapTest {
+
+  private static final int MISSING = -1;
+
+  @Test
+  public void returnsTheMissingValueForAbsentKeys() {
+    LongIntHashMap map = new LongIntHashMap(4, MISSING);
+
+    assertEquals(MISSING, map.get(1));
+    assertEquals(MISSING, map.get(0));
+    assertEquals(MISSING, map.remove(1));
+    assertEquals(MISSING, map.remove(0));
+  }
+
+  @Test
+  public void putsGetsAndReplaces() {
+    LongIntHashMap map = new LongIntHashMap(4, MISSING);
+
+    map.put(1, 10);
+    map.put(0, 0);
+    map.put(1, 11);
+
+    assertEquals(11, map.get(1));
+    assertEquals(0, map.get(0));
+    assertEquals(2, map.size());
+  }
+
+  @Test
+  public void removingAKeyKeepsTheKeysProbedPastIt() {
+    //Wrapping around the end of the table, the trickiest case for shifting keys back
+    long[] collisions = LongObjectHashMapTest.keysWithHomeSlot(14, 4);
+    long spilled = LongObjectHashMapTest.keysWithHomeSlot(0, 1)[0];
+
+    LongIntHashMap map = new LongIntHashMap(8, MISSING);
+    for (int i = 0; i < collisions.length; i++) {
+      map.put(collisions[i], i);
+    }
+    map.put(spilled, 100);
+
+    assertEquals(0, map.remove(collisions[0]));
+    assertEquals(2, map.remove(collisions[2]));
+
+    assertEquals(MISSING, map.get(collisions[0]));
+    assertEquals(1, map.get(collisions[1]));
+    assertEquals(MISSING, map.get(collisions[2]));
+    assertEquals(3, map.get(collisions[3]));
+    assertEquals(100, map.get(spilled));
+    assertEquals(3, map.size());
+  }
+
+  @Test
+  public void matchesAHashMapThroughResizesAndRemovals() {
+    LongIntHashMap map = new LongIntHashMap(1, MISSING);
+    Map<Long, Integer> expected = new HashMap<Long, Integer>();
+    Random random = new Random(7);
+
+    for (int i = 0; i < 20000; i++) {
+      long key = random.nextInt(2000) - 1000;
+      if (random.nextInt(3) == 0) {
+        Integer removed = expected.remove(key);
+        assertEquals(removed == null ? MISSING : removed, map.remove(key));
+      } else {
+        expected.put(key, i);
+        map.put(key, i);
+      }
+    }
+
+    assertEquals(expected.size(), map.size());
+    for (long key = -1000; key < 1000; key++) {
+      Integer value = expected.get(key);
+      assertEquals(value == null ? MISSING : value, map.get(key));
+    }
+    assertArrayEquals(LongObjectHashMapTest.sorted(expected.keySet().toArray(new Long[0])),
+        LongObjectHashMapTest.sorted(map.keys()));
+  }
+}
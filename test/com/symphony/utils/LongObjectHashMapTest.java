@@ -0,0 +1,159 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongObjectHashMapTest {
+
+  @Test
+  public void putsGetsAndReplaces() {
+    LongObjectHashMap<String> map = new LongObjectHashMap<String>(4);
+
+    assertNull(map.put(1, "one"));
+    assertNull(map.put(0, "zero"));
+    assertEquals("one", map.put(1, "uno"));
+
+    assertEquals("uno", map.get(1));
+    assertEquals("zero", map.get(0));
+    assertNull(map.get(2));
+    assertEquals(2, map.size());
+  }
+
+  @Test
+  public void removingAKeyKeepsTheKeysProbedPastIt() {
+    //Five keys with the same home slot, then two in the slots they spill into
+    long[] collisions = keysWithHomeSlot(3, 5);
+    long[] spilled = new long[] {keysWithHomeSlot(5, 1)[0], keysWithHomeSlot(7, 1)[0]};
+
+    LongObjectHashMap<Long> map = new LongObjectHashMap<Long>(8);
+    for (long key : collisions) {
+      map.put(key, key);
+    }
+    for (long key : spilled) {
+      map.put(key, key);
+    }
+
+    assertEquals(Long.valueOf(collisions[1]), map.remove(collisions[1]));
+    assertEquals(Long.valueOf(collisions[3]), map.remove(collisions[3]));
+    assertNull(map.remove(collisions[1]));
+
+    assertNull(map.get(collisions[1]));
+    assertNull(map.get(collisions[3]));
+    for (long key : new long[] {collisions[0], collisions[2], collisions[4], spilled[0],
+        spilled[1]}) {
+      assertEquals(Long.valueOf(key), map.get(key));
+    }
+    assertEquals(5, map.size());
+  }
+
+  @Test
+  public void removesTheZeroKey() {
+    LongObjectHashMap<String> map = new LongObjectHashMap<String>(4);
+    map.put(0, "zero");
+
+    assertEquals("zero", map.remove(0));
+    assertNull(map.remove(0));
+    assertNull(map.get(0));
+    assertEquals(0, map.size());
+  }
+
+  @Test
+  public void matchesAHashMapThroughResizesAndRemovals() {
+    LongObjectHashMap<Long> map = new LongObjectHashMap<Long>(1);
+    Map<Long, Long> expected = new HashMap<Long, Long>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 20000; i++) {
+      //A small key range, so keys are often replaced and removed
+      long key = random.nextInt(2000) - 1000;
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+      }
+    }
+
+    assertEquals(expected.size(), map.size());
+    for (long key = -1000; key < 1000; key++) {
+      assertEquals(expected.get(key), map.get(key));
+    }
+    assertArrayEquals(sorted(expected.keySet().toArray(new Long[0])), sorted(map.keys()));
+  }
+
+  @Test
+  public void clearRemovesEverything() {
+    LongObjectHashMap<String> map = new LongObjectHashMap<String>(4);
+    map.put(0, "zero");
+    map.put(7, "seven");
+
+    map.clear();
+
+    assertEquals(0, map.size());
+    assertNull(map.get(0));
+    assertNull(map.get(7));
+    assertEquals(0, map.keys().length);
+  }
+
+  /**
+   * Finds keys that hash to the slot in a 16 slot table
+   * @param slot
+   * @param count
+   * @return
+   */
+  static long[] keysWithHomeSlot(int slot, int count) {
+    long[] keys = new long[count];
+    int found = 0;
+    for (long key = 1; found < count; key++) {
+      if ((LongObjectHashMap.hash(key) & 15) == slot) {
+        keys[found++] = key;
+      }
+    }
+    return keys;
+  }
+
+  static long[] sorted(Long[] keys) {
+    long[] primitiveKeys = new long[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      primitiveKeys[i] = keys[i];
+    }
+    return sorted(primitiveKeys);
+  }
+
+  static long[] sorted(long[] keys) {
+    long[] copy = Arrays.copyOf(keys, keys.length);
+    Arrays.sort(copy);
+    return copy;
+  }
+}
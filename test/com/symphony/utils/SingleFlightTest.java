@@ -0,0 +1,149 @@
+/*
+ *
+ *
+ * Copyright 2016 Symphony Communication Services, LLC
+ *
+ * Licensed to Symphony Communication Services, LLC under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.symphony.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+  private static final int CALLERS = 8;
+
+  @Test
+  public void concurrentCallersShareOneExecution() throws InterruptedException {
+    final SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+    final AtomicInteger executions = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> results = new CopyOnWriteArrayList<String>();
+
+    final Callable<String> call = new Callable<String>() {
+      @Override
+      public String call() throws InterruptedException {
+        release.await();
+        return "result " + executions.incrementAndGet();
+      }
+    };
+
+    List<Thread> callers = new ArrayList<Thread>();
+    for (int i = 0; i < CALLERS; i++) {
+      Thread caller = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          results.add(singleFlight.execute("key", call));
+        }
+      });
+      callers.add(caller);
+      caller.start();
+    }
+
+    //Every caller is either running the call or waiting for its result
+    awaitWaiting(callers);
+    assertEquals(1, singleFlight.getInFlightCount());
+    release.countDown();
+    for (Thread caller : callers) {
+      caller.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    assertEquals(1, executions.get());
+    assertEquals(CALLERS, results.size());
+    for (String result : results) {
+      assertEquals("result 1", result);
+    }
+    assertEquals(0, singleFlight.getInFlightCount());
+  }
+
+  @Test
+  public void runsAgainOnceTheCallCompleted() {
+    SingleFlight<String, Integer> singleFlight = new SingleFlight<String, Integer>();
+    final AtomicInteger executions = new AtomicInteger();
+    Callable<Integer> call = new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return executions.incrementAndGet();
+      }
+    };
+
+    assertEquals(Integer.valueOf(1), singleFlight.execute("key", call));
+    assertEquals(Integer.valueOf(2), singleFlight.execute("key", call));
+    assertEquals(Integer.valueOf(3), singleFlight.execute("other key", call));
+  }
+
+  @Test
+  public void rethrowsTheCallsException() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+    try {
+      singleFlight.execute("key", new Callable<String>() {
+        @Override
+        public String call() {
+          throw new IllegalStateException("failed");
+        }
+      });
+      fail("expected the call's exception");
+    } catch (IllegalStateException exception) {
+      assertEquals("failed", exception.getMessage());
+    }
+    assertEquals(0, singleFlight.getInFlightCount());
+  }
+
+  @Test
+  public void wrapsCheckedExceptions() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+    try {
+      singleFlight.execute("key", new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          throw new Exception("failed");
+        }
+      });
+      fail("expected the call's exception");
+    } catch (RuntimeException exception) {
+      assertTrue(exception.getCause() instanceof Exception);
+      assertEquals("failed", exception.getCause().getMessage());
+    }
+  }
+
+  private static void awaitWaiting(List<Thread> threads) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    for (Thread thread : threads) {
+      while (thread.getState() != Thread.State.WAITING) {
+        if (System.nanoTime() > deadline) {
+          fail(thread + " never waited");
+        }
+        Thread.sleep(1);
+      }
+    }
+  }
+}